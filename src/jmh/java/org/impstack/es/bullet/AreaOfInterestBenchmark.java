@@ -0,0 +1,61 @@
+package org.impstack.es.bullet;
+
+import com.simsilica.es.EntityId;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a {@link BulletSystem} frame with an {@link AreaOfInterestPublisher} and a number of observers spread over
+ * the world, compared to publishing all positions.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AreaOfInterestBenchmark {
+
+    @Param({"10000"})
+    public int bodies;
+
+    @Param({"100"})
+    public int observers;
+
+    @Param({"0", "20"})
+    public float updateDecayDistance;
+
+    private BenchmarkWorld world;
+    private int updates;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        world = new BenchmarkWorld();
+        AreaOfInterestPublisher publisher = new AreaOfInterestPublisher(16f);
+        publisher.setUpdateDecayDistance(updateDecayDistance);
+        world.getBulletSystem().addPhysicalEntityListener(publisher);
+        world.populate(bodies, 0.5f);
+
+        int side = (int) Math.ceil(Math.sqrt(bodies));
+        for (int i = 0; i < observers; i++) {
+            // the observers are dynamic bodies spread over the grid
+            EntityId observer = world.createBody(world.gridLocation(i * (bodies / observers), side, 2f), BenchmarkWorld.BOX, 10);
+            publisher.addObserver(observer, 40f, (id, entered, updated, left) -> updates += entered.size() + updated.size() + left.size());
+        }
+        world.step(60);
+        world.attachDrivers();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        world.close();
+    }
+
+    @Benchmark
+    public int frame() {
+        world.step();
+        return updates;
+    }
+
+}
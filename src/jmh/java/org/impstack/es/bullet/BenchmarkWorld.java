@@ -0,0 +1,164 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.shapes.BoxCollisionShape;
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+import com.jme3.system.NativeLibraryLoader;
+import com.simsilica.es.EntityData;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.base.DefaultEntityData;
+import com.simsilica.sim.GameSystemManager;
+import com.simsilica.sim.SimTime;
+
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * A headless world used by the benchmarks. It runs a {@link BulletSystem} on a {@link DefaultEntityData} without a
+ * {@link org.impstack.jme.JmeLauncher} or any rendering, and steps it with a fixed simulated frame time.
+ */
+public class BenchmarkWorld {
+
+    public static final String FLOOR = "floor";
+    public static final String STATIC_BOX = "static-box";
+    public static final String BOX = "box";
+    public static final String SPHERE = "sphere";
+
+    // 60 simulated frames per second
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+    // distance between two bodies on the spawn grid
+    private static final float SPACING = 2f;
+
+    private final EntityData entityData;
+    private final PhysicalShapeRegistry shapeRegistry;
+    private final GameSystemManager systems;
+    private final BulletSystem bulletSystem;
+    private final SimTime time;
+    private final Random random = new Random(42);
+    private long nanos;
+
+    public BenchmarkWorld() {
+        this(bulletSystem -> {});
+    }
+
+    /**
+     * Creates the world, the bullet system can be configured before it's initialized.
+     * @param configuration the configuration of the bullet system
+     */
+    public BenchmarkWorld(Consumer<BulletSystem> configuration) {
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+
+        entityData = new DefaultEntityData();
+
+        shapeRegistry = new BasePhysicalShapeRegistry();
+        shapeRegistry.register(new PhysicalShape(FLOOR), new BoxCollisionShape(new Vector3f(1000f, 1f, 1000f)));
+        shapeRegistry.register(new PhysicalShape(STATIC_BOX), new BoxCollisionShape(new Vector3f(.5f, .5f, .5f)));
+        shapeRegistry.register(new PhysicalShape(BOX), new BoxCollisionShape(new Vector3f(.5f, .5f, .5f)));
+        shapeRegistry.register(new PhysicalShape(SPHERE), new SphereCollisionShape(.5f));
+
+        bulletSystem = new BulletSystem(entityData, shapeRegistry);
+        configuration.accept(bulletSystem);
+        systems = new GameSystemManager();
+        systems.register(BulletSystem.class, bulletSystem);
+        systems.initialize();
+        systems.start();
+        bulletSystem.setGravity(new Vector3f(0, -20f, 0));
+
+        time = new SimTime();
+    }
+
+    /**
+     * Creates a static floor and the given amount of bodies on a grid above it.
+     * @param bodies the total amount of bodies
+     * @param staticRatio the ratio of static bodies, between 0 and 1
+     */
+    public void populate(int bodies, float staticRatio) {
+        entityData.setComponents(entityData.createEntity(),
+                new PhysicalShape(FLOOR),
+                new Mass(0),
+                new SpawnPosition(new Vector3f(0, -1f, 0)));
+
+        int side = (int) FastMath.ceil(FastMath.sqrt(bodies));
+        int statics = (int) (bodies * staticRatio);
+        for (int i = 0; i < bodies; i++) {
+            boolean isStatic = i < statics;
+            createBody(gridLocation(i, side, isStatic ? 0.5f : 2f), isStatic ? STATIC_BOX : BOX, isStatic ? 0 : 10);
+        }
+    }
+
+    public EntityId createBody(Vector3f location, String shape, float mass) {
+        EntityId entityId = entityData.createEntity();
+        entityData.setComponents(entityId,
+                new PhysicalShape(shape),
+                new Mass(mass),
+                new SpawnPosition(location));
+        return entityId;
+    }
+
+    public Vector3f gridLocation(int index, int side, float height) {
+        float offset = side * SPACING * 0.5f;
+        return new Vector3f((index % side) * SPACING - offset, height, (index / side) * SPACING - offset);
+    }
+
+    /**
+     * Attaches a {@link BasePhysicalEntityDriver} with a random direction to all dynamic bodies.
+     */
+    public void attachDrivers() {
+        for (Object body : bulletSystem.getPhysicsSpace().getRigidBodyList()) {
+            if (body instanceof RigidBodyEntity && ((RigidBodyEntity) body).getMass() > 0) {
+                BasePhysicalEntityDriver driver = new BasePhysicalEntityDriver();
+                Vector3f direction = new Vector3f(random.nextFloat() - 0.5f, 0, random.nextFloat() - 0.5f);
+                driver.setMoveDirection(direction);
+                driver.setViewDirection(direction);
+                driver.setMoveSpeed(0.1f);
+                ((RigidBodyEntity) body).setPhysicalEntityDriver(driver);
+            }
+        }
+    }
+
+    /**
+     * Attaches the listeners that are typically used on a server.
+     */
+    public void attachListeners() {
+        bulletSystem.addPhysicalEntityListener(new PhysicalEntityPositionPublisher(entityData));
+    }
+
+    /**
+     * Runs a single simulated frame of the bullet system.
+     */
+    public void step() {
+        nanos += FRAME_NANOS;
+        time.update(nanos);
+        bulletSystem.update(time);
+    }
+
+    public void step(int frames) {
+        for (int i = 0; i < frames; i++) {
+            step();
+        }
+    }
+
+    public void close() {
+        systems.stop();
+        systems.terminate();
+        entityData.close();
+    }
+
+    public EntityData getEntityData() {
+        return entityData;
+    }
+
+    public PhysicalShapeRegistry getShapeRegistry() {
+        return shapeRegistry;
+    }
+
+    public BulletSystem getBulletSystem() {
+        return bulletSystem;
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.impstack.es.bullet;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of a single {@link BulletSystem#update(com.simsilica.sim.SimTime)} frame for different world
+ * populations. The sample time mode reports the per-frame latency percentiles, run with the gc profiler
+ * (the default of the 'jmh' gradle task) to get the allocation rate.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BulletSystemBenchmark {
+
+    // frames to run before measuring, so all bodies are added and the dynamic ones are resting on the floor
+    private static final int SETTLE_FRAMES = 300;
+
+    @Param({"1000", "10000", "50000"})
+    public int bodies;
+
+    @Param({"0.0", "0.5", "0.9"})
+    public float staticRatio;
+
+    @Param({"false", "true"})
+    public boolean drivers;
+
+    @Param({"false", "true"})
+    public boolean listeners;
+
+    private BenchmarkWorld world;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        world = new BenchmarkWorld();
+        world.populate(bodies, staticRatio);
+        // the first frame picks up all the entities
+        world.step();
+        if (drivers) {
+            world.attachDrivers();
+        }
+        if (listeners) {
+            world.attachListeners();
+        }
+        world.step(SETTLE_FRAMES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        world.close();
+    }
+
+    @Benchmark
+    public void frame() {
+        world.step();
+    }
+
+}
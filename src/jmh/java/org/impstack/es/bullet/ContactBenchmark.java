@@ -0,0 +1,51 @@
+package org.impstack.es.bullet;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a {@link BulletSystem} frame with bodies that are in contact with the floor and each other, with and without
+ * a {@link ContactListener}.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ContactBenchmark {
+
+    @Param({"5000"})
+    public int bodies;
+
+    @Param({"false", "true"})
+    public boolean contactListener;
+
+    private BenchmarkWorld world;
+    private int contacts;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        world = new BenchmarkWorld();
+        world.populate(bodies, 0);
+        if (contactListener) {
+            world.getBulletSystem().addContactListener(frame -> contacts += frame.size());
+        }
+        world.step(60);
+        // keep the bodies awake and sliding over the floor
+        world.attachDrivers();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        world.close();
+    }
+
+    @Benchmark
+    public int frame() {
+        world.step();
+        return contacts;
+    }
+
+}
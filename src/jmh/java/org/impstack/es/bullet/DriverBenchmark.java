@@ -0,0 +1,53 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Vector3f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a single {@link BasePhysicalEntityDriver#update(float)} call on a moving and turning physical entity. Run
+ * with the gc profiler to verify that the update doesn't allocate (gc.alloc.rate.norm close to 0 B/op).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DriverBenchmark {
+
+    private static final float TPF = 1f / 60f;
+
+    private BenchmarkWorld world;
+    private BasePhysicalEntityDriver driver;
+    private int updates;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        world = new BenchmarkWorld();
+        world.createBody(new Vector3f(0, 1f, 0), BenchmarkWorld.SPHERE, 80);
+        world.step();
+
+        RigidBodyEntity entity = (RigidBodyEntity) world.getBulletSystem().getPhysicsSpace().getRigidBodyList().iterator().next();
+        driver = new BasePhysicalEntityDriver();
+        driver.setMoveDirection(new Vector3f(1, 0, 1));
+        driver.setViewDirection(new Vector3f(-1, 0, 0));
+        entity.setPhysicalEntityDriver(driver);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        world.close();
+    }
+
+    @Benchmark
+    public void update() {
+        driver.update(TPF);
+        // change the direction now and then, so the driver keeps moving and turning
+        if (++updates % 1000 == 0) {
+            driver.setViewDirection(updates % 2000 == 0 ? Vector3f.UNIT_X : Vector3f.UNIT_Z);
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package org.impstack.es.bullet;
+
+import com.simsilica.es.EntityId;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures spawning a wave of driven physical entities, until all drivers are attached. The drivers are set using
+ * {@link BulletSystem#setPhysicalEntityDriver(EntityId, PhysicalEntityDriver)} right after the entities are created,
+ * before the {@link BulletSystem} has picked them up.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DriverSetupBenchmark {
+
+    @Param({"500", "5000"})
+    public int bodies;
+
+    private BenchmarkWorld world;
+    private int frames;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        world = new BenchmarkWorld();
+        world.populate(0, 0);
+        world.step();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        world.close();
+    }
+
+    @Benchmark
+    public int spawn() {
+        BulletSystem bulletSystem = world.getBulletSystem();
+        int side = (int) Math.ceil(Math.sqrt(bodies));
+        for (int i = 0; i < bodies; i++) {
+            EntityId entityId = world.createBody(world.gridLocation(i, side, 2f), BenchmarkWorld.SPHERE, 80);
+            bulletSystem.setPhysicalEntityDriver(entityId, new BasePhysicalEntityDriver());
+        }
+
+        frames = 0;
+        while (bulletSystem.getDrivenEntityCount() < bodies) {
+            world.step();
+            frames++;
+        }
+        return frames;
+    }
+
+}
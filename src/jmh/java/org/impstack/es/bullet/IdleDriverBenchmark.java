@@ -0,0 +1,57 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Vector3f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a {@link BulletSystem} frame of a world with driven bodies, when all drivers keep moving and when all
+ * drivers are idle. Idle drivers stop setting velocities, so the bodies go to sleep and are no longer simulated.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class IdleDriverBenchmark {
+
+    @Param({"5000"})
+    public int bodies;
+
+    @Param({"false", "true"})
+    public boolean idle;
+
+    private BenchmarkWorld world;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        world = new BenchmarkWorld();
+        world.populate(bodies, 0);
+        world.step(60);
+        world.attachDrivers();
+        world.step(60);
+        if (idle) {
+            for (Object body : world.getBulletSystem().getPhysicsSpace().getRigidBodyList()) {
+                PhysicalEntityDriver driver = ((RigidBodyEntity) body).getPhysicalEntityDriver();
+                if (driver instanceof BasePhysicalEntityDriver) {
+                    ((BasePhysicalEntityDriver) driver).setMoveDirection(Vector3f.ZERO);
+                }
+            }
+            // the bodies come to rest and go to sleep after the deactivation time
+            world.step(300);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        world.close();
+    }
+
+    @Benchmark
+    public void frame() {
+        world.step();
+    }
+
+}
@@ -0,0 +1,51 @@
+package org.impstack.es.bullet;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead of recording the inputs of a {@link BulletSystem} frame in a physics journal, with drivers
+ * setting velocities on all dynamic bodies.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JournalBenchmark {
+
+    @Param({"5000"})
+    public int bodies;
+
+    @Param({"false", "true"})
+    public boolean journal;
+
+    private BenchmarkWorld world;
+    private Path journalFile;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        journalFile = Files.createTempFile("physics", ".journal");
+        world = new BenchmarkWorld(bulletSystem -> bulletSystem.setJournalFile(journal ? journalFile : null));
+        world.populate(bodies, 0.5f);
+        world.step(60);
+        world.attachDrivers();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        world.close();
+        Files.deleteIfExists(journalFile);
+    }
+
+    @Benchmark
+    public void frame() {
+        world.step();
+    }
+
+}
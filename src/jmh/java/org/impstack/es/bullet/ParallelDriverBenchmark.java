@@ -0,0 +1,79 @@
+package org.impstack.es.bullet;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the driver phase of a {@link BulletSystem} with a large amount of driven physical entities, with the drivers
+ * updated serially and in parallel with an increasing amount of threads. A frame is simulated before each measured
+ * driver update, so the drivers see the velocities changed by the physics step. The {@link #frame()} benchmark
+ * measures the whole frame, to put the driver phase in perspective.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ParallelDriverBenchmark {
+
+    private static final float TPF = 1f / 60f;
+
+    @Param({"10000"})
+    public int bodies;
+
+    // a parallelism of 0 updates the drivers serially
+    @Param({"0", "1", "2", "4", "8", "16"})
+    public int parallelism;
+
+    private BenchmarkWorld world;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        world = new BenchmarkWorld();
+        world.populate(bodies, 0);
+        world.step();
+        world.attachDrivers();
+        if (parallelism > 0) {
+            pool = new ForkJoinPool(parallelism);
+            world.getBulletSystem().setForkJoinPool(pool);
+            world.getBulletSystem().setParallelDrivers(true);
+        }
+        world.step(60);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        world.close();
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void drivers(PhysicsStep physicsStep) {
+        world.getBulletSystem().updateDrivers(TPF);
+    }
+
+    @Benchmark
+    public void frame() {
+        world.step();
+    }
+
+    @State(Scope.Thread)
+    public static class PhysicsStep {
+
+        /**
+         * Simulates a frame before each measured driver update, the velocities set by the drivers are changed by the
+         * physics step.
+         */
+        @Setup(Level.Invocation)
+        public void step(ParallelDriverBenchmark benchmark) {
+            benchmark.world.step();
+        }
+    }
+
+}
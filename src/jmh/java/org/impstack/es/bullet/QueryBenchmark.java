@@ -0,0 +1,89 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Vector3f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the line of sight checks of a crowd of agents with the {@link PhysicsQueryService}: each agent casts a ray
+ * to another agent, one ray at a time or as one {@link RayBatch}.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param({"500"})
+    public int agents;
+
+    @Param({"2000"})
+    public int bodies;
+
+    private BenchmarkWorld world;
+    private PhysicsQueryService queryService;
+    private RigidBodyEntity[] agentEntities;
+    private final RayBatch batch = new RayBatch();
+    private final QueryResults results = new QueryResults(1);
+    private final Vector3f from = new Vector3f();
+    private final Vector3f to = new Vector3f();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        world = new BenchmarkWorld();
+        world.populate(bodies, 0.5f);
+        world.step(60);
+        queryService = world.getBulletSystem().getQueryService();
+
+        agentEntities = new RigidBodyEntity[agents];
+        int count = 0;
+        for (Object body : world.getBulletSystem().getPhysicsSpace().getRigidBodyList()) {
+            if (count < agents && body instanceof RigidBodyEntity && ((RigidBodyEntity) body).getMass() > 0) {
+                agentEntities[count++] = (RigidBodyEntity) body;
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        world.close();
+    }
+
+    @Benchmark
+    public int single() {
+        int visible = 0;
+        for (int i = 0; i < agentEntities.length; i++) {
+            RigidBodyEntity agent = agentEntities[i];
+            RigidBodyEntity target = agentEntities[(i + 1) % agentEntities.length];
+            QueryFilter filter = QueryFilter.excluding(agent.getEntityId());
+            queryService.raycast(agent.getLocation(from), target.getLocation(to), filter, results);
+            if (!results.isEmpty() && results.getPhysicalEntity(0) == target) {
+                visible++;
+            }
+        }
+        return visible;
+    }
+
+    @Benchmark
+    public int batch() {
+        batch.clear();
+        for (int i = 0; i < agentEntities.length; i++) {
+            RigidBodyEntity agent = agentEntities[i];
+            RigidBodyEntity target = agentEntities[(i + 1) % agentEntities.length];
+            batch.add(agent.getLocation(from), target.getLocation(to), agent.getEntityId());
+        }
+        queryService.raycast(batch, null);
+
+        int visible = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.getHit(i) == agentEntities[(i + 1) % agentEntities.length]) {
+                visible++;
+            }
+        }
+        return visible;
+    }
+
+}
@@ -0,0 +1,68 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a warm start of a {@link BulletSystem} from a saved state: creating and starting the system with the
+ * physical entities of a settled world restored in bulk. The world is spawned with a {@link SpawnBatch}, so it doesn't
+ * depend on the entities of the entity data.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RestoreBenchmark {
+
+    @Param({"10000", "50000"})
+    public int bodies;
+
+    private Path stateFile;
+    private BenchmarkWorld world;
+
+    @Setup(Level.Trial)
+    public void saveState() throws IOException {
+        BenchmarkWorld settled = new BenchmarkWorld();
+        EntityData entityData = settled.getEntityData();
+        int side = (int) Math.ceil(Math.sqrt(bodies));
+        SpawnBatch batch = new SpawnBatch(bodies + 1);
+        batch.add(entityData.createEntity(), new PhysicalShape(BenchmarkWorld.FLOOR), new Mass(0), new SpawnPosition(new Vector3f(0, -1f, 0)));
+        PhysicalShape shape = new PhysicalShape(BenchmarkWorld.BOX);
+        Mass mass = new Mass(10);
+        for (int i = 0; i < bodies; i++) {
+            batch.add(entityData.createEntity(), shape, mass, new SpawnPosition(settled.gridLocation(i, side, 2f)));
+        }
+        settled.getBulletSystem().spawn(batch);
+        // let the bodies fall on the floor and go to sleep
+        settled.step(300);
+
+        stateFile = Files.createTempFile("physics", ".state");
+        settled.getBulletSystem().saveState(stateFile);
+        settled.close();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        world.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteState() throws IOException {
+        Files.deleteIfExists(stateFile);
+    }
+
+    @Benchmark
+    public int restore() {
+        world = new BenchmarkWorld(bulletSystem -> bulletSystem.setRestoreFile(stateFile));
+        return world.getBulletSystem().getSpawnedEntityCount();
+    }
+
+}
@@ -0,0 +1,70 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.shape.Sphere;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a {@link BulletSystem} frame with dynamic props that use a collision shape created from a detailed mesh:
+ * a dynamic mesh shape of all triangles, a simplified hull and a convex decomposition.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ShapeComplexityBenchmark {
+
+    private static final String PROP = "prop";
+
+    @Param({"500"})
+    public int bodies;
+
+    @Param({"dynamicMesh", "simplifiedHull", "convexDecomposition"})
+    public String shape;
+
+    private BenchmarkWorld world;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        world = new BenchmarkWorld();
+
+        // a sphere mesh of about 8000 triangles
+        Geometry geometry = new Geometry(PROP, new Sphere(64, 64, 0.5f));
+        world.getShapeRegistry().register(new PhysicalShape(PROP), createShape(geometry));
+
+        world.populate(0, 0);
+        int side = (int) Math.ceil(Math.sqrt(bodies));
+        for (int i = 0; i < bodies; i++) {
+            // stack the props in two layers, so they keep colliding with each other
+            world.createBody(world.gridLocation(i, side, 1f + (i % 2) * 1.5f), PROP, 10);
+        }
+        world.step(60);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        world.close();
+    }
+
+    @Benchmark
+    public void frame() {
+        world.step();
+    }
+
+    private CollisionShape createShape(Geometry geometry) {
+        switch (shape) {
+            case "simplifiedHull":
+                return CollisionShapeHelper.createSimplifiedHullShape(geometry, CollisionShapeHelper.Quality.MEDIUM);
+            case "convexDecomposition":
+                return CollisionShapeHelper.createConvexDecompositionShape(geometry, CollisionShapeHelper.Quality.MEDIUM);
+            default:
+                return CollisionShapeHelper.createDynamicMeshShape(geometry);
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Vector3f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a {@link BulletSystem} frame with a {@link PhysicsSnapshotPublisher} attached, and the area queries of a
+ * reader on the published {@link PhysicsSnapshot}.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    @Param({"5000"})
+    public int bodies;
+
+    @Param({"100"})
+    public int queries;
+
+    private BenchmarkWorld world;
+    private PhysicsSnapshotPublisher publisher;
+    private final int[] found = new int[256];
+    private final Vector3f center = new Vector3f();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        world = new BenchmarkWorld();
+        publisher = new PhysicsSnapshotPublisher(world.getBulletSystem());
+        world.getBulletSystem().addPhysicalEntityListener(publisher);
+        world.populate(bodies, 0.5f);
+        world.step(60);
+        world.attachDrivers();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        world.close();
+    }
+
+    @Benchmark
+    public void frame() {
+        world.step();
+    }
+
+    @Benchmark
+    public int query() {
+        int total = 0;
+        try (PhysicsSnapshot snapshot = publisher.acquire()) {
+            for (int i = 0; i < queries && snapshot.size() > 0; i++) {
+                snapshot.getLocation((i * 31) % snapshot.size(), center);
+                total += snapshot.query(center, 10f, found);
+            }
+        }
+        return total;
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.impstack.es.bullet;
+
+import com.simsilica.es.EntityData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures spawning a wave of physical entities in one frame, through the entity components picked up by the
+ * {@link BulletSystem} or through a {@link SpawnBatch}. The position publisher is attached, so the listener fan-out is
+ * included.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SpawnBenchmark {
+
+    @Param({"5000", "30000"})
+    public int bodies;
+
+    @Param({"components", "batch"})
+    public String path;
+
+    private BenchmarkWorld world;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        world = new BenchmarkWorld();
+        world.populate(0, 0);
+        world.attachListeners();
+        world.step();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        world.close();
+    }
+
+    @Benchmark
+    public int spawn() {
+        int side = (int) Math.ceil(Math.sqrt(bodies));
+        if ("batch".equals(path)) {
+            EntityData entityData = world.getEntityData();
+            PhysicalShape shape = new PhysicalShape(BenchmarkWorld.BOX);
+            Mass mass = new Mass(10);
+            SpawnBatch batch = new SpawnBatch(bodies);
+            for (int i = 0; i < bodies; i++) {
+                batch.add(entityData.createEntity(), shape, mass, new SpawnPosition(world.gridLocation(i, side, 2f)));
+            }
+            world.getBulletSystem().spawn(batch);
+        } else {
+            for (int i = 0; i < bodies; i++) {
+                world.createBody(world.gridLocation(i, side, 2f), BenchmarkWorld.BOX, 10);
+            }
+        }
+        world.step();
+        return world.getBulletSystem().getPhysicsSpace().getRigidBodyList().size();
+    }
+
+}
@@ -0,0 +1,128 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the encoding and decoding of the state of the moving bodies with a {@link StateEncoder} and a
+ * {@link StateDecoder}, as a full state and as a delta against a baseline of a few frames ago. The setup verifies that
+ * the decoded state matches the physical entities within the precision.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StateEncoderBenchmark {
+
+    @Param({"10000"})
+    public int bodies;
+
+    @Param({"0.01"})
+    public float precision;
+
+    // the amount of frames between the baseline and the encoded state
+    @Param({"6"})
+    public int baselineAge;
+
+    private BenchmarkWorld world;
+    private StateEncoder encoder;
+    private StateDecoder decoder;
+    private int baseline;
+    private byte[] full;
+    private byte[] delta;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        world = new BenchmarkWorld();
+        encoder = new StateEncoder(world.getBulletSystem(), precision);
+        world.getBulletSystem().addPhysicalEntityListener(encoder);
+        world.populate(bodies, 0.5f);
+        world.step(60);
+        world.attachDrivers();
+        world.step(10);
+
+        baseline = encoder.getSequence();
+        full = toArray(encoder.encode(-1));
+        world.step(baselineAge);
+        delta = toArray(encoder.encode(baseline));
+
+        decoder = new StateDecoder(encoder.getQuantizer());
+        decoder.decode(ByteBuffer.wrap(full));
+        decoder.decode(ByteBuffer.wrap(delta));
+        verify();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        world.close();
+    }
+
+    @Benchmark
+    public int encodeFull() {
+        return encoder.encode(-1).remaining();
+    }
+
+    @Benchmark
+    public int encodeDelta() {
+        return encoder.encode(baseline).remaining();
+    }
+
+    @Benchmark
+    public int decodeDelta(DecoderState state) {
+        return state.decoder.decode(ByteBuffer.wrap(delta));
+    }
+
+    /**
+     * Checks that the decoded state matches the physical entities, within the precision of the quantizer.
+     */
+    private void verify() {
+        Vector3f location = new Vector3f();
+        Vector3f decodedLocation = new Vector3f();
+        Quaternion rotation = new Quaternion();
+        Quaternion decodedRotation = new Quaternion();
+        if (decoder.size() != encoder.getEntityCount()) {
+            throw new IllegalStateException("Decoded " + decoder.size() + " of " + encoder.getEntityCount() + " entities");
+        }
+        for (Object body : world.getBulletSystem().getPhysicsSpace().getRigidBodyList()) {
+            PhysicalEntity physicalEntity = (RigidBodyEntity) body;
+            int i = decoder.indexOf(physicalEntity.getEntityId());
+            if (i < 0) {
+                throw new IllegalStateException("Entity " + physicalEntity.getEntityId() + " isn't decoded");
+            }
+            physicalEntity.getLocation(location);
+            physicalEntity.getRotation(rotation);
+            decoder.getLocation(i, decodedLocation);
+            decoder.getRotation(i, decodedRotation);
+            if (location.distance(decodedLocation) > precision
+                    || Math.abs(rotation.dot(decodedRotation)) < 0.9999f) {
+                throw new IllegalStateException("Decoded state of " + physicalEntity.getEntityId() + " doesn't match");
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class DecoderState {
+        // a decoder with the baseline of the delta, created for each invocation
+
+        private StateDecoder decoder;
+
+        @Setup(Level.Invocation)
+        public void setup(StateEncoderBenchmark benchmark) {
+            decoder = new StateDecoder(benchmark.encoder.getQuantizer());
+            decoder.decode(ByteBuffer.wrap(benchmark.full));
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+}
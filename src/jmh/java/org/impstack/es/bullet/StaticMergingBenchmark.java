@@ -0,0 +1,49 @@
+package org.impstack.es.bullet;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a {@link BulletSystem} frame in a world that consists mostly of static bodies, with and without merging the
+ * static bodies into cells, see {@link BulletSystem#setStaticMerging(boolean)}.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StaticMergingBenchmark {
+
+    @Param({"10000"})
+    public int bodies;
+
+    @Param({"0.9"})
+    public float staticRatio;
+
+    @Param({"false", "true"})
+    public boolean staticMerging;
+
+    private BenchmarkWorld world;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        world = new BenchmarkWorld(bulletSystem -> bulletSystem.setStaticMerging(staticMerging));
+        world.populate(bodies, staticRatio);
+        world.attachListeners();
+        world.step(60);
+        world.attachDrivers();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        world.close();
+    }
+
+    @Benchmark
+    public void frame() {
+        world.step();
+    }
+
+}
@@ -0,0 +1,64 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading the transforms of all physical entities in a frame. Run with the gc profiler to verify that the
+ * store variants of {@link PhysicalEntity#getLocation(Vector3f)} and {@link PhysicalEntity#getRotation(Quaternion)}
+ * don't allocate (gc.alloc.rate.norm close to 0 B/op).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransformReadBenchmark {
+
+    @Param({"20000"})
+    public int bodies;
+
+    private BenchmarkWorld world;
+    private PhysicalEntity[] entities;
+    private final Vector3f location = new Vector3f();
+    private final Quaternion rotation = new Quaternion();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        world = new BenchmarkWorld();
+        world.populate(bodies, 0);
+        world.step();
+        entities = world.getBulletSystem().getPhysicsSpace().getRigidBodyList().stream()
+                .filter(body -> body instanceof RigidBodyEntity)
+                .toArray(PhysicalEntity[]::new);
+        // bodies are falling, so the transform snapshots of the current frame are used
+        world.step();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        world.close();
+    }
+
+    @Benchmark
+    public void readWithStore(Blackhole blackhole) {
+        for (PhysicalEntity entity : entities) {
+            blackhole.consume(entity.getLocation(location));
+            blackhole.consume(entity.getRotation(rotation));
+        }
+    }
+
+    @Benchmark
+    public void readAllocating(Blackhole blackhole) {
+        for (PhysicalEntity entity : entities) {
+            blackhole.consume(entity.getLocation());
+            blackhole.consume(entity.getRotation());
+        }
+    }
+
+}
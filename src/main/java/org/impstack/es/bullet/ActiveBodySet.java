@@ -0,0 +1,66 @@
+package org.impstack.es.bullet;
+
+/**
+ * An array backed set of awake {@link RigidBodyEntity} objects, used by the {@link BulletSystem} to only update the
+ * bodies that can move. Membership is flagged on the rigid body entity itself, so adding is a constant time operation.
+ * Bodies are removed in bulk when the set is compacted.
+ */
+class ActiveBodySet {
+
+    private RigidBodyEntity[] bodies = new RigidBodyEntity[64];
+    private int size;
+
+    /**
+     * Adds the body to the set, when it isn't already part of the set or removed from the physics space.
+     * @param body the rigid body entity
+     */
+    void add(RigidBodyEntity body) {
+        if (body.inActiveSet || body.removed) {
+            return;
+        }
+        if (size == bodies.length) {
+            RigidBodyEntity[] grown = new RigidBodyEntity[size * 2];
+            System.arraycopy(bodies, 0, grown, 0, size);
+            bodies = grown;
+        }
+        body.inActiveSet = true;
+        bodies[size++] = body;
+    }
+
+    int size() {
+        return size;
+    }
+
+    RigidBodyEntity get(int index) {
+        return bodies[index];
+    }
+
+    /**
+     * Removes all bodies that are removed from the physics space or went to sleep, keeping the order of the remaining
+     * bodies.
+     */
+    void compact() {
+        int retained = 0;
+        for (int i = 0; i < size; i++) {
+            RigidBodyEntity body = bodies[i];
+            if (!body.removed && body.isActive()) {
+                bodies[retained++] = body;
+            } else {
+                body.inActiveSet = false;
+            }
+        }
+        for (int i = retained; i < size; i++) {
+            bodies[i] = null;
+        }
+        size = retained;
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            bodies[i].inActiveSet = false;
+            bodies[i] = null;
+        }
+        size = 0;
+    }
+
+}
@@ -0,0 +1,23 @@
+package org.impstack.es.bullet;
+
+import com.simsilica.es.EntityId;
+
+import java.util.List;
+
+/**
+ * Receives the changes in the area of interest of an observer, see {@link AreaOfInterestPublisher}.
+ */
+public interface AreaOfInterestListener {
+
+    /**
+     * Called at the end of a frame in which the area of interest of the observer changed. The lists are reused and
+     * should not be kept after the call.
+     * @param observer the observer
+     * @param entered the physical entities that entered the area
+     * @param updated the physical entities in the area that moved, and are due for an update
+     * @param left the physical entities that left the area or were removed
+     */
+    public void areaOfInterestUpdated(EntityId observer, List<PhysicalEntity> entered, List<PhysicalEntity> updated,
+                                      List<PhysicalEntity> left);
+
+}
@@ -0,0 +1,364 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityId;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A {@link PhysicalEntityListener} that keeps track of the physical entities in the area of interest of observers, for
+ * instance the players connected to a server. The physical entities are kept in a grid of cells on the horizontal
+ * plane (x, z). At the end of each frame, the cells around each observer are checked and the physical entities that
+ * entered the area, left the area or moved are passed to the {@link AreaOfInterestListener} of the observer. The work
+ * per observer depends on the amount of physical entities around it, not on the size of the world.
+ *
+ * Updates of physical entities further away can be sent less often: with an update decay distance
+ * ({@link #setUpdateDecayDistance(float)}), a physical entity at a distance d is updated at most every
+ * 1 + d / decayDistance frames, up to the maximum update interval. The last movement of a physical entity is always sent.
+ *
+ * An observer follows the location of its physical entity, or the location set with
+ * {@link #setObserverLocation(EntityId, Vector3f)} when the observer isn't a physical entity. Observers can be added,
+ * moved and removed from any thread, the changes are applied at the start of the next frame.
+ */
+public class AreaOfInterestPublisher implements PhysicalEntityListener {
+
+    private final float cellSize;
+    private float updateDecayDistance = 0;
+    private int maxUpdateInterval = 10;
+    private long frame;
+    // the physical entities and the cells they are in
+    private final Map<EntityId, Tracked> tracked = new HashMap<>();
+    private final Map<Long, Cell> cells = new HashMap<>();
+    // the observers and the pending changes to the observers
+    private final Map<EntityId, Observer> observers = new HashMap<>();
+    private final Queue<Runnable> observerChanges = new ConcurrentLinkedQueue<>();
+    // the changes of the observer that is updated
+    private final List<PhysicalEntity> entered = new ArrayList<>();
+    private final List<PhysicalEntity> updated = new ArrayList<>();
+    private final List<PhysicalEntity> left = new ArrayList<>();
+
+    public AreaOfInterestPublisher(float cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    public float getUpdateDecayDistance() {
+        return updateDecayDistance;
+    }
+
+    /**
+     * Sets the distance after which the updates of physical entities are sent less often, 0 sends all updates.
+     * @param updateDecayDistance the decay distance
+     */
+    public void setUpdateDecayDistance(float updateDecayDistance) {
+        this.updateDecayDistance = updateDecayDistance;
+    }
+
+    public int getMaxUpdateInterval() {
+        return maxUpdateInterval;
+    }
+
+    /**
+     * Sets the maximum amount of frames between two updates of a moving physical entity in the area of interest.
+     * @param maxUpdateInterval the maximum amount of frames
+     */
+    public void setMaxUpdateInterval(int maxUpdateInterval) {
+        this.maxUpdateInterval = maxUpdateInterval;
+    }
+
+    /**
+     * Adds an observer, all physical entities within the radius are in its area of interest.
+     * @param observer the observer entity
+     * @param radius the radius of the area of interest
+     * @param listener the listener that receives the changes of the area of interest
+     */
+    public void addObserver(EntityId observer, float radius, AreaOfInterestListener listener) {
+        observerChanges.offer(() -> {
+            Observer result = new Observer(observer, radius, listener);
+            Tracked physicalEntity = tracked.get(observer);
+            if (physicalEntity != null) {
+                result.location.set(physicalEntity.location);
+            }
+            observers.put(observer, result);
+        });
+    }
+
+    /**
+     * Removes an observer, its listener isn't notified anymore.
+     * @param observer the observer entity
+     */
+    public void removeObserver(EntityId observer) {
+        observerChanges.offer(() -> observers.remove(observer));
+    }
+
+    /**
+     * Moves an observer that isn't a physical entity.
+     * @param observer the observer entity
+     * @param location the location of the observer
+     */
+    public void setObserverLocation(EntityId observer, Vector3f location) {
+        Vector3f copy = location.clone();
+        observerChanges.offer(() -> {
+            Observer result = observers.get(observer);
+            if (result != null) {
+                result.location.set(copy);
+            }
+        });
+    }
+
+    /**
+     * Changes the radius of the area of interest of an observer.
+     * @param observer the observer entity
+     * @param radius the radius of the area of interest
+     */
+    public void setObserverRadius(EntityId observer, float radius) {
+        observerChanges.offer(() -> {
+            Observer result = observers.get(observer);
+            if (result != null) {
+                result.radius = radius;
+            }
+        });
+    }
+
+    @Override
+    public void startFrame() {
+        frame++;
+        Runnable change;
+        while ((change = observerChanges.poll()) != null) {
+            change.run();
+        }
+    }
+
+    @Override
+    public void physicalEntityAdded(PhysicalEntity physicalEntity) {
+        Tracked entity = new Tracked(physicalEntity);
+        physicalEntity.getLocation(entity.location);
+        entity.updateFrame = frame;
+        tracked.put(physicalEntity.getEntityId(), entity);
+        getCell(cellKey(entity.location)).add(entity);
+        moveObserver(entity);
+    }
+
+    @Override
+    public void physicalEntityUpdated(PhysicalEntity physicalEntity) {
+        Tracked entity = tracked.get(physicalEntity.getEntityId());
+        if (entity == null) {
+            return;
+        }
+        physicalEntity.getLocation(entity.location);
+        entity.updateFrame = frame;
+        long key = cellKey(entity.location);
+        if (key != entity.cell.key) {
+            removeFromCell(entity);
+            getCell(key).add(entity);
+        }
+        moveObserver(entity);
+    }
+
+    @Override
+    public void physicalEntityRemoved(PhysicalEntity physicalEntity) {
+        Tracked entity = tracked.remove(physicalEntity.getEntityId());
+        if (entity != null) {
+            removeFromCell(entity);
+        }
+    }
+
+    @Override
+    public void endFrame() {
+        for (Observer observer : observers.values()) {
+            update(observer);
+        }
+    }
+
+    /**
+     * The amount of physical entities in the area of interest of the observer, as of the last frame.
+     * @param observer the observer entity
+     * @return the amount of physical entities, 0 when the observer doesn't exist
+     */
+    public int getVisibleCount(EntityId observer) {
+        Observer result = observers.get(observer);
+        return result != null ? result.visible.size() : 0;
+    }
+
+    private void update(Observer observer) {
+        entered.clear();
+        updated.clear();
+        left.clear();
+
+        Vector3f center = observer.location;
+        float radius = observer.radius;
+        int x0 = cell(center.x - radius);
+        int z0 = cell(center.z - radius);
+        int x1 = cell(center.x + radius);
+        int z1 = cell(center.z + radius);
+        for (int x = x0; x <= x1; x++) {
+            for (int z = z0; z <= z1; z++) {
+                Cell cell = cells.get(cellKey(x, z));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.entities.size(); i++) {
+                    Tracked entity = cell.entities.get(i);
+                    float distance = entity.location.distance(center);
+                    if (distance <= radius) {
+                        see(observer, entity, distance);
+                    }
+                }
+            }
+        }
+
+        // the physical entities that are no longer seen left the area
+        Iterator<Visible> iterator = observer.visible.values().iterator();
+        while (iterator.hasNext()) {
+            Visible visible = iterator.next();
+            if (visible.seenFrame != frame) {
+                left.add(visible.entity.physicalEntity);
+                iterator.remove();
+            }
+        }
+
+        if (!entered.isEmpty() || !updated.isEmpty() || !left.isEmpty()) {
+            observer.listener.areaOfInterestUpdated(observer.entityId, entered, updated, left);
+        }
+    }
+
+    private void see(Observer observer, Tracked entity, float distance) {
+        Visible visible = observer.visible.get(entity.physicalEntity.getEntityId());
+        if (visible == null || visible.entity != entity) {
+            if (visible != null) {
+                // removed and added again with the same entity id
+                left.add(visible.entity.physicalEntity);
+            }
+            visible = new Visible(entity);
+            observer.visible.put(entity.physicalEntity.getEntityId(), visible);
+            entered.add(entity.physicalEntity);
+            visible.sentFrame = frame;
+        } else if (entity.updateFrame > visible.sentFrame && frame - visible.sentFrame >= getUpdateInterval(distance)) {
+            updated.add(entity.physicalEntity);
+            visible.sentFrame = frame;
+        }
+        visible.seenFrame = frame;
+    }
+
+    private int getUpdateInterval(float distance) {
+        if (updateDecayDistance <= 0) {
+            return 1;
+        }
+        return Math.min(maxUpdateInterval, 1 + (int) (distance / updateDecayDistance));
+    }
+
+    private void moveObserver(Tracked entity) {
+        Observer observer = observers.get(entity.physicalEntity.getEntityId());
+        if (observer != null) {
+            observer.location.set(entity.location);
+        }
+    }
+
+    private Cell getCell(long key) {
+        Cell cell = cells.get(key);
+        if (cell == null) {
+            cell = new Cell(key);
+            cells.put(key, cell);
+        }
+        return cell;
+    }
+
+    private void removeFromCell(Tracked entity) {
+        Cell cell = entity.cell;
+        cell.remove(entity);
+        if (cell.entities.isEmpty()) {
+            cells.remove(cell.key);
+        }
+    }
+
+    private long cellKey(Vector3f location) {
+        return cellKey(cell(location.x), cell(location.z));
+    }
+
+    private int cell(float value) {
+        return (int) Math.floor(value / cellSize);
+    }
+
+    private static long cellKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xffffffffL);
+    }
+
+    private static class Tracked {
+        // a physical entity, its last known location and the cell it's in
+
+        private final PhysicalEntity physicalEntity;
+        private final Vector3f location = new Vector3f();
+        private Cell cell;
+        private int cellIndex;
+        private long updateFrame;
+
+        public Tracked(PhysicalEntity physicalEntity) {
+            this.physicalEntity = physicalEntity;
+        }
+    }
+
+    private static class Cell {
+        // the physical entities in a cell
+
+        private final long key;
+        private final List<Tracked> entities = new ArrayList<>();
+
+        public Cell(long key) {
+            this.key = key;
+        }
+
+        public void add(Tracked entity) {
+            entity.cell = this;
+            entity.cellIndex = entities.size();
+            entities.add(entity);
+        }
+
+        public void remove(Tracked entity) {
+            // move the last physical entity in the free index
+            Tracked last = entities.remove(entities.size() - 1);
+            if (last != entity) {
+                entities.set(entity.cellIndex, last);
+                last.cellIndex = entity.cellIndex;
+            }
+            entity.cell = null;
+        }
+    }
+
+    private static class Observer {
+        // an observer, its area of interest and the physical entities in it
+
+        private final EntityId entityId;
+        private final AreaOfInterestListener listener;
+        private final Vector3f location = new Vector3f();
+        private float radius;
+        private final Map<EntityId, Visible> visible = new HashMap<>();
+
+        public Observer(EntityId entityId, float radius, AreaOfInterestListener listener) {
+            this.entityId = entityId;
+            this.radius = radius;
+            this.listener = listener;
+        }
+    }
+
+    private static class Visible {
+        // a physical entity in the area of interest, the last frame it was seen and sent
+
+        private final Tracked entity;
+        private long seenFrame;
+        private long sentFrame;
+
+        public Visible(Tracked entity) {
+            this.entity = entity;
+        }
+    }
+
+}
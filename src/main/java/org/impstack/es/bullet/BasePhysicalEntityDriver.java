@@ -1,6 +1,7 @@
 package org.impstack.es.bullet;
 
 import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 import com.simsilica.es.EntityData;
 import org.impstack.es.bullet.debug.PhysicalEntityDriverDebug;
@@ -11,7 +12,12 @@ import org.impstack.es.bullet.debug.PhysicalEntityDriverDebug;
  * speed ({@link #setMoveSpeed(float)} value.
  * The angular velocity of the physical entity can be set using a view direction ({@link #setViewDirection(Vector3f)}
  * and a turning speed ({@link #setTurningSpeed(float)} value.
+ * When the move direction is zero and the physical entity faces its view direction, the driver is idle: it stops
+ * setting velocities so the body can go to sleep. Setting a new move or view direction wakes up the body on the next
+ * update.
  * When debug is enabled, {@link PhysicalEntityDriverDebug} components are published.
+ * The driver uses its own scratch vectors for the calculations and doesn't allocate objects in
+ * {@link #update(float)}, unless debug is enabled.
  */
 public class BasePhysicalEntityDriver implements PhysicalEntityDriver {
 
@@ -21,16 +27,29 @@ public class BasePhysicalEntityDriver implements PhysicalEntityDriver {
     protected static final Vector3f ANGULAR_FACTOR = new Vector3f(0, 1, 0);
 
     protected boolean initialized = false;
-    protected final Vector3f moveDirection = Vector3f.ZERO;
+    protected final Vector3f moveDirection = new Vector3f();
     protected final Vector3f viewDirection = new Vector3f(0, 0, 1);
     protected float moveSpeed = 1.0f;
     protected float turningSpeed = 1.0f;
+    // below the idle speed and angle, the driver stops setting the velocities
+    protected float idleSpeed = 0.05f;
+    protected float idleAngle = 0.01f;
+    protected boolean idle = false;
 
     protected PhysicalEntity physicalEntity;
     protected RigidBodyEntity rigidBodyEntity;
     protected boolean debugEnabled = false;
     protected EntityData entityData;
 
+    // scratch variables used in the move and turn calculations
+    private final Vector3f localMoveDirection = new Vector3f();
+    private final Vector3f velocity = new Vector3f();
+    private final Vector3f currentVelocity = new Vector3f();
+    private final Quaternion rotation = new Quaternion();
+    private final Vector3f currentDirection = new Vector3f();
+    private final Vector3f angleToVector = new Vector3f();
+    private final Vector3f crossProduct = new Vector3f();
+
     public BasePhysicalEntityDriver() {
     }
 
@@ -52,10 +71,11 @@ public class BasePhysicalEntityDriver implements PhysicalEntityDriver {
     @Override
     public void update(float tpf) {
         // move the physical entity using the moveSpeed and moveDirection
-        move(tpf);
+        boolean moving = move(tpf);
 
         // turn the physical entity using the turningSpeed and viewDirection
-        turn(tpf);
+        boolean turning = turn(tpf);
+        idle = !moving && !turning;
 
         // publish debug component when debug is enabled
         if (isDebugEnabled() && entityData != null) {
@@ -64,6 +84,16 @@ public class BasePhysicalEntityDriver implements PhysicalEntityDriver {
         }
     }
 
+    /**
+     * The driver only uses its own state and the physical entity it's controlling. When debug is enabled, the
+     * {@link EntityData} should be thread-safe as well.
+     * @return true
+     */
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     public void cleanup(PhysicalEntity entity) {
         this.initialized = false;
@@ -101,6 +131,39 @@ public class BasePhysicalEntityDriver implements PhysicalEntityDriver {
         this.turningSpeed = turningSpeed;
     }
 
+    public float getIdleSpeed() {
+        return idleSpeed;
+    }
+
+    /**
+     * Sets the horizontal speed below which a physical entity without a move direction is left alone, so it can go to
+     * sleep.
+     * @param idleSpeed the speed in world units per second
+     */
+    public void setIdleSpeed(float idleSpeed) {
+        this.idleSpeed = idleSpeed;
+    }
+
+    public float getIdleAngle() {
+        return idleAngle;
+    }
+
+    /**
+     * Sets the angle to the view direction below which the physical entity isn't turned anymore.
+     * @param idleAngle the angle in radians
+     */
+    public void setIdleAngle(float idleAngle) {
+        this.idleAngle = idleAngle;
+    }
+
+    /**
+     * Returns true when the last update didn't set any velocity on the physical entity.
+     * @return true when the driver is idle
+     */
+    public boolean isIdle() {
+        return idle;
+    }
+
     public boolean isDebugEnabled() {
         return debugEnabled;
     }
@@ -121,23 +184,33 @@ public class BasePhysicalEntityDriver implements PhysicalEntityDriver {
         return rigidBodyEntity;
     }
 
-    protected void move(float tpf) {
-        Vector3f localMoveDirection  = moveDirection.mult(60 * tpf * moveSpeed);
+    /**
+     * Sets the linear velocity towards the move direction, or dampens the horizontal velocity when there's no move
+     * direction.
+     * @return true when the linear velocity is set
+     */
+    protected boolean move(float tpf) {
+        moveDirection.mult(60 * tpf * moveSpeed, localMoveDirection);
 
-        Vector3f velocity = rigidBodyEntity.getLinearVelocity();
-        Vector3f currentVelocity = velocity.clone();
+        rigidBodyEntity.getLinearVelocity(velocity);
+        currentVelocity.set(velocity);
+
+        float speed = localMoveDirection.length();
+        if (speed == 0 && velocity.x * velocity.x + velocity.z * velocity.z < idleSpeed * idleSpeed) {
+            // let the body come to rest and go to sleep
+            return false;
+        }
 
         // dampen existing x/z forces
         float existingLeftVelocity = velocity.dot(Vector3f.UNIT_X);
         float existingForwardVelocity = velocity.dot(Vector3f.UNIT_Z);
         existingLeftVelocity = existingLeftVelocity * PHYSICS_DAMPING;
         existingForwardVelocity = existingForwardVelocity * PHYSICS_DAMPING;
-        velocity.addLocal(new Vector3f(-existingLeftVelocity, 0, -existingForwardVelocity));
+        velocity.addLocal(-existingLeftVelocity, 0, -existingForwardVelocity);
 
-        float speed = localMoveDirection.length();
         // calculate the extra needed velocity (desired velocity - current velocity)
         if (speed > 0) {
-            Vector3f localWalkDirection = localMoveDirection.normalize();
+            Vector3f localWalkDirection = localMoveDirection.normalizeLocal();
             float existingVelocity = velocity.dot(localWalkDirection);
             //calculate the final velocity in the desired direction
             float finalVelocity = speed - existingVelocity;
@@ -149,24 +222,38 @@ public class BasePhysicalEntityDriver implements PhysicalEntityDriver {
         if (currentVelocity.distance(velocity) > FastMath.ZERO_TOLERANCE) {
             // the current velocity is lower then the calculated velocity, apply the calculated velocity
             rigidBodyEntity.setLinearVelocity(velocity);
+            return true;
         }
+        return false;
     }
 
-    protected void turn(float tpf) {
-        Vector3f currentDirection = rigidBodyEntity.getRotation().mult(Vector3f.UNIT_Z);
+    /**
+     * Sets the angular velocity to turn towards the view direction.
+     * @return true when the angular velocity is set
+     */
+    protected boolean turn(float tpf) {
+        rigidBodyEntity.getRotation(rotation).mult(Vector3f.UNIT_Z, currentDirection);
         // get the angle we need to rotate to face the target
         float angle = currentDirection.angleBetween(viewDirection);
-        Vector3f angleToVector = new Vector3f(0, angle, 0);
+        angleToVector.set(0, angle, 0);
         angleToVector.multLocal(60 * tpf * turningSpeed);
         // use the cross product to determine the 'shortest' rotation.
         // eg. when the target is 30° to the left, we want to rotate -30° instead of 330°
-        Vector3f crossProduct = currentDirection.cross(viewDirection);
+        currentDirection.cross(viewDirection, crossProduct);
         if (crossProduct.y < 0) {
             angleToVector.negateLocal();
         }
-        if (angle > FastMath.ZERO_TOLERANCE) {
+        if (angle > idleAngle) {
             rigidBodyEntity.setAngularVelocity(angleToVector);
+            return true;
+        }
+        rigidBodyEntity.getAngularVelocity(angleToVector);
+        if (angleToVector.y != 0) {
+            // stop turning once, so the body doesn't drift past the view direction
+            rigidBodyEntity.setAngularVelocity(Vector3f.ZERO);
+            return true;
         }
+        return false;
     }
 
 }
@@ -4,46 +4,302 @@ import com.jme3.bullet.collision.shapes.CollisionShape;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * A base physical shape registry implementation that uses an internal thread-safe index to look up collision shapes.
  * The load method can be overwritten to allow for custom load behaviour for collision shapes that aren't found in the
  * registry.
+ *
+ * Collision shapes are deduplicated by their content: when a collision shape is registered that has the same type and
+ * parameters (or mesh data) as an already registered collision shape, the existing collision shape is linked to the
+ * physical shape and returned. The content key of a collision shape is created by {@link #getContentKey(CollisionShape)}.
+ *
+ * The registry counts the physical entities using each collision shape. Collision shapes that were loaded with
+ * {@link #loadCollisionShape(PhysicalShape)} and are no longer used, are kept for reuse until more then
+ * {@link #getMaxUnusedShapes()} collision shapes are unused. The collision shape that is unused the longest is then
+ * evicted from the registry, so its native memory can be released. A loaded collision shape isn't evicted before it's
+ * acquired for the first time. Collision shapes that are registered directly can't be loaded again and are never
+ * evicted.
+ *
+ * Collision shapes can be loaded without blocking the calling thread using {@link #getAsync(PhysicalShape)}. The load
+ * runs on the executor of the registry, concurrent requests for the same physical shape share one load.
+ *
+ * When a {@link ShapeCache} is set, loaded collision shapes are looked up in the cache before they are created with
+ * {@link #loadCollisionShape(PhysicalShape)}, and created collision shapes are stored in the cache. Override
+ * {@link #getSourceHash(PhysicalShape)} to detect outdated cached collision shapes.
  */
 public class BasePhysicalShapeRegistry implements PhysicalShapeRegistry {
 
     protected static final Logger LOG = LoggerFactory.getLogger(BasePhysicalShapeRegistry.class);
 
-    private final Map<String, CollisionShape> registry = new ConcurrentHashMap<>();
+    // the shape entries by shape id, read without locking
+    private final Map<String, ShapeEntry> registry = new ConcurrentHashMap<>();
+    // the shape entries by content key
+    private final Map<String, ShapeEntry> contents = new HashMap<>();
+    // the unused shape entries that can be evicted, the longest unused first
+    private final Map<ShapeEntry, Boolean> unused = new LinkedHashMap<>();
+    private int maxUnusedShapes = 64;
+    private boolean deduplicate = true;
+    // the running loads by shape id and the executor they run on
+    private final Map<String, CompletableFuture<CollisionShape>> loading = new ConcurrentHashMap<>();
+    private Executor executor = ForkJoinPool.commonPool();
+    private ShapeCache shapeCache;
 
     @Override
     public CollisionShape register(PhysicalShape physicalShape, CollisionShape collisionShape) {
-        registry.put(physicalShape.getShapeId(), collisionShape);
-        LOG.trace("Registering {} -> {}", physicalShape, collisionShape);
-        return collisionShape;
+        return register(physicalShape, collisionShape, true).shape;
     }
 
     @Override
     public CollisionShape get(PhysicalShape physicalShape) {
-        CollisionShape collisionShape = registry.get(physicalShape.getShapeId());
-        if (collisionShape != null) {
-            LOG.trace("Retrieving {} -> {}", physicalShape, collisionShape);
-            return collisionShape;
+        ShapeEntry entry = registry.get(physicalShape.getShapeId());
+        if (entry != null) {
+            LOG.trace("Retrieving {} -> {}", physicalShape, entry.shape);
+            return entry.shape;
         }
 
-        // collision shape isn't found in the registry. Use the custom loadCollisionShape() method.
-        collisionShape = loadCollisionShape(physicalShape);
+        // collision shape isn't found in the registry. Use the cache or the custom loadCollisionShape() method.
+        CollisionShape collisionShape = loadCachedCollisionShape(physicalShape);
         if (collisionShape == null) {
             throw new IllegalArgumentException("No collision shape could be retrieved for " + physicalShape);
         }
 
-        return register(physicalShape, collisionShape);
+        return register(physicalShape, collisionShape, false).shape;
+    }
+
+    @Override
+    public CompletableFuture<CollisionShape> getAsync(PhysicalShape physicalShape) {
+        ShapeEntry entry = registry.get(physicalShape.getShapeId());
+        if (entry != null) {
+            return CompletableFuture.completedFuture(entry.shape);
+        }
+
+        String shapeId = physicalShape.getShapeId();
+        CompletableFuture<CollisionShape> future = loading.computeIfAbsent(shapeId,
+                key -> CompletableFuture.supplyAsync(() -> get(physicalShape), executor));
+        future.whenComplete((collisionShape, error) -> loading.remove(shapeId, future));
+        return future;
+    }
+
+    @Override
+    public synchronized void acquire(PhysicalShape physicalShape) {
+        ShapeEntry entry = registry.get(physicalShape.getShapeId());
+        if (entry != null) {
+            if (entry.references++ == 0) {
+                unused.remove(entry);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void release(PhysicalShape physicalShape) {
+        ShapeEntry entry = registry.get(physicalShape.getShapeId());
+        if (entry != null && entry.references > 0) {
+            if (--entry.references == 0 && !entry.pinned) {
+                unused.put(entry, Boolean.TRUE);
+                evict();
+            }
+        }
+    }
+
+    /**
+     * The amount of distinct collision shapes in the registry.
+     * @return the amount of collision shapes
+     */
+    public synchronized int getCollisionShapeCount() {
+        Set<ShapeEntry> entries = new HashSet<>(registry.values());
+        return entries.size();
+    }
+
+    /**
+     * The amount of physical entities that use the collision shape of the physical shape.
+     * @param physicalShape the physical shape component holding the key
+     * @return the amount of physical entities
+     */
+    public synchronized int getReferenceCount(PhysicalShape physicalShape) {
+        ShapeEntry entry = registry.get(physicalShape.getShapeId());
+        return entry != null ? entry.references : 0;
+    }
+
+    public int getMaxUnusedShapes() {
+        return maxUnusedShapes;
+    }
+
+    /**
+     * Sets the amount of unused collision shapes that are kept for reuse, before the longest unused are evicted.
+     * @param maxUnusedShapes the maximum amount of unused collision shapes
+     */
+    public synchronized void setMaxUnusedShapes(int maxUnusedShapes) {
+        this.maxUnusedShapes = maxUnusedShapes;
+        evict();
+    }
+
+    /**
+     * The amount of collision shapes that are loading asynchronously.
+     * @return the amount of loads
+     */
+    public int getLoadingCount() {
+        return loading.size();
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor that loads collision shapes asynchronously. The common pool is used by default.
+     * @param executor the executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public ShapeCache getShapeCache() {
+        return shapeCache;
+    }
+
+    /**
+     * Sets the persistent cache of collision shapes, or null to disable the cache.
+     * @param shapeCache the cache or null
+     */
+    public void setShapeCache(ShapeCache shapeCache) {
+        this.shapeCache = shapeCache;
+    }
+
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    /**
+     * Share one collision shape between all physical shapes with the same content.
+     * @param deduplicate true to deduplicate collision shapes
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
     }
 
     protected CollisionShape loadCollisionShape(PhysicalShape physicalShape) {
         return null;
     }
 
+    /**
+     * Returns the hash of the content the collision shape of the physical shape is created from, used to detect
+     * outdated collision shapes in the {@link ShapeCache}. By default null is returned, and any cached collision shape
+     * is used.
+     * @param physicalShape the physical shape component holding the key
+     * @return the source hash or null
+     * @see ShapeCache#hash(com.jme3.scene.Spatial)
+     */
+    protected String getSourceHash(PhysicalShape physicalShape) {
+        return null;
+    }
+
+    /**
+     * Creates the key that identifies the content of a collision shape, or null when the collision shape should not
+     * be shared.
+     * @param collisionShape the collision shape
+     * @return the content key or null
+     */
+    protected String getContentKey(CollisionShape collisionShape) {
+        return CollisionShapeHelper.getContentKey(collisionShape);
+    }
+
+    private CollisionShape loadCachedCollisionShape(PhysicalShape physicalShape) {
+        if (shapeCache == null) {
+            return loadCollisionShape(physicalShape);
+        }
+
+        String sourceHash = getSourceHash(physicalShape);
+        CollisionShape collisionShape = shapeCache.load(physicalShape.getShapeId(), sourceHash);
+        if (collisionShape != null) {
+            return collisionShape;
+        }
+
+        collisionShape = loadCollisionShape(physicalShape);
+        if (collisionShape != null) {
+            shapeCache.store(physicalShape.getShapeId(), sourceHash, collisionShape);
+        }
+        return collisionShape;
+    }
+
+    private ShapeEntry register(PhysicalShape physicalShape, CollisionShape collisionShape, boolean pinned) {
+        // create the key before locking, it can take some time for mesh shapes
+        String contentKey = deduplicate ? getContentKey(collisionShape) : null;
+
+        synchronized (this) {
+            ShapeEntry entry = contentKey != null ? contents.get(contentKey) : null;
+            if (entry == null) {
+                entry = new ShapeEntry(contentKey, collisionShape);
+                if (contentKey != null) {
+                    contents.put(contentKey, entry);
+                }
+            } else {
+                LOG.trace("Sharing {} for {}", entry.shape, physicalShape);
+            }
+            entry.pinned |= pinned;
+            // a registered shape is never evicted. A loaded shape becomes unused when it's released, evicting it before
+            // it's acquired would load it again
+            unused.remove(entry);
+
+            ShapeEntry previous = registry.put(physicalShape.getShapeId(), entry);
+            entry.shapeIds.add(physicalShape.getShapeId());
+            if (previous != null && previous != entry) {
+                // the shape id is linked to another collision shape
+                previous.shapeIds.remove(physicalShape.getShapeId());
+                if (previous.shapeIds.isEmpty()) {
+                    remove(previous);
+                }
+            }
+            LOG.trace("Registering {} -> {}", physicalShape, entry.shape);
+            return entry;
+        }
+    }
+
+    private void evict() {
+        Iterator<ShapeEntry> iterator = unused.keySet().iterator();
+        while (unused.size() > maxUnusedShapes && iterator.hasNext()) {
+            ShapeEntry entry = iterator.next();
+            iterator.remove();
+            LOG.trace("Evicting {} -> {}", entry.shapeIds, entry.shape);
+            for (String shapeId : entry.shapeIds) {
+                registry.remove(shapeId, entry);
+            }
+            entry.shapeIds.clear();
+            if (entry.contentKey != null) {
+                contents.remove(entry.contentKey, entry);
+            }
+        }
+    }
+
+    private void remove(ShapeEntry entry) {
+        if (entry.contentKey != null) {
+            contents.remove(entry.contentKey, entry);
+        }
+        unused.remove(entry);
+    }
+
+    private static class ShapeEntry {
+        // a collision shape, the shape ids linked to it and the amount of physical entities using it
+        private final String contentKey;
+        private final CollisionShape shape;
+        private final Set<String> shapeIds = new HashSet<>();
+        private int references;
+        private boolean pinned;
+
+        public ShapeEntry(String contentKey, CollisionShape shape) {
+            this.contentKey = contentKey;
+            this.shape = shape;
+        }
+    }
+
 }
@@ -1,6 +1,14 @@
 package org.impstack.es.bullet;
 
 import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.PhysicsCollisionEvent;
+import com.jme3.bullet.collision.PhysicsCollisionListener;
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Quaternion;
 import com.jme3.math.Vector3f;
 import com.jme3.util.SafeArrayList;
 import com.simsilica.es.Entity;
@@ -9,11 +17,27 @@ import com.simsilica.es.EntityData;
 import com.simsilica.es.EntityId;
 import com.simsilica.sim.AbstractGameSystem;
 import com.simsilica.sim.SimTime;
+import org.impstack.es.bullet.metrics.BulletSystemMetrics;
+import org.impstack.es.bullet.metrics.FramePhase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A bullet implementation that can run as a {@link com.simsilica.sim.GameSystem} and manages physical entities.
@@ -24,6 +48,44 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  * and handles {@link PhysicalEntity}.
  * An entity that has a {@link PhysicalShape}, {@link Mass} and {@link SpawnPosition} will be handled by the system.
  *
+ * Each frame only the awake physical entities are updated. A body is tracked as awake when it's added, moved, when it
+ * has a driver or when it's hit by another body. It's updated a last time in the frame it goes to sleep. Bodies that are
+ * woken up by directly manipulating the physics objects are picked up by a periodic scan over all physical entities,
+ * see {@link #setActiveScanInterval(int)}.
+ *
+ * When parallel drivers are enabled ({@link #setParallelDrivers(boolean)}), the drivers that declare themselves
+ * thread-safe are updated in parallel on a {@link ForkJoinPool}. Their velocity writes are buffered and applied on the
+ * physics thread, also when one of the drivers fails. The other drivers are updated on the physics thread afterwards.
+ *
+ * The world can be divided in partitions using a {@link PhysicsSpacePartitioner}. Each partition has its own physics
+ * space, and the physics spaces are stepped in parallel. Physical entities are added to the partition of their
+ * {@link SpawnPosition} and migrated when they move to another partition. A physical entity that overlaps other
+ * partitions is mirrored in their physics spaces by a {@link PartitionGhost}, the ghosts of moving physical entities are
+ * updated once per frame. The listeners are notified about all physical entities, regardless of the partition.
+ *
+ * By default the physics space is updated with the (scaled) time per frame of the game loop. When a fixed time step is
+ * enabled ({@link #setFixedTimeStep(boolean)}), the elapsed time is accumulated and the physics are stepped in steps of
+ * exactly {@link #getTimeStep()}, with at most {@link #getMaxSubSteps()} steps in one frame. The time that is left in
+ * the accumulator is exposed as the interpolation alpha, and can be used to interpolate between the previous and current
+ * transform of a physical entity, see {@link PhysicalEntity#getInterpolatedLocation(Vector3f)}.
+ *
+ * When asynchronous shape loading is enabled ({@link #setAsyncShapeLoading(boolean)}), physical entities of which the
+ * collision shape isn't loaded yet are parked, and added to the physics space when their collision shape is ready.
+ *
+ * When static merging is enabled ({@link #setStaticMerging(boolean)}), the static physical entities are not added to
+ * the physics space one by one, but merged per cell of a grid into a {@link StaticCellBody}. Use
+ * {@link #getPhysicalEntity(PhysicsCollisionObject, Vector3f)} to find the physical entity of a hit or contact.
+ *
+ * The contacts between physical entities are gathered per pair of entities and delivered once per frame to the
+ * {@link ContactListener}s, with the begin, persist or end of each contact. Contacts are only gathered when a contact
+ * listener is added, see {@link #addContactListener(ContactListener)}.
+ *
+ * Ray tests, sweep tests and overlap tests that report physical entities are done with the {@link PhysicsQueryService},
+ * see {@link #getQueryService()}.
+ *
+ * Each phase of a frame and each listener can be timed by setting {@link BulletSystemMetrics}, see
+ * {@link #setMetrics(BulletSystemMetrics)}.
+ *
  * @author remy
  * @since 10/10/18
  */
@@ -31,12 +93,44 @@ public class BulletSystem extends AbstractGameSystem {
 
     private static final Logger LOG = LoggerFactory.getLogger(BulletSystem.class);
 
+    // the sleeping thresholds of a physical entity without a sleep profile
+    private static final SleepProfile DEFAULT_SLEEP_PROFILE = new SleepProfile(SleepProfile.DEFAULT_LINEAR_THRESHOLD, SleepProfile.DEFAULT_ANGULAR_THRESHOLD);
+
+    // the driver of replayed physical entities that had a driver, the velocities it set are replayed from the journal
+    private static final PhysicalEntityDriver REPLAY_DRIVER = new PhysicalEntityDriver() {
+        @Override
+        public void initialize(PhysicalEntity entity) {
+        }
+
+        @Override
+        public void update(float tpf) {
+        }
+
+        @Override
+        public void cleanup(PhysicalEntity entity) {
+        }
+    };
+
     private EntityData entityData;
+    // the physics space of the first partition
     private PhysicsSpace physicsSpace;
+    // the physics spaces of all partitions
+    private PhysicsSpace[] physicsSpaces;
+    private PhysicsSpacePartitioner partitioner;
+    private final Vector3f tempLocation = new Vector3f();
+    // the bounds of a physical entity, to find the partitions it overlaps
+    private final Vector3f tempMin = new Vector3f();
+    private final Vector3f tempMax = new Vector3f();
     private PhysicsSpace.BroadphaseType broadphaseType = PhysicsSpace.BroadphaseType.DBVT;
     private Vector3f worldMin = new Vector3f(-10000f, -10000f, -10000f);
     private Vector3f worldMax = new Vector3f(10000f, 10000f, 10000f);
     private float speed = 1.0f;
+    // fixed time step settings and state
+    private boolean fixedTimeStep = false;
+    private float timeStep = 1f / 60f;
+    private int maxSubSteps = 4;
+    private float accumulator;
+    private float interpolationAlpha;
     private boolean calculateFps = true;
     private float timeCounter;
     private int frameCounter;
@@ -44,10 +138,81 @@ public class BulletSystem extends AbstractGameSystem {
 
     // a list of physical entity listeners
     private SafeArrayList<PhysicalEntityListener> physicalEntityListeners = new SafeArrayList<>(PhysicalEntityListener.class);
+    // a list of physical entity batch listeners and the frame that is passed to them
+    private SafeArrayList<PhysicalEntityBatchListener> physicalEntityBatchListeners = new SafeArrayList<>(PhysicalEntityBatchListener.class);
+    private final PhysicalEntityFrame physicalEntityFrame = new PhysicalEntityFrame();
     // the container of all the rigidbodies
     private RigidBodyContainer rigidBodyContainer;
-    // a queue for pending PhysicalEntityDriver setup
-    private Queue<PhysicalEntityDriverSetup> pendingDriverSetup = new ConcurrentLinkedQueue<>();
+    // the rigidbodies that are awake
+    private final ActiveBodySet activeBodies = new ActiveBodySet();
+    // the rigidbodies that have a driver
+    private final DrivenEntitySet drivenEntities = new DrivenEntitySet();
+    // wakes up the bodies that are hit by another body
+    private final ActivationListener activationListener = new ActivationListener();
+    // parallel driver update settings
+    private boolean parallelDrivers = false;
+    private ForkJoinPool forkJoinPool = ForkJoinPool.commonPool();
+    private int parallelChunkSize = 256;
+    // the amount of frames between two scans for awake bodies over all rigidbodies
+    private int activeScanInterval = 60;
+    private long frame;
+    // true when the physics spaces are stepped and the frame isn't advanced yet, the snapshots are outdated
+    private boolean stepping;
+    // the drivers waiting for their physical entity, and the queue of entity ids to check
+    private final Map<EntityId, PendingDriver> pendingDrivers = new ConcurrentHashMap<>();
+    private final Queue<EntityId> pendingDriverIds = new ConcurrentLinkedQueue<>();
+    private final List<EntityId> pendingDriverRetries = new ArrayList<>();
+    private int driverSetupBudget = 1000;
+    private long driverSetupTimeout = 2000;
+    // driver setup metrics of the last frame
+    private int driversResolved;
+    private long maxDriverSetupWait;
+    // the metrics, the listener times of the current frame and the counts that are not tracked elsewhere
+    private BulletSystemMetrics metrics;
+    private long[] listenerTimes = new long[0];
+    private long[] batchListenerTimes = new long[0];
+    private long[] contactListenerTimes = new long[0];
+    private int staticBodies;
+    private int contactEvents;
+    // asynchronous collision shape loading, the parked physical entities and the ones of which the shape is loaded
+    private boolean asyncShapeLoading = false;
+    private CollisionShape placeholderShape;
+    private int parkedEntities;
+    // the physical entities of the container that are dropped because their collision shape couldn't be loaded
+    private int droppedEntities;
+    private final Queue<LoadedEntity> loadedEntities = new ConcurrentLinkedQueue<>();
+    // the physical entities that are spawned in bulk, and the batches to spawn and despawn
+    private final Map<EntityId, RigidBodyEntity> spawnedEntities = new HashMap<>();
+    private final Queue<SpawnBatch> pendingSpawns = new ConcurrentLinkedQueue<>();
+    private final Queue<List<EntityId>> pendingDespawns = new ConcurrentLinkedQueue<>();
+    // merging of static physical entities into one body per cell
+    private boolean staticMerging = false;
+    private float staticCellSize = 32f;
+    private StaticCells staticCells;
+    // the contact listeners and the contacts of the current frame
+    private final SafeArrayList<ContactListener> contactListeners = new SafeArrayList<>(ContactListener.class);
+    private final ContactTracker contactTracker = new ContactTracker();
+    private final Vector3f tempContactPoint = new Vector3f();
+    // the ray, sweep and overlap queries
+    private PhysicsQueryService queryService;
+    // the journal the inputs are recorded in or replayed from, and the checksum of the transforms of the current frame
+    private Path journalFile;
+    private Path replayFile;
+    private PhysicsJournal.Writer journal;
+    private PhysicsJournal.Reader replay;
+    private final Map<EntityId, RigidBodyEntity> replayedEntities = new HashMap<>();
+    private long checksum;
+    private int checksumCount;
+    private int replayMismatches;
+    private final Matrix3f tempMatrix = new Matrix3f();
+    private final Vector3f tempVelocity = new Vector3f();
+    private final Quaternion tempRotation = new Quaternion();
+    // the saved state the physical entities are restored from, and the restored ones the container didn't add yet
+    private Path restoreFile;
+    private final Map<EntityId, RigidBodyEntity> restoredEntities = new HashMap<>();
+    // the sleeping thresholds of the entities with a sleep profile
+    private SleepProfileContainer sleepProfileContainer;
+    private final Map<EntityId, SleepProfile> sleepProfiles = new HashMap<>();
     // the registry of collision shapes
     private PhysicalShapeRegistry shapeRegistry;
 
@@ -71,20 +236,77 @@ public class BulletSystem extends AbstractGameSystem {
         if (shapeRegistry == null)
             throw new IllegalStateException("PhysicalShapeRegistry is not set when initializing BulletSystem!");
 
-        physicsSpace = new PhysicsSpace(worldMin, worldMax, broadphaseType);
+        int partitions = partitioner != null ? partitioner.getPartitionCount() : 1;
+        physicsSpaces = new PhysicsSpace[partitions];
+        for (int i = 0; i < partitions; i++) {
+            physicsSpaces[i] = new PhysicsSpace(worldMin, worldMax, broadphaseType);
+            physicsSpaces[i].addCollisionListener(activationListener);
+        }
+        physicsSpace = physicsSpaces[0];
+        // a physics space registers itself as the physics space of the current thread
+        PhysicsSpace.setLocalThreadPhysicsSpace(physicsSpace);
+
+        // the collision shape of parked physical entities
+        placeholderShape = new SphereCollisionShape(0.1f);
+
+        if (staticMerging) {
+            staticCells = new StaticCells(physicsSpaces, staticCellSize);
+        }
+
+        queryService = new PhysicsQueryService(this);
+
+        try {
+            if (replayFile != null) {
+                replay = new PhysicsJournal.Reader(replayFile);
+            } else if (journalFile != null) {
+                journal = new PhysicsJournal.Writer(journalFile);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open the physics journal", e);
+        }
 
         rigidBodyContainer = new RigidBodyContainer(entityData);
+        sleepProfileContainer = new SleepProfileContainer(entityData);
     }
 
     @Override
     public void start() {
+        // the sleep profiles are known before the physical entities are added
+        sleepProfileContainer.start();
+        if (restoreFile != null && replay == null) {
+            restoreState();
+        }
         rigidBodyContainer.start();
+        removeUnclaimedEntities();
     }
 
     @Override
     public void update(SimTime time) {
+        if (isReplayFinished()) {
+            return;
+        }
+        long frameStart = now();
         startFrame();
 
+        try {
+            updateFrame(time);
+        } finally {
+            // a failed frame is closed as well, the journal and the listeners expect the end of each frame they saw start
+            if (replay != null) {
+                replayFrameEnd();
+            } else if (journal != null) {
+                journal.frameEnd(frame, checksum, checksumCount);
+            }
+
+            endFrame();
+
+            if (metrics != null) {
+                recordMetrics(frameStart);
+            }
+        }
+    }
+
+    private void updateFrame(SimTime time) {
         // perform fps calculation
         if (calculateFps) {
             timeCounter += time.getTpf();
@@ -97,47 +319,117 @@ public class BulletSystem extends AbstractGameSystem {
             }
         }
 
-        rigidBodyContainer.update();
+        driversResolved = 0;
+        maxDriverSetupWait = 0;
+        contactEvents = 0;
+        checksum = 0;
+        checksumCount = 0;
+        float t = (float) time.getTpf() * speed;
+        if (replay != null) {
+            t = replayFrameStart();
+        } else if (journal != null) {
+            journal.frameStart(t);
+        }
 
-        // run pending objects setup
-        PhysicalEntityDriverSetup setup = pendingDriverSetup.poll();
-        if (setup != null) {
-            boolean result = setup.execute();
-            if (!result) {
-                // setup failed, add it back to the queue.
-                pendingDriverSetup.offer(setup);
-            }
+        long start = now();
+        rigidBodyContainer.update();
+        sleepProfileContainer.update();
+        addLoadedEntities();
+        spawnBatches();
+        if (replay != null) {
+            replayInputs();
         }
+        if (staticCells != null) {
+            staticCells.rebuild();
+        }
+        start = time(FramePhase.CONTAINER_SYNC, start);
+
+        setupPendingDrivers();
+        time(FramePhase.DRIVER_SETUP, start);
 
-        float t = (float) time.getTpf() * speed;
         if (t != 0) {
 
-            for (PhysicalEntity entity : rigidBodyContainer.getArray()) {
-                if (entity.getPhysicalEntityDriver() != null) {
-                    entity.getPhysicalEntityDriver().update(t);
-                }
+            long previousFrame = frame;
+            if (fixedTimeStep) {
+                stepFixed(t);
+            } else {
+                updateDrivers(t);
+                stepPhysicsSpaces(t, false);
+                frame++;
+                stepping = false;
             }
 
-            physicsSpace.update(t);
-            physicsSpace.distributeEvents();
+            if (activeScanInterval > 0 && frame != previousFrame && frame % activeScanInterval == 0) {
+                scanActiveBodies();
+            }
 
-            for (PhysicalEntity entity : rigidBodyContainer.getArray()) {
-                physicalObjectUpdated(entity);
+            start = now();
+            boolean fillFrame = !physicalEntityBatchListeners.isEmpty();
+            if (fillFrame) {
+                physicalEntityFrame.clear(frame, interpolationAlpha);
+            }
+            for (int i = 0; i < activeBodies.size(); i++) {
+                RigidBodyEntity entity = activeBodies.get(i);
+                if (!entity.removed) {
+                    entity.snapshotTransform(frame);
+                    if (journal != null || replay != null) {
+                        addChecksum(entity);
+                    }
+                    if (physicsSpaces.length > 1) {
+                        migrate(entity, entity.getLocation(tempLocation));
+                        updateGhosts(entity);
+                    }
+                    physicalObjectUpdated(entity);
+                    if (fillFrame) {
+                        physicalEntityFrame.add(entity);
+                    }
+                }
+            }
+            if (fillFrame) {
+                physicalObjectsUpdated(physicalEntityFrame);
             }
+            if (!contactListeners.isEmpty() && frame != previousFrame) {
+                contactsUpdated(contactTracker.finish(frame));
+                contactTracker.swap();
+            }
+            // remove the bodies that went to sleep
+            activeBodies.compact();
+            time(FramePhase.LISTENERS, start);
 
         }
-
-        endFrame();
     }
 
     @Override
     public void stop() {
         rigidBodyContainer.stop();
+        sleepProfileContainer.stop();
+        sleepProfiles.clear();
     }
 
     @Override
     protected void terminate() {
-        physicsSpace.destroy();
+        activeBodies.clear();
+        drivenEntities.clear();
+        spawnedEntities.clear();
+        contactTracker.clear();
+        if (staticCells != null) {
+            staticCells.clear();
+        }
+        for (PhysicsSpace space : physicsSpaces) {
+            space.removeCollisionListener(activationListener);
+            space.destroy();
+        }
+        replayedEntities.clear();
+        try {
+            if (journal != null) {
+                journal.close();
+            }
+            if (replay != null) {
+                replay.close();
+            }
+        } catch (IOException e) {
+            LOG.warn("Unable to close the physics journal", e);
+        }
     }
 
     public void setEntityData(EntityData entityData) {
@@ -155,146 +447,1809 @@ public class BulletSystem extends AbstractGameSystem {
         this.speed = speed;
     }
 
+    /**
+     * The physics space, or the physics space of the first partition when the world is partitioned.
+     * @return the physics space
+     */
     public PhysicsSpace getPhysicsSpace() {
         return physicsSpace;
     }
 
-    public int getFps() {
-        return fps;
+    /**
+     * The physics space of the given partition
+     * @param partition the index of the partition
+     * @return the physics space
+     */
+    public PhysicsSpace getPhysicsSpace(int partition) {
+        return physicsSpaces[partition];
     }
 
-    public void addPhysicalEntityListener(PhysicalEntityListener physicalEntityListener) {
-        physicalEntityListeners.add(physicalEntityListener);
+    /**
+     * The amount of physics spaces, one for each partition
+     * @return the amount of physics spaces
+     */
+    public int getPhysicsSpaceCount() {
+        return physicsSpaces.length;
     }
 
-    public void removePhysicalEntityListener(PhysicalEntityListener physicalEntityListener) {
-        physicalEntityListeners.remove(physicalEntityListener);
+    /**
+     * Returns the physics space the physical entity is part of.
+     * @param entity the physical entity
+     * @return the physics space
+     */
+    public PhysicsSpace getPhysicsSpace(RigidBodyEntity entity) {
+        return physicsSpaces[entity.partition];
     }
 
-    public void setPhysicalEntityDriver(EntityId entityId, PhysicalEntityDriver driver) {
-        if (!isInitialized())
-            return;
+    /**
+     * Sets the gravity of all physics spaces
+     * @param gravity the gravity
+     */
+    public void setGravity(Vector3f gravity) {
+        for (PhysicsSpace space : physicsSpaces) {
+            space.setGravity(gravity);
+        }
+        if (journal != null) {
+            journal.gravity(gravity);
+        }
+    }
 
-        // add to the setup queue
-        pendingDriverSetup.offer(new PhysicalEntityDriverSetup(entityId, driver));
+    public PhysicsSpacePartitioner getPartitioner() {
+        return partitioner;
     }
 
-    public PhysicalShapeRegistry getShapeRegistry() {
-        return shapeRegistry;
+    /**
+     * Sets the partitioner that divides the world in partitions that each have their own physics space. When no
+     * partitioner is set, one physics space is used.
+     * @param partitioner the partitioner
+     */
+    public void setPartitioner(PhysicsSpacePartitioner partitioner) {
+        if (isInitialized())
+            throw new IllegalStateException("BulletSystem is already initialized!");
+
+        this.partitioner = partitioner;
+    }
+
+    public Vector3f getWorldMin() {
+        return worldMin;
+    }
+
+    public void setWorldMin(Vector3f worldMin) {
+        if (isInitialized())
+            throw new IllegalStateException("BulletSystem is already initialized!");
+
+        this.worldMin = worldMin;
+    }
+
+    public Vector3f getWorldMax() {
+        return worldMax;
+    }
+
+    public void setWorldMax(Vector3f worldMax) {
+        if (isInitialized())
+            throw new IllegalStateException("BulletSystem is already initialized!");
+
+        this.worldMax = worldMax;
+    }
+
+    public PhysicsSpace.BroadphaseType getBroadphaseType() {
+        return broadphaseType;
+    }
+
+    public void setBroadphaseType(PhysicsSpace.BroadphaseType broadphaseType) {
+        if (isInitialized())
+            throw new IllegalStateException("BulletSystem is already initialized!");
+
+        this.broadphaseType = broadphaseType;
+    }
+
+    public boolean isFixedTimeStep() {
+        return fixedTimeStep;
     }
 
     /**
-     * Sets the collision shapes registry that will be used to find collision shapes for physical entities.
-     * @param shapeRegistry the collision shapes registry
+     * Steps the physics with a fixed time step instead of the time per frame.
+     * @param fixedTimeStep true to use a fixed time step
      */
-    public void setShapeRegistry(PhysicalShapeRegistry shapeRegistry) {
-        this.shapeRegistry = shapeRegistry;
+    public void setFixedTimeStep(boolean fixedTimeStep) {
+        this.fixedTimeStep = fixedTimeStep;
+        this.accumulator = 0;
+        this.interpolationAlpha = 0;
     }
 
-    private void startFrame() {
-        for (PhysicalEntityListener listener : physicalEntityListeners.getArray()) {
-            listener.startFrame();
-        }
+    public float getTimeStep() {
+        return timeStep;
     }
 
-    private void physicalObjectAdded(PhysicalEntity physicalEntity) {
-        for (PhysicalEntityListener listener : physicalEntityListeners.getArray()) {
-            listener.physicalEntityAdded(physicalEntity);
-        }
+    /**
+     * Sets the duration of one physics step when a fixed time step is used.
+     * @param timeStep the duration in seconds
+     */
+    public void setTimeStep(float timeStep) {
+        this.timeStep = timeStep;
     }
 
-    private void physicalObjectUpdated(PhysicalEntity physicalEntity) {
-        for (PhysicalEntityListener listener : physicalEntityListeners.getArray()) {
-            listener.physicalEntityUpdated(physicalEntity);
-        }
+    public int getMaxSubSteps() {
+        return maxSubSteps;
     }
 
-    private void physicalObjectRemoved(PhysicalEntity physicalEntity) {
-        for (PhysicalEntityListener listener : physicalEntityListeners.getArray()) {
-            listener.physicalEntityRemoved(physicalEntity);
-        }
+    /**
+     * Sets the maximum amount of physics steps in one frame when a fixed time step is used. When the game loop falls
+     * behind more then this amount of steps, the remaining time is dropped and the simulation slows down.
+     * @param maxSubSteps the maximum amount of steps
+     */
+    public void setMaxSubSteps(int maxSubSteps) {
+        this.maxSubSteps = maxSubSteps;
     }
 
-    private void endFrame() {
-        for (PhysicalEntityListener listener : physicalEntityListeners.getArray()) {
-            listener.endFrame();
-        }
+    /**
+     * The fraction of a time step that is accumulated but not simulated yet, between 0 and 1. Always 0 when no fixed
+     * time step is used.
+     * @return the interpolation alpha
+     */
+    public float getInterpolationAlpha() {
+        return interpolationAlpha;
     }
 
-    private class RigidBodyContainer extends EntityContainer<RigidBodyEntity> {
+    public BulletSystemMetrics getMetrics() {
+        return metrics;
+    }
 
-        public RigidBodyContainer(EntityData ed) {
-            super(ed, PhysicalShape.class, Mass.class, SpawnPosition.class);
-        }
+    /**
+     * Sets the metrics that are filled each frame, or null to disable the metrics. When the metrics are set, the
+     * phases of each frame and all calls to the listeners are timed. Should be called on the physics thread.
+     * @param metrics the metrics or null
+     */
+    public void setMetrics(BulletSystemMetrics metrics) {
+        this.metrics = metrics;
+    }
 
-        @Override
-        protected RigidBodyEntity[] getArray() {
-            return super.getArray();
-        }
+    public boolean isAsyncShapeLoading() {
+        return asyncShapeLoading;
+    }
 
-        @Override
-        protected RigidBodyEntity addObject(Entity e) {
-            Mass mass = e.get(Mass.class);
-            PhysicalShape shape = e.get(PhysicalShape.class);
-            SpawnPosition position = e.get(SpawnPosition.class);
+    /**
+     * Loads the collision shapes of new physical entities asynchronously, see
+     * {@link PhysicalShapeRegistry#getAsync(PhysicalShape)}. A physical entity of which the collision shape is still
+     * loading is parked: it's not added to the physics space, its driver isn't updated and the listeners are not
+     * notified, until the collision shape is available. When the collision shape can't be loaded, the physical entity
+     * is dropped and an error is logged.
+     * @param asyncShapeLoading true to load collision shapes asynchronously
+     */
+    public void setAsyncShapeLoading(boolean asyncShapeLoading) {
+        this.asyncShapeLoading = asyncShapeLoading;
+    }
+
+    /**
+     * The amount of physical entities that are waiting for their collision shape.
+     * @return parked physical entities
+     */
+    public int getParkedEntityCount() {
+        return parkedEntities;
+    }
 
-            RigidBodyEntity result = new RigidBodyEntity(e.getId(), shapeRegistry.get(shape), mass);
+    public boolean isStaticMerging() {
+        return staticMerging;
+    }
 
-            result.setPhysicsLocation(position.getLocation());
-            result.setPhysicsRotation(position.getRotation());
+    /**
+     * Merges the static physical entities in the same cell into one {@link StaticCellBody}, instead of adding each of
+     * them to the physics space. A cell is rebuilt in the next frame when a static physical entity is added, moved or
+     * removed.
+     * @param staticMerging true to merge static physical entities
+     */
+    public void setStaticMerging(boolean staticMerging) {
+        if (isInitialized())
+            throw new IllegalStateException("BulletSystem is already initialized!");
 
-            LOG.trace("Adding {} to {}", result, physicsSpace);
-            physicsSpace.addCollisionObject(result);
-            physicalObjectAdded(result);
+        this.staticMerging = staticMerging;
+    }
 
-            return result;
-        }
+    public float getStaticCellSize() {
+        return staticCellSize;
+    }
 
-        @Override
-        protected void updateObject(RigidBodyEntity object, Entity e) {
-            // we only update the position
-            SpawnPosition position = e.get(SpawnPosition.class);
+    /**
+     * Sets the size of the cells static physical entities are merged in.
+     * @param staticCellSize the size of a cell
+     */
+    public void setStaticCellSize(float staticCellSize) {
+        if (isInitialized())
+            throw new IllegalStateException("BulletSystem is already initialized!");
 
-            LOG.trace("Moving {} to {}", object, position);
-            object.setPhysicsLocation(position.getLocation());
-            object.setPhysicsRotation(position.getRotation());
+        this.staticCellSize = staticCellSize;
+    }
 
-            physicalObjectUpdated(object);
-        }
+    /**
+     * The amount of cells static physical entities are merged in.
+     * @return the amount of static cells
+     */
+    public int getStaticCellCount() {
+        return staticCells != null ? staticCells.getCellCount() : 0;
+    }
 
-        @Override
-        protected void removeObject(RigidBodyEntity object, Entity e) {
-            LOG.trace("Removing {} from {}", object, physicsSpace);
-            physicsSpace.removeCollisionObject(object);
-            physicalObjectRemoved(object);
+    public Path getJournalFile() {
+        return journalFile;
+    }
+
+    /**
+     * Records the inputs of the system in a journal, to reproduce the simulation with {@link #setReplayFile(Path)}.
+     * The journal contains the time of each frame, the physical entities that are added, moved by their
+     * {@link SpawnPosition} and removed, the drivers that are set and removed, the velocities that are set on the
+     * physical entities and the gravity. Other changes to the rigidbodies, like forces and impulses, are not recorded.
+     * @param journalFile the journal file or null to disable recording
+     */
+    public void setJournalFile(Path journalFile) {
+        if (isInitialized())
+            throw new IllegalStateException("BulletSystem is already initialized!");
+
+        this.journalFile = journalFile;
+    }
+
+    public Path getReplayFile() {
+        return replayFile;
+    }
+
+    /**
+     * Replays a journal recorded with {@link #setJournalFile(Path)}, see {@link PhysicsReplay}. The physical entities
+     * of the journal are added instead of the entities of the entity data, the time of each frame is taken from the
+     * journal and the drivers are replaced by the velocities they set. The system should be configured the same as the
+     * recorded system. The transforms are verified with the checksum of each frame, see
+     * {@link #getReplayMismatchCount()}.
+     * @param replayFile the journal file or null to disable replaying
+     */
+    public void setReplayFile(Path replayFile) {
+        if (isInitialized())
+            throw new IllegalStateException("BulletSystem is already initialized!");
+
+        this.replayFile = replayFile;
+    }
+
+    /**
+     * Returns true when all frames of the replayed journal are simulated, an update doesn't do anything anymore.
+     * @return true when the replay is finished
+     */
+    public boolean isReplayFinished() {
+        return replay != null && replay.peek() == 0;
+    }
+
+    /**
+     * The amount of replayed frames of which the transforms didn't match the checksum of the recorded frame.
+     * @return the amount of frames that diverged
+     */
+    public int getReplayMismatchCount() {
+        return replayMismatches;
+    }
+
+    /**
+     * Saves the physical state of all physical entities: the transforms, velocities, activation state, drivers and
+     * shape ids, see {@link #setRestoreFile(Path)}. The state of a {@link BasePhysicalEntityDriver} is saved, other
+     * drivers and subclasses of it are not. Should be called on the physics thread, in between updates.
+     * @param file the file to save the state in, it's replaced when it exists
+     * @throws IOException when the file can't be written
+     */
+    public void saveState(Path file) throws IOException {
+        if (!isInitialized())
+            throw new IllegalStateException("BulletSystem is not initialized!");
+
+        List<RigidBodyEntity> containerEntities = new ArrayList<>();
+        for (RigidBodyEntity entity : rigidBodyContainer.getArray()) {
+            if (!entity.removed) {
+                containerEntities.add(entity);
+            }
+        }
+        List<RigidBodyEntity> spawned = new ArrayList<>(spawnedEntities.values());
+        int unsavedDrivers = PhysicsStateFile.write(file, containerEntities, spawned);
+        if (unsavedDrivers > 0) {
+            LOG.warn("The state of {} drivers isn't saved in {}, only the state of a BasePhysicalEntityDriver is saved", unsavedDrivers, file);
         }
+        LOG.debug("Saved {} physical entities in {}", containerEntities.size() + spawned.size(), file);
     }
 
-    private class PhysicalEntityDriverSetup {
-        // helper class to setup a driver on an entity, when the setup fails more then 99 times, it's aborted.
-        private final EntityId entityId;
-        private final PhysicalEntityDriver driver;
-        private int tries;
+    public Path getRestoreFile() {
+        return restoreFile;
+    }
 
-        public PhysicalEntityDriverSetup(EntityId entityId, PhysicalEntityDriver driver) {
-            this.entityId = entityId;
-            this.driver = driver;
+    /**
+     * Restores the physical entities saved with {@link #saveState(Path)} when the system is started, so a world comes
+     * back settled instead of falling into place again. The physical entities are added in bulk, the listeners are
+     * notified with one {@link PhysicalEntityListener#physicalEntitiesAdded(List)} call. An entity of the entity data
+     * keeps its restored physical entity when the shape and mass didn't change, its {@link SpawnPosition} is only
+     * applied when it changes. A restored physical entity of an entity that no longer exists, is removed. When the file
+     * can't be read, the system starts without the saved state.
+     * @param restoreFile the saved state or null to start without a saved state
+     */
+    public void setRestoreFile(Path restoreFile) {
+        if (isInitialized())
+            throw new IllegalStateException("BulletSystem is already initialized!");
+
+        this.restoreFile = restoreFile;
+    }
+
+    /**
+     * Returns the physical entity of a collision object reported by a ray test, sweep test or collision event. For a
+     * {@link StaticCellBody} the member closest to the given point is returned, for a {@link PartitionGhost} the
+     * physical entity it mirrors.
+     * @param object the collision object
+     * @param point the location of the hit or contact in world space
+     * @return the physical entity or null when the collision object isn't managed by this system
+     */
+    public PhysicalEntity getPhysicalEntity(PhysicsCollisionObject object, Vector3f point) {
+        if (object instanceof RigidBodyEntity) {
+            return (RigidBodyEntity) object;
         }
+        if (object instanceof StaticCellBody) {
+            return ((StaticCellBody) object).getMember(point);
+        }
+        if (object instanceof PartitionGhost) {
+            return ((PartitionGhost) object).getEntity();
+        }
+        return null;
+    }
 
-        public boolean execute() {
-            RigidBodyEntity rigidBodyEntity = rigidBodyContainer.getObject(entityId);
-            if (rigidBodyEntity != null) {
-                LOG.trace("Added {} to {} after {} tries", driver, entityId, tries);
-                rigidBodyEntity.setPhysicalEntityDriver(driver);
-                return true;
+    /**
+     * Returns the physical entity of a collision object reported by a collision event, see
+     * {@link PhysicsCollisionEvent#getPartId0()} and {@link PhysicsCollisionEvent#getIndex0()}. For a
+     * {@link StaticCellBody} the member of the child shape with the index is returned. Bullet reports a part id of -1
+     * for a convex child shape, for a mesh child shape it reports the part and triangle of the mesh instead, in that
+     * case the member closest to the given point is returned.
+     * @param object the collision object
+     * @param partId the part id reported for the collision object
+     * @param index the index reported for the collision object
+     * @param point the location of the contact in world space
+     * @return the physical entity or null when the collision object isn't managed by this system
+     */
+    public PhysicalEntity getPhysicalEntity(PhysicsCollisionObject object, int partId, int index, Vector3f point) {
+        if (object instanceof StaticCellBody && partId == -1) {
+            RigidBodyEntity member = ((StaticCellBody) object).getMember(index);
+            if (member != null) {
+                return member;
             }
-            tries++;
+        }
+        return getPhysicalEntity(object, point);
+    }
 
-            if (tries > 99) {
-                LOG.error("Tried {} times to setup {} on {}. Aborting!", tries, driver, entityId);
-                return true;
-            }
-            return false;
+    /**
+     * The service to query the physical entities with ray tests, sweep tests and overlap tests.
+     * @return the query service
+     */
+    public PhysicsQueryService getQueryService() {
+        return queryService;
+    }
+
+    public int getFps() {
+        return fps;
+    }
+
+    /**
+     * The number of physics frames that are simulated by the system.
+     * @return the current frame number
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * Returns true when a snapshot taken in the given frame is still the transform of the rigidbody. A snapshot is
+     * outdated as soon as the physics spaces are stepped, also for the sub steps of a fixed time step frame.
+     */
+    boolean isSnapshotCurrent(long snapshotFrame) {
+        return snapshotFrame == frame && !stepping;
+    }
+
+    /**
+     * The amount of awake physical entities that are updated each frame.
+     * @return awake physical entities
+     */
+    public int getActiveBodyCount() {
+        return activeBodies.size();
+    }
+
+    /**
+     * The amount of physical entities that are controlled by a {@link PhysicalEntityDriver}.
+     * @return driven physical entities
+     */
+    public int getDrivenEntityCount() {
+        return drivenEntities.size();
+    }
+
+    public boolean isParallelDrivers() {
+        return parallelDrivers;
+    }
+
+    /**
+     * Updates the drivers that are thread-safe in parallel.
+     * @param parallelDrivers true to update thread-safe drivers in parallel
+     * @see PhysicalEntityDriver#isThreadSafe()
+     */
+    public void setParallelDrivers(boolean parallelDrivers) {
+        this.parallelDrivers = parallelDrivers;
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    /**
+     * Sets the pool used for parallel work. The common pool is used by default.
+     * @param forkJoinPool the pool
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    public int getParallelChunkSize() {
+        return parallelChunkSize;
+    }
+
+    /**
+     * Sets the maximum amount of drivers that are updated in one parallel task.
+     * @param parallelChunkSize the amount of drivers in one task
+     */
+    public void setParallelChunkSize(int parallelChunkSize) {
+        this.parallelChunkSize = parallelChunkSize;
+    }
+
+    public int getActiveScanInterval() {
+        return activeScanInterval;
+    }
+
+    /**
+     * Sets the amount of frames between two scans over all physical entities looking for bodies that were woken up
+     * outside of the system. A value of zero disables the scan.
+     * @param activeScanInterval the amount of frames between two scans
+     */
+    public void setActiveScanInterval(int activeScanInterval) {
+        this.activeScanInterval = activeScanInterval;
+    }
+
+    public void addPhysicalEntityListener(PhysicalEntityListener physicalEntityListener) {
+        physicalEntityListeners.add(physicalEntityListener);
+    }
+
+    public void removePhysicalEntityListener(PhysicalEntityListener physicalEntityListener) {
+        physicalEntityListeners.remove(physicalEntityListener);
+    }
+
+    /**
+     * Adds a listener that receives the contacts between physical entities each frame. The contacts are only gathered
+     * while there are contact listeners.
+     * @param contactListener the contact listener
+     */
+    public void addContactListener(ContactListener contactListener) {
+        contactListeners.add(contactListener);
+    }
+
+    public void removeContactListener(ContactListener contactListener) {
+        contactListeners.remove(contactListener);
+        if (contactListeners.isEmpty()) {
+            contactTracker.clear();
+        }
+    }
+
+    public QueryFilter getContactFilter() {
+        return contactTracker.getFilter();
+    }
+
+    /**
+     * Sets the filter for the contacts that are reported to the contact listeners, for instance to only report contacts
+     * of entities with a given component. A contact is reported when one of both physical entities is accepted. The
+     * filter is checked when a contact begins.
+     * @param contactFilter the filter or null to report all contacts
+     */
+    public void setContactFilter(QueryFilter contactFilter) {
+        contactTracker.setFilter(contactFilter);
+    }
+
+    public void addPhysicalEntityBatchListener(PhysicalEntityBatchListener physicalEntityBatchListener) {
+        physicalEntityBatchListeners.add(physicalEntityBatchListener);
+    }
+
+    public void removePhysicalEntityBatchListener(PhysicalEntityBatchListener physicalEntityBatchListener) {
+        physicalEntityBatchListeners.remove(physicalEntityBatchListener);
+    }
+
+    /**
+     * Spawns a batch of physical entities in bulk, without entity components. The physical entities are added in the
+     * next frame, the collision shapes are retrieved once for the batch and the listeners are notified with one
+     * {@link PhysicalEntityListener#physicalEntitiesAdded(List)} call. With asynchronous collision shape loading, the
+     * physical entities of which the collision shape is still loading are parked and added separately when it's
+     * loaded. The entities should not have the components that are picked up by the system. Can be called from any
+     * thread.
+     * @param batch the physical entities to spawn
+     */
+    public void spawn(SpawnBatch batch) {
+        pendingSpawns.offer(batch);
+    }
+
+    /**
+     * Removes physical entities that were spawned in bulk, in the next frame. The listeners are notified with one
+     * {@link PhysicalEntityListener#physicalEntitiesRemoved(List)} call. Can be called from any thread.
+     * @param entityIds the entities to remove
+     */
+    public void despawn(Collection<EntityId> entityIds) {
+        pendingDespawns.offer(new ArrayList<>(entityIds));
+    }
+
+    /**
+     * The amount of physical entities that are spawned in bulk.
+     * @return spawned physical entities
+     */
+    public int getSpawnedEntityCount() {
+        return spawnedEntities.size();
+    }
+
+    /**
+     * Sets a driver on the physical entity of the given entity. The driver is set on the physics thread, when the
+     * physical entity is added or in the next frame when the physical entity already exists. When the physical entity
+     * doesn't show up within the driver setup timeout, the driver is discarded. Can be called from any thread.
+     * @param entityId the entity
+     * @param driver the driver or null to remove the driver
+     */
+    public void setPhysicalEntityDriver(EntityId entityId, PhysicalEntityDriver driver) {
+        if (!isInitialized())
+            return;
+
+        // a newer driver for the same entity replaces the pending one
+        if (pendingDrivers.put(entityId, new PendingDriver(driver)) == null) {
+            pendingDriverIds.offer(entityId);
+        }
+    }
+
+    public int getDriverSetupBudget() {
+        return driverSetupBudget;
+    }
+
+    /**
+     * Sets the maximum amount of pending drivers that are checked each frame. Drivers of physical entities that are
+     * added are set immediately and don't count for the budget.
+     * @param driverSetupBudget the maximum amount of pending drivers checked in one frame
+     */
+    public void setDriverSetupBudget(int driverSetupBudget) {
+        this.driverSetupBudget = driverSetupBudget;
+    }
+
+    public long getDriverSetupTimeout() {
+        return driverSetupTimeout;
+    }
+
+    /**
+     * Sets the time a driver waits for its physical entity before it's discarded.
+     * @param driverSetupTimeout the timeout in milliseconds
+     */
+    public void setDriverSetupTimeout(long driverSetupTimeout) {
+        this.driverSetupTimeout = driverSetupTimeout;
+    }
+
+    /**
+     * The amount of drivers that are waiting for their physical entity.
+     * @return pending drivers
+     */
+    public int getPendingDriverCount() {
+        return pendingDrivers.size();
+    }
+
+    /**
+     * The amount of pending drivers that were set on their physical entity in the last frame.
+     * @return resolved drivers
+     */
+    public int getResolvedDriverCount() {
+        return driversResolved;
+    }
+
+    /**
+     * The longest time a driver that was set in the last frame, waited for its physical entity.
+     * @return the wait time in milliseconds
+     */
+    public long getMaxDriverSetupWaitTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxDriverSetupWait);
+    }
+
+    public PhysicalShapeRegistry getShapeRegistry() {
+        return shapeRegistry;
+    }
+
+    /**
+     * Sets the collision shapes registry that will be used to find collision shapes for physical entities.
+     * @param shapeRegistry the collision shapes registry
+     */
+    public void setShapeRegistry(PhysicalShapeRegistry shapeRegistry) {
+        this.shapeRegistry = shapeRegistry;
+    }
+
+    /**
+     * Called by a {@link RigidBodyEntity} when its linear velocity is set on the physics thread.
+     */
+    void linearVelocitySet(RigidBodyEntity entity, Vector3f velocity) {
+        if (journal != null && !entity.parked && !entity.removed) {
+            journal.velocity(entity, PhysicsJournal.LINEAR_VELOCITY, velocity);
+        }
+    }
+
+    /**
+     * Called by a {@link RigidBodyEntity} when its angular velocity is set on the physics thread.
+     */
+    void angularVelocitySet(RigidBodyEntity entity, Vector3f velocity) {
+        if (journal != null && !entity.parked && !entity.removed) {
+            journal.velocity(entity, PhysicsJournal.ANGULAR_VELOCITY, velocity);
+        }
+    }
+
+    /**
+     * Called by a {@link RigidBodyEntity} when its driver is set or removed.
+     */
+    void physicalEntityDriverChanged(RigidBodyEntity entity) {
+        if (entity.removed || entity.parked) {
+            // the driver of a parked physical entity is picked up when it's added to the physics space
+            return;
+        }
+        if (journal != null) {
+            journal.driver(entity, entity.getPhysicalEntityDriver() != null);
+        }
+        if (entity.getPhysicalEntityDriver() != null) {
+            drivenEntities.add(entity);
+            activeBodies.add(entity);
+        } else {
+            drivenEntities.remove(entity);
+        }
+    }
+
+    /**
+     * Checks a bounded amount of pending drivers, sets the drivers of existing physical entities and discards the ones
+     * that timed out.
+     */
+    private void setupPendingDrivers() {
+        long now = System.nanoTime();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(driverSetupTimeout);
+        EntityId entityId;
+        int checked = 0;
+        while (checked < driverSetupBudget && (entityId = pendingDriverIds.poll()) != null) {
+            PendingDriver pending = pendingDrivers.get(entityId);
+            if (pending == null) {
+                // already set when the physical entity was added, doesn't count for the budget
+                continue;
+            }
+            checked++;
+            RigidBodyEntity rigidBodyEntity = findRigidBodyEntity(entityId);
+            if (rigidBodyEntity != null) {
+                setPendingDriver(rigidBodyEntity, pendingDrivers.remove(entityId));
+            } else if (now - pending.requestTime > timeout) {
+                if (pendingDrivers.remove(entityId, pending)) {
+                    LOG.error("Waited {}ms to setup {} on {}. Aborting!", driverSetupTimeout, pending.driver, entityId);
+                } else {
+                    // replaced by a newer driver, which isn't queued again
+                    pendingDriverRetries.add(entityId);
+                }
+            } else {
+                pendingDriverRetries.add(entityId);
+            }
+        }
+        pendingDriverIds.addAll(pendingDriverRetries);
+        pendingDriverRetries.clear();
+    }
+
+    private void setPendingDriver(RigidBodyEntity rigidBodyEntity, PendingDriver pending) {
+        long wait = System.nanoTime() - pending.requestTime;
+        LOG.trace("Added {} to {} after {}ms", pending.driver, rigidBodyEntity.getEntityId(), TimeUnit.NANOSECONDS.toMillis(wait));
+        rigidBodyEntity.setPhysicalEntityDriver(pending.driver);
+        driversResolved++;
+        maxDriverSetupWait = Math.max(maxDriverSetupWait, wait);
+    }
+
+    /**
+     * Updates the drivers of all driven physical entities, once per physics step. Package-private so the driver phase
+     * can be measured on its own.
+     */
+    void updateDrivers(float tpf) {
+        long start = now();
+        if (replay != null) {
+            // the velocities set by the drivers are in the journal
+            replayInputs();
+            expect(PhysicsJournal.STEP);
+        }
+        RigidBodyEntity[] entities = drivenEntities.getArray();
+        boolean parallel = parallelDrivers && entities.length > parallelChunkSize;
+        if (parallel) {
+            try {
+                forkJoinPool.invoke(new DriverUpdateTask(entities, 0, entities.length, tpf));
+            } finally {
+                // also when a driver failed, otherwise the velocity writes of the entities stay buffered
+                for (RigidBodyEntity entity : entities) {
+                    entity.applyDeferredVelocities();
+                }
+            }
+        }
+
+        for (RigidBodyEntity entity : entities) {
+            PhysicalEntityDriver driver = entity.getPhysicalEntityDriver();
+            if (driver == null) {
+                // removed by the update of another driver
+                continue;
+            }
+            if (!parallel || !driver.isThreadSafe()) {
+                driver.update(tpf);
+            }
+            // a driver can wake up the body
+            if (entity.isActive()) {
+                activeBodies.add(entity);
+            }
+        }
+        if (journal != null) {
+            journal.step();
+        }
+        time(FramePhase.DRIVER_UPDATE, start);
+    }
+
+    /**
+     * Accumulates the time and runs the fixed physics steps that fit in the accumulator.
+     */
+    private void stepFixed(float tpf) {
+        accumulator += tpf;
+        int steps = (int) (accumulator / timeStep);
+        if (steps > maxSubSteps) {
+            LOG.debug("Dropping {} physics steps", steps - maxSubSteps);
+            steps = maxSubSteps;
+            accumulator = steps * timeStep;
+        }
+
+        for (int step = 0; step < steps; step++) {
+            updateDrivers(timeStep);
+            if (step == steps - 1) {
+                // keep the transforms before the last step, to interpolate from
+                for (int i = 0; i < activeBodies.size(); i++) {
+                    activeBodies.get(i).snapshotPreviousTransform(frame + 1);
+                }
+            }
+            stepPhysicsSpaces(timeStep, true);
+        }
+        accumulator -= steps * timeStep;
+        frame += steps > 0 ? 1 : 0;
+        stepping = false;
+        interpolationAlpha = FastMath.clamp(accumulator / timeStep, 0, 1);
+    }
+
+    private void stepPhysicsSpaces(float tpf, boolean fixed) {
+        long start = now();
+        // the transforms change, the snapshots of the current frame can't be used until the frame is advanced
+        stepping = true;
+        if (physicsSpaces.length == 1) {
+            stepPhysicsSpace(physicsSpace, tpf, fixed);
+        } else {
+            // the physics spaces are independent of each other and can be stepped in parallel
+            ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[physicsSpaces.length];
+            for (int i = 0; i < physicsSpaces.length; i++) {
+                PhysicsSpace space = physicsSpaces[i];
+                tasks[i] = forkJoinPool.submit(() -> stepPhysicsSpace(space, tpf, fixed));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        }
+
+        start = time(FramePhase.PHYSICS_STEP, start);
+
+        for (PhysicsSpace space : physicsSpaces) {
+            space.distributeEvents();
+        }
+        time(FramePhase.DISTRIBUTE_EVENTS, start);
+    }
+
+    private static void stepPhysicsSpace(PhysicsSpace space, float tpf, boolean fixed) {
+        if (fixed) {
+            // no internal sub steps, the physics space is stepped exactly tpf
+            space.update(tpf, 0);
+        } else {
+            space.update(tpf);
+        }
+    }
+
+    /**
+     * Moves the physical entity to the physics space of the partition of the given location, when needed.
+     */
+    private void migrate(RigidBodyEntity entity, Vector3f location) {
+        int partition = partitioner.getPartition(location, entity.partition);
+        if (partition != entity.partition) {
+            LOG.trace("Migrating {} from partition {} to {}", entity, entity.partition, partition);
+            physicsSpaces[entity.partition].removeCollisionObject(entity);
+            entity.partition = partition;
+            physicsSpaces[partition].addCollisionObject(entity);
+        }
+    }
+
+    /**
+     * Mirrors the physical entity in the other partitions its bounds overlap, and removes the ghosts from the partitions
+     * it no longer overlaps.
+     */
+    private void updateGhosts(RigidBodyEntity entity) {
+        Vector3f location = entity.getLocation(tempLocation);
+        Quaternion rotation = entity.getRotation(tempRotation);
+        float radius = entity.boundingRadius;
+        tempMin.set(location).subtractLocal(radius, radius, radius);
+        tempMax.set(location).addLocal(radius, radius, radius);
+        for (int partition = 0; partition < physicsSpaces.length; partition++) {
+            PartitionGhost ghost = entity.ghosts != null ? entity.ghosts[partition] : null;
+            if (partition != entity.partition && partitioner.overlaps(partition, tempMin, tempMax)) {
+                if (ghost == null) {
+                    if (entity.ghosts == null) {
+                        entity.ghosts = new PartitionGhost[physicsSpaces.length];
+                    }
+                    ghost = new PartitionGhost(entity, partition);
+                    entity.ghosts[partition] = ghost;
+                    ghost.follow(location, rotation);
+                    LOG.trace("Mirroring {} in partition {}", entity, partition);
+                    physicsSpaces[partition].addCollisionObject(ghost);
+                } else {
+                    ghost.follow(location, rotation);
+                }
+            } else if (ghost != null) {
+                physicsSpaces[partition].removeCollisionObject(ghost);
+                entity.ghosts[partition] = null;
+            }
+        }
+    }
+
+    private void removeGhosts(RigidBodyEntity entity) {
+        if (entity.ghosts == null) {
+            return;
+        }
+        for (PartitionGhost ghost : entity.ghosts) {
+            if (ghost != null) {
+                physicsSpaces[ghost.partition].removeCollisionObject(ghost);
+            }
+        }
+        entity.ghosts = null;
+    }
+
+    private void addToPhysicsSpace(RigidBodyEntity entity, byte origin) {
+        if (journal != null) {
+            journal.add(entity, origin);
+        }
+        insert(entity);
+        if (entity.getPhysicalEntityDriver() != null) {
+            // the driver was set while the physical entity was parked
+            physicalEntityDriverChanged(entity);
+        }
+        physicalObjectAdded(entity);
+        resolvePendingDriver(entity);
+    }
+
+    /**
+     * Adds the physical entity to the physics space of its partition, without notifying the listeners.
+     */
+    private void insert(RigidBodyEntity entity) {
+        shapeRegistry.acquire(entity.physicalShape);
+        if (entity.getMass() == 0) {
+            staticBodies++;
+        }
+
+        entity.partition = partitioner != null ? partitioner.getPartition(entity.getLocation(tempLocation)) : 0;
+        if (physicsSpaces.length > 1) {
+            entity.boundingRadius = CollisionShapeHelper.getBoundingRadius(entity.getCollisionShape());
+            updateGhosts(entity);
+        }
+        if (staticCells != null && entity.getMass() == 0) {
+            LOG.trace("Merging {} in a static cell", entity);
+            staticCells.add(entity);
+            return;
+        }
+        LOG.trace("Adding {} to {}", entity, physicsSpaces[entity.partition]);
+        physicsSpaces[entity.partition].addCollisionObject(entity);
+        SleepProfile sleepProfile = sleepProfiles.get(entity.getEntityId());
+        if (sleepProfile != null) {
+            applySleepProfile(entity, sleepProfile);
+        }
+        wake(entity);
+    }
+
+    /**
+     * Sets the sleeping thresholds of the sleep profile on the physical entity.
+     */
+    private void applySleepProfile(RigidBodyEntity entity, SleepProfile sleepProfile) {
+        LOG.trace("Setting {} on {}", sleepProfile, entity);
+        entity.setSleepingThresholds(sleepProfile.getLinearThreshold(), sleepProfile.getAngularThreshold());
+        if (journal != null && !entity.parked) {
+            journal.sleep(entity);
+        }
+    }
+
+    /**
+     * Removes the physical entity from its physics space, without notifying the listeners.
+     */
+    private void remove(RigidBodyEntity entity) {
+        entity.removed = true;
+        if (entity.getPhysicalEntityDriver() != null) {
+            drivenEntities.remove(entity);
+        }
+        if (entity.parked) {
+            // never added to the physics space
+            parkedEntities--;
+            return;
+        }
+        if (journal != null) {
+            journal.remove(entity);
+        }
+        if (entity.getMass() == 0) {
+            staticBodies--;
+        }
+        if (entity.staticCell != null) {
+            staticCells.remove(entity);
+        } else {
+            physicsSpaces[entity.partition].removeCollisionObject(entity);
+        }
+        removeGhosts(entity);
+        shapeRegistry.release(entity.physicalShape);
+    }
+
+    /**
+     * Updates the physical entity after it's moved to its spawn position.
+     */
+    private void moved(RigidBodyEntity object) {
+        if (object.parked) {
+            // will be added at the new position
+            object.snapshotTransform(frame);
+            return;
+        }
+        if (journal != null) {
+            journal.move(object);
+        }
+        object.markMoved(frame);
+        Vector3f location = object.getPhysicsLocation(tempLocation);
+        if (object.staticCell != null) {
+            // move the physical entity to the cell of its new position
+            staticCells.remove(object);
+            object.partition = partitioner != null ? partitioner.getPartition(location) : 0;
+            staticCells.add(object);
+            object.snapshotTransform(frame);
+            object.snapshotPreviousTransform(frame);
+            if (physicsSpaces.length > 1) {
+                updateGhosts(object);
+            }
+            physicalObjectUpdated(object);
+            return;
+        }
+        // wake up a dynamic body, so it's simulated at the new position. A static body stays asleep, it's published
+        // because it's marked as moved
+        object.activate();
+        object.snapshotTransform(frame);
+        // don't interpolate from the old position
+        object.snapshotPreviousTransform(frame);
+        if (physicsSpaces.length > 1) {
+            migrate(object, location);
+            updateGhosts(object);
+        }
+        wake(object);
+
+        physicalObjectUpdated(object);
+    }
+
+    private void resolvePendingDriver(RigidBodyEntity entity) {
+        // set the driver that was waiting for this physical entity
+        PendingDriver pending = pendingDrivers.remove(entity.getEntityId());
+        if (pending != null) {
+            setPendingDriver(entity, pending);
+        }
+    }
+
+    /**
+     * Adds the parked physical entities of which the collision shape is loaded.
+     */
+    private void addLoadedEntities() {
+        List<PhysicalShape> unusedShapes = null;
+        LoadedEntity loaded;
+        while ((loaded = loadedEntities.poll()) != null) {
+            RigidBodyEntity entity = loaded.entity;
+            if (entity.removed) {
+                if (loaded.error == null) {
+                    if (unusedShapes == null) {
+                        unusedShapes = new ArrayList<>();
+                    }
+                    unusedShapes.add(entity.physicalShape);
+                }
+                continue;
+            }
+            if (loaded.error != null) {
+                LOG.error("No collision shape could be loaded for {}, {} is dropped", entity.physicalShape, entity, loaded.error);
+                drop(entity, loaded.origin);
+                continue;
+            }
+            LOG.trace("Adding parked {} after {} is loaded", entity, entity.physicalShape);
+            entity.setCollisionShape(loaded.collisionShape);
+            entity.parked = false;
+            parkedEntities--;
+            addToPhysicsSpace(entity, loaded.origin);
+        }
+        if (unusedShapes != null) {
+            // a loaded collision shape isn't evicted before it's acquired, release the ones no physical entity uses
+            for (PhysicalShape shape : unusedShapes) {
+                shapeRegistry.acquire(shape);
+                shapeRegistry.release(shape);
+            }
+        }
+    }
+
+    /**
+     * Removes a parked physical entity of which the collision shape can't be loaded. The physical entity of an entity
+     * of the container stays in the container until the entity is removed, but is never added to the physics space.
+     */
+    private void drop(RigidBodyEntity entity, byte origin) {
+        if (origin == PhysicsJournal.SPAWNED) {
+            spawnedEntities.remove(entity.getEntityId());
+        } else {
+            droppedEntities++;
+        }
+        remove(entity);
+    }
+
+    /**
+     * Retrieves the collision shape of the physical shape, asynchronously when asynchronous collision shape loading is
+     * enabled.
+     */
+    private CompletableFuture<CollisionShape> loadShape(PhysicalShape shape) {
+        if (asyncShapeLoading) {
+            return shapeRegistry.getAsync(shape);
+        }
+        return CompletableFuture.completedFuture(shapeRegistry.get(shape));
+    }
+
+    /**
+     * The loaded collision shape, or null when it's still loading or could not be loaded.
+     */
+    private static CollisionShape getLoadedShape(CompletableFuture<CollisionShape> loading) {
+        return loading.isDone() && !loading.isCompletedExceptionally() ? loading.join() : null;
+    }
+
+    /**
+     * Parks the physical entity until its collision shape is loaded.
+     */
+    private void park(RigidBodyEntity entity, CompletableFuture<CollisionShape> loading, byte origin) {
+        LOG.trace("Parking {} until {} is loaded", entity, entity.physicalShape);
+        entity.parked = true;
+        parkedEntities++;
+        loading.whenComplete((loaded, error) -> loadedEntities.offer(new LoadedEntity(entity, loaded, error, origin)));
+    }
+
+    /**
+     * Adds the physical entities of the spawn batches and removes the despawned ones.
+     */
+    private void spawnBatches() {
+        SpawnBatch batch;
+        while ((batch = pendingSpawns.poll()) != null) {
+            spawnBatch(batch);
+        }
+        List<EntityId> entityIds;
+        while ((entityIds = pendingDespawns.poll()) != null) {
+            despawnBatch(entityIds);
+        }
+    }
+
+    private void spawnBatch(SpawnBatch batch) {
+        // each collision shape is retrieved once for the whole batch
+        Map<String, CompletableFuture<CollisionShape>> collisionShapes = new HashMap<>();
+        List<PhysicalEntity> added = new ArrayList<>(batch.size());
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                EntityId entityId = batch.getEntityId(i);
+                if (findRigidBodyEntity(entityId) != null) {
+                    LOG.warn("{} already has a physical entity, it's not spawned", entityId);
+                    continue;
+                }
+                PhysicalShape shape = batch.getShape(i);
+                CompletableFuture<CollisionShape> loading;
+                try {
+                    loading = collisionShapes.computeIfAbsent(shape.getShapeId(), shapeId -> loadShape(shape));
+                } catch (RuntimeException e) {
+                    // the rest of the batch is still spawned
+                    LOG.error("No collision shape could be loaded for {}, {} is not spawned", shape, entityId, e);
+                    continue;
+                }
+                CollisionShape collisionShape = getLoadedShape(loading);
+                SpawnPosition position = batch.getPosition(i);
+
+                RigidBodyEntity entity = new RigidBodyEntity(entityId, collisionShape != null ? collisionShape : placeholderShape, batch.getMass(i));
+                entity.physicalShape = shape;
+                entity.setPhysicsLocation(position.getLocation());
+                entity.setPhysicsRotation(position.getRotation());
+                entity.bulletSystem = this;
+                entity.snapshotTransform(frame);
+                spawnedEntities.put(entityId, entity);
+
+                if (collisionShape == null) {
+                    park(entity, loading, PhysicsJournal.SPAWNED);
+                    continue;
+                }
+                if (journal != null) {
+                    journal.add(entity, PhysicsJournal.SPAWNED);
+                }
+                insert(entity);
+                added.add(entity);
+            }
+        } finally {
+            // the physical entities that were added before a failure are announced as well
+            LOG.trace("Spawned {} physical entities", added.size());
+
+            physicalObjectsAdded(added);
+            for (PhysicalEntity entity : added) {
+                resolvePendingDriver((RigidBodyEntity) entity);
+            }
+        }
+    }
+
+    private void despawnBatch(List<EntityId> entityIds) {
+        List<PhysicalEntity> removed = new ArrayList<>(entityIds.size());
+        for (EntityId entityId : entityIds) {
+            RigidBodyEntity entity = spawnedEntities.remove(entityId);
+            if (entity != null) {
+                boolean parked = entity.parked;
+                remove(entity);
+                if (!parked) {
+                    removed.add(entity);
+                }
+            }
+        }
+        LOG.trace("Despawned {} physical entities", removed.size());
+
+        physicalObjectsRemoved(removed);
+    }
+
+    /**
+     * Adds the physical entities of the saved state in bulk. The ones of the entity data wait for the container to
+     * claim them, the ones that were spawned in bulk are spawned again.
+     */
+    private void restoreState() {
+        List<RigidBodyEntity> containerEntities = new ArrayList<>();
+        List<RigidBodyEntity> spawned = new ArrayList<>();
+        try {
+            PhysicsStateFile.read(restoreFile, shapeRegistry, containerEntities, spawned);
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Unable to restore the physical state of {}, starting without it", restoreFile, e);
+            return;
+        }
+
+        List<PhysicalEntity> added = new ArrayList<>(containerEntities.size() + spawned.size());
+        for (RigidBodyEntity entity : containerEntities) {
+            restore(entity, PhysicsJournal.CONTAINER);
+            restoredEntities.put(entity.getEntityId(), entity);
+            added.add(entity);
+        }
+        for (RigidBodyEntity entity : spawned) {
+            restore(entity, PhysicsJournal.SPAWNED);
+            spawnedEntities.put(entity.getEntityId(), entity);
+            added.add(entity);
+        }
+        LOG.debug("Restored {} physical entities of {}", added.size(), restoreFile);
+
+        physicalObjectsAdded(added);
+        for (PhysicalEntity entity : added) {
+            RigidBodyEntity rigidBodyEntity = (RigidBodyEntity) entity;
+            if (rigidBodyEntity.getPhysicalEntityDriver() != null) {
+                physicalEntityDriverChanged(rigidBodyEntity);
+            }
+            resolvePendingDriver(rigidBodyEntity);
+        }
+    }
+
+    private void restore(RigidBodyEntity entity, byte origin) {
+        entity.bulletSystem = this;
+        entity.snapshotTransform(frame);
+        if (journal != null) {
+            journal.add(entity, origin);
+            entity.getLinearVelocity(tempVelocity);
+            journal.velocity(entity, PhysicsJournal.LINEAR_VELOCITY, tempVelocity);
+            entity.getAngularVelocity(tempVelocity);
+            journal.velocity(entity, PhysicsJournal.ANGULAR_VELOCITY, tempVelocity);
+        }
+        insert(entity);
+    }
+
+    /**
+     * Returns the restored physical entity of an entity of the container, when its shape and mass didn't change.
+     */
+    private RigidBodyEntity claimRestoredEntity(EntityId entityId, PhysicalShape shape, Mass mass) {
+        RigidBodyEntity entity = restoredEntities.remove(entityId);
+        if (entity == null) {
+            return null;
+        }
+        if (entity.physicalShape.getShapeId().equals(shape.getShapeId()) && entity.getMass() == mass.getMass()) {
+            return entity;
+        }
+        LOG.trace("Removing restored {}, the shape or mass changed", entity);
+        remove(entity);
+        physicalObjectRemoved(entity);
+        return null;
+    }
+
+    /**
+     * Removes the restored physical entities of the entities that no longer exist.
+     */
+    private void removeUnclaimedEntities() {
+        if (restoredEntities.isEmpty()) {
+            return;
+        }
+        List<PhysicalEntity> removed = new ArrayList<>(restoredEntities.values());
+        for (PhysicalEntity entity : removed) {
+            remove((RigidBodyEntity) entity);
+        }
+        restoredEntities.clear();
+        LOG.debug("Removed {} restored physical entities of entities that no longer exist", removed.size());
+
+        physicalObjectsRemoved(removed);
+    }
+
+    /**
+     * Returns the physical entity of the entity, added by the container or spawned in bulk.
+     */
+    private RigidBodyEntity findRigidBodyEntity(EntityId entityId) {
+        RigidBodyEntity entity = rigidBodyContainer.getObject(entityId);
+        return entity != null ? entity : spawnedEntities.get(entityId);
+    }
+
+    private void wake(RigidBodyEntity entity) {
+        if (entity.getMass() > 0 && !entity.parked) {
+            activeBodies.add(entity);
+        }
+    }
+
+    private void scanActiveBodies() {
+        for (RigidBodyEntity entity : rigidBodyContainer.getArray()) {
+            scanActiveBody(entity);
+        }
+        for (RigidBodyEntity entity : spawnedEntities.values()) {
+            scanActiveBody(entity);
+        }
+        // the replayed physical entities that were added by the container
+        for (RigidBodyEntity entity : replayedEntities.values()) {
+            scanActiveBody(entity);
+        }
+    }
+
+    private void scanActiveBody(RigidBodyEntity entity) {
+        if (!entity.inActiveSet && !entity.parked && entity.getMass() > 0 && entity.isActive()) {
+            activeBodies.add(entity);
+        }
+    }
+
+    private long now() {
+        return metrics != null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Adds the time since start to the phase, when the metrics are enabled.
+     * @return the current time
+     */
+    private long time(FramePhase phase, long start) {
+        if (metrics == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        metrics.addTime(phase, now - start);
+        return now;
+    }
+
+    private void recordMetrics(long frameStart) {
+        time(FramePhase.TOTAL, frameStart);
+
+        PhysicalEntityListener[] listeners = physicalEntityListeners.getArray();
+        for (int i = 0; i < listeners.length && i < listenerTimes.length; i++) {
+            metrics.addListenerTime(listeners[i].getClass(), listenerTimes[i]);
+        }
+        PhysicalEntityBatchListener[] batchListeners = physicalEntityBatchListeners.getArray();
+        for (int i = 0; i < batchListeners.length && i < batchListenerTimes.length; i++) {
+            metrics.addListenerTime(batchListeners[i].getClass(), batchListenerTimes[i]);
+        }
+        ContactListener[] contactListeners = this.contactListeners.getArray();
+        for (int i = 0; i < contactListeners.length && i < contactListenerTimes.length; i++) {
+            metrics.addListenerTime(contactListeners[i].getClass(), contactListenerTimes[i]);
+        }
+
+        int bodies = rigidBodyContainer.getArray().length - droppedEntities + spawnedEntities.size() - parkedEntities;
+        int active = activeBodies.size();
+        int sleepingDriven = 0;
+        for (RigidBodyEntity entity : drivenEntities.getArray()) {
+            if (!entity.inActiveSet) {
+                sleepingDriven++;
+            }
+        }
+        metrics.setCounts(active, bodies - staticBodies - active, sleepingDriven, staticBodies, contactEvents, pendingDrivers.size());
+        metrics.endFrame();
+    }
+
+    private void startFrame() {
+        if (metrics != null) {
+            // reset the listener times of this frame
+            listenerTimes = resetTimes(listenerTimes, physicalEntityListeners.size());
+            batchListenerTimes = resetTimes(batchListenerTimes, physicalEntityBatchListeners.size());
+            contactListenerTimes = resetTimes(contactListenerTimes, contactListeners.size());
+        }
+
+        PhysicalEntityListener[] listeners = physicalEntityListeners.getArray();
+        for (int i = 0; i < listeners.length; i++) {
+            long start = now();
+            listeners[i].startFrame();
+            addTime(listenerTimes, i, start);
+        }
+    }
+
+    private static long[] resetTimes(long[] times, int size) {
+        if (times.length < size) {
+            return new long[size];
+        }
+        Arrays.fill(times, 0);
+        return times;
+    }
+
+    /**
+     * Adds the time since start to the time of the listener with the given index, when the metrics are enabled.
+     */
+    private void addTime(long[] times, int index, long start) {
+        if (metrics != null && index < times.length) {
+            times[index] += System.nanoTime() - start;
+        }
+    }
+
+    private void physicalObjectAdded(PhysicalEntity physicalEntity) {
+        PhysicalEntityListener[] listeners = physicalEntityListeners.getArray();
+        for (int i = 0; i < listeners.length; i++) {
+            long start = now();
+            listeners[i].physicalEntityAdded(physicalEntity);
+            addTime(listenerTimes, i, start);
+        }
+    }
+
+    private void physicalObjectUpdated(PhysicalEntity physicalEntity) {
+        PhysicalEntityListener[] listeners = physicalEntityListeners.getArray();
+        if (metrics == null) {
+            for (PhysicalEntityListener listener : listeners) {
+                listener.physicalEntityUpdated(physicalEntity);
+            }
+            return;
+        }
+
+        for (int i = 0; i < listeners.length; i++) {
+            long start = System.nanoTime();
+            listeners[i].physicalEntityUpdated(physicalEntity);
+            addTime(listenerTimes, i, start);
+        }
+    }
+
+    private void physicalObjectsUpdated(PhysicalEntityFrame frame) {
+        PhysicalEntityBatchListener[] listeners = physicalEntityBatchListeners.getArray();
+        for (int i = 0; i < listeners.length; i++) {
+            long start = now();
+            listeners[i].physicalEntitiesUpdated(frame);
+            addTime(batchListenerTimes, i, start);
+        }
+    }
+
+    private void contactsUpdated(ContactFrame contacts) {
+        if (contacts.size() == 0) {
+            return;
+        }
+        ContactListener[] listeners = contactListeners.getArray();
+        for (int i = 0; i < listeners.length; i++) {
+            long start = now();
+            listeners[i].contacts(contacts);
+            addTime(contactListenerTimes, i, start);
+        }
+    }
+
+    private void physicalObjectsAdded(List<PhysicalEntity> physicalEntities) {
+        PhysicalEntityListener[] listeners = physicalEntityListeners.getArray();
+        for (int i = 0; i < listeners.length; i++) {
+            long start = now();
+            listeners[i].physicalEntitiesAdded(physicalEntities);
+            addTime(listenerTimes, i, start);
+        }
+    }
+
+    private void physicalObjectsRemoved(List<PhysicalEntity> physicalEntities) {
+        PhysicalEntityListener[] listeners = physicalEntityListeners.getArray();
+        for (int i = 0; i < listeners.length; i++) {
+            long start = now();
+            listeners[i].physicalEntitiesRemoved(physicalEntities);
+            addTime(listenerTimes, i, start);
+        }
+    }
+
+    private void physicalObjectRemoved(PhysicalEntity physicalEntity) {
+        PhysicalEntityListener[] listeners = physicalEntityListeners.getArray();
+        for (int i = 0; i < listeners.length; i++) {
+            long start = now();
+            listeners[i].physicalEntityRemoved(physicalEntity);
+            addTime(listenerTimes, i, start);
+        }
+    }
+
+    private void endFrame() {
+        PhysicalEntityListener[] listeners = physicalEntityListeners.getArray();
+        for (int i = 0; i < listeners.length; i++) {
+            long start = now();
+            listeners[i].endFrame();
+            addTime(listenerTimes, i, start);
+        }
+    }
+
+    /**
+     * Adds the transform of a simulated physical entity to the checksum of the frame. The checksum doesn't depend on
+     * the order of the physical entities.
+     */
+    private void addChecksum(RigidBodyEntity entity) {
+        entity.getLocation(tempLocation);
+        entity.getRotation(tempRotation);
+        long hash = entity.getEntityId().getId();
+        hash = hash * 31 + Float.floatToIntBits(tempLocation.x);
+        hash = hash * 31 + Float.floatToIntBits(tempLocation.y);
+        hash = hash * 31 + Float.floatToIntBits(tempLocation.z);
+        hash = hash * 31 + Float.floatToIntBits(tempRotation.getX());
+        hash = hash * 31 + Float.floatToIntBits(tempRotation.getY());
+        hash = hash * 31 + Float.floatToIntBits(tempRotation.getZ());
+        hash = hash * 31 + Float.floatToIntBits(tempRotation.getW());
+        hash *= 0x9E3779B97F4A7C15L;
+        checksum += hash ^ (hash >>> 32);
+        checksumCount++;
+    }
+
+    /**
+     * Applies the inputs recorded before the start of the next frame, and returns the time of the frame.
+     */
+    private float replayFrameStart() {
+        replayInputs();
+        expect(PhysicsJournal.FRAME_START);
+        return replay.getFloat();
+    }
+
+    /**
+     * Applies the inputs recorded at the end of the frame, and verifies the checksum of the frame.
+     */
+    private void replayFrameEnd() {
+        replayInputs();
+        expect(PhysicsJournal.FRAME_END);
+        long recordedFrame = replay.getLong();
+        long recordedChecksum = replay.getLong();
+        int recordedCount = replay.getInt();
+        if (recordedFrame != frame || recordedChecksum != checksum || recordedCount != checksumCount) {
+            if (replayMismatches == 0) {
+                LOG.error("Replay diverged at frame {}: {} bodies simulated, {} recorded", frame, checksumCount, recordedCount);
+            } else {
+                LOG.debug("Replay diverged at frame {}: {} bodies simulated, {} recorded", frame, checksumCount, recordedCount);
+            }
+            replayMismatches++;
+        }
+    }
+
+    /**
+     * Applies the recorded inputs up to the next frame or physics step.
+     */
+    private void replayInputs() {
+        while (true) {
+            switch (replay.peek()) {
+                case PhysicsJournal.ADD:
+                    replayAdd();
+                    break;
+                case PhysicsJournal.REMOVE:
+                    replayRemove();
+                    break;
+                case PhysicsJournal.MOVE:
+                    replayMove();
+                    break;
+                case PhysicsJournal.LINEAR_VELOCITY:
+                case PhysicsJournal.ANGULAR_VELOCITY:
+                    replayVelocity();
+                    break;
+                case PhysicsJournal.DRIVER:
+                    replayDriver();
+                    break;
+                case PhysicsJournal.GRAVITY:
+                    replay.getByte();
+                    setGravity(replay.getVector(tempVelocity));
+                    break;
+                case PhysicsJournal.SLEEP:
+                    replaySleep();
+                    break;
+                default:
+                    return;
+            }
+        }
+    }
+
+    private void replayAdd() {
+        replay.getByte();
+        EntityId entityId = new EntityId(replay.getLong());
+        byte origin = replay.getByte();
+        PhysicalShape shape = new PhysicalShape(replay.getString());
+        Mass mass = new Mass(replay.getFloat());
+
+        RigidBodyEntity entity = new RigidBodyEntity(entityId, shapeRegistry.get(shape), mass);
+        entity.physicalShape = shape;
+        entity.setPhysicsLocation(replay.getVector(tempLocation));
+        entity.setPhysicsRotation(replay.getMatrix(tempMatrix));
+        entity.bulletSystem = this;
+        entity.snapshotTransform(frame);
+
+        insert(entity);
+        if (origin == PhysicsJournal.SPAWNED) {
+            spawnedEntities.put(entityId, entity);
+        } else {
+            replayedEntities.put(entityId, entity);
+        }
+        physicalObjectAdded(entity);
+    }
+
+    private void replayRemove() {
+        replay.getByte();
+        EntityId entityId = new EntityId(replay.getLong());
+        RigidBodyEntity entity = replayedEntities.remove(entityId);
+        if (entity == null) {
+            entity = spawnedEntities.remove(entityId);
+        }
+        if (entity != null) {
+            remove(entity);
+            physicalObjectRemoved(entity);
+        }
+    }
+
+    private void replayMove() {
+        replay.getByte();
+        RigidBodyEntity entity = findReplayedEntity(replay.getLong());
+        replay.getVector(tempLocation);
+        replay.getMatrix(tempMatrix);
+        if (entity != null) {
+            entity.setPhysicsLocation(tempLocation);
+            entity.setPhysicsRotation(tempMatrix);
+            moved(entity);
+        }
+    }
+
+    private void replayVelocity() {
+        byte tag = replay.getByte();
+        RigidBodyEntity entity = findReplayedEntity(replay.getLong());
+        replay.getVector(tempVelocity);
+        if (entity == null) {
+            return;
+        }
+        if (tag == PhysicsJournal.LINEAR_VELOCITY) {
+            entity.setLinearVelocity(tempVelocity);
+        } else {
+            entity.setAngularVelocity(tempVelocity);
+        }
+    }
+
+    private void replaySleep() {
+        replay.getByte();
+        RigidBodyEntity entity = findReplayedEntity(replay.getLong());
+        float linearThreshold = replay.getFloat();
+        float angularThreshold = replay.getFloat();
+        if (entity != null) {
+            entity.setSleepingThresholds(linearThreshold, angularThreshold);
+        }
+    }
+
+    private void replayDriver() {
+        replay.getByte();
+        RigidBodyEntity entity = findReplayedEntity(replay.getLong());
+        boolean driven = replay.getByte() != 0;
+        Vector3f linearFactor = replay.getVector(new Vector3f());
+        Vector3f angularFactor = replay.getVector(new Vector3f());
+        if (entity != null) {
+            entity.setLinearFactor(linearFactor);
+            entity.setAngularFactor(angularFactor);
+            entity.setPhysicalEntityDriver(driven ? REPLAY_DRIVER : null);
+        }
+    }
+
+    private RigidBodyEntity findReplayedEntity(long id) {
+        EntityId entityId = new EntityId(id);
+        RigidBodyEntity entity = replayedEntities.get(entityId);
+        if (entity == null) {
+            entity = spawnedEntities.get(entityId);
+        }
+        if (entity == null) {
+            LOG.trace("Ignoring the recorded input of unknown {}", entityId);
+        }
+        return entity;
+    }
+
+    private void expect(byte tag) {
+        byte next = replay.getByte();
+        if (next != tag) {
+            throw new IllegalStateException("Expected entry " + tag + " in the physics journal, found " + next);
+        }
+    }
+
+    private class RigidBodyContainer extends EntityContainer<RigidBodyEntity> {
+
+        public RigidBodyContainer(EntityData ed) {
+            super(ed, PhysicalShape.class, Mass.class, SpawnPosition.class);
+        }
+
+        @Override
+        protected RigidBodyEntity[] getArray() {
+            return super.getArray();
+        }
+
+        @Override
+        protected RigidBodyEntity addObject(Entity e) {
+            Mass mass = e.get(Mass.class);
+            PhysicalShape shape = e.get(PhysicalShape.class);
+            SpawnPosition position = e.get(SpawnPosition.class);
+
+            RigidBodyEntity restored = claimRestoredEntity(e.getId(), shape, mass);
+            if (restored != null) {
+                // already added, at its saved transform
+                return restored;
+            }
+
+            CompletableFuture<CollisionShape> loading = loadShape(shape);
+            CollisionShape collisionShape = getLoadedShape(loading);
+
+            RigidBodyEntity result = new RigidBodyEntity(e.getId(), collisionShape != null ? collisionShape : placeholderShape, mass);
+            result.physicalShape = shape;
+            result.setPhysicsLocation(position.getLocation());
+            result.setPhysicsRotation(position.getRotation());
+            result.bulletSystem = BulletSystem.this;
+            result.snapshotTransform(frame);
+
+            if (collisionShape == null) {
+                park(result, loading, PhysicsJournal.CONTAINER);
+                return result;
+            }
+
+            addToPhysicsSpace(result, PhysicsJournal.CONTAINER);
+            return result;
+        }
+
+        @Override
+        protected void updateObject(RigidBodyEntity object, Entity e) {
+            // we only update the position
+            SpawnPosition position = e.get(SpawnPosition.class);
+
+            LOG.trace("Moving {} to {}", object, position);
+            object.setPhysicsLocation(position.getLocation());
+            object.setPhysicsRotation(position.getRotation());
+            moved(object);
+        }
+
+        @Override
+        protected void removeObject(RigidBodyEntity object, Entity e) {
+            if (object.removed) {
+                // dropped, its collision shape couldn't be loaded
+                droppedEntities--;
+                return;
+            }
+            LOG.trace("Removing {} from {}", object, physicsSpaces[object.partition]);
+            boolean parked = object.parked;
+            remove(object);
+            if (!parked) {
+                physicalObjectRemoved(object);
+            }
+        }
+    }
+
+    private class SleepProfileContainer extends EntityContainer<EntityId> {
+        // keeps the sleep profiles of the entities, the physical entities pick up their profile when they are added
+
+        public SleepProfileContainer(EntityData ed) {
+            super(ed, SleepProfile.class);
+        }
+
+        @Override
+        protected EntityId addObject(Entity e) {
+            updateObject(e.getId(), e);
+            return e.getId();
+        }
+
+        @Override
+        protected void updateObject(EntityId object, Entity e) {
+            SleepProfile sleepProfile = e.get(SleepProfile.class);
+            sleepProfiles.put(object, sleepProfile);
+            RigidBodyEntity entity = findRigidBodyEntity(object);
+            if (entity != null) {
+                applySleepProfile(entity, sleepProfile);
+            }
+        }
+
+        @Override
+        protected void removeObject(EntityId object, Entity e) {
+            sleepProfiles.remove(object);
+            RigidBodyEntity entity = findRigidBodyEntity(object);
+            if (entity != null && !entity.removed) {
+                applySleepProfile(entity, DEFAULT_SLEEP_PROFILE);
+            }
+        }
+    }
+
+    private static class LoadedEntity {
+        // a parked physical entity, the result of loading its collision shape and where the entity comes from
+        private final RigidBodyEntity entity;
+        private final CollisionShape collisionShape;
+        private final Throwable error;
+        private final byte origin;
+
+        public LoadedEntity(RigidBodyEntity entity, CollisionShape collisionShape, Throwable error, byte origin) {
+            this.entity = entity;
+            this.collisionShape = collisionShape;
+            this.error = error;
+            this.origin = origin;
+        }
+    }
+
+    private class ActivationListener implements PhysicsCollisionListener {
+        // a sleeping body that is hit by an awake body, is woken up by bullet
+
+        @Override
+        public void collision(PhysicsCollisionEvent event) {
+            contactEvents++;
+            wake(event.getObjectA(), event.getObjectB());
+            wake(event.getObjectB(), event.getObjectA());
+            if (!contactListeners.isEmpty()) {
+                record(event);
+            }
+        }
+
+        private void record(PhysicsCollisionEvent event) {
+            PhysicalEntity entityA = getPhysicalEntity(event.getObjectA(), event.getPartId0(), event.getIndex0(), event.getPositionWorldOnA(tempContactPoint));
+            PhysicalEntity entityB = getPhysicalEntity(event.getObjectB(), event.getPartId1(), event.getIndex1(), event.getPositionWorldOnB(tempContactPoint));
+            if (entityA != null && entityB != null && entityA != entityB) {
+                contactTracker.record(entityA, entityB, event);
+            }
+        }
+
+        private void wake(PhysicsCollisionObject object, PhysicsCollisionObject other) {
+            if (object instanceof RigidBodyEntity) {
+                BulletSystem.this.wake((RigidBodyEntity) object);
+            } else if (object instanceof PartitionGhost) {
+                // hit in another partition, bullet doesn't wake up the physical entity itself. Only a moving body wakes
+                // it up, the contacts of resting bodies are reported every frame and would keep it awake
+                RigidBodyEntity entity = ((PartitionGhost) object).getEntity();
+                if (entity.getMass() > 0 && !entity.removed && !entity.isActive()
+                        && other instanceof RigidBodyEntity && PartitionGhost.isMoving((RigidBodyEntity) other, tempVelocity)) {
+                    entity.activate();
+                    BulletSystem.this.wake(entity);
+                }
+            }
+        }
+    }
+
+    private class DriverUpdateTask extends RecursiveAction {
+        // updates the thread-safe drivers of a range of entities, velocity writes are buffered on the entities
+
+        private static final long serialVersionUID = 1L;
+
+        private final RigidBodyEntity[] entities;
+        private final int from;
+        private final int to;
+        private final float tpf;
+
+        public DriverUpdateTask(RigidBodyEntity[] entities, int from, int to, float tpf) {
+            this.entities = entities;
+            this.from = from;
+            this.to = to;
+            this.tpf = tpf;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > parallelChunkSize) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new DriverUpdateTask(entities, from, middle, tpf), new DriverUpdateTask(entities, middle, to, tpf));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                PhysicalEntityDriver driver = entities[i].getPhysicalEntityDriver();
+                if (driver.isThreadSafe()) {
+                    entities[i].deferVelocities();
+                    driver.update(tpf);
+                }
+            }
+        }
+    }
+
+    private static class PendingDriver {
+        // a driver waiting for its physical entity, and the time it was requested
+        private final PhysicalEntityDriver driver;
+        private final long requestTime = System.nanoTime();
+
+        public PendingDriver(PhysicalEntityDriver driver) {
+            this.driver = driver;
         }
     }
 
@@ -2,15 +2,31 @@ package org.impstack.es.bullet;
 
 import com.jme3.bounding.BoundingBox;
 import com.jme3.bullet.collision.shapes.*;
+import com.jme3.bullet.collision.shapes.infos.ChildCollisionShape;
 import com.jme3.bullet.util.CollisionShapeFactory;
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.math.FastMath;
 import com.jme3.math.Vector3f;
 import com.jme3.scene.Spatial;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * A helper factory to create {@link com.jme3.bullet.collision.shapes.CollisionShape} objects.
  */
 public class CollisionShapeHelper {
 
+    private static final Logger LOG = LoggerFactory.getLogger(CollisionShapeHelper.class);
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     public static CollisionShape createBoxShape(Vector3f extent) {
         return new BoxCollisionShape(extent);
     }
@@ -56,4 +72,174 @@ public class CollisionShapeHelper {
         }
     }
 
+    /**
+     * Creates a convex hull shape from the geometries of the spatial, simplified to at most the given amount of
+     * points. Far cheaper for dynamic bodies then a hull of all the points of a detailed mesh.
+     * @param spatial the spatial
+     * @param maxPoints the maximum amount of points of the hull, at least 4
+     * @return a hull collision shape
+     */
+    public static CollisionShape createSimplifiedHullShape(Spatial spatial, int maxPoints) {
+        return new HullCollisionShape(new ConvexHullBuilder(spatial).buildHull(Math.max(4, maxPoints)));
+    }
+
+    /**
+     * Creates a simplified convex hull shape from the geometries of the spatial.
+     * @param spatial the spatial
+     * @param quality the quality of the collision shape
+     * @return a hull collision shape
+     */
+    public static CollisionShape createSimplifiedHullShape(Spatial spatial, Quality quality) {
+        return createSimplifiedHullShape(spatial, quality.getMaxPoints());
+    }
+
+    /**
+     * Creates an approximate convex decomposition of the geometries of the spatial: a compound collision shape of
+     * simplified convex hulls, that follows concave meshes closer then a single hull.
+     * @param spatial the spatial
+     * @param maxHulls the maximum amount of hulls
+     * @param maxPoints the maximum amount of points of each hull, at least 4
+     * @return a compound collision shape
+     */
+    public static CollisionShape createConvexDecompositionShape(Spatial spatial, int maxHulls, int maxPoints) {
+        CompoundCollisionShape compoundShape = new CompoundCollisionShape();
+        for (float[] hull : new ConvexHullBuilder(spatial).buildHulls(Math.max(1, maxHulls), Math.max(4, maxPoints))) {
+            compoundShape.addChildShape(new HullCollisionShape(hull), Vector3f.ZERO);
+        }
+        return compoundShape;
+    }
+
+    /**
+     * Creates an approximate convex decomposition of the geometries of the spatial.
+     * @param spatial the spatial
+     * @param quality the quality of the collision shape
+     * @return a compound collision shape
+     */
+    public static CollisionShape createConvexDecompositionShape(Spatial spatial, Quality quality) {
+        return createConvexDecompositionShape(spatial, quality.getMaxHulls(), quality.getMaxPoints());
+    }
+
+    /**
+     * Creates a key that identifies the content of a collision shape: the type of the collision shape and a hash of all
+     * its parameters, including the scale, margin, mesh data and child shapes. Two collision shapes with the same key
+     * can be used interchangeably.
+     * @param collisionShape the collision shape
+     * @return the content key or null when the collision shape can't be serialized
+     */
+    public static String getContentKey(CollisionShape collisionShape) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new BinaryExporter().save(collisionShape, out);
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(out.toByteArray());
+
+            StringBuilder key = new StringBuilder(collisionShape.getClass().getName()).append(':');
+            for (byte b : hash) {
+                key.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+            }
+            return key.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            LOG.warn("Unable to create the content key of {}", collisionShape, e);
+            return null;
+        }
+    }
+
+    /**
+     * Calculates the radius of a sphere around the origin of the collision shape that contains the whole collision
+     * shape, including its scale. The points of hull and mesh shapes are not exposed by jME and are read using
+     * reflection, 0 is returned for a collision shape of which the size can't be determined.
+     * @param collisionShape the collision shape
+     * @return the bounding radius
+     */
+    public static float getBoundingRadius(CollisionShape collisionShape) {
+        Vector3f scale = collisionShape.getScale();
+        float maxScale = Math.max(Math.abs(scale.x), Math.max(Math.abs(scale.y), Math.abs(scale.z)));
+        if (collisionShape instanceof BoxCollisionShape) {
+            return ((BoxCollisionShape) collisionShape).getHalfExtents().mult(scale).length();
+        } else if (collisionShape instanceof SphereCollisionShape) {
+            return ((SphereCollisionShape) collisionShape).getRadius() * maxScale;
+        } else if (collisionShape instanceof CapsuleCollisionShape) {
+            CapsuleCollisionShape capsule = (CapsuleCollisionShape) collisionShape;
+            return (capsule.getRadius() + capsule.getHeight() * 0.5f) * maxScale;
+        } else if (collisionShape instanceof CylinderCollisionShape) {
+            return ((CylinderCollisionShape) collisionShape).getHalfExtents().mult(scale).length();
+        } else if (collisionShape instanceof ConeCollisionShape) {
+            ConeCollisionShape cone = (ConeCollisionShape) collisionShape;
+            return FastMath.sqrt(cone.getRadius() * cone.getRadius() + cone.getHeight() * cone.getHeight() * 0.25f) * maxScale;
+        } else if (collisionShape instanceof CompoundCollisionShape) {
+            float radius = 0;
+            for (ChildCollisionShape child : ((CompoundCollisionShape) collisionShape).getChildren()) {
+                radius = Math.max(radius, child.location.length() + getBoundingRadius(child.shape));
+            }
+            return radius * maxScale;
+        }
+
+        try {
+            if (collisionShape instanceof HullCollisionShape) {
+                float[] points = (float[]) getField(HullCollisionShape.class, "points").get(collisionShape);
+                float radius = 0;
+                for (int i = 0; i + 2 < points.length; i += 3) {
+                    radius = Math.max(radius, points[i] * points[i] + points[i + 1] * points[i + 1] + points[i + 2] * points[i + 2]);
+                }
+                return FastMath.sqrt(radius) * maxScale;
+            } else if (collisionShape instanceof MeshCollisionShape || collisionShape instanceof GImpactCollisionShape) {
+                Class<?> type = collisionShape.getClass();
+                ByteBuffer vertices = ((ByteBuffer) getField(type, "vertexBase").get(collisionShape)).duplicate();
+                vertices.order(ByteOrder.nativeOrder()).clear();
+                int count = getField(type, "numVertices").getInt(collisionShape);
+                int stride = getField(type, "vertexStride").getInt(collisionShape);
+                float radius = 0;
+                for (int i = 0; i < count; i++) {
+                    float x = vertices.getFloat(i * stride);
+                    float y = vertices.getFloat(i * stride + 4);
+                    float z = vertices.getFloat(i * stride + 8);
+                    radius = Math.max(radius, x * x + y * y + z * z);
+                }
+                return FastMath.sqrt(radius) * maxScale;
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("Unable to read the points of {}", collisionShape, e);
+        }
+        return 0;
+    }
+
+    private static Field getField(Class<?> type, String name) throws NoSuchFieldException {
+        while (type != null) {
+            try {
+                Field field = type.getDeclaredField(name);
+                field.setAccessible(true);
+                return field;
+            } catch (NoSuchFieldException e) {
+                type = type.getSuperclass();
+            }
+        }
+        throw new NoSuchFieldException(name);
+    }
+
+    /**
+     * The quality of simplified and decomposed collision shapes, a higher quality follows the mesh closer but is more
+     * expensive in collision detection.
+     */
+    public enum Quality {
+
+        LOW(4, 16),
+        MEDIUM(8, 32),
+        HIGH(16, 64);
+
+        private final int maxHulls;
+        private final int maxPoints;
+
+        Quality(int maxHulls, int maxPoints) {
+            this.maxHulls = maxHulls;
+            this.maxPoints = maxPoints;
+        }
+
+        public int getMaxHulls() {
+            return maxHulls;
+        }
+
+        public int getMaxPoints() {
+            return maxPoints;
+        }
+    }
+
 }
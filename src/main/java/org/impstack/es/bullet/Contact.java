@@ -0,0 +1,65 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityComponent;
+import com.simsilica.es.EntityId;
+
+/**
+ * An entity component describing a contact between two physical entities, published on a separate short-lived entity
+ * by the {@link ContactComponentPublisher}.
+ */
+public class Contact implements EntityComponent {
+
+    private final EntityId entityA;
+    private final EntityId entityB;
+    private final ContactPhase phase;
+    private final Vector3f point;
+    private final Vector3f normal;
+    private final float impulse;
+
+    public Contact(EntityId entityA, EntityId entityB, ContactPhase phase, Vector3f point, Vector3f normal, float impulse) {
+        this.entityA = entityA;
+        this.entityB = entityB;
+        this.phase = phase;
+        this.point = point;
+        this.normal = normal;
+        this.impulse = impulse;
+    }
+
+    public EntityId getEntityA() {
+        return entityA;
+    }
+
+    public EntityId getEntityB() {
+        return entityB;
+    }
+
+    public ContactPhase getPhase() {
+        return phase;
+    }
+
+    public Vector3f getPoint() {
+        return point;
+    }
+
+    public Vector3f getNormal() {
+        return normal;
+    }
+
+    public float getImpulse() {
+        return impulse;
+    }
+
+    @Override
+    public String toString() {
+        return "Contact{" +
+                "entityA=" + entityA +
+                ", entityB=" + entityB +
+                ", phase=" + phase +
+                ", point=" + point +
+                ", normal=" + normal +
+                ", impulse=" + impulse +
+                '}';
+    }
+
+}
@@ -0,0 +1,68 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityData;
+import com.simsilica.es.EntityId;
+import org.impstack.jme.es.Decay;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A {@link ContactListener} that publishes contacts as entities with a {@link Contact} and a {@link Decay} component,
+ * so other systems can pick them up through the entity system. A {@link org.impstack.jme.es.DecaySystem} should remove
+ * the contact entities. By default only the begin and end of contacts are published.
+ *
+ * Each published contact creates an entity and its components, use a {@link ContactListener} directly when many
+ * contacts need to be handled.
+ */
+public class ContactComponentPublisher implements ContactListener {
+
+    private final EntityData entityData;
+    private long decay = 100;
+    private Set<ContactPhase> phases = EnumSet.of(ContactPhase.BEGIN, ContactPhase.END);
+
+    public ContactComponentPublisher(EntityData entityData) {
+        this.entityData = entityData;
+    }
+
+    public long getDecay() {
+        return decay;
+    }
+
+    /**
+     * Sets the time a contact entity exists.
+     * @param decay the time in milliseconds
+     */
+    public void setDecay(long decay) {
+        this.decay = decay;
+    }
+
+    public Set<ContactPhase> getPhases() {
+        return phases;
+    }
+
+    /**
+     * Sets the phases of the contacts that are published.
+     * @param phases the phases
+     */
+    public void setPhases(Set<ContactPhase> phases) {
+        this.phases = EnumSet.copyOf(phases);
+    }
+
+    @Override
+    public void contacts(ContactFrame frame) {
+        for (int i = 0; i < frame.size(); i++) {
+            ContactPhase phase = frame.getPhase(i);
+            if (!phases.contains(phase)) {
+                continue;
+            }
+            EntityId entityId = entityData.createEntity();
+            entityData.setComponents(entityId,
+                    new Contact(frame.getEntityIdA(i), frame.getEntityIdB(i), phase,
+                            frame.getPoint(i, new Vector3f()), frame.getNormal(i, new Vector3f()), frame.getImpulse(i)),
+                    new Decay(decay));
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityId;
+
+import java.util.Arrays;
+
+/**
+ * The contacts between physical entities in a physics frame, passed to a {@link ContactListener}. Each pair of physical
+ * entities is reported once per frame, with the phase of the contact and its deepest contact point. Entity A of a pair
+ * is the entity with the lowest entity id. The frame is a view on the contact data of the {@link BulletSystem}, reading
+ * it doesn't allocate.
+ */
+public class ContactFrame {
+
+    private long frame;
+    private ContactTracker.ContactTable current;
+    private ContactTracker.ContactTable previous;
+    // the indexes of the reported pairs in the current table, followed by the ended pairs in the previous table
+    private int[] currentIndexes = new int[64];
+    private int currentCount;
+    private int[] endedIndexes = new int[64];
+    private int endedCount;
+
+    ContactFrame() {
+    }
+
+    /**
+     * The physics frame of the contacts, see {@link BulletSystem#getFrame()}.
+     * @return the frame
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * The amount of contacts in the frame.
+     * @return the amount of contacts
+     */
+    public int size() {
+        return currentCount + endedCount;
+    }
+
+    public PhysicalEntity getEntityA(int index) {
+        return index < currentCount ? current.entitiesA[currentIndexes[index]] : previous.entitiesA[ended(index)];
+    }
+
+    public PhysicalEntity getEntityB(int index) {
+        return index < currentCount ? current.entitiesB[currentIndexes[index]] : previous.entitiesB[ended(index)];
+    }
+
+    public EntityId getEntityIdA(int index) {
+        return getEntityA(index).getEntityId();
+    }
+
+    public EntityId getEntityIdB(int index) {
+        return getEntityB(index).getEntityId();
+    }
+
+    public ContactPhase getPhase(int index) {
+        return index < currentCount ? current.phases[currentIndexes[index]] : ContactPhase.END;
+    }
+
+    /**
+     * The deepest contact point on entity B. For an ended contact, or a contact between resting physical entities that
+     * Bullet doesn't report, it's the point of the last frame with contact points.
+     * @param index the index of the contact
+     * @param store the vector to store the point in
+     * @return the point in world space
+     */
+    public Vector3f getPoint(int index, Vector3f store) {
+        return get(index < currentCount ? current.points : previous.points, pairIndex(index), store);
+    }
+
+    /**
+     * The normal of the deepest contact point, pointing from entity B to entity A.
+     * @param index the index of the contact
+     * @param store the vector to store the normal in
+     * @return the normal in world space
+     */
+    public Vector3f getNormal(int index, Vector3f store) {
+        return get(index < currentCount ? current.normals : previous.normals, pairIndex(index), store);
+    }
+
+    /**
+     * The sum of the impulses applied at the contact points of the pair in this frame.
+     * @param index the index of the contact
+     * @return the impulse
+     */
+    public float getImpulse(int index) {
+        return index < currentCount ? current.impulses[currentIndexes[index]] : 0;
+    }
+
+    /**
+     * The amount of contact points of the pair reported by Bullet in this frame, zero for a persisting contact between
+     * resting physical entities.
+     * @param index the index of the contact
+     * @return the amount of contact points
+     */
+    public int getPointCount(int index) {
+        return index < currentCount ? current.pointCounts[currentIndexes[index]] : 0;
+    }
+
+    void clear(long frame, ContactTracker.ContactTable current, ContactTracker.ContactTable previous) {
+        this.frame = frame;
+        this.current = current;
+        this.previous = previous;
+        currentCount = 0;
+        endedCount = 0;
+    }
+
+    void addCurrent(int index) {
+        if (currentCount == currentIndexes.length) {
+            currentIndexes = Arrays.copyOf(currentIndexes, currentCount * 2);
+        }
+        currentIndexes[currentCount++] = index;
+    }
+
+    void addEnded(int index) {
+        if (endedCount == endedIndexes.length) {
+            endedIndexes = Arrays.copyOf(endedIndexes, endedCount * 2);
+        }
+        endedIndexes[endedCount++] = index;
+    }
+
+    private int ended(int index) {
+        if (index - currentCount >= endedCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        return endedIndexes[index - currentCount];
+    }
+
+    private int pairIndex(int index) {
+        return index < currentCount ? currentIndexes[index] : ended(index);
+    }
+
+    private static Vector3f get(float[] values, int index, Vector3f store) {
+        return store.set(values[index * 3], values[index * 3 + 1], values[index * 3 + 2]);
+    }
+
+}
@@ -0,0 +1,17 @@
+package org.impstack.es.bullet;
+
+/**
+ * A listener that receives all contacts between physical entities of a physics frame in one call.
+ *
+ * @see BulletSystem#addContactListener(ContactListener)
+ */
+public interface ContactListener {
+
+    /**
+     * Called each frame after the physics calculation, when there are contacts. The frame object is reused and should
+     * not be kept after the call.
+     * @param frame the contacts of the physics frame
+     */
+    public void contacts(ContactFrame frame);
+
+}
@@ -0,0 +1,15 @@
+package org.impstack.es.bullet;
+
+/**
+ * The phase of a contact between two physical entities.
+ */
+public enum ContactPhase {
+
+    // the physical entities started touching in this frame
+    BEGIN,
+    // the physical entities were already touching in the previous frame
+    PERSIST,
+    // the physical entities stopped touching in this frame
+    END
+
+}
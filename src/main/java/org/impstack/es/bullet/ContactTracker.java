@@ -0,0 +1,306 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.PhysicsCollisionEvent;
+import com.jme3.math.Vector3f;
+
+import java.util.Arrays;
+
+/**
+ * Gathers the contact points reported by Bullet per pair of physical entities, and detects the begin, persist and end
+ * of contacts by comparing the pairs of a frame with the pairs of the previous frame. Bullet reports the contact points
+ * of a pair when its contact manifold starts, not in each frame it persists, and nothing at all for bodies that are
+ * asleep. A pair that isn't reported in a frame is therefore carried over to the next frame while it's still in
+ * contact: a pair of resting physical entities is carried over until one of them wakes up, the deepest point of a pair
+ * of moving physical entities is moved along with both entities and the contact ends when they separate along the
+ * contact normal. The pairs are kept in two tables that are swapped each frame and reused, recording a contact point
+ * doesn't allocate.
+ */
+class ContactTracker {
+
+    // the separation at which a contact ends, the default contact breaking threshold of bullet
+    static final float CONTACT_BREAKING_THRESHOLD = 0.02f;
+
+    private ContactTable current = new ContactTable();
+    private ContactTable previous = new ContactTable();
+    private final ContactFrame frame = new ContactFrame();
+    // the filter a new pair is checked with, the result is kept while the pair is in contact
+    private QueryFilter filter;
+    private final Vector3f tempPoint = new Vector3f();
+    private final Vector3f tempNormal = new Vector3f();
+    private final Vector3f tempOffsetA = new Vector3f();
+    private final Vector3f tempOffsetB = new Vector3f();
+    private final Vector3f tempPointA = new Vector3f();
+    private final Vector3f tempPointB = new Vector3f();
+    private final Vector3f tempLocation = new Vector3f();
+
+    QueryFilter getFilter() {
+        return filter;
+    }
+
+    void setFilter(QueryFilter filter) {
+        this.filter = filter;
+    }
+
+    /**
+     * Records a contact point between two physical entities.
+     */
+    void record(PhysicalEntity entityA, PhysicalEntity entityB, PhysicsCollisionEvent event) {
+        // the contact point on each physical entity, relative to the location of the physical entity
+        event.getPositionWorldOnA(tempOffsetA).subtractLocal(entityA.getLocation(tempLocation));
+        event.getPositionWorldOnB(tempOffsetB).subtractLocal(entityB.getLocation(tempLocation));
+        boolean swap = entityA.getEntityId().getId() > entityB.getEntityId().getId();
+        if (swap) {
+            event.getPositionWorldOnA(tempPoint);
+            event.getNormalWorldOnB(tempNormal).negateLocal();
+            current.record(entityB, entityA, tempPoint, tempNormal, tempOffsetB, tempOffsetA, event.getDistance1(), event.getAppliedImpulse());
+        } else {
+            event.getPositionWorldOnB(tempPoint);
+            event.getNormalWorldOnB(tempNormal);
+            current.record(entityA, entityB, tempPoint, tempNormal, tempOffsetA, tempOffsetB, event.getDistance1(), event.getAppliedImpulse());
+        }
+    }
+
+    /**
+     * Determines the phase of the pairs of this frame, and fills the contact frame with the pairs that are accepted by
+     * the filter and the pairs that ended.
+     */
+    ContactFrame finish(long frameNumber) {
+        frame.clear(frameNumber, current, previous);
+        Arrays.fill(previous.matched, 0, previous.size, false);
+        for (int i = 0; i < current.size; i++) {
+            int previousIndex = previous.find(current.idsA[i], current.idsB[i]);
+            if (previousIndex < 0) {
+                current.phases[i] = ContactPhase.BEGIN;
+                current.accepted[i] = filter == null || filter.accept(current.entitiesA[i]) || filter.accept(current.entitiesB[i]);
+            } else {
+                current.phases[i] = ContactPhase.PERSIST;
+                current.accepted[i] = previous.accepted[previousIndex];
+                previous.matched[previousIndex] = true;
+            }
+            if (current.accepted[i]) {
+                frame.addCurrent(i);
+            }
+        }
+        for (int i = 0; i < previous.size; i++) {
+            if (previous.matched[i]) {
+                continue;
+            }
+            if (isTouching(previous, i)) {
+                // not reported by bullet in this frame, the contact persists
+                int index = current.carry(previous, i);
+                if (current.accepted[index]) {
+                    frame.addCurrent(index);
+                }
+            } else if (previous.accepted[i]) {
+                previous.phases[i] = ContactPhase.END;
+                frame.addEnded(i);
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Checks whether a pair that isn't reported in this frame is still in contact. The deepest point of the pair is
+     * moved with the translation of both physical entities, and the contact holds while the entities don't separate
+     * more than the contact breaking threshold along the contact normal. The rotations are ignored, so a rolling body
+     * stays in contact. This is an approximation, the shapes are not tested: entities that slide apart sideways keep
+     * their contact until they separate along the normal. The point and distance of a pair that holds are updated.
+     */
+    private boolean isTouching(ContactTable table, int index) {
+        PhysicalEntity entityA = table.entitiesA[index];
+        PhysicalEntity entityB = table.entitiesB[index];
+        if (isRemoved(entityA) || isRemoved(entityB)) {
+            return false;
+        }
+        if (isResting(entityA) && isResting(entityB)) {
+            // neither physical entity moved
+            return true;
+        }
+        ContactTable.get(table.offsetsA, index, tempPointA).addLocal(entityA.getLocation(tempLocation));
+        ContactTable.get(table.offsetsB, index, tempPointB).addLocal(entityB.getLocation(tempLocation));
+        ContactTable.get(table.normals, index, tempNormal);
+        // the normal points from B to A, the distance is negative when the entities penetrate
+        float distance = tempPoint.set(tempPointA).subtractLocal(tempPointB).dot(tempNormal);
+        if (distance > CONTACT_BREAKING_THRESHOLD) {
+            return false;
+        }
+        ContactTable.set(table.points, index, tempPointB);
+        table.distances[index] = distance;
+        return true;
+    }
+
+    private static boolean isRemoved(PhysicalEntity entity) {
+        return !(entity instanceof RigidBodyEntity) || ((RigidBodyEntity) entity).removed;
+    }
+
+    /**
+     * A physical entity rests when it's asleep or static.
+     */
+    private static boolean isResting(PhysicalEntity entity) {
+        RigidBodyEntity rigidBodyEntity = (RigidBodyEntity) entity;
+        return rigidBodyEntity.getMass() == 0 || !rigidBodyEntity.isActive();
+    }
+
+
+    /**
+     * Makes the pairs of this frame the previous pairs, and starts an empty frame.
+     */
+    void swap() {
+        ContactTable table = previous;
+        previous = current;
+        current = table;
+        current.clear();
+    }
+
+    void clear() {
+        current.clear();
+        previous.clear();
+    }
+
+    static class ContactTable {
+        // the pairs of physical entities in contact, entity A has the lowest entity id
+
+        int size;
+        PhysicalEntity[] entitiesA = new PhysicalEntity[64];
+        PhysicalEntity[] entitiesB = new PhysicalEntity[64];
+        long[] idsA = new long[64];
+        long[] idsB = new long[64];
+        ContactPhase[] phases = new ContactPhase[64];
+        boolean[] accepted = new boolean[64];
+        // true when the pair is still in contact in the next frame
+        boolean[] matched = new boolean[64];
+        // the deepest contact point of each pair (x, y, z), its normal pointing from B to A and its distance
+        float[] points = new float[64 * 3];
+        float[] normals = new float[64 * 3];
+        float[] distances = new float[64];
+        // the deepest contact point on entity A and on entity B, relative to the location of the entity
+        float[] offsetsA = new float[64 * 3];
+        float[] offsetsB = new float[64 * 3];
+        // the sum of the impulses and the amount of contact points of each pair
+        float[] impulses = new float[64];
+        int[] pointCounts = new int[64];
+        // open addressing hash table of pairs with the index + 1 as value
+        private int[] slots = new int[128];
+
+        void record(PhysicalEntity entityA, PhysicalEntity entityB, Vector3f point, Vector3f normal, Vector3f offsetA, Vector3f offsetB, float distance, float impulse) {
+            long idA = entityA.getEntityId().getId();
+            long idB = entityB.getEntityId().getId();
+            int index = find(idA, idB);
+            if (index < 0) {
+                index = add(entityA, entityB, idA, idB);
+            } else if (distance >= distances[index]) {
+                // keep the deepest point
+                impulses[index] += impulse;
+                pointCounts[index]++;
+                return;
+            }
+            set(points, index, point);
+            set(normals, index, normal);
+            set(offsetsA, index, offsetA);
+            set(offsetsB, index, offsetB);
+            distances[index] = distance;
+            impulses[index] += impulse;
+            pointCounts[index]++;
+        }
+
+        /**
+         * Copies a pair of the previous frame that isn't reported in this frame, as a persisting contact without contact
+         * points.
+         */
+        int carry(ContactTable previous, int previousIndex) {
+            int index = add(previous.entitiesA[previousIndex], previous.entitiesB[previousIndex], previous.idsA[previousIndex], previous.idsB[previousIndex]);
+            phases[index] = ContactPhase.PERSIST;
+            accepted[index] = previous.accepted[previousIndex];
+            System.arraycopy(previous.points, previousIndex * 3, points, index * 3, 3);
+            System.arraycopy(previous.normals, previousIndex * 3, normals, index * 3, 3);
+            System.arraycopy(previous.offsetsA, previousIndex * 3, offsetsA, index * 3, 3);
+            System.arraycopy(previous.offsetsB, previousIndex * 3, offsetsB, index * 3, 3);
+            distances[index] = previous.distances[previousIndex];
+            return index;
+        }
+
+        int find(long idA, long idB) {
+            int mask = slots.length - 1;
+            for (int slot = hash(idA, idB) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+                int index = slots[slot] - 1;
+                if (idsA[index] == idA && idsB[index] == idB) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        void clear() {
+            Arrays.fill(entitiesA, 0, size, null);
+            Arrays.fill(entitiesB, 0, size, null);
+            Arrays.fill(slots, 0);
+            size = 0;
+        }
+
+        private int add(PhysicalEntity entityA, PhysicalEntity entityB, long idA, long idB) {
+            if (size == idsA.length) {
+                grow();
+            }
+            int index = size++;
+            entitiesA[index] = entityA;
+            entitiesB[index] = entityB;
+            idsA[index] = idA;
+            idsB[index] = idB;
+            phases[index] = null;
+            accepted[index] = false;
+            distances[index] = Float.MAX_VALUE;
+            impulses[index] = 0;
+            pointCounts[index] = 0;
+            insert(index);
+            return index;
+        }
+
+        private void insert(int index) {
+            int mask = slots.length - 1;
+            int slot = hash(idsA[index], idsB[index]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = index + 1;
+        }
+
+        private void grow() {
+            int capacity = idsA.length * 2;
+            entitiesA = Arrays.copyOf(entitiesA, capacity);
+            entitiesB = Arrays.copyOf(entitiesB, capacity);
+            idsA = Arrays.copyOf(idsA, capacity);
+            idsB = Arrays.copyOf(idsB, capacity);
+            phases = Arrays.copyOf(phases, capacity);
+            accepted = Arrays.copyOf(accepted, capacity);
+            matched = Arrays.copyOf(matched, capacity);
+            points = Arrays.copyOf(points, capacity * 3);
+            normals = Arrays.copyOf(normals, capacity * 3);
+            offsetsA = Arrays.copyOf(offsetsA, capacity * 3);
+            offsetsB = Arrays.copyOf(offsetsB, capacity * 3);
+            distances = Arrays.copyOf(distances, capacity);
+            impulses = Arrays.copyOf(impulses, capacity);
+            pointCounts = Arrays.copyOf(pointCounts, capacity);
+            // keep the hash table at most half full
+            slots = new int[capacity * 2];
+            for (int i = 0; i < size; i++) {
+                insert(i);
+            }
+        }
+
+        static void set(float[] values, int index, Vector3f value) {
+            values[index * 3] = value.x;
+            values[index * 3 + 1] = value.y;
+            values[index * 3 + 2] = value.z;
+        }
+
+        static Vector3f get(float[] values, int index, Vector3f store) {
+            return store.set(values[index * 3], values[index * 3 + 1], values[index * 3 + 2]);
+        }
+
+        private static int hash(long idA, long idB) {
+            long h = (idA * 0x9E3779B97F4A7C15L) ^ (idB * 0xC2B2AE3D27D4EB4FL);
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+}
@@ -0,0 +1,278 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Matrix4f;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Creates the point clouds of simplified convex hulls from the geometries of a spatial. Used by
+ * {@link CollisionShapeHelper}.
+ *
+ * Hulls are simplified by vertex clustering: the points are divided in a grid of cells, and only the point of each cell
+ * that is the furthest away from the center is kept, so the outline of the hull is preserved. The cell size grows until
+ * the amount of points fits the maximum.
+ *
+ * A mesh is decomposed by recursively splitting the part with the largest bounding box in two halves along its longest
+ * axis, until the maximum amount of parts is reached. Each triangle is assigned to the part that contains its center.
+ */
+class ConvexHullBuilder {
+
+    // the triangles and points of all geometries, in the coordinate space of the spatial
+    private final float[] points;
+    private final int[] triangles;
+
+    ConvexHullBuilder(Spatial spatial) {
+        List<Geometry> geometries = new ArrayList<>();
+        spatial.depthFirstTraversal(child -> {
+            if (child instanceof Geometry) {
+                geometries.add((Geometry) child);
+            }
+        });
+
+        int pointCount = 0;
+        int triangleCount = 0;
+        for (Geometry geometry : geometries) {
+            pointCount += geometry.getMesh().getVertexCount();
+            triangleCount += geometry.getMesh().getTriangleCount();
+        }
+        points = new float[pointCount * 3];
+        triangles = new int[triangleCount * 3];
+
+        Transform world = spatial.getWorldTransform();
+        Matrix4f toSpatial = new Matrix4f();
+        toSpatial.setTransform(world.getTranslation(), world.getScale(), world.getRotation().toRotationMatrix());
+        toSpatial.invertLocal();
+        Matrix4f transform = new Matrix4f();
+        Vector3f point = new Vector3f();
+        int[] triangle = new int[3];
+        int pointOffset = 0;
+        int triangleOffset = 0;
+        for (Geometry geometry : geometries) {
+            Mesh mesh = geometry.getMesh();
+            toSpatial.mult(geometry.getWorldMatrix(), transform);
+
+            FloatBuffer positions = mesh.getFloatBuffer(VertexBuffer.Type.Position);
+            for (int i = 0; positions != null && i < mesh.getVertexCount(); i++) {
+                point.set(positions.get(i * 3), positions.get(i * 3 + 1), positions.get(i * 3 + 2));
+                transform.mult(point, point);
+                points[(pointOffset + i) * 3] = point.x;
+                points[(pointOffset + i) * 3 + 1] = point.y;
+                points[(pointOffset + i) * 3 + 2] = point.z;
+            }
+            for (int i = 0; i < mesh.getTriangleCount(); i++) {
+                mesh.getTriangle(i, triangle);
+                triangles[triangleOffset * 3] = pointOffset + triangle[0];
+                triangles[triangleOffset * 3 + 1] = pointOffset + triangle[1];
+                triangles[triangleOffset * 3 + 2] = pointOffset + triangle[2];
+                triangleOffset++;
+            }
+            pointOffset += mesh.getVertexCount();
+        }
+    }
+
+    /**
+     * The simplified hull of all points.
+     * @param maxPoints the maximum amount of points of the hull
+     * @return the points of the hull (x, y, z)
+     */
+    float[] buildHull(int maxPoints) {
+        return simplify(points, maxPoints);
+    }
+
+    /**
+     * The simplified hulls of the parts of the decomposed mesh.
+     * @param maxHulls the maximum amount of hulls
+     * @param maxPoints the maximum amount of points of each hull
+     * @return the points of each hull (x, y, z)
+     */
+    List<float[]> buildHulls(int maxHulls, int maxPoints) {
+        int triangleCount = triangles.length / 3;
+        if (triangleCount == 0) {
+            List<float[]> result = new ArrayList<>();
+            result.add(buildHull(maxPoints));
+            return result;
+        }
+
+        int[] all = new int[triangleCount];
+        for (int i = 0; i < triangleCount; i++) {
+            all[i] = i;
+        }
+
+        // split the part with the largest bounding box first
+        PriorityQueue<Part> parts = new PriorityQueue<>((a, b) -> Float.compare(b.volume, a.volume));
+        parts.add(new Part(all));
+        List<Part> done = new ArrayList<>();
+        while (!parts.isEmpty() && parts.size() + done.size() < maxHulls) {
+            Part part = parts.poll();
+            Part[] halves = part.split();
+            if (halves == null) {
+                done.add(part);
+            } else {
+                parts.add(halves[0]);
+                parts.add(halves[1]);
+            }
+        }
+        done.addAll(parts);
+
+        List<float[]> result = new ArrayList<>();
+        for (Part part : done) {
+            result.add(simplify(part.points(), maxPoints));
+        }
+        return result;
+    }
+
+    private static float[] simplify(float[] points, int maxPoints) {
+        int count = points.length / 3;
+        if (count <= maxPoints) {
+            return points;
+        }
+
+        Vector3f min = new Vector3f(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+        Vector3f max = new Vector3f(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+        for (int i = 0; i < count; i++) {
+            expand(min, max, points, i);
+        }
+        Vector3f center = min.add(max).multLocal(0.5f);
+        Vector3f size = max.subtract(min);
+        float cellSize = Math.max(size.x, Math.max(size.y, size.z)) / (float) Math.cbrt(maxPoints);
+        cellSize = Math.max(cellSize, FastMath.ZERO_TOLERANCE);
+
+        while (true) {
+            // the index of the point that is the furthest away from the center, by cell
+            Map<Long, Integer> cells = new HashMap<>();
+            for (int i = 0; i < count && cells.size() <= maxPoints; i++) {
+                float x = points[i * 3];
+                float y = points[i * 3 + 1];
+                float z = points[i * 3 + 2];
+                long cell = cellKey((int) Math.floor((x - min.x) / cellSize),
+                        (int) Math.floor((y - min.y) / cellSize),
+                        (int) Math.floor((z - min.z) / cellSize));
+                Integer current = cells.get(cell);
+                if (current == null || distanceSquared(points, i, center) > distanceSquared(points, current, center)) {
+                    cells.put(cell, i);
+                }
+            }
+
+            if (cells.size() <= maxPoints) {
+                float[] result = new float[cells.size() * 3];
+                int index = 0;
+                for (int i : cells.values()) {
+                    System.arraycopy(points, i * 3, result, index * 3, 3);
+                    index++;
+                }
+                return result;
+            }
+            cellSize *= 1.25f;
+        }
+    }
+
+    private static void expand(Vector3f min, Vector3f max, float[] points, int index) {
+        float x = points[index * 3];
+        float y = points[index * 3 + 1];
+        float z = points[index * 3 + 2];
+        min.set(Math.min(min.x, x), Math.min(min.y, y), Math.min(min.z, z));
+        max.set(Math.max(max.x, x), Math.max(max.y, y), Math.max(max.z, z));
+    }
+
+    private static long cellKey(int x, int y, int z) {
+        return ((long) (x & 0x1fffff) << 42) | ((long) (y & 0x1fffff) << 21) | (z & 0x1fffff);
+    }
+
+    private static float distanceSquared(float[] points, int index, Vector3f center) {
+        float dx = points[index * 3] - center.x;
+        float dy = points[index * 3 + 1] - center.y;
+        float dz = points[index * 3 + 2] - center.z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private class Part {
+        // a part of the mesh, the indices of its triangles and its bounding box
+
+        private final int[] partTriangles;
+        private final Vector3f min = new Vector3f(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+        private final Vector3f max = new Vector3f(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+        private final float volume;
+
+        public Part(int[] partTriangles) {
+            this.partTriangles = partTriangles;
+            for (int triangle : partTriangles) {
+                for (int corner = 0; corner < 3; corner++) {
+                    int point = triangles[triangle * 3 + corner];
+                    expand(min, max, points, point);
+                }
+            }
+            Vector3f size = max.subtract(min);
+            this.volume = size.x * size.y * size.z;
+        }
+
+        /**
+         * Splits the part in two halves along its longest axis, or returns null when the part can't be split.
+         */
+        public Part[] split() {
+            if (partTriangles.length < 2) {
+                return null;
+            }
+
+            Vector3f size = max.subtract(min);
+            int axis = size.x >= size.y && size.x >= size.z ? 0 : size.y >= size.z ? 1 : 2;
+            float middle = (min.get(axis) + max.get(axis)) * 0.5f;
+
+            int[] lower = new int[partTriangles.length];
+            int[] upper = new int[partTriangles.length];
+            int lowerCount = 0;
+            int upperCount = 0;
+            for (int triangle : partTriangles) {
+                if (center(triangle, axis) < middle) {
+                    lower[lowerCount++] = triangle;
+                } else {
+                    upper[upperCount++] = triangle;
+                }
+            }
+            if (lowerCount == 0 || upperCount == 0) {
+                return null;
+            }
+            return new Part[] {
+                    new Part(Arrays.copyOf(lower, lowerCount)),
+                    new Part(Arrays.copyOf(upper, upperCount))
+            };
+        }
+
+        /**
+         * The points of the triangles of the part, a point can be in the result multiple times.
+         */
+        public float[] points() {
+            float[] result = new float[partTriangles.length * 9];
+            int index = 0;
+            for (int triangle : partTriangles) {
+                for (int corner = 0; corner < 3; corner++) {
+                    int point = triangles[triangle * 3 + corner];
+                    System.arraycopy(points, point * 3, result, index, 3);
+                    index += 3;
+                }
+            }
+            return result;
+        }
+
+        private float center(int triangle, int axis) {
+            float sum = 0;
+            for (int corner = 0; corner < 3; corner++) {
+                sum += points[triangles[triangle * 3 + corner] * 3 + axis];
+            }
+            return sum / 3f;
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package org.impstack.es.bullet;
+
+import java.util.Arrays;
+
+/**
+ * An array backed set of the {@link RigidBodyEntity} objects that have a driver, owned by the physics thread of the
+ * {@link BulletSystem}. The index in the set is kept on the rigid body entity itself, so adding and removing are
+ * constant time operations. The array that is iterated by the driver update is only copied when the set changed since
+ * the previous update, so attaching drivers to many entities in one frame costs one copy.
+ */
+class DrivenEntitySet {
+
+    private static final RigidBodyEntity[] EMPTY = new RigidBodyEntity[0];
+
+    private RigidBodyEntity[] entities = new RigidBodyEntity[64];
+    private int size;
+    // the copy that is iterated, and whether the set changed since the copy was made
+    private RigidBodyEntity[] array = EMPTY;
+    private boolean changed;
+
+    /**
+     * Adds the entity to the set, when it isn't already part of the set.
+     * @param entity the rigid body entity
+     */
+    void add(RigidBodyEntity entity) {
+        if (entity.drivenIndex >= 0) {
+            return;
+        }
+        if (size == entities.length) {
+            entities = Arrays.copyOf(entities, size * 2);
+        }
+        entity.drivenIndex = size;
+        entities[size++] = entity;
+        changed = true;
+    }
+
+    /**
+     * Removes the entity from the set, the last entity takes its place.
+     * @param entity the rigid body entity
+     */
+    void remove(RigidBodyEntity entity) {
+        int index = entity.drivenIndex;
+        if (index < 0) {
+            return;
+        }
+        RigidBodyEntity last = entities[--size];
+        entities[index] = last;
+        last.drivenIndex = index;
+        entities[size] = null;
+        entity.drivenIndex = -1;
+        changed = true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the entities of the set. The array is shared until the set changes, it should not be modified.
+     * @return the entities
+     */
+    RigidBodyEntity[] getArray() {
+        if (changed) {
+            array = Arrays.copyOf(entities, size);
+            changed = false;
+        }
+        return array;
+    }
+
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            entities[i].drivenIndex = -1;
+            entities[i] = null;
+        }
+        size = 0;
+        array = EMPTY;
+        changed = false;
+    }
+
+}
@@ -0,0 +1,104 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Vector3f;
+
+/**
+ * A {@link PhysicsSpacePartitioner} that divides the world in a grid of equally sized cells on the x/z plane.
+ * Locations outside of the world bounds are placed in the nearest cell. A physical entity only migrates to another cell
+ * when it's further then the margin away from its current cell. A physical entity of which the bounds are within the
+ * margin of another cell is mirrored in that cell, so the physical entities of that cell collide with it.
+ */
+public class GridPartitioner implements PhysicsSpacePartitioner {
+
+    private final Vector3f worldMin;
+    private final int columns;
+    private final int rows;
+    private final float cellWidth;
+    private final float cellDepth;
+    private float margin = 1f;
+
+    /**
+     * @param worldMin the minimum bounds of the world
+     * @param worldMax the maximum bounds of the world
+     * @param columns the amount of cells along the x axis
+     * @param rows the amount of cells along the z axis
+     */
+    public GridPartitioner(Vector3f worldMin, Vector3f worldMax, int columns, int rows) {
+        if (columns < 1 || rows < 1) {
+            throw new IllegalArgumentException("A grid needs at least one column and one row!");
+        }
+        this.worldMin = worldMin.clone();
+        this.columns = columns;
+        this.rows = rows;
+        this.cellWidth = (worldMax.x - worldMin.x) / columns;
+        this.cellDepth = (worldMax.z - worldMin.z) / rows;
+    }
+
+    @Override
+    public int getPartitionCount() {
+        return columns * rows;
+    }
+
+    @Override
+    public int getPartition(Vector3f location) {
+        return getRow(location.z) * columns + getColumn(location.x);
+    }
+
+    @Override
+    public int getPartition(Vector3f location, int currentPartition) {
+        int column = currentPartition % columns;
+        int row = currentPartition / columns;
+        float minX = worldMin.x + column * cellWidth - margin;
+        float minZ = worldMin.z + row * cellDepth - margin;
+        if (location.x >= minX && location.x <= minX + cellWidth + 2 * margin
+                && location.z >= minZ && location.z <= minZ + cellDepth + 2 * margin) {
+            // still in the current cell, including the margin
+            return currentPartition;
+        }
+        return getPartition(location);
+    }
+
+    @Override
+    public boolean overlaps(int partition, Vector3f min, Vector3f max) {
+        int column = partition % columns;
+        int row = partition / columns;
+        // the cells at the edge of the grid contain the locations outside of the world bounds
+        float minX = column == 0 ? Float.NEGATIVE_INFINITY : worldMin.x + column * cellWidth - margin;
+        float maxX = column == columns - 1 ? Float.POSITIVE_INFINITY : worldMin.x + (column + 1) * cellWidth + margin;
+        float minZ = row == 0 ? Float.NEGATIVE_INFINITY : worldMin.z + row * cellDepth - margin;
+        float maxZ = row == rows - 1 ? Float.POSITIVE_INFINITY : worldMin.z + (row + 1) * cellDepth + margin;
+        return max.x >= minX && min.x <= maxX && max.z >= minZ && min.z <= maxZ;
+    }
+
+    public float getMargin() {
+        return margin;
+    }
+
+    /**
+     * Sets the distance a physical entity can move outside of its cell before it's migrated to another cell. Physical
+     * entities within the margin of a cell are mirrored in that cell.
+     * @param margin the distance in world units
+     */
+    public void setMargin(float margin) {
+        this.margin = margin;
+    }
+
+    private int getColumn(float x) {
+        return Math.max(0, Math.min(columns - 1, (int) FastMath.floor((x - worldMin.x) / cellWidth)));
+    }
+
+    private int getRow(float z) {
+        return Math.max(0, Math.min(rows - 1, (int) FastMath.floor((z - worldMin.z) / cellDepth)));
+    }
+
+    @Override
+    public String toString() {
+        return "GridPartitioner{" +
+                "columns=" + columns +
+                ", rows=" + rows +
+                ", margin=" + margin +
+                '}';
+    }
+
+}
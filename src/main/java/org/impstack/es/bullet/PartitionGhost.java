@@ -0,0 +1,85 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+/**
+ * A copy of a physical entity in the physics space of another partition, so the bodies of that partition collide with
+ * it. The ghost of a static physical entity is static. The ghost of a dynamic physical entity follows the transform of
+ * the physical entity once per frame, and is kinematic while the physical entity moves: it pushes and wakes up the
+ * bodies of the other partition, but isn't pushed back by them. The physical entity is pushed back by the ghosts of
+ * those bodies in its own partition instead. While the physical entity rests the ghost is static, so it doesn't keep
+ * the bodies it touches awake.
+ * Collision events report the ghost instead of the physical entity, use {@link #getEntity()} or
+ * {@link BulletSystem#getPhysicalEntity(com.jme3.bullet.collision.PhysicsCollisionObject, Vector3f)} to find the
+ * physical entity. The {@link PhysicsQueryService} skips ghosts, it reports the physical entity itself.
+ *
+ * @see PhysicsSpacePartitioner#overlaps(int, Vector3f, Vector3f)
+ */
+public class PartitionGhost extends PhysicsRigidBody {
+
+    private final RigidBodyEntity entity;
+    // the partition of the physics space the ghost is part of
+    final int partition;
+    private final Vector3f tempVelocity = new Vector3f();
+
+    PartitionGhost(RigidBodyEntity entity, int partition) {
+        // a kinematic body needs the inertia of its mass, bullet doesn't initialize it for a body created without mass
+        super(entity.getCollisionShape(), entity.getMass());
+        this.entity = entity;
+        this.partition = partition;
+        setCollisionGroup(entity.getCollisionGroup());
+        setCollideWithGroups(entity.getCollideWithGroups());
+        setFriction(entity.getFriction());
+        setRestitution(entity.getRestitution());
+        setKinematic(entity.getMass() > 0);
+    }
+
+    /**
+     * The physical entity this ghost is a copy of.
+     * @return the physical entity
+     */
+    public RigidBodyEntity getEntity() {
+        return entity;
+    }
+
+    /**
+     * Moves the ghost to the transform of its physical entity.
+     */
+    void follow(Vector3f location, Quaternion rotation) {
+        boolean kinematic = entity.getMass() > 0 && entity.isActive() && isMoving(entity, tempVelocity);
+        if (kinematic != isKinematic()) {
+            setMass(kinematic ? entity.getMass() : 0);
+            setKinematic(kinematic);
+        }
+        setPhysicsLocation(location);
+        setPhysicsRotation(rotation);
+    }
+
+    /**
+     * True when the rigidbody moves faster than its sleeping thresholds.
+     * @param body the rigidbody
+     * @param store a vector to store the velocities in
+     * @return true when the rigidbody moves
+     */
+    static boolean isMoving(PhysicsRigidBody body, Vector3f store) {
+        body.getLinearVelocity(store);
+        float linear = body.getLinearSleepingThreshold();
+        if (store.lengthSquared() > linear * linear) {
+            return true;
+        }
+        body.getAngularVelocity(store);
+        float angular = body.getAngularSleepingThreshold();
+        return store.lengthSquared() > angular * angular;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionGhost{" +
+                "entity=" + entity +
+                ", partition=" + partition +
+                '}';
+    }
+
+}
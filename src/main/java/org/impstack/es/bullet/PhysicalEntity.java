@@ -31,12 +31,52 @@ public interface PhysicalEntity<T extends PhysicsCollisionObject> {
      */
     public Vector3f getLocation();
 
+    /**
+     * The location of the entity in the {@link com.jme3.bullet.PhysicsSpace}, stored in the given vector.
+     * Implementations can override this to avoid allocating a vector.
+     * @param store the vector to store the location in
+     * @return the store vector
+     */
+    public default Vector3f getLocation(Vector3f store) {
+        return store.set(getLocation());
+    }
+
     /**
      * The rotation of the entity in the {@link com.jme3.bullet.PhysicsSpace}
      * @return entity rotation
      */
     public Quaternion getRotation();
 
+    /**
+     * The rotation of the entity in the {@link com.jme3.bullet.PhysicsSpace}, stored in the given quaternion.
+     * Implementations can override this to avoid allocating a quaternion.
+     * @param store the quaternion to store the rotation in
+     * @return the store quaternion
+     */
+    public default Quaternion getRotation(Quaternion store) {
+        return store.set(getRotation());
+    }
+
+    /**
+     * The location of the entity interpolated between the previous and current physics step, stored in the given
+     * vector. Only differs from the location when the physics are simulated with a fixed time step.
+     * @param store the vector to store the location in
+     * @return the store vector
+     */
+    public default Vector3f getInterpolatedLocation(Vector3f store) {
+        return getLocation(store);
+    }
+
+    /**
+     * The rotation of the entity interpolated between the previous and current physics step, stored in the given
+     * quaternion. Only differs from the rotation when the physics are simulated with a fixed time step.
+     * @param store the quaternion to store the rotation in
+     * @return the store quaternion
+     */
+    public default Quaternion getInterpolatedRotation(Quaternion store) {
+        return getRotation(store);
+    }
+
     /**
      * Return the driver that is controlling the physical entity or null when there isn't a driver
      * @return the physical entity driver or null
@@ -0,0 +1,18 @@
+package org.impstack.es.bullet;
+
+/**
+ * A listener that receives all physical entity updates of a physics frame in one call. The updates are packed in
+ * primitive arrays in a {@link PhysicalEntityFrame} that is filled once by the {@link BulletSystem}, so consuming the
+ * frame doesn't need any allocation per physical entity.
+ * The frame contains the same physical entities as the {@link PhysicalEntityListener#physicalEntityUpdated(PhysicalEntity)}
+ * calls after the physics calculation.
+ */
+public interface PhysicalEntityBatchListener {
+
+    /**
+     * Called each frame after the physics calculation. The frame object is reused and should not be kept after the call.
+     * @param frame the updates of the physics frame
+     */
+    public void physicalEntitiesUpdated(PhysicalEntityFrame frame);
+
+}
@@ -17,6 +17,17 @@ public interface PhysicalEntityDriver {
      */
     public void update(float tpf);
 
+    /**
+     * Returns true when the driver can be updated on another thread, concurrently with other thread-safe drivers.
+     * A thread-safe driver should only change its own state and the velocities of its physical entity. Velocity writes
+     * are buffered while the drivers are updated in parallel and applied on the physics thread afterwards.
+     * See {@link BulletSystem#setParallelDrivers(boolean)}.
+     * @return true when the driver is thread-safe
+     */
+    public default boolean isThreadSafe() {
+        return false;
+    }
+
     /**
      * Called when the driver is removed from the physical entity
      * @param entity the entity where the driver is removed from
@@ -0,0 +1,212 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+/**
+ * The updates of one physics frame, packed in primitive arrays. The frame is filled once by the {@link BulletSystem}
+ * and passed to all {@link PhysicalEntityBatchListener} objects. The arrays are reused each frame and are larger then
+ * the amount of updates, only the first {@link #size()} entries are valid.
+ *
+ * The layout of the arrays, for an update at index i:
+ * <ul>
+ *     <li>entity id: entityIds[i]</li>
+ *     <li>position: positions[i * 3] .. positions[i * 3 + 2] (x, y, z)</li>
+ *     <li>rotation: rotations[i * 4] .. rotations[i * 4 + 3] (x, y, z, w)</li>
+ *     <li>linear velocity: linearVelocities[i * 3] .. linearVelocities[i * 3 + 2] (x, y, z)</li>
+ *     <li>angular velocity: angularVelocities[i * 3] .. angularVelocities[i * 3 + 2] (x, y, z)</li>
+ *     <li>active: active[i], false when the physical entity went to sleep this frame</li>
+ * </ul>
+ */
+public class PhysicalEntityFrame {
+
+    private long frame;
+    private float interpolationAlpha;
+    private int size;
+    private PhysicalEntity[] entities;
+    private long[] entityIds;
+    private float[] positions;
+    private float[] rotations;
+    private float[] linearVelocities;
+    private float[] angularVelocities;
+    private boolean[] active;
+
+    // temp variables used when filling the frame
+    private final Vector3f tempVector = new Vector3f();
+    private final Quaternion tempRotation = new Quaternion();
+
+    public PhysicalEntityFrame() {
+        this(64);
+    }
+
+    public PhysicalEntityFrame(int capacity) {
+        allocate(capacity);
+    }
+
+    /**
+     * The number of the physics frame
+     * @return frame number
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * The interpolation alpha of the {@link BulletSystem} when the frame was filled.
+     * @return the interpolation alpha
+     * @see BulletSystem#getInterpolationAlpha()
+     */
+    public float getInterpolationAlpha() {
+        return interpolationAlpha;
+    }
+
+    /**
+     * The amount of updates in this frame
+     * @return amount of updates
+     */
+    public int size() {
+        return size;
+    }
+
+    public PhysicalEntity getEntity(int index) {
+        return entities[index];
+    }
+
+    public long getEntityId(int index) {
+        return entityIds[index];
+    }
+
+    public Vector3f getPosition(int index, Vector3f store) {
+        int i = index * 3;
+        return store.set(positions[i], positions[i + 1], positions[i + 2]);
+    }
+
+    public Quaternion getRotation(int index, Quaternion store) {
+        int i = index * 4;
+        return store.set(rotations[i], rotations[i + 1], rotations[i + 2], rotations[i + 3]);
+    }
+
+    public Vector3f getLinearVelocity(int index, Vector3f store) {
+        int i = index * 3;
+        return store.set(linearVelocities[i], linearVelocities[i + 1], linearVelocities[i + 2]);
+    }
+
+    public Vector3f getAngularVelocity(int index, Vector3f store) {
+        int i = index * 3;
+        return store.set(angularVelocities[i], angularVelocities[i + 1], angularVelocities[i + 2]);
+    }
+
+    public boolean isActive(int index) {
+        return active[index];
+    }
+
+    public PhysicalEntity[] getEntities() {
+        return entities;
+    }
+
+    public long[] getEntityIds() {
+        return entityIds;
+    }
+
+    public float[] getPositions() {
+        return positions;
+    }
+
+    public float[] getRotations() {
+        return rotations;
+    }
+
+    public float[] getLinearVelocities() {
+        return linearVelocities;
+    }
+
+    public float[] getAngularVelocities() {
+        return angularVelocities;
+    }
+
+    public boolean[] getActive() {
+        return active;
+    }
+
+    void clear(long frame, float interpolationAlpha) {
+        for (int i = 0; i < size; i++) {
+            entities[i] = null;
+        }
+        this.frame = frame;
+        this.interpolationAlpha = interpolationAlpha;
+        this.size = 0;
+    }
+
+    void add(RigidBodyEntity entity) {
+        if (size == entityIds.length) {
+            grow();
+        }
+        entities[size] = entity;
+        entityIds[size] = entity.getEntityId().getId();
+
+        // the transform of the snapshot the system took this frame, instead of reading it from bullet again
+        entity.getLocation(tempVector);
+        put(positions, size * 3, tempVector);
+
+        entity.getRotation(tempRotation);
+        int r = size * 4;
+        rotations[r] = tempRotation.getX();
+        rotations[r + 1] = tempRotation.getY();
+        rotations[r + 2] = tempRotation.getZ();
+        rotations[r + 3] = tempRotation.getW();
+
+        entity.getLinearVelocity(tempVector);
+        put(linearVelocities, size * 3, tempVector);
+
+        entity.getAngularVelocity(tempVector);
+        put(angularVelocities, size * 3, tempVector);
+
+        active[size] = entity.isActive();
+        size++;
+    }
+
+    private static void put(float[] array, int index, Vector3f vector) {
+        array[index] = vector.x;
+        array[index + 1] = vector.y;
+        array[index + 2] = vector.z;
+    }
+
+    private void grow() {
+        PhysicalEntity[] oldEntities = entities;
+        long[] oldEntityIds = entityIds;
+        float[] oldPositions = positions;
+        float[] oldRotations = rotations;
+        float[] oldLinearVelocities = linearVelocities;
+        float[] oldAngularVelocities = angularVelocities;
+        boolean[] oldActive = active;
+
+        allocate(entityIds.length * 2);
+
+        System.arraycopy(oldEntities, 0, entities, 0, size);
+        System.arraycopy(oldEntityIds, 0, entityIds, 0, size);
+        System.arraycopy(oldPositions, 0, positions, 0, size * 3);
+        System.arraycopy(oldRotations, 0, rotations, 0, size * 4);
+        System.arraycopy(oldLinearVelocities, 0, linearVelocities, 0, size * 3);
+        System.arraycopy(oldAngularVelocities, 0, angularVelocities, 0, size * 3);
+        System.arraycopy(oldActive, 0, active, 0, size);
+    }
+
+    private void allocate(int capacity) {
+        entities = new PhysicalEntity[capacity];
+        entityIds = new long[capacity];
+        positions = new float[capacity * 3];
+        rotations = new float[capacity * 4];
+        linearVelocities = new float[capacity * 3];
+        angularVelocities = new float[capacity * 3];
+        active = new boolean[capacity];
+    }
+
+    @Override
+    public String toString() {
+        return "PhysicalEntityFrame{" +
+                "frame=" + frame +
+                ", size=" + size +
+                '}';
+    }
+
+}
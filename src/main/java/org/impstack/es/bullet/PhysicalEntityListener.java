@@ -1,5 +1,7 @@
 package org.impstack.es.bullet;
 
+import java.util.List;
+
 /**
  * A listener that hooks into the {@link BulletSystem} update loop and notifies about physical object changes.
  * The listeners are called multiple times each frame and should be efficient and few.
@@ -21,7 +23,20 @@ public interface PhysicalEntityListener {
     public void physicalEntityAdded(PhysicalEntity physicalEntity);
 
     /**
-     * Called each frame for all attached physical entities to the physics space after the physics calculation.
+     * Called when physical entities are spawned in bulk, see {@link BulletSystem#spawn(SpawnBatch)}. By default
+     * {@link #physicalEntityAdded(PhysicalEntity)} is called for each physical entity.
+     * @param physicalEntities the added physical entities, the list should not be kept after the call
+     */
+    public default void physicalEntitiesAdded(List<PhysicalEntity> physicalEntities) {
+        for (PhysicalEntity physicalEntity : physicalEntities) {
+            physicalEntityAdded(physicalEntity);
+        }
+    }
+
+    /**
+     * Called each frame for the awake physical entities after the physics calculation, and when a physical entity is
+     * moved by changing its {@link SpawnPosition}. A physical entity is updated a last time in the frame it goes to
+     * sleep, sleeping and static physical entities are not updated.
      * @param physicalEntity the updated physical entity
      */
     public void physicalEntityUpdated(PhysicalEntity physicalEntity);
@@ -32,6 +47,17 @@ public interface PhysicalEntityListener {
      */
     public void physicalEntityRemoved(PhysicalEntity physicalEntity);
 
+    /**
+     * Called when physical entities are despawned in bulk, see {@link BulletSystem#despawn(java.util.Collection)}. By
+     * default {@link #physicalEntityRemoved(PhysicalEntity)} is called for each physical entity.
+     * @param physicalEntities the removed physical entities, the list should not be kept after the call
+     */
+    public default void physicalEntitiesRemoved(List<PhysicalEntity> physicalEntities) {
+        for (PhysicalEntity physicalEntity : physicalEntities) {
+            physicalEntityRemoved(physicalEntity);
+        }
+    }
+
     /**
      * Called at the end of the physics frame
      */
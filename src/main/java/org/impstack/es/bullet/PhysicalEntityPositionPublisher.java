@@ -1,42 +1,207 @@
 package org.impstack.es.bullet;
 
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
 import com.simsilica.es.EntityData;
+import com.simsilica.es.EntityId;
 import org.impstack.jme.es.Position;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * A {@link PhysicalEntityListener} implementation that publishes and updates {@link org.impstack.jme.es.Position}
  * components based on the {@link PhysicalEntity} location and rotation.
  * When a {@link PhysicalEntity} is removed, the {@link org.impstack.jme.es.Position} component is not removed from the
  * entity.
+ *
+ * By default a position is published for each update. When publishing changed positions only is enabled
+ * ({@link #setPublishChangedOnly(boolean)}), a position is only published when the physical entity is active or
+ * moved to its {@link SpawnPosition}, and moved or rotated more then the linear ({@link #setLinearEpsilon(float)}) or angular
+ * ({@link #setAngularEpsilon(float)}) epsilon since the last published position. The amount of published and skipped
+ * positions of the last frame can be retrieved with {@link #getPublishedCount()} and {@link #getSkippedCount()}.
+ *
+ * When the {@link BulletSystem} uses a fixed time step, the interpolated positions can be published instead of the
+ * positions of the last physics step ({@link #setInterpolate(boolean)}), this gives smooth movement when the physics
+ * step and the game loop run at a different rate.
  */
 public class PhysicalEntityPositionPublisher implements PhysicalEntityListener {
 
     private final EntityData entityData;
+    private boolean publishChangedOnly = false;
+    private boolean interpolate = false;
+    private float linearEpsilon = 0.001f;
+    private float angularEpsilon = 0.001f;
+    // the minimum dot product between the published and current rotation for a rotation to be considered unchanged
+    private float rotationDotThreshold = FastMath.cos(angularEpsilon * 0.5f);
+    // the last published positions, used to detect changes
+    private final Map<EntityId, Position> publishedPositions = new HashMap<>();
+    // the transform of the updated physical entity
+    private final Vector3f location = new Vector3f();
+    private final Quaternion rotation = new Quaternion();
+    // counters of the current frame
+    private int published;
+    private int skipped;
+    // counters of the last completed frame
+    private int publishedCount;
+    private int skippedCount;
 
     public PhysicalEntityPositionPublisher(EntityData entityData) {
         this.entityData = entityData;
     }
 
+    public PhysicalEntityPositionPublisher(EntityData entityData, boolean publishChangedOnly) {
+        this.entityData = entityData;
+        this.publishChangedOnly = publishChangedOnly;
+    }
+
     @Override
     public void startFrame() {
+        published = 0;
+        skipped = 0;
     }
 
     @Override
     public void physicalEntityAdded(PhysicalEntity physicalEntity) {
-        entityData.setComponent(physicalEntity.getEntityId(), new Position(physicalEntity.getLocation(), physicalEntity.getRotation()));
+        publish(physicalEntity.getEntityId(), physicalEntity.getLocation(), physicalEntity.getRotation());
     }
 
     @Override
     public void physicalEntityUpdated(PhysicalEntity physicalEntity) {
-        entityData.setComponent(physicalEntity.getEntityId(), new Position(physicalEntity.getLocation(), physicalEntity.getRotation()));
+        if (!publishChangedOnly) {
+            if (interpolate) {
+                publish(physicalEntity.getEntityId(),
+                        physicalEntity.getInterpolatedLocation(new Vector3f()),
+                        physicalEntity.getInterpolatedRotation(new Quaternion()));
+            } else {
+                publish(physicalEntity.getEntityId(), physicalEntity.getLocation(), physicalEntity.getRotation());
+            }
+            return;
+        }
+
+        if (physicalEntity instanceof RigidBodyEntity && isAsleep((RigidBodyEntity) physicalEntity)) {
+            // a sleeping body doesn't move
+            skipped++;
+            return;
+        }
+
+        if (interpolate) {
+            physicalEntity.getInterpolatedLocation(location);
+            physicalEntity.getInterpolatedRotation(rotation);
+        } else {
+            physicalEntity.getLocation(location);
+            physicalEntity.getRotation(rotation);
+        }
+        if (isChanged(publishedPositions.get(physicalEntity.getEntityId()), location, rotation)) {
+            publish(physicalEntity.getEntityId(), location.clone(), rotation.clone());
+        } else {
+            skipped++;
+        }
     }
 
     @Override
     public void physicalEntityRemoved(PhysicalEntity physicalEntity) {
+        publishedPositions.remove(physicalEntity.getEntityId());
     }
 
     @Override
     public void endFrame() {
+        publishedCount = published;
+        skippedCount = skipped;
+    }
+
+    public boolean isPublishChangedOnly() {
+        return publishChangedOnly;
+    }
+
+    /**
+     * Only publish a position when the physical entity is active or moved to its spawn position, and moved or rotated
+     * more then the epsilon values.
+     * @param publishChangedOnly true to only publish changed positions
+     */
+    public void setPublishChangedOnly(boolean publishChangedOnly) {
+        this.publishChangedOnly = publishChangedOnly;
+    }
+
+    public boolean isInterpolate() {
+        return interpolate;
+    }
+
+    /**
+     * Publish the interpolated positions of the physical entities.
+     * @param interpolate true to publish interpolated positions
+     * @see BulletSystem#setFixedTimeStep(boolean)
+     */
+    public void setInterpolate(boolean interpolate) {
+        this.interpolate = interpolate;
+    }
+
+    public float getLinearEpsilon() {
+        return linearEpsilon;
+    }
+
+    /**
+     * Sets the distance a physical entity should move before a new position is published.
+     * @param linearEpsilon the distance in world units
+     */
+    public void setLinearEpsilon(float linearEpsilon) {
+        this.linearEpsilon = linearEpsilon;
+    }
+
+    public float getAngularEpsilon() {
+        return angularEpsilon;
+    }
+
+    /**
+     * Sets the angle a physical entity should rotate before a new position is published.
+     * @param angularEpsilon the angle in radians
+     */
+    public void setAngularEpsilon(float angularEpsilon) {
+        this.angularEpsilon = angularEpsilon;
+        this.rotationDotThreshold = FastMath.cos(angularEpsilon * 0.5f);
+    }
+
+    /**
+     * The amount of positions that were published in the last frame.
+     * @return published positions
+     */
+    public int getPublishedCount() {
+        return publishedCount;
+    }
+
+    /**
+     * The amount of position updates that were skipped in the last frame because the physical entity was sleeping or
+     * didn't move enough.
+     * @return skipped positions
+     */
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    private static boolean isAsleep(RigidBodyEntity entity) {
+        // a moved static body stays asleep
+        return !entity.isActive() && !entity.isMoved();
+    }
+
+    private boolean isChanged(Position position, Vector3f location, Quaternion rotation) {
+        if (position == null) {
+            return true;
+        }
+        if (position.getLocation().distanceSquared(location) > linearEpsilon * linearEpsilon) {
+            return true;
+        }
+        // the angle between two rotations is 2 * acos(|dot|)
+        return FastMath.abs(position.getRotation().dot(rotation)) < rotationDotThreshold;
+    }
+
+    private void publish(EntityId entityId, Vector3f location, Quaternion rotation) {
+        Position position = new Position(location, rotation);
+        entityData.setComponent(entityId, position);
+        if (publishChangedOnly) {
+            publishedPositions.put(entityId, position);
+        }
+        published++;
     }
 
 }
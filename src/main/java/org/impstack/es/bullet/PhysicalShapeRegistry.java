@@ -2,8 +2,12 @@ package org.impstack.es.bullet;
 
 import com.jme3.bullet.collision.shapes.CollisionShape;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * A register of collision shapes that can be retrieved by a key.
+ * A registry can keep track of the collision shapes that are in use, the {@link BulletSystem} acquires the physical
+ * shape of each physical entity that is added and releases it when the physical entity is removed.
  */
 public interface PhysicalShapeRegistry {
 
@@ -22,4 +26,35 @@ public interface PhysicalShapeRegistry {
      */
     public CollisionShape get(PhysicalShape physicalShape);
 
+    /**
+     * Returns the collision shape linked to the physical shape component, without blocking the calling thread while
+     * the collision shape is loaded. The returned future is completed when the collision shape is available, or
+     * completed exceptionally when it can't be retrieved.
+     * @param physicalShape the physical shape component holding the key
+     * @return the future collision shape linked to the physical shape
+     */
+    public default CompletableFuture<CollisionShape> getAsync(PhysicalShape physicalShape) {
+        CompletableFuture<CollisionShape> result = new CompletableFuture<>();
+        try {
+            result.complete(get(physicalShape));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Marks the collision shape of the physical shape as used by one more physical entity.
+     * @param physicalShape the physical shape component holding the key
+     */
+    public default void acquire(PhysicalShape physicalShape) {
+    }
+
+    /**
+     * Marks the collision shape of the physical shape as used by one less physical entity.
+     * @param physicalShape the physical shape component holding the key
+     */
+    public default void release(PhysicalShape physicalShape) {
+    }
+
 }
@@ -0,0 +1,315 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Vector3f;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The binary journal of the inputs of the {@link BulletSystem}, see {@link BulletSystem#setJournalFile(Path)}. The
+ * journal is a sequence of tagged entries written to a memory mapped file. Each frame starts with the time per frame
+ * and ends with a checksum of the transforms of the bodies that were simulated. The inputs between the start and the
+ * end of a frame are applied in the same order when the journal is replayed. The length in the header is updated at
+ * the end of each frame, so a journal of a process that crashed can be replayed up to the last complete frame.
+ */
+class PhysicsJournal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PhysicsJournal.class);
+
+    static final int MAGIC = 0x504a4e4c;
+    static final int VERSION = 1;
+    // the header: magic, version and the length of the journal
+    static final int HEADER_BYTES = 16;
+    // the size of the regions of the file that are mapped
+    static final int REGION_BYTES = 8 * 1024 * 1024;
+
+    // a frame: time per frame, and the frame number, checksum and body count at the end
+    static final byte FRAME_START = 1;
+    static final byte FRAME_END = 2;
+    // the drivers are updated, once per physics step
+    static final byte STEP = 3;
+    // a physical entity is added: entity id, origin, shape id, mass, location, rotation matrix
+    static final byte ADD = 4;
+    // a physical entity is removed: entity id
+    static final byte REMOVE = 5;
+    // a physical entity is moved by its spawn position: entity id, location, rotation matrix
+    static final byte MOVE = 6;
+    // the velocity of a physical entity is set: entity id, velocity
+    static final byte LINEAR_VELOCITY = 7;
+    static final byte ANGULAR_VELOCITY = 8;
+    // a driver is set or removed: entity id, driven, linear factor, angular factor
+    static final byte DRIVER = 9;
+    // the gravity of the physics spaces is set: gravity
+    static final byte GRAVITY = 10;
+    // the sleeping thresholds of a physical entity are set: entity id, linear threshold, angular threshold
+    static final byte SLEEP = 11;
+
+    // the origin of an added physical entity
+    static final byte CONTAINER = 0;
+    static final byte SPAWNED = 1;
+
+    /**
+     * Writes the entries of a journal. A write error is logged once, the following entries are ignored.
+     */
+    static class Writer implements Closeable {
+
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer header;
+        private MappedByteBuffer buffer;
+        // the position in the file of the mapped region
+        private long regionStart;
+        private boolean failed;
+        // the encoded shape ids
+        private final Map<String, byte[]> shapeIds = new HashMap<>();
+        // the transform is stored as the rotation matrix of the rigidbody, a quaternion doesn't convert back exactly
+        private final Vector3f tempLocation = new Vector3f();
+        private final Matrix3f tempMatrix = new Matrix3f();
+
+        Writer(Path file) throws IOException {
+            this.file = file;
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(HEADER_BYTES);
+            regionStart = HEADER_BYTES;
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, REGION_BYTES);
+        }
+
+        void frameStart(float tpf) {
+            if (ensure(5)) {
+                buffer.put(FRAME_START).putFloat(tpf);
+            }
+        }
+
+        void frameEnd(long frame, long checksum, int count) {
+            if (ensure(21)) {
+                buffer.put(FRAME_END).putLong(frame).putLong(checksum).putInt(count);
+                header.putLong(8, regionStart + buffer.position());
+            }
+        }
+
+        void step() {
+            if (ensure(1)) {
+                buffer.put(STEP);
+            }
+        }
+
+        void add(RigidBodyEntity entity, byte origin) {
+            byte[] shapeId = shapeIds.computeIfAbsent(entity.physicalShape.getShapeId(), id -> id.getBytes(StandardCharsets.UTF_8));
+            if (ensure(1 + 8 + 1 + 2 + shapeId.length + 4 + 12 + 36)) {
+                buffer.put(ADD).putLong(entity.getEntityId().getId()).put(origin);
+                buffer.putShort((short) shapeId.length).put(shapeId);
+                buffer.putFloat(entity.getMass());
+                putTransform(entity);
+            }
+        }
+
+        void remove(RigidBodyEntity entity) {
+            if (ensure(9)) {
+                buffer.put(REMOVE).putLong(entity.getEntityId().getId());
+            }
+        }
+
+        void move(RigidBodyEntity entity) {
+            if (ensure(1 + 8 + 12 + 36)) {
+                buffer.put(MOVE).putLong(entity.getEntityId().getId());
+                putTransform(entity);
+            }
+        }
+
+        void velocity(RigidBodyEntity entity, byte tag, Vector3f velocity) {
+            if (ensure(1 + 8 + 12)) {
+                buffer.put(tag).putLong(entity.getEntityId().getId());
+                put(velocity);
+            }
+        }
+
+        void gravity(Vector3f gravity) {
+            if (ensure(1 + 12)) {
+                buffer.put(GRAVITY);
+                put(gravity);
+            }
+        }
+
+        void sleep(RigidBodyEntity entity) {
+            if (ensure(1 + 8 + 4 + 4)) {
+                buffer.put(SLEEP).putLong(entity.getEntityId().getId());
+                buffer.putFloat(entity.getLinearSleepingThreshold()).putFloat(entity.getAngularSleepingThreshold());
+            }
+        }
+
+        void driver(RigidBodyEntity entity, boolean driven) {
+            if (ensure(1 + 8 + 1 + 12 + 12)) {
+                buffer.put(DRIVER).putLong(entity.getEntityId().getId()).put((byte) (driven ? 1 : 0));
+                put(entity.getLinearFactor());
+                put(entity.getAngularFactor(tempLocation));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                buffer.force();
+                header.force();
+                // drop the unused part of the last region, this isn't possible on all platforms while it's mapped
+                channel.truncate(header.getLong(8));
+            } catch (IOException e) {
+                LOG.debug("Unable to truncate {}", file, e);
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void put(Vector3f value) {
+            buffer.putFloat(value.x).putFloat(value.y).putFloat(value.z);
+        }
+
+        private void putTransform(RigidBodyEntity entity) {
+            put(entity.getPhysicsLocation(tempLocation));
+            entity.getPhysicsRotationMatrix(tempMatrix);
+            for (int row = 0; row < 3; row++) {
+                for (int column = 0; column < 3; column++) {
+                    buffer.putFloat(tempMatrix.get(row, column));
+                }
+            }
+        }
+
+        /**
+         * Maps the next region of the file when the entry doesn't fit in the current region.
+         */
+        private boolean ensure(int bytes) {
+            if (failed) {
+                return false;
+            }
+            if (buffer.remaining() >= bytes) {
+                return true;
+            }
+            try {
+                regionStart += buffer.position();
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, Math.max(REGION_BYTES, bytes));
+                return true;
+            } catch (IOException e) {
+                LOG.error("Unable to write the physics journal {}, the journal is incomplete", file, e);
+                failed = true;
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Reads the entries of a journal.
+     */
+    static class Reader implements Closeable {
+
+        private final Path file;
+        private final FileChannel channel;
+        // the length of the journal, and the position in the file of the mapped region
+        private final long length;
+        private long regionStart;
+        private MappedByteBuffer buffer;
+
+        Reader(Path file) throws IOException {
+            this.file = file;
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                channel.close();
+                throw new IOException(file + " is not a physics journal of version " + VERSION);
+            }
+            length = Math.min(header.getLong(), channel.size());
+            regionStart = HEADER_BYTES;
+            buffer = map(regionStart);
+        }
+
+        /**
+         * The tag of the next entry, without reading it.
+         * @return the tag or 0 at the end of the journal
+         */
+        byte peek() {
+            if (regionStart + buffer.position() >= length) {
+                return 0;
+            }
+            ensure(1);
+            return buffer.get(buffer.position());
+        }
+
+        byte getByte() {
+            ensure(1);
+            return buffer.get();
+        }
+
+        long getLong() {
+            ensure(8);
+            return buffer.getLong();
+        }
+
+        int getInt() {
+            ensure(4);
+            return buffer.getInt();
+        }
+
+        float getFloat() {
+            ensure(4);
+            return buffer.getFloat();
+        }
+
+        String getString() {
+            ensure(2);
+            byte[] bytes = new byte[buffer.getShort()];
+            ensure(bytes.length);
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        Vector3f getVector(Vector3f store) {
+            ensure(12);
+            return store.set(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+        }
+
+        Matrix3f getMatrix(Matrix3f store) {
+            ensure(36);
+            for (int row = 0; row < 3; row++) {
+                for (int column = 0; column < 3; column++) {
+                    store.set(row, column, buffer.getFloat());
+                }
+            }
+            return store;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            if (regionStart + buffer.position() + bytes > length) {
+                throw new IllegalStateException("Unexpected end of the physics journal " + file);
+            }
+            regionStart += buffer.position();
+            buffer = map(regionStart);
+        }
+
+        private MappedByteBuffer map(long position) {
+            try {
+                return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REGION_BYTES, length - position));
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to read the physics journal " + file, e);
+            }
+        }
+    }
+
+}
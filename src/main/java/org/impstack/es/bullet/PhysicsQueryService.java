@@ -0,0 +1,188 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+import com.jme3.bullet.collision.PhysicsRayTestResult;
+import com.jme3.bullet.collision.PhysicsSweepTestResult;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ray tests, sweep tests and overlap tests against the physical entities of a {@link BulletSystem}. The hits are
+ * reported as physical entities in a caller supplied {@link QueryResults} buffer, hits on collision objects that are
+ * not managed by the system are skipped. All physics spaces are queried when the world is partitioned, the
+ * {@link PartitionGhost}s in the physics spaces are skipped, so each physical entity is reported once.
+ *
+ * The queries read the physics spaces and should be done on the physics thread, outside of the physics step. A query
+ * service is not thread-safe.
+ *
+ * @see BulletSystem#getQueryService()
+ */
+public class PhysicsQueryService {
+
+    // the distance a shape is swept for an overlap test, and the directions it's swept in: the corners of a
+    // tetrahedron, so each penetration direction points against at least one of the sweeps
+    private static final float OVERLAP_DISTANCE = 0.001f;
+    private static final Vector3f[] OVERLAP_DIRECTIONS = {
+            new Vector3f(1, 1, 1).normalizeLocal().multLocal(OVERLAP_DISTANCE),
+            new Vector3f(1, -1, -1).normalizeLocal().multLocal(OVERLAP_DISTANCE),
+            new Vector3f(-1, 1, -1).normalizeLocal().multLocal(OVERLAP_DISTANCE),
+            new Vector3f(-1, -1, 1).normalizeLocal().multLocal(OVERLAP_DISTANCE)
+    };
+
+    private final BulletSystem bulletSystem;
+    // the lists reused for the results of the physics spaces
+    private final List<PhysicsRayTestResult> rayResults = new ArrayList<>();
+    private final List<PhysicsSweepTestResult> sweepResults = new ArrayList<>();
+    private final QueryResults closest = new QueryResults(1);
+    private final Transform overlapStart = new Transform();
+    private final Transform overlapEnd = new Transform();
+    private final Vector3f tempFrom = new Vector3f();
+    private final Vector3f tempTo = new Vector3f();
+    private final Vector3f tempPoint = new Vector3f();
+    private final Vector3f tempNormal = new Vector3f();
+    private final Quaternion tempRotation = new Quaternion();
+
+    public PhysicsQueryService(BulletSystem bulletSystem) {
+        this.bulletSystem = bulletSystem;
+    }
+
+    /**
+     * Finds the physical entities hit by a ray.
+     * @param from the start of the ray
+     * @param to the end of the ray
+     * @param filter the filter or null to accept all physical entities
+     * @param results the buffer the hits are stored in, it's cleared first
+     * @return the amount of hits
+     */
+    public int raycast(Vector3f from, Vector3f to, QueryFilter filter, QueryResults results) {
+        return raycast(from, to, filter, null, results);
+    }
+
+    private int raycast(Vector3f from, Vector3f to, QueryFilter filter, EntityId ignored, QueryResults results) {
+        results.clear();
+        for (int i = 0; i < bulletSystem.getPhysicsSpaceCount(); i++) {
+            rayResults.clear();
+            bulletSystem.getPhysicsSpace(i).rayTestRaw(from, to, rayResults);
+            for (PhysicsRayTestResult result : rayResults) {
+                if (result.getCollisionObject() instanceof PartitionGhost) {
+                    continue;
+                }
+                float fraction = result.getHitFraction();
+                tempPoint.set(to).subtractLocal(from).multLocal(fraction).addLocal(from);
+                PhysicalEntity entity = bulletSystem.getPhysicalEntity(result.getCollisionObject(), tempPoint);
+                if (entity != null && !entity.getEntityId().equals(ignored) && (filter == null || filter.accept(entity))) {
+                    getNormal(result.getCollisionObject(), result.getHitNormalLocal(), result.isNormalInWorldSpace(), tempNormal);
+                    results.add(entity, fraction, tempPoint, tempNormal);
+                }
+            }
+        }
+        rayResults.clear();
+        return results.size();
+    }
+
+    /**
+     * Tests all rays of the batch, and stores the closest hit of each ray in the batch.
+     * @param batch the rays
+     * @param filter the filter or null to accept all physical entities
+     * @return the amount of rays that hit a physical entity
+     */
+    public int raycast(RayBatch batch, QueryFilter filter) {
+        int hits = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            raycast(batch.getFrom(i, tempFrom), batch.getTo(i, tempTo), filter, batch.getIgnored(i), closest);
+            if (closest.isEmpty()) {
+                batch.setHit(i, null, 1f);
+            } else {
+                batch.setHit(i, closest.getPhysicalEntity(0), closest.getHitFraction(0));
+                hits++;
+            }
+        }
+        closest.clear();
+        return hits;
+    }
+
+    /**
+     * Finds the physical entities hit by a convex shape moving from the start to the end transform.
+     * @param shape the convex shape
+     * @param start the start transform, the scale is ignored
+     * @param end the end transform, the scale is ignored
+     * @param filter the filter or null to accept all physical entities
+     * @param results the buffer the hits are stored in, it's cleared first
+     * @return the amount of hits
+     */
+    public int sweep(CollisionShape shape, Transform start, Transform end, QueryFilter filter, QueryResults results) {
+        results.clear();
+        return addSweepHits(shape, start, end, filter, results);
+    }
+
+    /**
+     * Adds the hits of a sweep test to the results, without clearing them first.
+     */
+    private int addSweepHits(CollisionShape shape, Transform start, Transform end, QueryFilter filter, QueryResults results) {
+        Vector3f from = start.getTranslation();
+        Vector3f to = end.getTranslation();
+        for (int i = 0; i < bulletSystem.getPhysicsSpaceCount(); i++) {
+            sweepResults.clear();
+            bulletSystem.getPhysicsSpace(i).sweepTest(shape, start, end, sweepResults);
+            for (PhysicsSweepTestResult result : sweepResults) {
+                if (result.getCollisionObject() instanceof PartitionGhost) {
+                    continue;
+                }
+                float fraction = result.getHitFraction();
+                tempPoint.set(to).subtractLocal(from).multLocal(fraction).addLocal(from);
+                PhysicalEntity entity = bulletSystem.getPhysicalEntity(result.getCollisionObject(), tempPoint);
+                if (entity != null && (filter == null || filter.accept(entity))) {
+                    getNormal(result.getCollisionObject(), result.getHitNormalLocal(), result.isNormalInWorldSpace(), tempNormal);
+                    results.add(entity, fraction, tempPoint, tempNormal);
+                }
+            }
+        }
+        sweepResults.clear();
+        return results.size();
+    }
+
+    /**
+     * Finds the physical entities that overlap with a convex shape. Bullet doesn't expose a contact test, the shape is
+     * swept over a very short distance instead. A sweep only reports a shape it already overlaps when it moves deeper
+     * into it, so the shape is swept in four directions that point to the corners of a tetrahedron: one of them always
+     * moves deeper, whichever side the overlap is on. The hits of the sweeps are merged, each overlapping physical
+     * entity is reported once, with a hit fraction of about 0. A triangle mesh is hollow, a shape that is completely
+     * inside a mesh without touching its triangles doesn't overlap it.
+     * @param shape the convex shape
+     * @param location the location of the shape
+     * @param rotation the rotation of the shape
+     * @param filter the filter or null to accept all physical entities
+     * @param results the buffer the hits are stored in, it's cleared first
+     * @return the amount of overlapping physical entities
+     */
+    public int overlap(CollisionShape shape, Vector3f location, Quaternion rotation, QueryFilter filter, QueryResults results) {
+        results.clear();
+        overlapStart.setTranslation(location);
+        overlapStart.setRotation(rotation);
+        overlapEnd.setRotation(rotation);
+        for (Vector3f direction : OVERLAP_DIRECTIONS) {
+            overlapEnd.setTranslation(tempTo.set(location).addLocal(direction));
+            addSweepHits(shape, overlapStart, overlapEnd, filter, results);
+        }
+        return results.size();
+    }
+
+    /**
+     * Stores the normal of a hit in world space.
+     */
+    private Vector3f getNormal(PhysicsCollisionObject object, Vector3f normal, boolean worldSpace, Vector3f store) {
+        store.set(normal);
+        if (!worldSpace && object instanceof PhysicsRigidBody) {
+            ((PhysicsRigidBody) object).getPhysicsRotation(tempRotation).multLocal(store);
+        }
+        return store;
+    }
+
+}
@@ -0,0 +1,94 @@
+package org.impstack.es.bullet;
+
+import com.jme3.system.NativeLibraryLoader;
+import com.simsilica.es.EntityData;
+import com.simsilica.es.base.DefaultEntityData;
+import com.simsilica.sim.GameSystemManager;
+import com.simsilica.sim.SimTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Replays a journal recorded with {@link BulletSystem#setJournalFile(Path)} headless, without rendering and without
+ * the entities of the recorded application. The {@link BulletSystem} is created with the collision shapes registry of
+ * the recorded application and can be configured before it's initialized, it should be configured the same as the
+ * recorded system. The transforms of each frame are verified against the checksums in the journal.
+ */
+public class PhysicsReplay {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PhysicsReplay.class);
+
+    // the time per frame is read from the journal, the simulated time only drives the game systems
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+
+    private final Path journalFile;
+    private final PhysicalShapeRegistry shapeRegistry;
+    private Consumer<BulletSystem> configuration = bulletSystem -> {};
+    private long frames;
+
+    public PhysicsReplay(Path journalFile, PhysicalShapeRegistry shapeRegistry) {
+        this.journalFile = journalFile;
+        this.shapeRegistry = shapeRegistry;
+    }
+
+    public Consumer<BulletSystem> getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Sets the configuration of the bullet system, called before the system is initialized.
+     * @param configuration the configuration
+     */
+    public void setConfiguration(Consumer<BulletSystem> configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * The amount of frames that were replayed by the last run.
+     * @return the amount of frames
+     */
+    public long getFrameCount() {
+        return frames;
+    }
+
+    /**
+     * Replays all frames of the journal.
+     * @return the amount of frames of which the transforms didn't match the recorded frame, 0 when the replay is exact
+     */
+    public int run() {
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+
+        EntityData entityData = new DefaultEntityData();
+        BulletSystem bulletSystem = new BulletSystem(entityData, shapeRegistry);
+        configuration.accept(bulletSystem);
+        bulletSystem.setReplayFile(journalFile);
+
+        GameSystemManager systems = new GameSystemManager();
+        systems.register(BulletSystem.class, bulletSystem);
+        systems.initialize();
+        systems.start();
+        SimTime time = new SimTime();
+        long nanos = 0;
+        frames = 0;
+        try {
+            while (!bulletSystem.isReplayFinished()) {
+                nanos += FRAME_NANOS;
+                time.update(nanos);
+                bulletSystem.update(time);
+                frames++;
+            }
+        } finally {
+            systems.stop();
+            systems.terminate();
+            entityData.close();
+        }
+
+        int mismatches = bulletSystem.getReplayMismatchCount();
+        LOG.info("Replayed {} frames of {}, {} frames diverged", frames, journalFile, mismatches);
+        return mismatches;
+    }
+
+}
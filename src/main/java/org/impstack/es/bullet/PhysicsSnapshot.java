@@ -0,0 +1,361 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityId;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The state of all physical entities at the end of a physics frame, published by a {@link PhysicsSnapshotPublisher}. A
+ * snapshot can be read from any thread without locking: it's not changed while it's acquired. The state is stored in
+ * primitive arrays, the physical entities are accessed by index (0 to {@link #size()}).
+ *
+ * The bounds of a physical entity are the axis aligned box around its bounding sphere, see
+ * {@link CollisionShapeHelper#getBoundingRadius(com.jme3.bullet.collision.shapes.CollisionShape)}. A uniform grid on the
+ * locations is used to find the physical entities in an area.
+ *
+ * A snapshot is acquired with {@link PhysicsSnapshotPublisher#acquire()} and should be released when it's no longer
+ * used, so it can be reused by the publisher:
+ * <pre>
+ * try (PhysicsSnapshot snapshot = publisher.acquire()) {
+ *     ...
+ * }
+ * </pre>
+ */
+public class PhysicsSnapshot implements AutoCloseable {
+
+    // the reference count while the snapshot is read, or WRITING while it's filled by the publisher
+    static final int WRITING = -1;
+    final AtomicInteger references = new AtomicInteger();
+
+    private long frame;
+    private int size;
+    private EntityId[] entityIds = new EntityId[0];
+    // the location, rotation, velocities (x, y, z (, w)) and bounding radius of each physical entity
+    private float[] locations = new float[0];
+    private float[] rotations = new float[0];
+    private float[] linearVelocities = new float[0];
+    private float[] angularVelocities = new float[0];
+    private float[] radii = new float[0];
+    // the index of each entity id, an open addressing hash table with the index + 1 as value
+    private long[] idKeys = new long[0];
+    private int[] idIndexes = new int[0];
+    // the grid cells, an open addressing hash table of cell keys with the range of the cell in cellEntities
+    private float cellSize;
+    private long[] cellKeys = new long[0];
+    private int[] cellStarts = new int[0];
+    private int[] cellCounts = new int[0];
+    private int[] cellEntities = new int[0];
+    // the physical entities that are larger then a cell, they are checked by every area query
+    private int[] largeEntities = new int[0];
+    private int largeCount;
+    // the largest bounding radius of the physical entities in the grid
+    private float maxCellRadius;
+
+    PhysicsSnapshot() {
+    }
+
+    /**
+     * The physics frame of the snapshot, see {@link BulletSystem#getFrame()}.
+     * @return the frame
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * The amount of physical entities in the snapshot.
+     * @return the amount of physical entities
+     */
+    public int size() {
+        return size;
+    }
+
+    public EntityId getEntityId(int index) {
+        return entityIds[index];
+    }
+
+    /**
+     * Returns the index of the physical entity of the entity.
+     * @param entityId the entity
+     * @return the index or -1 when the entity has no physical entity
+     */
+    public int indexOf(EntityId entityId) {
+        if (idKeys.length == 0) {
+            return -1;
+        }
+        long id = entityId.getId();
+        int mask = idKeys.length - 1;
+        for (int slot = hash(id) & mask; idIndexes[slot] != 0; slot = (slot + 1) & mask) {
+            if (idKeys[slot] == id) {
+                return idIndexes[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    public Vector3f getLocation(int index, Vector3f store) {
+        return store.set(locations[index * 3], locations[index * 3 + 1], locations[index * 3 + 2]);
+    }
+
+    public Quaternion getRotation(int index, Quaternion store) {
+        return store.set(rotations[index * 4], rotations[index * 4 + 1], rotations[index * 4 + 2], rotations[index * 4 + 3]);
+    }
+
+    public Vector3f getLinearVelocity(int index, Vector3f store) {
+        return store.set(linearVelocities[index * 3], linearVelocities[index * 3 + 1], linearVelocities[index * 3 + 2]);
+    }
+
+    public Vector3f getAngularVelocity(int index, Vector3f store) {
+        return store.set(angularVelocities[index * 3], angularVelocities[index * 3 + 1], angularVelocities[index * 3 + 2]);
+    }
+
+    public float getBoundingRadius(int index) {
+        return radii[index];
+    }
+
+    public Vector3f getBoundsMin(int index, Vector3f store) {
+        float radius = radii[index];
+        return store.set(locations[index * 3] - radius, locations[index * 3 + 1] - radius, locations[index * 3 + 2] - radius);
+    }
+
+    public Vector3f getBoundsMax(int index, Vector3f store) {
+        float radius = radii[index];
+        return store.set(locations[index * 3] + radius, locations[index * 3 + 1] + radius, locations[index * 3 + 2] + radius);
+    }
+
+    /**
+     * Finds the physical entities of which the bounds overlap the box.
+     * @param min the minimum corner of the box
+     * @param max the maximum corner of the box
+     * @param store the array the indexes of the physical entities are stored in
+     * @return the amount of physical entities found, only the first store.length are stored
+     */
+    public int query(Vector3f min, Vector3f max, int[] store) {
+        return query(min.x, min.y, min.z, max.x, max.y, max.z, false, 0, store);
+    }
+
+    /**
+     * Finds the physical entities of which the bounding sphere overlaps the sphere.
+     * @param center the center of the sphere
+     * @param radius the radius of the sphere
+     * @param store the array the indexes of the physical entities are stored in
+     * @return the amount of physical entities found, only the first store.length are stored
+     */
+    public int query(Vector3f center, float radius, int[] store) {
+        return query(center.x - radius, center.y - radius, center.z - radius,
+                center.x + radius, center.y + radius, center.z + radius, true, radius, store);
+    }
+
+    /**
+     * Releases the snapshot, it shouldn't be used afterwards.
+     */
+    public void release() {
+        references.decrementAndGet();
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    private int query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, boolean sphere, float radius, int[] store) {
+        int found = 0;
+        for (int i = 0; i < largeCount; i++) {
+            found = test(largeEntities[i], minX, minY, minZ, maxX, maxY, maxZ, sphere, radius, store, found);
+        }
+
+        // the grid holds the locations, the area is extended with the largest bounding radius
+        int x0 = cell(minX - maxCellRadius);
+        int y0 = cell(minY - maxCellRadius);
+        int z0 = cell(minZ - maxCellRadius);
+        int x1 = cell(maxX + maxCellRadius);
+        int y1 = cell(maxY + maxCellRadius);
+        int z1 = cell(maxZ + maxCellRadius);
+        long cells = (long) (x1 - x0 + 1) * (y1 - y0 + 1) * (z1 - z0 + 1);
+        if (cells > size) {
+            // cheaper to check all physical entities
+            for (int i = 0; i < size; i++) {
+                if (radii[i] <= cellSize) {
+                    found = test(i, minX, minY, minZ, maxX, maxY, maxZ, sphere, radius, store, found);
+                }
+            }
+            return found;
+        }
+
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                for (int z = z0; z <= z1; z++) {
+                    int slot = findCell(cellKey(x, y, z));
+                    if (slot < 0) {
+                        continue;
+                    }
+                    for (int i = cellStarts[slot]; i < cellStarts[slot] + cellCounts[slot]; i++) {
+                        found = test(cellEntities[i], minX, minY, minZ, maxX, maxY, maxZ, sphere, radius, store, found);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    private int test(int index, float minX, float minY, float minZ, float maxX, float maxY, float maxZ, boolean sphere, float radius, int[] store, int found) {
+        float x = locations[index * 3];
+        float y = locations[index * 3 + 1];
+        float z = locations[index * 3 + 2];
+        float r = radii[index];
+        boolean overlaps;
+        if (sphere) {
+            float dx = x - (minX + radius);
+            float dy = y - (minY + radius);
+            float dz = z - (minZ + radius);
+            overlaps = dx * dx + dy * dy + dz * dz <= (radius + r) * (radius + r);
+        } else {
+            overlaps = x + r >= minX && x - r <= maxX && y + r >= minY && y - r <= maxY && z + r >= minZ && z - r <= maxZ;
+        }
+        if (!overlaps) {
+            return found;
+        }
+        if (found < store.length) {
+            store[found] = index;
+        }
+        return found + 1;
+    }
+
+    /**
+     * Fills the snapshot with the state of the physical entities and builds the indexes. Called by the publisher while
+     * the snapshot is not acquired.
+     */
+    void write(long frame, int size, EntityId[] entityIds, float[] locations, float[] rotations, float[] linearVelocities,
+               float[] angularVelocities, float[] radii, float cellSize) {
+        this.frame = frame;
+        this.size = size;
+        this.cellSize = cellSize;
+        if (this.entityIds.length < size) {
+            int capacity = Math.max(size, this.entityIds.length * 2);
+            this.entityIds = new EntityId[capacity];
+            this.locations = new float[capacity * 3];
+            this.rotations = new float[capacity * 4];
+            this.linearVelocities = new float[capacity * 3];
+            this.angularVelocities = new float[capacity * 3];
+            this.radii = new float[capacity];
+            this.cellEntities = new int[capacity];
+            this.largeEntities = new int[capacity];
+        }
+        System.arraycopy(entityIds, 0, this.entityIds, 0, size);
+        Arrays.fill(this.entityIds, size, this.entityIds.length, null);
+        System.arraycopy(locations, 0, this.locations, 0, size * 3);
+        System.arraycopy(rotations, 0, this.rotations, 0, size * 4);
+        System.arraycopy(linearVelocities, 0, this.linearVelocities, 0, size * 3);
+        System.arraycopy(angularVelocities, 0, this.angularVelocities, 0, size * 3);
+        System.arraycopy(radii, 0, this.radii, 0, size);
+
+        buildIdIndex();
+        buildGrid();
+    }
+
+    private void buildIdIndex() {
+        int capacity = tableCapacity(size);
+        if (idKeys.length != capacity) {
+            idKeys = new long[capacity];
+            idIndexes = new int[capacity];
+        } else {
+            Arrays.fill(idIndexes, 0);
+        }
+        int mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            long id = entityIds[i].getId();
+            int slot = hash(id) & mask;
+            while (idIndexes[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            idKeys[slot] = id;
+            idIndexes[slot] = i + 1;
+        }
+    }
+
+    private void buildGrid() {
+        int capacity = tableCapacity(size);
+        if (cellKeys.length != capacity) {
+            cellKeys = new long[capacity];
+            cellStarts = new int[capacity];
+            cellCounts = new int[capacity];
+        } else {
+            Arrays.fill(cellCounts, 0);
+        }
+
+        // count the physical entities of each cell, and keep the large ones apart
+        largeCount = 0;
+        maxCellRadius = 0;
+        for (int i = 0; i < size; i++) {
+            if (radii[i] > cellSize) {
+                largeEntities[largeCount++] = i;
+                continue;
+            }
+            maxCellRadius = Math.max(maxCellRadius, radii[i]);
+            long key = cellKey(i);
+            int slot = findCell(key);
+            if (slot < 0) {
+                slot = ~slot;
+                cellKeys[slot] = key;
+            }
+            cellCounts[slot]++;
+        }
+
+        // the start is set to the end of the range of each cell, and moves back while the cell is filled
+        int end = 0;
+        for (int slot = 0; slot < cellCounts.length; slot++) {
+            end += cellCounts[slot];
+            cellStarts[slot] = end;
+        }
+        for (int i = 0; i < size; i++) {
+            if (radii[i] <= cellSize) {
+                int slot = findCell(cellKey(i));
+                cellEntities[--cellStarts[slot]] = i;
+            }
+        }
+    }
+
+    /**
+     * Returns the slot of the cell, or the complement of the free slot where the cell should be added.
+     */
+    private int findCell(long key) {
+        if (cellKeys.length == 0) {
+            return -1;
+        }
+        int mask = cellKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (cellCounts[slot] != 0) {
+            if (cellKeys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return ~slot;
+    }
+
+    private long cellKey(int index) {
+        return cellKey(cell(locations[index * 3]), cell(locations[index * 3 + 1]), cell(locations[index * 3 + 2]));
+    }
+
+    private int cell(float value) {
+        return (int) Math.floor(value / cellSize);
+    }
+
+    private static long cellKey(int x, int y, int z) {
+        return ((long) (x & 0x1fffff) << 42) | ((long) (y & 0x1fffff) << 21) | (z & 0x1fffff);
+    }
+
+    private static int tableCapacity(int size) {
+        // at most half full
+        return Integer.highestOneBit(Math.max(8, size) * 2 - 1) << 1;
+    }
+
+    private static int hash(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
@@ -0,0 +1,211 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link PhysicalEntityListener} that publishes a {@link PhysicsSnapshot} of all physical entities at the end of each
+ * frame in which a physical entity was added, updated or removed. Other threads, like the network or AI threads, read
+ * the snapshot with {@link #acquire()} instead of reading entity components or the physics space.
+ *
+ * The state of the physical entities is kept in primitive arrays on the physics thread, and copied in a snapshot at the
+ * end of the frame. The published snapshot is swapped atomically. Snapshots are reused once they are released by all
+ * readers, a new snapshot is only created when all other snapshots are still acquired.
+ */
+public class PhysicsSnapshotPublisher implements PhysicalEntityListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PhysicsSnapshotPublisher.class);
+
+    private final BulletSystem bulletSystem;
+    private float cellSize = 16f;
+    // the state of the physical entities, by slot
+    private final Map<EntityId, Integer> slots = new HashMap<>();
+    private int size;
+    private EntityId[] entityIds = new EntityId[64];
+    private float[] locations = new float[64 * 3];
+    private float[] rotations = new float[64 * 4];
+    private float[] linearVelocities = new float[64 * 3];
+    private float[] angularVelocities = new float[64 * 3];
+    private float[] radii = new float[64];
+    // true when the state changed since the last published snapshot
+    private boolean changed;
+    // the bounding radius of each collision shape
+    private final Map<CollisionShape, Float> boundingRadii = new IdentityHashMap<>();
+    // all snapshots and the published one
+    private final List<PhysicsSnapshot> snapshots = new ArrayList<>();
+    private volatile PhysicsSnapshot current;
+    private final Vector3f tempVector = new Vector3f();
+    private final Quaternion tempRotation = new Quaternion();
+
+    public PhysicsSnapshotPublisher(BulletSystem bulletSystem) {
+        this.bulletSystem = bulletSystem;
+        publish();
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Sets the size of the cells of the grid used to find physical entities in an area. Physical entities with a
+     * bounding radius larger than the cell size are checked by every area query.
+     * @param cellSize the size of a cell
+     */
+    public void setCellSize(float cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Acquires the last published snapshot, the snapshot should be released when it's no longer used. Can be called
+     * from any thread.
+     * @return the snapshot
+     */
+    public PhysicsSnapshot acquire() {
+        while (true) {
+            PhysicsSnapshot snapshot = current;
+            int references = snapshot.references.get();
+            if (references >= 0 && snapshot.references.compareAndSet(references, references + 1)) {
+                // the snapshot can't be reused while it's acquired, check that it wasn't reused before
+                if (snapshot == current) {
+                    return snapshot;
+                }
+                snapshot.release();
+            }
+        }
+    }
+
+    /**
+     * The amount of snapshots created by the publisher, this grows when readers keep snapshots acquired.
+     * @return the amount of snapshots
+     */
+    public int getSnapshotCount() {
+        return snapshots.size();
+    }
+
+    @Override
+    public void startFrame() {
+    }
+
+    @Override
+    public void physicalEntityAdded(PhysicalEntity physicalEntity) {
+        if (size == entityIds.length) {
+            grow();
+        }
+        int slot = size++;
+        slots.put(physicalEntity.getEntityId(), slot);
+        entityIds[slot] = physicalEntity.getEntityId();
+        CollisionShape shape = physicalEntity.getPhysicalObject().getCollisionShape();
+        radii[slot] = boundingRadii.computeIfAbsent(shape, CollisionShapeHelper::getBoundingRadius);
+        write(slot, physicalEntity);
+    }
+
+    @Override
+    public void physicalEntityUpdated(PhysicalEntity physicalEntity) {
+        Integer slot = slots.get(physicalEntity.getEntityId());
+        if (slot != null) {
+            write(slot, physicalEntity);
+        }
+    }
+
+    @Override
+    public void physicalEntityRemoved(PhysicalEntity physicalEntity) {
+        Integer slot = slots.remove(physicalEntity.getEntityId());
+        if (slot == null) {
+            return;
+        }
+        // move the last physical entity in the free slot
+        int last = --size;
+        if (slot != last) {
+            entityIds[slot] = entityIds[last];
+            System.arraycopy(locations, last * 3, locations, slot * 3, 3);
+            System.arraycopy(rotations, last * 4, rotations, slot * 4, 4);
+            System.arraycopy(linearVelocities, last * 3, linearVelocities, slot * 3, 3);
+            System.arraycopy(angularVelocities, last * 3, angularVelocities, slot * 3, 3);
+            radii[slot] = radii[last];
+            slots.put(entityIds[slot], slot);
+        }
+        entityIds[last] = null;
+        changed = true;
+    }
+
+    @Override
+    public void endFrame() {
+        if (changed) {
+            publish();
+        }
+    }
+
+    private void write(int slot, PhysicalEntity physicalEntity) {
+        physicalEntity.getLocation(tempVector);
+        locations[slot * 3] = tempVector.x;
+        locations[slot * 3 + 1] = tempVector.y;
+        locations[slot * 3 + 2] = tempVector.z;
+        physicalEntity.getRotation(tempRotation);
+        rotations[slot * 4] = tempRotation.getX();
+        rotations[slot * 4 + 1] = tempRotation.getY();
+        rotations[slot * 4 + 2] = tempRotation.getZ();
+        rotations[slot * 4 + 3] = tempRotation.getW();
+        if (physicalEntity.getPhysicalObject() instanceof PhysicsRigidBody) {
+            PhysicsRigidBody body = (PhysicsRigidBody) physicalEntity.getPhysicalObject();
+            body.getLinearVelocity(tempVector);
+            set(linearVelocities, slot, tempVector);
+            body.getAngularVelocity(tempVector);
+            set(angularVelocities, slot, tempVector);
+        }
+        changed = true;
+    }
+
+    private void publish() {
+        PhysicsSnapshot snapshot = claim();
+        snapshot.write(bulletSystem.getFrame(), size, entityIds, locations, rotations, linearVelocities,
+                angularVelocities, radii, cellSize);
+        snapshot.references.set(0);
+        current = snapshot;
+        changed = false;
+    }
+
+    /**
+     * Returns a snapshot that isn't published or acquired, and marks it as being written.
+     */
+    private PhysicsSnapshot claim() {
+        for (PhysicsSnapshot snapshot : snapshots) {
+            if (snapshot != current && snapshot.references.compareAndSet(0, PhysicsSnapshot.WRITING)) {
+                return snapshot;
+            }
+        }
+        PhysicsSnapshot snapshot = new PhysicsSnapshot();
+        snapshot.references.set(PhysicsSnapshot.WRITING);
+        snapshots.add(snapshot);
+        LOG.debug("Created snapshot {}, the other snapshots are acquired", snapshots.size());
+        return snapshot;
+    }
+
+    private void grow() {
+        int capacity = entityIds.length * 2;
+        entityIds = Arrays.copyOf(entityIds, capacity);
+        locations = Arrays.copyOf(locations, capacity * 3);
+        rotations = Arrays.copyOf(rotations, capacity * 4);
+        linearVelocities = Arrays.copyOf(linearVelocities, capacity * 3);
+        angularVelocities = Arrays.copyOf(angularVelocities, capacity * 3);
+        radii = Arrays.copyOf(radii, capacity);
+    }
+
+    private static void set(float[] values, int slot, Vector3f value) {
+        values[slot * 3] = value.x;
+        values[slot * 3 + 1] = value.y;
+        values[slot * 3 + 2] = value.z;
+    }
+
+}
@@ -0,0 +1,55 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Vector3f;
+
+/**
+ * Divides the world in regions that are each simulated in their own {@link com.jme3.bullet.PhysicsSpace} by the
+ * {@link BulletSystem}. Physical entities are placed in the partition of their location and migrated to another
+ * partition when they move into its region.
+ * A physical object only exists in one physics space. A physical entity that overlaps the region of another partition
+ * ({@link #overlaps(int, Vector3f, Vector3f)}) is mirrored in that partition by a {@link PartitionGhost}, so static
+ * geometry that crosses a region boundary exists on both sides, and physical entities on both sides of a boundary
+ * collide.
+ */
+public interface PhysicsSpacePartitioner {
+
+    /**
+     * The amount of partitions, each partition gets its own physics space.
+     * @return the amount of partitions
+     */
+    public int getPartitionCount();
+
+    /**
+     * Returns the partition of the given location
+     * @param location the location in the world
+     * @return the partition index, between 0 and {@link #getPartitionCount()}
+     */
+    public int getPartition(Vector3f location);
+
+    /**
+     * Returns the partition of a physical entity at the given location that is currently in the given partition.
+     * Implementations can override this method to prevent entities moving along a boundary from migrating back and
+     * forth between partitions.
+     * @param location the location of the physical entity
+     * @param currentPartition the current partition of the physical entity
+     * @return the partition index, between 0 and {@link #getPartitionCount()}
+     */
+    public default int getPartition(Vector3f location, int currentPartition) {
+        return getPartition(location);
+    }
+
+    /**
+     * Returns true when the given bounds overlap the region of the partition, including the distance the physical
+     * entities of the partition can move outside of it before they are migrated. A physical entity is mirrored in
+     * each other partition its bounds overlap. The default implementation doesn't mirror physical entities, they only
+     * exist in their own partition.
+     * @param partition the partition index
+     * @param min the minimum bounds in the world
+     * @param max the maximum bounds in the world
+     * @return true when the bounds overlap the partition
+     */
+    public default boolean overlaps(int partition, Vector3f min, Vector3f max) {
+        return false;
+    }
+
+}
@@ -0,0 +1,210 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityId;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The file the physical state of a {@link BulletSystem} is saved in, see {@link BulletSystem#saveState(Path)}.
+ *
+ * The file starts with a header:
+ * <ul>
+ *     <li>magic (int)</li>
+ *     <li>version (int), bumped when the file layout changes</li>
+ *     <li>the shape ids (int count, each an int length + UTF-8 bytes)</li>
+ *     <li>the amount of physical entities (int)</li>
+ * </ul>
+ * Followed by each physical entity: entity id (long), shape index (int), mass (float), location (3 floats), rotation
+ * matrix (9 floats), linear and angular velocity (3 floats each), linear and angular factor (3 floats each) and flags
+ * (byte). The flags tell whether the physical entity was active, was spawned in bulk and has a driver of which the
+ * state is saved. When the physical entity has a {@link BasePhysicalEntityDriver}, the move direction, view direction (3
+ * floats each), move speed, turning speed, idle speed and idle angle (float each) of the driver follow. The state of a
+ * subclass of it isn't saved, it can't be restored as a {@link BasePhysicalEntityDriver}.
+ */
+class PhysicsStateFile {
+
+    private static final int MAGIC = 0x4A455350;
+    static final int VERSION = 2;
+
+    // the flags of a physical entity
+    private static final int ACTIVE = 1;
+    private static final int SPAWNED = 2;
+    private static final int BASE_DRIVER = 4;
+
+    private PhysicsStateFile() {
+    }
+
+    /**
+     * Writes the physical entities added by the entity container and the ones spawned in bulk to a temporary file
+     * first, so a partially written file is never restored.
+     * @return the amount of drivers of which the state could not be saved
+     */
+    static int write(Path file, List<RigidBodyEntity> containerEntities, List<RigidBodyEntity> spawnedEntities) throws IOException {
+        List<RigidBodyEntity> entities = new ArrayList<>(containerEntities.size() + spawnedEntities.size());
+        entities.addAll(containerEntities);
+        entities.addAll(spawnedEntities);
+        Map<String, Integer> shapeIndexes = new HashMap<>();
+        List<String> shapeIds = new ArrayList<>();
+        for (RigidBodyEntity entity : entities) {
+            if (shapeIndexes.putIfAbsent(entity.physicalShape.getShapeId(), shapeIds.size()) == null) {
+                shapeIds.add(entity.physicalShape.getShapeId());
+            }
+        }
+
+        int unsavedDrivers = 0;
+        Path directory = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, "state", ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)) {
+            DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(shapeIds.size());
+            for (String shapeId : shapeIds) {
+                byte[] bytes = shapeId.getBytes(StandardCharsets.UTF_8);
+                data.writeInt(bytes.length);
+                data.write(bytes);
+            }
+            data.writeInt(entities.size());
+
+            Vector3f vector = new Vector3f();
+            Matrix3f matrix = new Matrix3f();
+            for (int i = 0; i < entities.size(); i++) {
+                RigidBodyEntity entity = entities.get(i);
+                data.writeLong(entity.getEntityId().getId());
+                data.writeInt(shapeIndexes.get(entity.physicalShape.getShapeId()));
+                data.writeFloat(entity.getMass());
+                // the rotation matrix converts back to exactly the same transform
+                putVector(data, entity.getPhysicsLocation(vector));
+                entity.getPhysicsRotationMatrix(matrix);
+                for (int row = 0; row < 3; row++) {
+                    for (int column = 0; column < 3; column++) {
+                        data.writeFloat(matrix.get(row, column));
+                    }
+                }
+                entity.getLinearVelocity(vector);
+                putVector(data, vector);
+                entity.getAngularVelocity(vector);
+                putVector(data, vector);
+                putVector(data, entity.getLinearFactor());
+                putVector(data, entity.getAngularFactor(vector));
+
+                PhysicalEntityDriver driver = entity.getPhysicalEntityDriver();
+                boolean baseDriver = driver != null && driver.getClass() == BasePhysicalEntityDriver.class;
+                int flags = (entity.isActive() ? ACTIVE : 0) | (i >= containerEntities.size() ? SPAWNED : 0) | (baseDriver ? BASE_DRIVER : 0);
+                data.writeByte(flags);
+                if (baseDriver) {
+                    BasePhysicalEntityDriver base = (BasePhysicalEntityDriver) driver;
+                    putVector(data, base.getMoveDirection());
+                    putVector(data, base.getViewDirection());
+                    data.writeFloat(base.getMoveSpeed());
+                    data.writeFloat(base.getTurningSpeed());
+                    data.writeFloat(base.getIdleSpeed());
+                    data.writeFloat(base.getIdleAngle());
+                } else if (driver != null) {
+                    unsavedDrivers++;
+                }
+            }
+            data.flush();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return unsavedDrivers;
+    }
+
+    /**
+     * Reads the physical entities in the given lists, the collision shape of each shape id is retrieved once. The
+     * physical entities are not part of a bullet system yet.
+     */
+    static void read(Path file, PhysicalShapeRegistry shapeRegistry, List<RigidBodyEntity> containerEntities,
+                     List<RigidBodyEntity> spawnedEntities) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException(file + " is not a physics state of version " + VERSION);
+            }
+            PhysicalShape[] shapes = new PhysicalShape[buffer.getInt()];
+            CollisionShape[] collisionShapes = new CollisionShape[shapes.length];
+            for (int i = 0; i < shapes.length; i++) {
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                shapes[i] = new PhysicalShape(new String(bytes, StandardCharsets.UTF_8));
+                collisionShapes[i] = shapeRegistry.get(shapes[i]);
+            }
+
+            int count = buffer.getInt();
+            Vector3f vector = new Vector3f();
+            Matrix3f matrix = new Matrix3f();
+            for (int i = 0; i < count; i++) {
+                EntityId entityId = new EntityId(buffer.getLong());
+                int shape = buffer.getInt();
+                RigidBodyEntity entity = new RigidBodyEntity(entityId, collisionShapes[shape], new Mass(buffer.getFloat()));
+                entity.physicalShape = shapes[shape];
+                entity.setPhysicsLocation(getVector(buffer, vector));
+                for (int row = 0; row < 3; row++) {
+                    for (int column = 0; column < 3; column++) {
+                        matrix.set(row, column, buffer.getFloat());
+                    }
+                }
+                entity.setPhysicsRotation(matrix);
+                Vector3f linearVelocity = getVector(buffer, new Vector3f());
+                Vector3f angularVelocity = getVector(buffer, new Vector3f());
+                Vector3f linearFactor = getVector(buffer, new Vector3f());
+                Vector3f angularFactor = getVector(buffer, new Vector3f());
+
+                int flags = buffer.get();
+                if ((flags & BASE_DRIVER) != 0) {
+                    BasePhysicalEntityDriver driver = new BasePhysicalEntityDriver();
+                    driver.setMoveDirection(getVector(buffer, new Vector3f()));
+                    driver.setViewDirection(getVector(buffer, new Vector3f()));
+                    driver.setMoveSpeed(buffer.getFloat());
+                    driver.setTurningSpeed(buffer.getFloat());
+                    driver.setIdleSpeed(buffer.getFloat());
+                    driver.setIdleAngle(buffer.getFloat());
+                    entity.setPhysicalEntityDriver(driver);
+                }
+                // the driver can change the factors when it's initialized
+                entity.setLinearFactor(linearFactor);
+                entity.setAngularFactor(angularFactor);
+                if ((flags & ACTIVE) != 0) {
+                    entity.setLinearVelocity(linearVelocity);
+                    entity.setAngularVelocity(angularVelocity);
+                }
+                if ((flags & SPAWNED) != 0) {
+                    spawnedEntities.add(entity);
+                } else {
+                    containerEntities.add(entity);
+                }
+            }
+        }
+    }
+
+    private static void putVector(DataOutputStream data, Vector3f vector) throws IOException {
+        data.writeFloat(vector.x);
+        data.writeFloat(vector.y);
+        data.writeFloat(vector.z);
+    }
+
+    private static Vector3f getVector(ByteBuffer buffer, Vector3f store) {
+        return store.set(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+    }
+
+}
@@ -0,0 +1,69 @@
+package org.impstack.es.bullet;
+
+import com.simsilica.es.ComponentFilter;
+import com.simsilica.es.EntityComponent;
+import com.simsilica.es.EntityData;
+import com.simsilica.es.EntityId;
+
+/**
+ * Decides which physical entities are reported by the queries of a {@link PhysicsQueryService}.
+ */
+@FunctionalInterface
+public interface QueryFilter {
+
+    /**
+     * @param entity the physical entity that is hit
+     * @return true when the physical entity should be part of the result
+     */
+    boolean accept(PhysicalEntity entity);
+
+    /**
+     * Accepts the physical entities that are accepted by this filter and the other filter.
+     * @param other the other filter
+     * @return the combined filter
+     */
+    default QueryFilter and(QueryFilter other) {
+        return entity -> accept(entity) && other.accept(entity);
+    }
+
+    /**
+     * Accepts all physical entities except the given entity.
+     * @param entityId the entity to ignore
+     * @return the filter
+     */
+    static QueryFilter excluding(EntityId entityId) {
+        return entity -> !entityId.equals(entity.getEntityId());
+    }
+
+    /**
+     * Accepts the physical entities of which the entity has all the given components.
+     * @param entityData the entity data to read the components from
+     * @param types the component types
+     * @return the filter
+     */
+    @SafeVarargs
+    static QueryFilter withComponents(EntityData entityData, Class<? extends EntityComponent>... types) {
+        return entity -> {
+            for (Class<? extends EntityComponent> type : types) {
+                if (entityData.getComponent(entity.getEntityId(), type) == null) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    /**
+     * Accepts the physical entities of which the entity has a component that matches the component filter.
+     * @param entityData the entity data to read the component from
+     * @param filter the component filter
+     * @return the filter
+     */
+    static QueryFilter matching(EntityData entityData, ComponentFilter<?> filter) {
+        return entity -> {
+            EntityComponent component = entityData.getComponent(entity.getEntityId(), filter.getComponentType());
+            return component != null && filter.evaluate(component);
+        };
+    }
+
+}
@@ -0,0 +1,145 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityId;
+
+/**
+ * A reusable buffer for the hits of a query of the {@link PhysicsQueryService}. The hits are sorted by hit fraction,
+ * the closest hit first. When more physical entities are hit than the capacity of the buffer, only the closest ones are
+ * kept. Each physical entity is reported once, with its closest hit.
+ */
+public class QueryResults {
+
+    private final PhysicalEntity[] entities;
+    private final float[] fractions;
+    // the hit points and normals (x, y, z)
+    private final float[] points;
+    private final float[] normals;
+    private int size;
+
+    public QueryResults(int capacity) {
+        entities = new PhysicalEntity[capacity];
+        fractions = new float[capacity];
+        points = new float[capacity * 3];
+        normals = new float[capacity * 3];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getCapacity() {
+        return entities.length;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            entities[i] = null;
+        }
+        size = 0;
+    }
+
+    public EntityId getEntityId(int index) {
+        return getPhysicalEntity(index).getEntityId();
+    }
+
+    public PhysicalEntity getPhysicalEntity(int index) {
+        checkIndex(index);
+        return entities[index];
+    }
+
+    /**
+     * The fraction of the ray or sweep where the hit occurs, between 0 and 1.
+     * @param index the index of the hit
+     * @return the hit fraction
+     */
+    public float getHitFraction(int index) {
+        checkIndex(index);
+        return fractions[index];
+    }
+
+    /**
+     * The location of the hit. For a sweep test this is the location of the swept shape at the time of the hit.
+     * @param index the index of the hit
+     * @param store the vector to store the result in
+     * @return the location
+     */
+    public Vector3f getHitPoint(int index, Vector3f store) {
+        checkIndex(index);
+        return store.set(points[index * 3], points[index * 3 + 1], points[index * 3 + 2]);
+    }
+
+    /**
+     * The normal of the hit surface in world space.
+     * @param index the index of the hit
+     * @param store the vector to store the result in
+     * @return the normal
+     */
+    public Vector3f getHitNormal(int index, Vector3f store) {
+        checkIndex(index);
+        return store.set(normals[index * 3], normals[index * 3 + 1], normals[index * 3 + 2]);
+    }
+
+    /**
+     * Adds a hit, keeping the hits sorted and the closest hit of each physical entity.
+     */
+    void add(PhysicalEntity entity, float fraction, Vector3f point, Vector3f normal) {
+        for (int i = 0; i < size; i++) {
+            if (entities[i] == entity) {
+                if (fractions[i] <= fraction) {
+                    return;
+                }
+                remove(i);
+                break;
+            }
+        }
+
+        int index = size;
+        while (index > 0 && fractions[index - 1] > fraction) {
+            index--;
+        }
+        if (index == entities.length) {
+            // further away than all hits in a full buffer
+            return;
+        }
+        int last = Math.min(size, entities.length - 1);
+        if (last > index) {
+            System.arraycopy(entities, index, entities, index + 1, last - index);
+            System.arraycopy(fractions, index, fractions, index + 1, last - index);
+            System.arraycopy(points, index * 3, points, (index + 1) * 3, (last - index) * 3);
+            System.arraycopy(normals, index * 3, normals, (index + 1) * 3, (last - index) * 3);
+        }
+        entities[index] = entity;
+        fractions[index] = fraction;
+        set(points, index, point);
+        set(normals, index, normal);
+        size = Math.min(size + 1, entities.length);
+    }
+
+    private void remove(int index) {
+        int moved = size - index - 1;
+        System.arraycopy(entities, index + 1, entities, index, moved);
+        System.arraycopy(fractions, index + 1, fractions, index, moved);
+        System.arraycopy(points, (index + 1) * 3, points, index * 3, moved * 3);
+        System.arraycopy(normals, (index + 1) * 3, normals, index * 3, moved * 3);
+        size--;
+        entities[size] = null;
+    }
+
+    private static void set(float[] values, int index, Vector3f value) {
+        values[index * 3] = value.x;
+        values[index * 3 + 1] = value.y;
+        values[index * 3 + 2] = value.z;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+}
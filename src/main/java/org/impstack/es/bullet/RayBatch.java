@@ -0,0 +1,139 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityId;
+
+import java.util.Arrays;
+
+/**
+ * A reusable batch of rays that are tested at once with {@link PhysicsQueryService#raycast(RayBatch, QueryFilter)},
+ * for instance the line of sight checks of all agents. The closest hit of each ray is stored in the batch. The batch
+ * grows when needed, and doesn't allocate when it's cleared and filled again.
+ */
+public class RayBatch {
+
+    // the start and end points of the rays (x, y, z)
+    private float[] from;
+    private float[] to;
+    // the entity each ray ignores, typically the entity the ray starts from
+    private EntityId[] ignored;
+    // the closest hit of each ray
+    private PhysicalEntity[] hits;
+    private float[] hitFractions;
+    private int size;
+
+    public RayBatch() {
+        this(64);
+    }
+
+    public RayBatch(int capacity) {
+        from = new float[capacity * 3];
+        to = new float[capacity * 3];
+        ignored = new EntityId[capacity];
+        hits = new PhysicalEntity[capacity];
+        hitFractions = new float[capacity];
+    }
+
+    /**
+     * Adds a ray to the batch.
+     * @param from the start of the ray
+     * @param to the end of the ray
+     * @return the index of the ray
+     */
+    public int add(Vector3f from, Vector3f to) {
+        return add(from, to, null);
+    }
+
+    /**
+     * Adds a ray that ignores the given entity.
+     * @param from the start of the ray
+     * @param to the end of the ray
+     * @param ignored the entity to ignore or null
+     * @return the index of the ray
+     */
+    public int add(Vector3f from, Vector3f to, EntityId ignored) {
+        if (size == this.ignored.length) {
+            grow();
+        }
+        int index = size++;
+        set(this.from, index, from);
+        set(this.to, index, to);
+        this.ignored[index] = ignored;
+        hits[index] = null;
+        hitFractions[index] = 1f;
+        return index;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(ignored, 0, size, null);
+        Arrays.fill(hits, 0, size, null);
+        size = 0;
+    }
+
+    public Vector3f getFrom(int index, Vector3f store) {
+        return store.set(from[index * 3], from[index * 3 + 1], from[index * 3 + 2]);
+    }
+
+    public Vector3f getTo(int index, Vector3f store) {
+        return store.set(to[index * 3], to[index * 3 + 1], to[index * 3 + 2]);
+    }
+
+    public EntityId getIgnored(int index) {
+        return ignored[index];
+    }
+
+    /**
+     * @param index the index of the ray
+     * @return true when the ray hit a physical entity
+     */
+    public boolean hasHit(int index) {
+        return hits[index] != null;
+    }
+
+    /**
+     * The closest physical entity hit by the ray.
+     * @param index the index of the ray
+     * @return the physical entity or null when nothing was hit
+     */
+    public PhysicalEntity getHit(int index) {
+        return hits[index];
+    }
+
+    public EntityId getHitEntityId(int index) {
+        return hits[index] != null ? hits[index].getEntityId() : null;
+    }
+
+    /**
+     * The fraction of the ray where the closest hit occurs, 1 when nothing was hit.
+     * @param index the index of the ray
+     * @return the hit fraction
+     */
+    public float getHitFraction(int index) {
+        return hitFractions[index];
+    }
+
+    void setHit(int index, PhysicalEntity hit, float hitFraction) {
+        hits[index] = hit;
+        hitFractions[index] = hitFraction;
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, ignored.length * 2);
+        from = Arrays.copyOf(from, capacity * 3);
+        to = Arrays.copyOf(to, capacity * 3);
+        ignored = Arrays.copyOf(ignored, capacity);
+        hits = Arrays.copyOf(hits, capacity);
+        hitFractions = Arrays.copyOf(hitFractions, capacity);
+    }
+
+    private static void set(float[] values, int index, Vector3f value) {
+        values[index * 3] = value.x;
+        values[index * 3 + 1] = value.y;
+        values[index * 3 + 2] = value.z;
+    }
+
+}
@@ -8,6 +8,11 @@ import com.simsilica.es.EntityId;
 
 /**
  * A bullet rigidbody object directly linked to an entity.
+ * The {@link BulletSystem} takes a snapshot of the transform of the rigidbody after each physics calculation. The
+ * location and rotation accessors return this snapshot when it's taken in the current frame, and only read the
+ * transform from the physics space otherwise. Use the store variants to read the transform without allocating objects.
+ * When the physics are simulated with a fixed time step, the transform before the last physics step is kept as well, and
+ * the interpolated accessors blend between both using the interpolation alpha of the {@link BulletSystem}.
  *
  * @author remy
  * @since 10/10/18
@@ -16,6 +21,42 @@ public class RigidBodyEntity extends PhysicsRigidBody implements PhysicalEntity<
 
     private final EntityId entityId;
     private PhysicalEntityDriver driver;
+    // the system managing this entity, notified when the driver changes
+    BulletSystem bulletSystem;
+    // true when the entity is part of the active bodies of the bulletSystem
+    boolean inActiveSet;
+    // the index in the driven entities of the bulletSystem, -1 when the entity has no driver
+    int drivenIndex = -1;
+    // true when the entity is removed from the physics space
+    boolean removed;
+    // the partition of the physics space the entity is part of
+    int partition;
+    // the physical shape the collision shape was retrieved with
+    PhysicalShape physicalShape;
+    // true when the entity waits for its collision shape and isn't added to the physics space
+    boolean parked;
+    // the cell the entity is merged into, instead of being added to the physics space itself
+    StaticCellBody staticCell;
+    // the copies of the entity in the physics spaces of other partitions by partition, null when it has none
+    PartitionGhost[] ghosts;
+    // the radius of a sphere around the location that contains the collision shape, to find the partitions it overlaps
+    float boundingRadius;
+    // snapshot of the transform and the frame it was taken in
+    private final Vector3f snapshotLocation = new Vector3f();
+    private final Quaternion snapshotRotation = new Quaternion();
+    private long snapshotFrame = -1;
+    // the transform before the last physics step and the frame of the snapshot it precedes
+    private final Vector3f previousLocation = new Vector3f();
+    private final Quaternion previousRotation = new Quaternion();
+    private long previousFrame = -1;
+    // the frame the entity was moved to its spawn position in
+    private long movedFrame = -1;
+    // buffered velocity writes, used when the driver is updated on another thread
+    private boolean deferVelocityWrites;
+    private boolean linearVelocityDeferred;
+    private boolean angularVelocityDeferred;
+    private final Vector3f deferredLinearVelocity = new Vector3f();
+    private final Vector3f deferredAngularVelocity = new Vector3f();
 
     public RigidBodyEntity(EntityId entityId, CollisionShape shape, Mass mass) {
         super(shape, mass.getMass());
@@ -34,12 +75,69 @@ public class RigidBodyEntity extends PhysicsRigidBody implements PhysicalEntity<
 
     @Override
     public Vector3f getLocation() {
-        return getPhysicsLocation();
+        return getLocation(new Vector3f());
+    }
+
+    @Override
+    public Vector3f getLocation(Vector3f store) {
+        if (isSnapshotCurrent()) {
+            return store.set(snapshotLocation);
+        }
+        return getPhysicsLocation(store);
     }
 
     @Override
     public Quaternion getRotation() {
-        return getPhysicsRotation();
+        return getRotation(new Quaternion());
+    }
+
+    @Override
+    public Quaternion getRotation(Quaternion store) {
+        if (isSnapshotCurrent()) {
+            return store.set(snapshotRotation);
+        }
+        return getPhysicsRotation(store);
+    }
+
+    /**
+     * The location before the last physics step, or the current location when it isn't known.
+     * @param store the vector to store the location in
+     * @return the store vector
+     */
+    public Vector3f getPreviousLocation(Vector3f store) {
+        if (isPreviousCurrent()) {
+            return store.set(previousLocation);
+        }
+        return getLocation(store);
+    }
+
+    /**
+     * The rotation before the last physics step, or the current rotation when it isn't known.
+     * @param store the quaternion to store the rotation in
+     * @return the store quaternion
+     */
+    public Quaternion getPreviousRotation(Quaternion store) {
+        if (isPreviousCurrent()) {
+            return store.set(previousRotation);
+        }
+        return getRotation(store);
+    }
+
+    @Override
+    public Vector3f getInterpolatedLocation(Vector3f store) {
+        if (isPreviousCurrent()) {
+            return store.interpolateLocal(previousLocation, snapshotLocation, bulletSystem.getInterpolationAlpha());
+        }
+        return getLocation(store);
+    }
+
+    @Override
+    public Quaternion getInterpolatedRotation(Quaternion store) {
+        if (isPreviousCurrent()) {
+            store.set(previousRotation).nlerp(snapshotRotation, bulletSystem.getInterpolationAlpha());
+            return store;
+        }
+        return getRotation(store);
     }
 
     @Override
@@ -60,6 +158,108 @@ public class RigidBodyEntity extends PhysicsRigidBody implements PhysicalEntity<
         if (this.driver != null) {
             this.driver.initialize(this);
         }
+        if (bulletSystem != null) {
+            bulletSystem.physicalEntityDriverChanged(this);
+        }
+    }
+
+    @Override
+    public void setLinearVelocity(Vector3f vec) {
+        if (deferVelocityWrites) {
+            deferredLinearVelocity.set(vec);
+            linearVelocityDeferred = true;
+            return;
+        }
+        super.setLinearVelocity(vec);
+        if (bulletSystem != null) {
+            bulletSystem.linearVelocitySet(this, vec);
+        }
+    }
+
+    @Override
+    public void setAngularVelocity(Vector3f vec) {
+        if (deferVelocityWrites) {
+            deferredAngularVelocity.set(vec);
+            angularVelocityDeferred = true;
+            return;
+        }
+        super.setAngularVelocity(vec);
+        if (bulletSystem != null) {
+            bulletSystem.angularVelocitySet(this, vec);
+        }
+    }
+
+    /**
+     * Buffers the velocity writes until {@link #applyDeferredVelocities()} is called.
+     */
+    void deferVelocities() {
+        deferVelocityWrites = true;
+    }
+
+    /**
+     * Applies the buffered velocity writes to the rigidbody. Should be called on the physics thread.
+     */
+    void applyDeferredVelocities() {
+        deferVelocityWrites = false;
+        if (linearVelocityDeferred) {
+            linearVelocityDeferred = false;
+            setLinearVelocity(deferredLinearVelocity);
+        }
+        if (angularVelocityDeferred) {
+            angularVelocityDeferred = false;
+            setAngularVelocity(deferredAngularVelocity);
+        }
+    }
+
+    /**
+     * Takes a snapshot of the transform of the rigidbody.
+     * @param frame the current frame of the bullet system
+     */
+    void snapshotTransform(long frame) {
+        getPhysicsLocation(snapshotLocation);
+        getPhysicsRotation(snapshotRotation);
+        snapshotFrame = frame;
+    }
+
+    /**
+     * Keeps the transform before the physics step that results in the given frame.
+     * @param frame the frame that will be simulated next
+     */
+    void snapshotPreviousTransform(long frame) {
+        if (isSnapshotCurrent()) {
+            // no physics step since the last snapshot
+            previousLocation.set(snapshotLocation);
+            previousRotation.set(snapshotRotation);
+        } else {
+            getPhysicsLocation(previousLocation);
+            getPhysicsRotation(previousRotation);
+        }
+        previousFrame = frame;
+    }
+
+    /**
+     * True when the entity is moved to its spawn position in the current frame. Bullet doesn't wake up a static body
+     * when it's moved, a moved entity can be inactive.
+     * @return true when the entity is moved in the current frame
+     */
+    public boolean isMoved() {
+        return bulletSystem != null && bulletSystem.isSnapshotCurrent(movedFrame);
+    }
+
+    /**
+     * Marks the entity as moved to its spawn position.
+     * @param frame the current frame of the bullet system
+     */
+    void markMoved(long frame) {
+        movedFrame = frame;
+    }
+
+    private boolean isPreviousCurrent() {
+        return previousFrame == snapshotFrame && isSnapshotCurrent();
+    }
+
+    private boolean isSnapshotCurrent() {
+        return bulletSystem != null && bulletSystem.isSnapshotCurrent(snapshotFrame);
     }
 
     @Override
@@ -0,0 +1,303 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.export.FormatVersion;
+import com.jme3.export.binary.BinaryExporter;
+import com.jme3.export.binary.BinaryImporter;
+import com.jme3.math.Matrix4f;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.mesh.IndexBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A persistent cache of baked collision shapes in a directory. Each collision shape is stored in its own file, with the
+ * collision shape in the jME binary format, including the data that is expensive to create like the BVH of a mesh
+ * shape. A cached collision shape is memory-mapped when it's loaded.
+ *
+ * The file starts with a header:
+ * <ul>
+ *     <li>magic (int)</li>
+ *     <li>cache version (int), bumped when the file layout changes</li>
+ *     <li>jME binary format version (int)</li>
+ *     <li>shape id (int length + UTF-8 bytes)</li>
+ *     <li>source hash (int length + UTF-8 bytes), the hash of the content the collision shape was created from</li>
+ *     <li>collision shape length (int), followed by the collision shape</li>
+ * </ul>
+ * A cached collision shape is only used when the versions and shape id match, and the source hash matches when one is
+ * given. Use {@link #hash(Spatial)} to create the source hash of a model.
+ */
+public class ShapeCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ShapeCache.class);
+
+    private static final int MAGIC = 0x4A455343;
+    public static final int VERSION = 1;
+    public static final String EXTENSION = ".shape";
+    // the maximum size of the header that is read to check a cached collision shape
+    private static final int HEADER_BYTES = 4096;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final Path directory;
+
+    public ShapeCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Loads a cached collision shape.
+     * @param shapeId the shape id
+     * @param sourceHash the hash of the source content, or null to accept any cached collision shape
+     * @return the collision shape, or null when it isn't cached or the cached collision shape is outdated
+     */
+    public CollisionShape load(String shapeId, String sourceHash) {
+        Path file = getFile(shapeId);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (!readHeader(file, buffer, shapeId, sourceHash)) {
+                return null;
+            }
+            int length = buffer.getInt();
+            buffer.limit(buffer.position() + length);
+
+            CollisionShape collisionShape = (CollisionShape) new BinaryImporter().load(new ByteBufferInputStream(buffer));
+            LOG.trace("Loaded {} from {}", collisionShape, file);
+            return collisionShape;
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to load {} from {}", shapeId, file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether the cached collision shape is up to date, only the header of the file is read.
+     * @param shapeId the shape id
+     * @param sourceHash the hash of the source content, or null to accept any cached collision shape
+     * @return true when the collision shape is cached with the current versions and the given source hash
+     */
+    public boolean isCurrent(String shapeId, String sourceHash) {
+        Path file = getFile(shapeId);
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), HEADER_BYTES));
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read the header
+            }
+            buffer.flip();
+            return readHeader(file, buffer, shapeId, sourceHash);
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Unable to read the header of {}", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads the header of a cached collision shape, up to the length of the collision shape.
+     * @return true when the versions, shape id and source hash match
+     */
+    private static boolean readHeader(Path file, ByteBuffer buffer, String shapeId, String sourceHash) {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != FormatVersion.VERSION) {
+            LOG.debug("Ignoring {}, the cache version doesn't match", file);
+            return false;
+        }
+        if (!shapeId.equals(getString(buffer))) {
+            LOG.debug("Ignoring {}, the shape id doesn't match", file);
+            return false;
+        }
+        String cachedSourceHash = getString(buffer);
+        if (sourceHash != null && !sourceHash.equals(cachedSourceHash)) {
+            LOG.debug("Ignoring {}, the source hash doesn't match", file);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stores a collision shape in the cache, replacing the cached collision shape with the same id.
+     * @param shapeId the shape id
+     * @param sourceHash the hash of the source content or null
+     * @param collisionShape the collision shape
+     */
+    public void store(String shapeId, String sourceHash, CollisionShape collisionShape) {
+        Path file = getFile(shapeId);
+        try {
+            ByteArrayOutputStream shape = new ByteArrayOutputStream();
+            new BinaryExporter().save(collisionShape, shape);
+
+            Files.createDirectories(directory);
+            // write to a temporary file first, so a partially written file is never loaded
+            Path temp = Files.createTempFile(directory, "shape", ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                DataOutputStream data = new DataOutputStream(out);
+                data.writeInt(MAGIC);
+                data.writeInt(VERSION);
+                data.writeInt(FormatVersion.VERSION);
+                putString(data, shapeId);
+                putString(data, sourceHash != null ? sourceHash : "");
+                data.writeInt(shape.size());
+                shape.writeTo(data);
+                data.flush();
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.trace("Stored {} in {}", collisionShape, file);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to store {} in {}", shapeId, file, e);
+        }
+    }
+
+    /**
+     * The file of the collision shape with the given id. The characters of the shape id that are not safe in a file
+     * name are percent-encoded as their UTF-8 bytes, so each shape id has its own file.
+     * @param shapeId the shape id
+     * @return the file
+     */
+    public Path getFile(String shapeId) {
+        StringBuilder name = new StringBuilder(shapeId.length() + EXTENSION.length());
+        for (byte b : shapeId.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '.' || c == '_' || c == '-') {
+                name.append(c);
+            } else {
+                name.append('%').append(HEX[c >> 4]).append(HEX[c & 0xf]);
+            }
+        }
+        return directory.resolve(name.append(EXTENSION).toString());
+    }
+
+    /**
+     * Creates a hash of the geometry of a spatial: the world transforms, positions and indices of all geometries.
+     * @param spatial the spatial
+     * @return the hash
+     */
+    public static String hash(Spatial spatial) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            // the values are collected in a buffer that is passed to the digest when it's full
+            ByteBuffer scratch = ByteBuffer.allocate(8192);
+            spatial.depthFirstTraversal(child -> {
+                if (child instanceof Geometry) {
+                    hash(digest, scratch, (Geometry) child);
+                }
+            });
+            flush(digest, scratch);
+            StringBuilder result = new StringBuilder();
+            for (byte b : digest.digest()) {
+                result.append(String.format("%02x", b));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void hash(MessageDigest digest, ByteBuffer scratch, Geometry geometry) {
+        Matrix4f transform = geometry.getWorldMatrix();
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                ensureRemaining(digest, scratch);
+                scratch.putFloat(transform.get(row, column));
+            }
+        }
+
+        Mesh mesh = geometry.getMesh();
+        FloatBuffer positions = mesh.getFloatBuffer(VertexBuffer.Type.Position);
+        if (positions != null) {
+            for (int i = 0; i < positions.limit(); i++) {
+                ensureRemaining(digest, scratch);
+                scratch.putFloat(positions.get(i));
+            }
+        }
+        IndexBuffer indices = mesh.getIndexBuffer();
+        if (indices != null) {
+            for (int i = 0; i < indices.size(); i++) {
+                ensureRemaining(digest, scratch);
+                scratch.putInt(indices.get(i));
+            }
+        }
+    }
+
+    private static void ensureRemaining(MessageDigest digest, ByteBuffer scratch) {
+        if (scratch.remaining() < 4) {
+            flush(digest, scratch);
+        }
+    }
+
+    private static void flush(MessageDigest digest, ByteBuffer scratch) {
+        digest.update(scratch.array(), 0, scratch.position());
+        scratch.clear();
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putString(DataOutputStream data, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeInt(bytes.length);
+        data.write(bytes);
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        // reads the remaining bytes of a buffer
+
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+package org.impstack.es.bullet;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.asset.plugins.FileLocator;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.scene.Spatial;
+import com.jme3.system.NativeLibraryLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Bakes the collision shapes of all models in a directory into a {@link ShapeCache}. The shape id of a model is its
+ * path relative to the model directory, the same path that is used to load it with an {@link AssetManager} that has the
+ * model directory as root. Models of which the cached collision shape is up to date are skipped.
+ *
+ * Usage: ShapeCacheBaker &lt;model directory&gt; &lt;cache directory&gt; [--dynamic]
+ * With --dynamic, dynamic mesh shapes (convex hulls) are created instead of static mesh shapes.
+ */
+public class ShapeCacheBaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ShapeCacheBaker.class);
+
+    // the model formats that are baked
+    private static final List<String> EXTENSIONS = Arrays.asList("j3o", "obj", "gltf", "glb");
+
+    private final Path modelDirectory;
+    private final ShapeCache shapeCache;
+    private final AssetManager assetManager;
+    private boolean dynamic = false;
+
+    public ShapeCacheBaker(Path modelDirectory, ShapeCache shapeCache) {
+        this.modelDirectory = modelDirectory;
+        this.shapeCache = shapeCache;
+        this.assetManager = new DesktopAssetManager(true);
+        this.assetManager.registerLocator(modelDirectory.toAbsolutePath().toString(), FileLocator.class);
+    }
+
+    public boolean isDynamic() {
+        return dynamic;
+    }
+
+    /**
+     * Create dynamic mesh shapes instead of static mesh shapes.
+     * @param dynamic true to create dynamic mesh shapes
+     */
+    public void setDynamic(boolean dynamic) {
+        this.dynamic = dynamic;
+    }
+
+    /**
+     * Bakes all models in the model directory.
+     * @return the amount of collision shapes that were baked
+     * @throws IOException when the model directory can't be read
+     */
+    public int bake() throws IOException {
+        List<Path> models;
+        try (Stream<Path> files = Files.walk(modelDirectory)) {
+            models = files.filter(Files::isRegularFile).filter(ShapeCacheBaker::isModel).collect(Collectors.toList());
+        }
+
+        int baked = 0;
+        for (Path model : models) {
+            String shapeId = modelDirectory.relativize(model).toString().replace('\\', '/');
+            try {
+                if (bake(shapeId)) {
+                    baked++;
+                }
+            } catch (RuntimeException e) {
+                LOG.error("Unable to bake {}", shapeId, e);
+            }
+        }
+        return baked;
+    }
+
+    /**
+     * Bakes a single model.
+     * @param shapeId the path of the model relative to the model directory
+     * @return true when the collision shape was baked, false when the cached collision shape is up to date
+     */
+    public boolean bake(String shapeId) {
+        Spatial spatial = assetManager.loadModel(shapeId);
+        String sourceHash = ShapeCache.hash(spatial);
+        if (shapeCache.isCurrent(shapeId, sourceHash)) {
+            return false;
+        }
+
+        CollisionShape collisionShape = dynamic ? CollisionShapeHelper.createDynamicMeshShape(spatial) : CollisionShapeHelper.createMeshShape(spatial);
+        shapeCache.store(shapeId, sourceHash, collisionShape);
+        return true;
+    }
+
+    private static boolean isModel(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: ShapeCacheBaker <model directory> <cache directory> [--dynamic]");
+            System.exit(1);
+        }
+
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+
+        ShapeCacheBaker baker = new ShapeCacheBaker(Paths.get(args[0]), new ShapeCache(Paths.get(args[1])));
+        baker.setDynamic(args.length > 2 && "--dynamic".equals(args[2]));
+
+        long start = System.currentTimeMillis();
+        int baked = baker.bake();
+        System.out.println("Baked " + baked + " collision shapes in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+}
@@ -0,0 +1,41 @@
+package org.impstack.es.bullet;
+
+import com.simsilica.es.EntityComponent;
+
+/**
+ * An entity component specifying the sleeping thresholds of a physical entity. A body goes to sleep when its linear
+ * and angular velocity stay below the thresholds for the deactivation time of bullet. Higher thresholds let a body go
+ * to sleep sooner, thresholds of zero keep the body awake. When the component is removed, the default thresholds of
+ * bullet are restored.
+ */
+public class SleepProfile implements EntityComponent {
+
+    // the default thresholds of a bullet rigidbody
+    public static final float DEFAULT_LINEAR_THRESHOLD = 0.8f;
+    public static final float DEFAULT_ANGULAR_THRESHOLD = 1f;
+
+    private final float linearThreshold;
+    private final float angularThreshold;
+
+    public SleepProfile(float linearThreshold, float angularThreshold) {
+        this.linearThreshold = linearThreshold;
+        this.angularThreshold = angularThreshold;
+    }
+
+    public float getLinearThreshold() {
+        return linearThreshold;
+    }
+
+    public float getAngularThreshold() {
+        return angularThreshold;
+    }
+
+    @Override
+    public String toString() {
+        return "SleepProfile{" +
+                "linearThreshold=" + linearThreshold +
+                ", angularThreshold=" + angularThreshold +
+                '}';
+    }
+
+}
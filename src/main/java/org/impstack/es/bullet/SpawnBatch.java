@@ -0,0 +1,73 @@
+package org.impstack.es.bullet;
+
+import com.simsilica.es.EntityId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A batch of physical entities that are spawned at once with {@link BulletSystem#spawn(SpawnBatch)}, without going
+ * through the entity components. A batch should not be changed after it's passed to the system.
+ */
+public class SpawnBatch {
+
+    private final List<EntityId> entityIds;
+    private final List<PhysicalShape> shapes;
+    private final List<Mass> masses;
+    private final List<SpawnPosition> positions;
+
+    public SpawnBatch() {
+        this(64);
+    }
+
+    public SpawnBatch(int capacity) {
+        entityIds = new ArrayList<>(capacity);
+        shapes = new ArrayList<>(capacity);
+        masses = new ArrayList<>(capacity);
+        positions = new ArrayList<>(capacity);
+    }
+
+    /**
+     * Adds a physical entity to the batch.
+     * @param entityId the entity
+     * @param shape the shape of the physical entity
+     * @param mass the mass of the physical entity
+     * @param position the spawn position of the physical entity
+     * @return this batch
+     */
+    public SpawnBatch add(EntityId entityId, PhysicalShape shape, Mass mass, SpawnPosition position) {
+        entityIds.add(entityId);
+        shapes.add(shape);
+        masses.add(mass);
+        positions.add(position);
+        return this;
+    }
+
+    public int size() {
+        return entityIds.size();
+    }
+
+    public EntityId getEntityId(int index) {
+        return entityIds.get(index);
+    }
+
+    public PhysicalShape getShape(int index) {
+        return shapes.get(index);
+    }
+
+    public Mass getMass(int index) {
+        return masses.get(index);
+    }
+
+    public SpawnPosition getPosition(int index) {
+        return positions.get(index);
+    }
+
+    @Override
+    public String toString() {
+        return "SpawnBatch{" +
+                "size=" + size() +
+                '}';
+    }
+
+}
@@ -0,0 +1,233 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityId;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Decodes the state encoded by a {@link StateEncoder}. The decoded states are kept in a history, so a state can be
+ * decoded against any baseline that was acknowledged to the encoder and is still in the history. The last decoded
+ * state is read by index or by entity id, reading it doesn't allocate.
+ *
+ * The decoder isn't thread safe.
+ */
+public class StateDecoder {
+
+    private final StateQuantizer quantizer;
+    private int historySize = 32;
+    // the decoded frames, the oldest first, and the frame with the highest sequence
+    private final ArrayDeque<StateFrame> history = new ArrayDeque<>();
+    private StateFrame current;
+    private final StateFrame empty = new StateFrame();
+    // true for the entities of the baseline that are removed or changed in the decoded frame
+    private boolean[] replaced = new boolean[64];
+
+    public StateDecoder(StateQuantizer quantizer) {
+        this.quantizer = quantizer;
+        current = new StateFrame();
+        history.add(current);
+        empty.sequence = -1;
+    }
+
+    public StateQuantizer getQuantizer() {
+        return quantizer;
+    }
+
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    /**
+     * Sets the amount of decoded frames that are kept as baseline, this should be at least the history size of the
+     * encoder.
+     * @param historySize the amount of frames
+     */
+    public void setHistorySize(int historySize) {
+        this.historySize = Math.max(1, historySize);
+        while (history.size() > this.historySize && history.peekFirst() != current) {
+            history.pollFirst();
+        }
+    }
+
+    /**
+     * Decodes a state, the state becomes the current state when its sequence is higher than the sequence of the current
+     * state. A state that is already in the history is skipped. The sequence should be acknowledged to the encoder, to
+     * be used as the baseline of the next states.
+     * @param buffer the encoded state, the position of the buffer is moved to the end of the state
+     * @return the sequence of the decoded state
+     * @throws IllegalStateException when the baseline of the state is no longer in the history
+     */
+    public int decode(ByteBuffer buffer) {
+        int sequence = buffer.getInt();
+        int baseline = buffer.getInt();
+        int removedCount = buffer.getInt();
+        int changedCount = buffer.getInt();
+        if (getFrame(sequence) != null) {
+            buffer.position(buffer.limit());
+            return sequence;
+        }
+        StateFrame base = getFrame(baseline);
+        if (base == null) {
+            throw new IllegalStateException("Baseline " + baseline + " of state " + sequence + " is no longer in the history");
+        }
+
+        if (replaced.length < base.size) {
+            replaced = new boolean[Math.max(base.size, replaced.length * 2)];
+        }
+        Arrays.fill(replaced, 0, base.size, false);
+
+        // the entities that are removed since the baseline
+        long id = 0;
+        for (int i = 0; i < removedCount; i++) {
+            id += zigZag(getVarLong(buffer));
+            int index = base.find(id);
+            if (index >= 0) {
+                replaced[index] = true;
+            }
+        }
+
+        // the entities that are added or changed since the baseline, followed by the unchanged entities
+        StateFrame frame = claim(base);
+        frame.clear();
+        frame.ensureCapacity(base.size + changedCount);
+        id = 0;
+        for (int i = 0; i < changedCount; i++) {
+            id += zigZag(getVarLong(buffer));
+            int flags = buffer.get();
+            int index = base.find(id);
+            if (flags == StateFrame.FULL) {
+                frame.add(id, (int) getVarLong(buffer), (int) getVarLong(buffer), (int) getVarLong(buffer), buffer.getInt());
+            } else {
+                if (index < 0) {
+                    throw new IllegalStateException("Entity " + id + " of state " + sequence + " is not in baseline " + baseline);
+                }
+                int x = base.positions[index * 3];
+                int y = base.positions[index * 3 + 1];
+                int z = base.positions[index * 3 + 2];
+                if ((flags & StateFrame.POSITION) != 0) {
+                    x += (int) zigZag(getVarLong(buffer));
+                    y += (int) zigZag(getVarLong(buffer));
+                    z += (int) zigZag(getVarLong(buffer));
+                }
+                int rotation = (flags & StateFrame.ROTATION) != 0 ? buffer.getInt() : base.rotations[index];
+                frame.add(id, x, y, z, rotation);
+            }
+            if (index >= 0) {
+                replaced[index] = true;
+            }
+        }
+        for (int i = 0; i < base.size; i++) {
+            if (!replaced[i]) {
+                frame.add(base.ids[i], base.positions[i * 3], base.positions[i * 3 + 1], base.positions[i * 3 + 2],
+                        base.rotations[i]);
+            }
+        }
+        frame.sequence = sequence;
+        frame.index();
+        history.addLast(frame);
+        if (sequence > current.sequence) {
+            current = frame;
+        }
+        while (history.size() > historySize && history.peekFirst() != current) {
+            history.pollFirst();
+        }
+        return sequence;
+    }
+
+    /**
+     * The sequence of the current state.
+     * @return the sequence number
+     */
+    public int getSequence() {
+        return current.sequence;
+    }
+
+    /**
+     * The amount of entities in the current state.
+     * @return the amount of entities
+     */
+    public int size() {
+        return current.size;
+    }
+
+    public EntityId getEntityId(int index) {
+        checkIndex(index);
+        return new EntityId(current.ids[index]);
+    }
+
+    /**
+     * The index of the entity in the current state.
+     * @param entityId the entity id
+     * @return the index, or -1 when the entity isn't in the state
+     */
+    public int indexOf(EntityId entityId) {
+        return current.find(entityId.getId());
+    }
+
+    public Vector3f getLocation(int index, Vector3f store) {
+        checkIndex(index);
+        int[] positions = current.positions;
+        return quantizer.dequantize(positions[index * 3], positions[index * 3 + 1], positions[index * 3 + 2], store);
+    }
+
+    public Quaternion getRotation(int index, Quaternion store) {
+        checkIndex(index);
+        return quantizer.unpackRotation(current.rotations[index], store);
+    }
+
+    private StateFrame getFrame(int sequence) {
+        if (sequence < 0) {
+            return empty;
+        }
+        Iterator<StateFrame> iterator = history.descendingIterator();
+        while (iterator.hasNext()) {
+            StateFrame frame = iterator.next();
+            if (frame.sequence == sequence) {
+                return frame;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a frame to decode in, the oldest frame is reused when the history is full and it isn't the baseline or
+     * the current frame.
+     */
+    private StateFrame claim(StateFrame base) {
+        if (history.size() < historySize) {
+            return new StateFrame();
+        }
+        StateFrame oldest = history.peekFirst();
+        if (oldest == base || oldest == current) {
+            return new StateFrame();
+        }
+        return history.pollFirst();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= current.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + current.size);
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+}
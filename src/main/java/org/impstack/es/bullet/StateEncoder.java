@@ -0,0 +1,268 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityId;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A {@link PhysicalEntityListener} that encodes the state of the physical entities for replication. The positions and
+ * rotations are quantized with a {@link StateQuantizer} when a physical entity is added or updated. At the end of each
+ * frame in which the quantized state changed, the state is stored in a history with a new sequence number.
+ *
+ * The state is encoded as a delta against a baseline: the last sequence that was acknowledged by the receiver. Only the
+ * removed entities and the entities of which the quantized state differs from the baseline are written. When the
+ * baseline is no longer in the history, the full state is encoded. The encoded state is read with a
+ * {@link StateDecoder}.
+ *
+ * The encoder isn't thread safe, it should be used on the thread of the {@link BulletSystem}, for instance in the
+ * {@link #endFrame()} of a listener that is added after the encoder.
+ */
+public class StateEncoder implements PhysicalEntityListener {
+
+    // the header: sequence, baseline, removed count and changed count
+    private static final int HEADER_BYTES = 16;
+    // the maximum size of a removed entity (id) and a changed entity (id, flags, position and rotation)
+    private static final int MAX_REMOVED_BYTES = 10;
+    private static final int MAX_CHANGED_BYTES = 10 + 1 + 3 * 5 + 4;
+
+    private final StateQuantizer quantizer;
+    private int historySize = 32;
+    private int sequence;
+    // the current state of the physical entities, by slot
+    private final Map<EntityId, Integer> slots = new HashMap<>();
+    private final StateFrame state = new StateFrame();
+    // true when the quantized state changed since the last stored frame
+    private boolean changed;
+    // the stored frames, the oldest first
+    private final ArrayDeque<StateFrame> history = new ArrayDeque<>();
+    private final StateFrame empty = new StateFrame();
+    private ByteBuffer buffer = ByteBuffer.allocate(1024);
+    private final Vector3f tempLocation = new Vector3f();
+    private final Quaternion tempRotation = new Quaternion();
+
+    public StateEncoder(StateQuantizer quantizer) {
+        this.quantizer = quantizer;
+        history.add(new StateFrame());
+        empty.sequence = -1;
+    }
+
+    /**
+     * Creates an encoder for positions within the world bounds of the bullet system.
+     * @param bulletSystem the bullet system
+     * @param precision the size of a position step
+     */
+    public StateEncoder(BulletSystem bulletSystem, float precision) {
+        this(new StateQuantizer(bulletSystem.getWorldMin(), bulletSystem.getWorldMax(), precision));
+    }
+
+    public StateQuantizer getQuantizer() {
+        return quantizer;
+    }
+
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    /**
+     * Sets the amount of frames kept as baseline. A receiver that didn't acknowledge a sequence within the history
+     * receives the full state.
+     * @param historySize the amount of frames
+     */
+    public void setHistorySize(int historySize) {
+        this.historySize = Math.max(1, historySize);
+        while (history.size() > this.historySize) {
+            history.pollFirst();
+        }
+    }
+
+    /**
+     * The sequence number of the last stored state.
+     * @return the sequence number
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    public int getEntityCount() {
+        return state.size;
+    }
+
+    @Override
+    public void startFrame() {
+    }
+
+    @Override
+    public void physicalEntityAdded(PhysicalEntity physicalEntity) {
+        Integer slot = slots.get(physicalEntity.getEntityId());
+        if (slot == null) {
+            slot = state.size;
+            state.ensureCapacity(slot + 1);
+            state.size++;
+            slots.put(physicalEntity.getEntityId(), slot);
+        }
+        write(slot, physicalEntity);
+        changed = true;
+    }
+
+    @Override
+    public void physicalEntityUpdated(PhysicalEntity physicalEntity) {
+        Integer slot = slots.get(physicalEntity.getEntityId());
+        if (slot != null) {
+            write(slot, physicalEntity);
+        }
+    }
+
+    @Override
+    public void physicalEntityRemoved(PhysicalEntity physicalEntity) {
+        Integer slot = slots.remove(physicalEntity.getEntityId());
+        if (slot == null) {
+            return;
+        }
+        state.removeSwap(slot);
+        if (slot < state.size) {
+            slots.put(new EntityId(state.ids[slot]), slot);
+        }
+        changed = true;
+    }
+
+    @Override
+    public void endFrame() {
+        if (!changed) {
+            return;
+        }
+        StateFrame frame = history.size() >= historySize ? history.pollFirst() : new StateFrame();
+        frame.copy(state);
+        frame.sequence = ++sequence;
+        frame.index();
+        history.addLast(frame);
+        changed = false;
+    }
+
+    /**
+     * Encodes the last stored state as a delta against the baseline. The returned buffer is reused by the next call.
+     * @param baseline the last sequence acknowledged by the receiver, or -1 to encode the full state
+     * @return the buffer with the encoded state, ready to be read
+     */
+    public ByteBuffer encode(int baseline) {
+        StateFrame current = history.peekLast();
+        StateFrame base = getFrame(baseline);
+        int capacity = HEADER_BYTES + current.size * MAX_CHANGED_BYTES + base.size * MAX_REMOVED_BYTES;
+        if (buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        buffer.putInt(current.sequence);
+        buffer.putInt(base.sequence);
+        buffer.putInt(0);
+        buffer.putInt(0);
+
+        // the entities that are removed since the baseline
+        int removed = 0;
+        long previousId = 0;
+        for (int i = 0; i < base.size; i++) {
+            long id = base.ids[i];
+            if (current.find(id) < 0) {
+                putVarLong(buffer, zigZag(id - previousId));
+                previousId = id;
+                removed++;
+            }
+        }
+
+        // the entities that are added or changed since the baseline
+        int changedCount = 0;
+        previousId = 0;
+        int[] positions = current.positions;
+        for (int i = 0; i < current.size; i++) {
+            long id = current.ids[i];
+            int index = base.find(id);
+            int flags;
+            if (index < 0) {
+                flags = StateFrame.FULL;
+            } else {
+                flags = 0;
+                if (positions[i * 3] != base.positions[index * 3]
+                        || positions[i * 3 + 1] != base.positions[index * 3 + 1]
+                        || positions[i * 3 + 2] != base.positions[index * 3 + 2]) {
+                    flags |= StateFrame.POSITION;
+                }
+                if (current.rotations[i] != base.rotations[index]) {
+                    flags |= StateFrame.ROTATION;
+                }
+                if (flags == 0) {
+                    continue;
+                }
+            }
+            putVarLong(buffer, zigZag(id - previousId));
+            previousId = id;
+            buffer.put((byte) flags);
+            if (flags == StateFrame.FULL) {
+                putVarLong(buffer, positions[i * 3]);
+                putVarLong(buffer, positions[i * 3 + 1]);
+                putVarLong(buffer, positions[i * 3 + 2]);
+                buffer.putInt(current.rotations[i]);
+            } else {
+                if ((flags & StateFrame.POSITION) != 0) {
+                    putVarLong(buffer, zigZag(positions[i * 3] - base.positions[index * 3]));
+                    putVarLong(buffer, zigZag(positions[i * 3 + 1] - base.positions[index * 3 + 1]));
+                    putVarLong(buffer, zigZag(positions[i * 3 + 2] - base.positions[index * 3 + 2]));
+                }
+                if ((flags & StateFrame.ROTATION) != 0) {
+                    buffer.putInt(current.rotations[i]);
+                }
+            }
+            changedCount++;
+        }
+
+        buffer.putInt(8, removed);
+        buffer.putInt(12, changedCount);
+        buffer.flip();
+        return buffer;
+    }
+
+    private StateFrame getFrame(int sequence) {
+        if (sequence >= 0) {
+            Iterator<StateFrame> iterator = history.descendingIterator();
+            while (iterator.hasNext()) {
+                StateFrame frame = iterator.next();
+                if (frame.sequence == sequence) {
+                    return frame;
+                }
+            }
+        }
+        return empty;
+    }
+
+    private void write(int slot, PhysicalEntity physicalEntity) {
+        physicalEntity.getLocation(tempLocation);
+        physicalEntity.getRotation(tempRotation);
+        int x = quantizer.quantizeX(tempLocation.x);
+        int y = quantizer.quantizeY(tempLocation.y);
+        int z = quantizer.quantizeZ(tempLocation.z);
+        int rotation = quantizer.packRotation(tempRotation);
+        long id = physicalEntity.getEntityId().getId();
+        if (state.ids[slot] != id || state.positions[slot * 3] != x || state.positions[slot * 3 + 1] != y
+                || state.positions[slot * 3 + 2] != z || state.rotations[slot] != rotation) {
+            state.set(slot, id, x, y, z, rotation);
+            changed = true;
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+}
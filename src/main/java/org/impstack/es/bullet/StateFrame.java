@@ -0,0 +1,116 @@
+package org.impstack.es.bullet;
+
+import java.util.Arrays;
+
+/**
+ * The quantized state of the physical entities at a sequence number, used as baseline by the {@link StateEncoder} and
+ * the {@link StateDecoder}. The entities are looked up by entity id with an open addressing hash table, that is built
+ * with {@link #index()} after the frame is filled.
+ */
+class StateFrame {
+
+    // the flags of an encoded entity
+    static final int POSITION = 1;
+    static final int ROTATION = 2;
+    static final int FULL = 4;
+
+    int sequence;
+    int size;
+    long[] ids = new long[64];
+    // the quantized position (x, y, z) and packed rotation of each entity
+    int[] positions = new int[64 * 3];
+    int[] rotations = new int[64];
+    // open addressing hash table of entity ids with the index + 1 as value
+    private int[] slots = new int[128];
+
+    int find(long id) {
+        if (size == 0) {
+            return -1;
+        }
+        int mask = slots.length - 1;
+        for (int slot = hash(id) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int index = slots[slot] - 1;
+            if (ids[index] == id) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    void set(int index, long id, int x, int y, int z, int rotation) {
+        ids[index] = id;
+        positions[index * 3] = x;
+        positions[index * 3 + 1] = y;
+        positions[index * 3 + 2] = z;
+        rotations[index] = rotation;
+    }
+
+    void add(long id, int x, int y, int z, int rotation) {
+        ensureCapacity(size + 1);
+        set(size++, id, x, y, z, rotation);
+    }
+
+    /**
+     * Moves the last entity to the index, and removes the last entity.
+     */
+    void removeSwap(int index) {
+        int last = --size;
+        if (index != last) {
+            ids[index] = ids[last];
+            System.arraycopy(positions, last * 3, positions, index * 3, 3);
+            rotations[index] = rotations[last];
+        }
+    }
+
+    void copy(StateFrame frame) {
+        ensureCapacity(frame.size);
+        size = frame.size;
+        System.arraycopy(frame.ids, 0, ids, 0, size);
+        System.arraycopy(frame.positions, 0, positions, 0, size * 3);
+        System.arraycopy(frame.rotations, 0, rotations, 0, size);
+    }
+
+    /**
+     * Builds the hash table of the entity ids.
+     */
+    void index() {
+        // keep the hash table at most half full
+        int capacity = slots.length;
+        while (capacity < size * 2) {
+            capacity *= 2;
+        }
+        if (capacity != slots.length) {
+            slots = new int[capacity];
+        } else {
+            Arrays.fill(slots, 0);
+        }
+        int mask = capacity - 1;
+        for (int i = 0; i < size; i++) {
+            int slot = hash(ids[i]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = i + 1;
+        }
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int length = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, length);
+        positions = Arrays.copyOf(positions, length * 3);
+        rotations = Arrays.copyOf(rotations, length);
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+}
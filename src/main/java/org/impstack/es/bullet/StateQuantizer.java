@@ -0,0 +1,166 @@
+package org.impstack.es.bullet;
+
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+/**
+ * Quantizes the state of physical entities for replication. Positions are stored as integer steps of the given
+ * precision relative to the minimum of the world, rotations are packed in an int with the smallest three method: the
+ * index of the largest component in 2 bits and the other three components in 10 bits each. The encoder and the decoder
+ * of a connection should use the same settings.
+ */
+public class StateQuantizer {
+
+    private static final int ROTATION_BITS = 10;
+    private static final int ROTATION_MAX = (1 << ROTATION_BITS) - 1;
+    // the smallest three components of a normalized quaternion are within -1 / sqrt(2) and 1 / sqrt(2)
+    private static final float ROTATION_RANGE = 1f / FastMath.sqrt(2f);
+
+    private final Vector3f worldMin;
+    private final Vector3f worldMax;
+    private final float precision;
+    // the amount of steps on each axis
+    private final int stepsX;
+    private final int stepsY;
+    private final int stepsZ;
+
+    /**
+     * Creates a quantizer for positions within the world bounds.
+     * @param worldMin the minimum of the world, see {@link BulletSystem#getWorldMin()}
+     * @param worldMax the maximum of the world, see {@link BulletSystem#getWorldMax()}
+     * @param precision the size of a position step, for instance 0.01 for centimeters
+     */
+    public StateQuantizer(Vector3f worldMin, Vector3f worldMax, float precision) {
+        if (precision <= 0) {
+            throw new IllegalArgumentException("Invalid precision " + precision);
+        }
+        this.worldMin = worldMin.clone();
+        this.worldMax = worldMax.clone();
+        this.precision = precision;
+        this.stepsX = steps(worldMax.x - worldMin.x, precision);
+        this.stepsY = steps(worldMax.y - worldMin.y, precision);
+        this.stepsZ = steps(worldMax.z - worldMin.z, precision);
+    }
+
+    public Vector3f getWorldMin() {
+        return worldMin.clone();
+    }
+
+    public Vector3f getWorldMax() {
+        return worldMax.clone();
+    }
+
+    public float getPrecision() {
+        return precision;
+    }
+
+    int quantizeX(float x) {
+        return quantize(x - worldMin.x, stepsX);
+    }
+
+    int quantizeY(float y) {
+        return quantize(y - worldMin.y, stepsY);
+    }
+
+    int quantizeZ(float z) {
+        return quantize(z - worldMin.z, stepsZ);
+    }
+
+    Vector3f dequantize(int x, int y, int z, Vector3f store) {
+        return store.set(worldMin.x + x * precision, worldMin.y + y * precision, worldMin.z + z * precision);
+    }
+
+    /**
+     * Packs a rotation with the smallest three method. The largest component is left out and restored from the others,
+     * the rotation is negated when the largest component is negative, which is the same rotation.
+     */
+    int packRotation(Quaternion rotation) {
+        float x = rotation.getX();
+        float y = rotation.getY();
+        float z = rotation.getZ();
+        float w = rotation.getW();
+        float length = FastMath.sqrt(x * x + y * y + z * z + w * w);
+        if (length == 0) {
+            return packRotation(3, 0, 0, 0);
+        }
+        x /= length;
+        y /= length;
+        z /= length;
+        w /= length;
+
+        int largest = 0;
+        float max = Math.abs(x);
+        if (Math.abs(y) > max) {
+            largest = 1;
+            max = Math.abs(y);
+        }
+        if (Math.abs(z) > max) {
+            largest = 2;
+            max = Math.abs(z);
+        }
+        if (Math.abs(w) > max) {
+            largest = 3;
+        }
+        float sign = (largest == 0 ? x : largest == 1 ? y : largest == 2 ? z : w) < 0 ? -1f : 1f;
+        switch (largest) {
+            case 0:
+                return packRotation(0, y * sign, z * sign, w * sign);
+            case 1:
+                return packRotation(1, x * sign, z * sign, w * sign);
+            case 2:
+                return packRotation(2, x * sign, y * sign, w * sign);
+            default:
+                return packRotation(3, x * sign, y * sign, z * sign);
+        }
+    }
+
+    Quaternion unpackRotation(int packed, Quaternion store) {
+        int largest = packed >>> (ROTATION_BITS * 3);
+        float a = unpackComponent(packed >>> (ROTATION_BITS * 2));
+        float b = unpackComponent(packed >>> ROTATION_BITS);
+        float c = unpackComponent(packed);
+        float d = FastMath.sqrt(Math.max(0f, 1f - a * a - b * b - c * c));
+        switch (largest) {
+            case 0:
+                return store.set(d, a, b, c);
+            case 1:
+                return store.set(a, d, b, c);
+            case 2:
+                return store.set(a, b, d, c);
+            default:
+                return store.set(a, b, c, d);
+        }
+    }
+
+    private static int packRotation(int largest, float a, float b, float c) {
+        return (largest << (ROTATION_BITS * 3))
+                | (packComponent(a) << (ROTATION_BITS * 2))
+                | (packComponent(b) << ROTATION_BITS)
+                | packComponent(c);
+    }
+
+    private static int packComponent(float value) {
+        int step = Math.round((value + ROTATION_RANGE) / (2 * ROTATION_RANGE) * ROTATION_MAX);
+        return Math.max(0, Math.min(ROTATION_MAX, step));
+    }
+
+    private static float unpackComponent(int packed) {
+        return (packed & ROTATION_MAX) / (float) ROTATION_MAX * (2 * ROTATION_RANGE) - ROTATION_RANGE;
+    }
+
+    private int quantize(float offset, int steps) {
+        int step = Math.round(offset / precision);
+        return Math.max(0, Math.min(steps, step));
+    }
+
+    private static int steps(float size, float precision) {
+        double steps = Math.ceil(size / precision);
+        // keep the difference between two positions within an int
+        if (steps > (1 << 30)) {
+            throw new IllegalArgumentException("Precision " + precision + " is too small for a world of size " + size);
+        }
+        return (int) steps;
+    }
+
+}
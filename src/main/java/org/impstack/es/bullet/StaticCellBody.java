@@ -0,0 +1,140 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.collision.shapes.CompoundCollisionShape;
+import com.jme3.bullet.collision.shapes.infos.ChildCollisionShape;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Matrix3f;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A static rigidbody that merges the static physical entities in one cell of the world into a single compound collision
+ * shape. Ray tests, sweep tests and collision events report this body instead of the physical entities it contains.
+ * Collision events report the index of the child shape, use {@link #getMember(int)} or
+ * {@link BulletSystem#getPhysicalEntity(com.jme3.bullet.collision.PhysicsCollisionObject, int, int, Vector3f)} to find
+ * the physical entity of a contact. Ray and sweep test results don't report the child shape, use
+ * {@link #getMember(Vector3f)} or {@link BulletSystem#getPhysicalEntity(com.jme3.bullet.collision.PhysicsCollisionObject, Vector3f)}
+ * to find the physical entity that was hit.
+ *
+ * The members themselves are not added to the physics space, their transform is the transform of the entity.
+ *
+ * @see BulletSystem#setStaticMerging(boolean)
+ */
+public class StaticCellBody extends PhysicsRigidBody {
+
+    // the partition and key of the cell
+    final int partition;
+    final long key;
+    // true when the members changed and the compound shape needs to be rebuilt
+    boolean dirty;
+    private final Vector3f center;
+    private final List<RigidBodyEntity> members = new ArrayList<>();
+    // the member of each child shape of the compound shape, by child index
+    private RigidBodyEntity[] childMembers = new RigidBodyEntity[0];
+
+    StaticCellBody(int partition, long key, Vector3f center) {
+        super(new CompoundCollisionShape(), 0);
+        this.partition = partition;
+        this.key = key;
+        this.center = center;
+        setPhysicsLocation(center);
+    }
+
+    /**
+     * The physical entities merged in this body.
+     * @return the physical entities
+     */
+    public List<RigidBodyEntity> getMembers() {
+        return Collections.unmodifiableList(members);
+    }
+
+    /**
+     * Returns the member of a child shape of the compound shape, the child index is reported by a collision event.
+     * Members with a compound collision shape have a child shape for each child of their own shape.
+     * @param childIndex the index of the child shape
+     * @return the member, or null when there is no child shape with the index
+     */
+    public RigidBodyEntity getMember(int childIndex) {
+        return childIndex >= 0 && childIndex < childMembers.length ? childMembers[childIndex] : null;
+    }
+
+    /**
+     * Returns the member that is the closest to the given point, typically the location of a ray or sweep test hit on
+     * this body. Those results don't report which child was hit, so the member with its location closest to the point
+     * is used. This is an approximation: with large or adjacent members, the closest location isn't necessarily the
+     * member that was hit.
+     * @param point a point in world space
+     * @return the closest member, or null when the cell is empty
+     */
+    public RigidBodyEntity getMember(Vector3f point) {
+        RigidBodyEntity closest = null;
+        float closestDistance = Float.MAX_VALUE;
+        Vector3f location = new Vector3f();
+        for (RigidBodyEntity member : members) {
+            float distance = member.getPhysicsLocation(location).distanceSquared(point);
+            if (distance < closestDistance) {
+                closest = member;
+                closestDistance = distance;
+            }
+        }
+        return closest;
+    }
+
+    void addMember(RigidBodyEntity entity) {
+        members.add(entity);
+        entity.staticCell = this;
+    }
+
+    void removeMember(RigidBodyEntity entity) {
+        members.remove(entity);
+        entity.staticCell = null;
+    }
+
+    boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    /**
+     * Creates a new compound shape with the collision shapes of all members. The compound shapes of members are
+     * flattened, as a compound shape can't contain another compound shape.
+     */
+    void rebuildShape() {
+        CompoundCollisionShape compound = new CompoundCollisionShape();
+        List<RigidBodyEntity> children = new ArrayList<>(members.size());
+        Vector3f location = new Vector3f();
+        Quaternion rotation = new Quaternion();
+        for (RigidBodyEntity member : members) {
+            member.getPhysicsLocation(location).subtractLocal(center);
+            Matrix3f memberRotation = member.getPhysicsRotation(rotation).toRotationMatrix();
+            CollisionShape shape = member.getCollisionShape();
+            if (shape instanceof CompoundCollisionShape) {
+                for (ChildCollisionShape child : ((CompoundCollisionShape) shape).getChildren()) {
+                    Vector3f childLocation = memberRotation.mult(child.location).addLocal(location);
+                    compound.addChildShape(child.shape, childLocation, memberRotation.mult(child.rotation));
+                    children.add(member);
+                }
+            } else {
+                compound.addChildShape(shape, location.clone(), memberRotation);
+                children.add(member);
+            }
+        }
+        setCollisionShape(compound);
+        childMembers = children.toArray(new RigidBodyEntity[0]);
+        dirty = false;
+    }
+
+    @Override
+    public String toString() {
+        return "StaticCellBody{" +
+                "partition=" + partition +
+                ", center=" + center +
+                ", members=" + members.size() +
+                '}';
+    }
+
+}
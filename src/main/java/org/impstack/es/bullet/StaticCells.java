@@ -0,0 +1,115 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.math.Vector3f;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merges static physical entities into a {@link StaticCellBody} for each cell of a grid, per partition. Changed cells
+ * are rebuilt once per frame with {@link #rebuild()}, the other cells are left untouched.
+ */
+class StaticCells {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StaticCells.class);
+
+    private final PhysicsSpace[] physicsSpaces;
+    private final float cellSize;
+    // the cells of each partition by cell key, and the cells that changed since the last rebuild
+    private final List<Map<Long, StaticCellBody>> cells = new ArrayList<>();
+    private final List<StaticCellBody> dirtyCells = new ArrayList<>();
+    private final Vector3f tempLocation = new Vector3f();
+
+    StaticCells(PhysicsSpace[] physicsSpaces, float cellSize) {
+        this.physicsSpaces = physicsSpaces;
+        this.cellSize = cellSize;
+        for (int i = 0; i < physicsSpaces.length; i++) {
+            cells.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Adds the physical entity to the cell of its location in its partition.
+     */
+    void add(RigidBodyEntity entity) {
+        Vector3f location = entity.getPhysicsLocation(tempLocation);
+        int x = (int) Math.floor(location.x / cellSize);
+        int y = (int) Math.floor(location.y / cellSize);
+        int z = (int) Math.floor(location.z / cellSize);
+        long key = cellKey(x, y, z);
+
+        StaticCellBody cell = cells.get(entity.partition).get(key);
+        if (cell == null) {
+            Vector3f center = new Vector3f(x + 0.5f, y + 0.5f, z + 0.5f).multLocal(cellSize);
+            cell = new StaticCellBody(entity.partition, key, center);
+            cells.get(entity.partition).put(key, cell);
+        }
+        cell.addMember(entity);
+        markDirty(cell);
+    }
+
+    /**
+     * Removes the physical entity from its cell.
+     */
+    void remove(RigidBodyEntity entity) {
+        StaticCellBody cell = entity.staticCell;
+        cell.removeMember(entity);
+        markDirty(cell);
+    }
+
+    /**
+     * Rebuilds the compound shapes of the cells that changed, and removes the empty cells.
+     */
+    void rebuild() {
+        for (StaticCellBody cell : dirtyCells) {
+            PhysicsSpace space = physicsSpaces[cell.partition];
+            if (cell.isInWorld()) {
+                space.removeCollisionObject(cell);
+            }
+            if (cell.isEmpty()) {
+                cells.get(cell.partition).remove(cell.key);
+                cell.dirty = false;
+                continue;
+            }
+            cell.rebuildShape();
+            LOG.trace("Rebuilt {}", cell);
+            space.addCollisionObject(cell);
+        }
+        dirtyCells.clear();
+    }
+
+    /**
+     * The amount of cells that contain physical entities.
+     */
+    int getCellCount() {
+        int count = 0;
+        for (Map<Long, StaticCellBody> partitionCells : cells) {
+            count += partitionCells.size();
+        }
+        return count;
+    }
+
+    void clear() {
+        for (Map<Long, StaticCellBody> partitionCells : cells) {
+            partitionCells.clear();
+        }
+        dirtyCells.clear();
+    }
+
+    private void markDirty(StaticCellBody cell) {
+        if (!cell.dirty) {
+            cell.dirty = true;
+            dirtyCells.add(cell);
+        }
+    }
+
+    private static long cellKey(int x, int y, int z) {
+        return ((long) (x & 0x1fffff) << 42) | ((long) (y & 0x1fffff) << 21) | (z & 0x1fffff);
+    }
+
+}
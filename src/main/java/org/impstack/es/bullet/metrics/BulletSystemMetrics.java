@@ -0,0 +1,164 @@
+package org.impstack.es.bullet.metrics;
+
+import com.jme3.util.SafeArrayList;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the metrics of a {@link org.impstack.es.bullet.BulletSystem}: the time spent in each {@link FramePhase} and
+ * in each listener class, and the amount of bodies and collision events. The times of a frame are recorded in
+ * {@link Histogram}s. After each interval of {@link #getInterval()} frames, an immutable {@link MetricsSnapshot} is
+ * taken, passed to the registered {@link MetricsSink}s and the histograms are reset. The last snapshot can be retrieved
+ * from any thread with {@link #getSnapshot()}.
+ *
+ * The metrics are filled by the system on the physics thread, set them with
+ * {@link org.impstack.es.bullet.BulletSystem#setMetrics(BulletSystemMetrics)}.
+ */
+public class BulletSystemMetrics {
+
+    private static final FramePhase[] PHASES = FramePhase.values();
+
+    private int interval = 60;
+    private final SafeArrayList<MetricsSink> sinks = new SafeArrayList<>(MetricsSink.class);
+
+    // the times of the current frame and the histograms of the current interval
+    private final long[] phaseTimes = new long[PHASES.length];
+    private final Histogram[] phases = new Histogram[PHASES.length];
+    private final Map<Class<?>, ListenerTime> listeners = new HashMap<>();
+    private long frames;
+    // the counts of the last frame
+    private int activeBodies;
+    private int sleepingBodies;
+    private int sleepingDrivenBodies;
+    private int staticBodies;
+    private int contactEvents;
+    private int pendingDrivers;
+
+    private volatile MetricsSnapshot snapshot;
+
+    public BulletSystemMetrics() {
+        for (int i = 0; i < phases.length; i++) {
+            phases[i] = new Histogram();
+        }
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Sets the amount of frames in one interval.
+     * @param interval the amount of frames
+     */
+    public void setInterval(int interval) {
+        this.interval = interval;
+    }
+
+    public void addSink(MetricsSink sink) {
+        sinks.add(sink);
+    }
+
+    public void removeSink(MetricsSink sink) {
+        sinks.remove(sink);
+    }
+
+    /**
+     * The metrics of the last completed interval, or null when no interval is completed yet. Can be called from any
+     * thread.
+     * @return the last snapshot or null
+     */
+    public MetricsSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Adds time to a phase of the current frame. A phase can be timed multiple times in a frame.
+     * @param phase the phase
+     * @param nanos the time in nanoseconds
+     */
+    public void addTime(FramePhase phase, long nanos) {
+        phaseTimes[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * Adds the time spent in a listener to the current frame.
+     * @param listenerClass the class of the listener
+     * @param nanos the time in nanoseconds
+     */
+    public void addListenerTime(Class<?> listenerClass, long nanos) {
+        ListenerTime listenerTime = listeners.get(listenerClass);
+        if (listenerTime == null) {
+            listenerTime = new ListenerTime();
+            listeners.put(listenerClass, listenerTime);
+        }
+        listenerTime.frameTime += nanos;
+        listenerTime.called = true;
+    }
+
+    /**
+     * Sets the counts of the current frame.
+     */
+    public void setCounts(int activeBodies, int sleepingBodies, int sleepingDrivenBodies, int staticBodies, int contactEvents,
+                          int pendingDrivers) {
+        this.activeBodies = activeBodies;
+        this.sleepingBodies = sleepingBodies;
+        this.sleepingDrivenBodies = sleepingDrivenBodies;
+        this.staticBodies = staticBodies;
+        this.contactEvents = contactEvents;
+        this.pendingDrivers = pendingDrivers;
+    }
+
+    /**
+     * Records the times of the current frame, and completes the interval when needed.
+     */
+    public void endFrame() {
+        for (int i = 0; i < phaseTimes.length; i++) {
+            phases[i].record(phaseTimes[i]);
+            phaseTimes[i] = 0;
+        }
+        for (ListenerTime listenerTime : listeners.values()) {
+            if (listenerTime.called) {
+                listenerTime.histogram.record(listenerTime.frameTime);
+                listenerTime.frameTime = 0;
+                listenerTime.called = false;
+            }
+        }
+
+        frames++;
+        if (frames >= interval) {
+            publish();
+        }
+    }
+
+    private void publish() {
+        Map<FramePhase, Histogram> phaseHistograms = new EnumMap<>(FramePhase.class);
+        for (int i = 0; i < phases.length; i++) {
+            phaseHistograms.put(PHASES[i], phases[i].copy());
+            phases[i].reset();
+        }
+        Map<String, Histogram> listenerHistograms = new LinkedHashMap<>();
+        for (Map.Entry<Class<?>, ListenerTime> entry : listeners.entrySet()) {
+            listenerHistograms.put(entry.getKey().getName(), entry.getValue().histogram.copy());
+            entry.getValue().histogram.reset();
+        }
+
+        snapshot = new MetricsSnapshot(System.currentTimeMillis(), frames, phaseHistograms, listenerHistograms,
+                activeBodies, sleepingBodies, sleepingDrivenBodies, staticBodies, contactEvents, pendingDrivers);
+        frames = 0;
+
+        for (MetricsSink sink : sinks.getArray()) {
+            sink.publish(snapshot);
+        }
+    }
+
+    private static class ListenerTime {
+        // the time spent in all listeners of a class
+        private final Histogram histogram = new Histogram();
+        private long frameTime;
+        private boolean called;
+    }
+
+}
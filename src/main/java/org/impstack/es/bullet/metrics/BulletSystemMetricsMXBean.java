@@ -0,0 +1,35 @@
+package org.impstack.es.bullet.metrics;
+
+import java.util.Map;
+
+/**
+ * The JMX view on the last {@link MetricsSnapshot} of a {@link org.impstack.es.bullet.BulletSystem}. Times are in
+ * microseconds, by phase name or listener class name.
+ */
+public interface BulletSystemMetricsMXBean {
+
+    public long getFrames();
+
+    public int getActiveBodies();
+
+    public int getSleepingBodies();
+
+    public int getSleepingDrivenBodies();
+
+    public int getStaticBodies();
+
+    public int getContactEvents();
+
+    public int getPendingDrivers();
+
+    public Map<String, Double> getPhaseMeanMicros();
+
+    public Map<String, Double> getPhaseP99Micros();
+
+    public Map<String, Double> getPhaseMaxMicros();
+
+    public Map<String, Double> getListenerMeanMicros();
+
+    public Map<String, Double> getListenerP99Micros();
+
+}
@@ -0,0 +1,23 @@
+package org.impstack.es.bullet.metrics;
+
+/**
+ * The phases of a {@link org.impstack.es.bullet.BulletSystem} frame that are timed by {@link BulletSystemMetrics}.
+ */
+public enum FramePhase {
+
+    // adding, updating and removing physical entities of changed entities
+    CONTAINER_SYNC,
+    // setting the pending drivers
+    DRIVER_SETUP,
+    // updating the physical entity drivers
+    DRIVER_UPDATE,
+    // the physics calculation
+    PHYSICS_STEP,
+    // distributing the collision events of the physics spaces
+    DISTRIBUTE_EVENTS,
+    // notifying the listeners about the updated physical entities
+    LISTENERS,
+    // the complete frame
+    TOTAL
+
+}
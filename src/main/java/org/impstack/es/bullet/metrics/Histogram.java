@@ -0,0 +1,121 @@
+package org.impstack.es.bullet.metrics;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of positive long values with a fixed relative precision. Values are counted in power of two buckets,
+ * each bucket is divided in 16 linear sub buckets, so a value is reported with an error of at most 1/16th (6.25%).
+ * Recording a value doesn't allocate. A histogram is not thread-safe, use {@link #copy()} to hand it over to another
+ * thread.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[(Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    /**
+     * Records a value, negative values are recorded as 0.
+     * @param value the value
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[index(value)]++;
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * The value at the given percentile, the highest value in its bucket is returned.
+     * @param percentile the percentile, between 0 and 100
+     * @return the value at the percentile
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i];
+            if (total >= target) {
+                return Math.min(highestValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public Histogram copy() {
+        Histogram copy = new Histogram();
+        System.arraycopy(counts, 0, copy.counts, 0, counts.length);
+        copy.count = count;
+        copy.sum = sum;
+        copy.min = min;
+        copy.max = max;
+        return copy;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return "Histogram{" +
+                "count=" + count +
+                ", min=" + getMin() +
+                ", p50=" + getValueAtPercentile(50) +
+                ", p99=" + getValueAtPercentile(99) +
+                ", max=" + max +
+                '}';
+    }
+
+}
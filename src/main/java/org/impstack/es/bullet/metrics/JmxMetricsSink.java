@@ -0,0 +1,163 @@
+package org.impstack.es.bullet.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * A {@link MetricsSink} that exposes the last snapshot as an MXBean on the platform MBean server.
+ */
+public class JmxMetricsSink implements MetricsSink, BulletSystemMetricsMXBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JmxMetricsSink.class);
+
+    public static final String DEFAULT_NAME = "org.impstack.es.bullet:type=BulletSystemMetrics";
+
+    private final ObjectName objectName;
+    private volatile MetricsSnapshot snapshot;
+
+    public JmxMetricsSink() {
+        this(DEFAULT_NAME);
+    }
+
+    public JmxMetricsSink(String name) {
+        try {
+            this.objectName = new ObjectName(name);
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Invalid MBean name " + name, e);
+        }
+    }
+
+    /**
+     * Registers the MXBean on the platform MBean server.
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(this, objectName);
+            }
+        } catch (JMException e) {
+            LOG.error("Error registering {}", objectName, e);
+        }
+    }
+
+    /**
+     * Removes the MXBean from the platform MBean server.
+     */
+    public void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            LOG.error("Error unregistering {}", objectName, e);
+        }
+    }
+
+    @Override
+    public void publish(MetricsSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public long getFrames() {
+        MetricsSnapshot snapshot = this.snapshot;
+        return snapshot != null ? snapshot.getFrames() : 0;
+    }
+
+    @Override
+    public int getActiveBodies() {
+        MetricsSnapshot snapshot = this.snapshot;
+        return snapshot != null ? snapshot.getActiveBodies() : 0;
+    }
+
+    @Override
+    public int getSleepingBodies() {
+        MetricsSnapshot snapshot = this.snapshot;
+        return snapshot != null ? snapshot.getSleepingBodies() : 0;
+    }
+
+    @Override
+    public int getSleepingDrivenBodies() {
+        MetricsSnapshot snapshot = this.snapshot;
+        return snapshot != null ? snapshot.getSleepingDrivenBodies() : 0;
+    }
+
+    @Override
+    public int getStaticBodies() {
+        MetricsSnapshot snapshot = this.snapshot;
+        return snapshot != null ? snapshot.getStaticBodies() : 0;
+    }
+
+    @Override
+    public int getContactEvents() {
+        MetricsSnapshot snapshot = this.snapshot;
+        return snapshot != null ? snapshot.getContactEvents() : 0;
+    }
+
+    @Override
+    public int getPendingDrivers() {
+        MetricsSnapshot snapshot = this.snapshot;
+        return snapshot != null ? snapshot.getPendingDrivers() : 0;
+    }
+
+    @Override
+    public Map<String, Double> getPhaseMeanMicros() {
+        return phases(Histogram::getMean);
+    }
+
+    @Override
+    public Map<String, Double> getPhaseP99Micros() {
+        return phases(histogram -> histogram.getValueAtPercentile(99));
+    }
+
+    @Override
+    public Map<String, Double> getPhaseMaxMicros() {
+        return phases(Histogram::getMax);
+    }
+
+    @Override
+    public Map<String, Double> getListenerMeanMicros() {
+        return listeners(Histogram::getMean);
+    }
+
+    @Override
+    public Map<String, Double> getListenerP99Micros() {
+        return listeners(histogram -> histogram.getValueAtPercentile(99));
+    }
+
+    private Map<String, Double> phases(ToDoubleFunction<Histogram> value) {
+        MetricsSnapshot snapshot = this.snapshot;
+        if (snapshot == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (Map.Entry<FramePhase, Histogram> entry : snapshot.getPhases().entrySet()) {
+            result.put(entry.getKey().name(), value.applyAsDouble(entry.getValue()) / 1000.0);
+        }
+        return result;
+    }
+
+    private Map<String, Double> listeners(ToDoubleFunction<Histogram> value) {
+        MetricsSnapshot snapshot = this.snapshot;
+        if (snapshot == null) {
+            return Collections.emptyMap();
+        }
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Histogram> entry : snapshot.getListeners().entrySet()) {
+            result.put(entry.getKey(), value.applyAsDouble(entry.getValue()) / 1000.0);
+        }
+        return result;
+    }
+
+}
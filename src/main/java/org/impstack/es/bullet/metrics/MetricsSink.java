@@ -0,0 +1,15 @@
+package org.impstack.es.bullet.metrics;
+
+/**
+ * Receives the metrics of a {@link org.impstack.es.bullet.BulletSystem}. A sink is called on the physics thread each
+ * time {@link BulletSystemMetrics} completes an interval, and should hand the snapshot over to other threads.
+ */
+public interface MetricsSink {
+
+    /**
+     * Called with the metrics of the last interval.
+     * @param snapshot the metrics
+     */
+    public void publish(MetricsSnapshot snapshot);
+
+}
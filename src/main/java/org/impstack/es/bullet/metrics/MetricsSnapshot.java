@@ -0,0 +1,123 @@
+package org.impstack.es.bullet.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The metrics of one interval of a {@link org.impstack.es.bullet.BulletSystem}. The times are in nanoseconds, the counts
+ * are the counts of the last frame of the interval. A snapshot is immutable and can be shared between threads.
+ */
+public class MetricsSnapshot {
+
+    private final long timestamp;
+    private final long frames;
+    private final Map<FramePhase, Histogram> phases;
+    private final Map<String, Histogram> listeners;
+    private final int activeBodies;
+    private final int sleepingBodies;
+    private final int sleepingDrivenBodies;
+    private final int staticBodies;
+    private final int contactEvents;
+    private final int pendingDrivers;
+
+    public MetricsSnapshot(long timestamp, long frames, Map<FramePhase, Histogram> phases,
+                           Map<String, Histogram> listeners, int activeBodies, int sleepingBodies,
+                           int sleepingDrivenBodies, int staticBodies, int contactEvents, int pendingDrivers) {
+        this.timestamp = timestamp;
+        this.frames = frames;
+        this.phases = Collections.unmodifiableMap(phases);
+        this.listeners = Collections.unmodifiableMap(listeners);
+        this.activeBodies = activeBodies;
+        this.sleepingBodies = sleepingBodies;
+        this.sleepingDrivenBodies = sleepingDrivenBodies;
+        this.staticBodies = staticBodies;
+        this.contactEvents = contactEvents;
+        this.pendingDrivers = pendingDrivers;
+    }
+
+    /**
+     * The time the snapshot was taken.
+     * @return the time in milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * The amount of frames in the interval.
+     * @return the amount of frames
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * The time spent in the given phase in each frame.
+     * @param phase the phase
+     * @return the histogram of the phase times
+     */
+    public Histogram getPhase(FramePhase phase) {
+        return phases.get(phase);
+    }
+
+    public Map<FramePhase, Histogram> getPhases() {
+        return phases;
+    }
+
+    /**
+     * The time spent in the listeners in each frame, by listener class name.
+     * @return the histograms of the listener times
+     */
+    public Map<String, Histogram> getListeners() {
+        return listeners;
+    }
+
+    public int getActiveBodies() {
+        return activeBodies;
+    }
+
+    public int getSleepingBodies() {
+        return sleepingBodies;
+    }
+
+    /**
+     * The amount of sleeping bodies that have a driver, these are part of the sleeping bodies.
+     * @return the amount of sleeping driven bodies
+     */
+    public int getSleepingDrivenBodies() {
+        return sleepingDrivenBodies;
+    }
+
+    public int getStaticBodies() {
+        return staticBodies;
+    }
+
+    /**
+     * The amount of collision events that were distributed in the last frame. Bullet reports the contacts of touching
+     * bodies every frame, not only new contacts.
+     * @return the amount of collision events
+     */
+    public int getContactEvents() {
+        return contactEvents;
+    }
+
+    public int getPendingDrivers() {
+        return pendingDrivers;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{" +
+                "frames=" + frames +
+                ", phases=" + phases +
+                ", listeners=" + listeners +
+                ", activeBodies=" + activeBodies +
+                ", sleepingBodies=" + sleepingBodies +
+                ", sleepingDrivenBodies=" + sleepingDrivenBodies +
+                ", staticBodies=" + staticBodies +
+                ", contactEvents=" + contactEvents +
+                ", pendingDrivers=" + pendingDrivers +
+                '}';
+    }
+
+}
@@ -0,0 +1,147 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.shapes.BoxCollisionShape;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.math.Vector3f;
+import com.jme3.system.NativeLibraryLoader;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.base.DefaultEntityData;
+import com.simsilica.sim.GameSystemManager;
+import com.simsilica.sim.SimTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that a physical entity that is parked while its collision shape loads isn't driven, and is dropped when its
+ * collision shape can't be loaded.
+ */
+public class AsyncShapeLoadingTest {
+
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+    private static final PhysicalShape SLOW = new PhysicalShape("slow");
+
+    private GameSystemManager systems;
+    private BulletSystem bulletSystem;
+    private final SimTime time = new SimTime();
+    private long nanos;
+    // the load of the slow collision shape, completed by the tests
+    private final CompletableFuture<CollisionShape> loading = new CompletableFuture<>();
+    private int added;
+
+    @BeforeClass
+    public static void loadNatives() {
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+    }
+
+    @Before
+    public void setup() {
+        BasePhysicalShapeRegistry shapeRegistry = new BasePhysicalShapeRegistry() {
+            @Override
+            public CompletableFuture<CollisionShape> getAsync(PhysicalShape physicalShape) {
+                return SLOW.getShapeId().equals(physicalShape.getShapeId()) ? loading : super.getAsync(physicalShape);
+            }
+        };
+
+        bulletSystem = new BulletSystem(new DefaultEntityData(), shapeRegistry);
+        bulletSystem.setAsyncShapeLoading(true);
+        bulletSystem.addPhysicalEntityListener(new PhysicalEntityListener() {
+            @Override
+            public void startFrame() {
+            }
+
+            @Override
+            public void physicalEntityAdded(PhysicalEntity physicalEntity) {
+                added++;
+            }
+
+            @Override
+            public void physicalEntityUpdated(PhysicalEntity physicalEntity) {
+            }
+
+            @Override
+            public void physicalEntityRemoved(PhysicalEntity physicalEntity) {
+            }
+
+            @Override
+            public void endFrame() {
+            }
+        });
+        systems = new GameSystemManager();
+        systems.register(BulletSystem.class, bulletSystem);
+        systems.initialize();
+        systems.start();
+    }
+
+    @After
+    public void tearDown() {
+        systems.stop();
+        systems.terminate();
+    }
+
+    @Test
+    public void parkedEntityIsNotDriven() {
+        CountingDriver driver = new CountingDriver();
+        bulletSystem.spawn(new SpawnBatch().add(new EntityId(1), SLOW, new Mass(1), new SpawnPosition(new Vector3f())));
+        bulletSystem.setPhysicalEntityDriver(new EntityId(1), driver);
+        step();
+        step();
+
+        assertEquals(1, bulletSystem.getParkedEntityCount());
+        assertEquals(0, bulletSystem.getDrivenEntityCount());
+        assertEquals(0, driver.updates);
+
+        loading.complete(new BoxCollisionShape(new Vector3f(0.5f, 0.5f, 0.5f)));
+        step();
+        step();
+
+        assertEquals(0, bulletSystem.getParkedEntityCount());
+        assertEquals(1, bulletSystem.getDrivenEntityCount());
+        assertTrue(driver.updates > 0);
+    }
+
+    @Test
+    public void entityIsDroppedWhenItsShapeCantBeLoaded() {
+        bulletSystem.spawn(new SpawnBatch().add(new EntityId(1), SLOW, new Mass(1), new SpawnPosition(new Vector3f())));
+        step();
+        assertEquals(1, bulletSystem.getParkedEntityCount());
+
+        loading.completeExceptionally(new IllegalStateException("load failure"));
+        step();
+
+        assertEquals(0, bulletSystem.getParkedEntityCount());
+        assertEquals(0, bulletSystem.getSpawnedEntityCount());
+        assertEquals(0, added);
+    }
+
+    private void step() {
+        nanos += FRAME_NANOS;
+        time.update(nanos);
+        bulletSystem.update(time);
+    }
+
+    private static class CountingDriver implements PhysicalEntityDriver {
+
+        private int updates;
+
+        @Override
+        public void initialize(PhysicalEntity entity) {
+        }
+
+        @Override
+        public void update(float tpf) {
+            updates++;
+        }
+
+        @Override
+        public void cleanup(PhysicalEntity entity) {
+        }
+
+    }
+
+}
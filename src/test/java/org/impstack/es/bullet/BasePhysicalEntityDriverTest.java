@@ -0,0 +1,177 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.system.NativeLibraryLoader;
+import com.simsilica.es.EntityId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Verifies that the garbage free {@link BasePhysicalEntityDriver} sets exactly the same velocities as the original,
+ * allocating implementation. Both drivers control an identical body in their own physics space and get the same
+ * commands.
+ */
+public class BasePhysicalEntityDriverTest {
+
+    private static final float TPF = 1f / 60f;
+
+    private PhysicsSpace space;
+    private PhysicsSpace referenceSpace;
+    private RigidBodyEntity entity;
+    private RigidBodyEntity referenceEntity;
+
+    @BeforeClass
+    public static void loadNatives() {
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+    }
+
+    @Before
+    public void setup() {
+        space = createSpace();
+        referenceSpace = createSpace();
+        entity = createBody(space);
+        referenceEntity = createBody(referenceSpace);
+    }
+
+    @After
+    public void tearDown() {
+        space.destroy();
+        referenceSpace.destroy();
+    }
+
+    @Test
+    public void setsTheSameVelocitiesAsTheOriginalDriver() {
+        BasePhysicalEntityDriver driver = new BasePhysicalEntityDriver();
+        // without the idle thresholds, the driver keeps setting velocities like the original driver
+        driver.setIdleSpeed(0);
+        driver.setIdleAngle(FastMath.ZERO_TOLERANCE);
+        ReferenceDriver reference = new ReferenceDriver();
+        entity.setPhysicalEntityDriver(driver);
+        referenceEntity.setPhysicalEntityDriver(reference);
+
+        Random random = new Random(42);
+        for (int frame = 0; frame < 600; frame++) {
+            if (frame % 60 == 0) {
+                // a new command every second, sometimes standing still
+                Vector3f moveDirection = frame % 180 == 120 ? Vector3f.ZERO : randomDirection(random);
+                Vector3f viewDirection = randomDirection(random);
+                float moveSpeed = 0.5f + random.nextFloat() * 2;
+                float turningSpeed = 0.5f + random.nextFloat();
+                driver.setMoveDirection(moveDirection);
+                driver.setViewDirection(viewDirection);
+                driver.setMoveSpeed(moveSpeed);
+                driver.setTurningSpeed(turningSpeed);
+                reference.moveDirection.set(moveDirection).normalizeLocal();
+                reference.viewDirection.set(viewDirection).normalizeLocal();
+                reference.moveSpeed = moveSpeed;
+                reference.turningSpeed = turningSpeed;
+            }
+
+            driver.update(TPF);
+            reference.update(TPF);
+            space.update(TPF, 0);
+            referenceSpace.update(TPF, 0);
+
+            assertEquals("linear velocity in frame " + frame, referenceEntity.getLinearVelocity(), entity.getLinearVelocity());
+            assertEquals("angular velocity in frame " + frame, referenceEntity.getAngularVelocity(), entity.getAngularVelocity());
+            assertEquals("location in frame " + frame, referenceEntity.getPhysicsLocation(), entity.getPhysicsLocation());
+            assertEquals("rotation in frame " + frame, referenceEntity.getPhysicsRotation(), entity.getPhysicsRotation());
+        }
+    }
+
+    private static PhysicsSpace createSpace() {
+        PhysicsSpace space = new PhysicsSpace(new Vector3f(-1000, -1000, -1000), new Vector3f(1000, 1000, 1000), PhysicsSpace.BroadphaseType.DBVT);
+        // no floor, the body moves in the horizontal plane
+        space.setGravity(new Vector3f());
+        return space;
+    }
+
+    private static RigidBodyEntity createBody(PhysicsSpace space) {
+        RigidBodyEntity entity = new RigidBodyEntity(new EntityId(1), new SphereCollisionShape(0.5f), new Mass(80));
+        space.addCollisionObject(entity);
+        return entity;
+    }
+
+    private static Vector3f randomDirection(Random random) {
+        return new Vector3f(random.nextFloat() - 0.5f, 0, random.nextFloat() - 0.5f);
+    }
+
+    /**
+     * The move and turn calculations of the original driver, before they were made garbage free.
+     */
+    private static class ReferenceDriver implements PhysicalEntityDriver {
+
+        private final Vector3f moveDirection = new Vector3f();
+        private final Vector3f viewDirection = new Vector3f(0, 0, 1);
+        private float moveSpeed = 1.0f;
+        private float turningSpeed = 1.0f;
+        private RigidBodyEntity rigidBodyEntity;
+
+        @Override
+        public void initialize(PhysicalEntity entity) {
+            rigidBodyEntity = (RigidBodyEntity) entity;
+            rigidBodyEntity.setAngularFactor(new Vector3f(0, 1, 0));
+        }
+
+        @Override
+        public void update(float tpf) {
+            move(tpf);
+            turn(tpf);
+        }
+
+        @Override
+        public void cleanup(PhysicalEntity entity) {
+        }
+
+        private void move(float tpf) {
+            Vector3f localMoveDirection = moveDirection.mult(60 * tpf * moveSpeed);
+
+            Vector3f velocity = rigidBodyEntity.getLinearVelocity();
+            Vector3f currentVelocity = velocity.clone();
+
+            float existingLeftVelocity = velocity.dot(Vector3f.UNIT_X);
+            float existingForwardVelocity = velocity.dot(Vector3f.UNIT_Z);
+            existingLeftVelocity = existingLeftVelocity * 0.9f;
+            existingForwardVelocity = existingForwardVelocity * 0.9f;
+            velocity.addLocal(new Vector3f(-existingLeftVelocity, 0, -existingForwardVelocity));
+
+            float speed = localMoveDirection.length();
+            if (speed > 0) {
+                Vector3f localWalkDirection = localMoveDirection.normalize();
+                float existingVelocity = velocity.dot(localWalkDirection);
+                float finalVelocity = speed - existingVelocity;
+                localWalkDirection.multLocal(finalVelocity);
+                velocity.addLocal(localWalkDirection);
+            }
+
+            if (currentVelocity.distance(velocity) > FastMath.ZERO_TOLERANCE) {
+                rigidBodyEntity.setLinearVelocity(velocity);
+            }
+        }
+
+        private void turn(float tpf) {
+            Vector3f currentDirection = rigidBodyEntity.getPhysicsRotation(new Quaternion()).mult(Vector3f.UNIT_Z);
+            float angle = currentDirection.angleBetween(viewDirection);
+            Vector3f angleToVector = new Vector3f(0, angle, 0);
+            angleToVector.multLocal(60 * tpf * turningSpeed);
+            Vector3f crossProduct = currentDirection.cross(viewDirection);
+            if (crossProduct.y < 0) {
+                angleToVector.negateLocal();
+            }
+            if (angle > FastMath.ZERO_TOLERANCE) {
+                rigidBodyEntity.setAngularVelocity(angleToVector);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
+import com.jme3.system.NativeLibraryLoader;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that the collision shapes loaded by a {@link BasePhysicalShapeRegistry} are kept until they're acquired, and
+ * evicted once they're no longer used.
+ */
+public class BasePhysicalShapeRegistryTest {
+
+    private static final PhysicalShape ROCK = new PhysicalShape("rock");
+    private static final PhysicalShape TREE = new PhysicalShape("tree");
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private BasePhysicalShapeRegistry shapeRegistry;
+
+    @BeforeClass
+    public static void loadNatives() {
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+    }
+
+    @Before
+    public void setup() {
+        shapeRegistry = new BasePhysicalShapeRegistry() {
+            @Override
+            protected CollisionShape loadCollisionShape(PhysicalShape physicalShape) {
+                loads.incrementAndGet();
+                return new SphereCollisionShape(physicalShape == ROCK ? 1f : 2f);
+            }
+        };
+        shapeRegistry.setMaxUnusedShapes(0);
+    }
+
+    @Test
+    public void loadedShapeIsNotEvictedBeforeItsAcquired() {
+        shapeRegistry.get(TREE);
+        shapeRegistry.acquire(TREE);
+        CollisionShape rock = shapeRegistry.getAsync(ROCK).join();
+
+        // evicts the unused shapes
+        shapeRegistry.release(TREE);
+        shapeRegistry.acquire(ROCK);
+
+        assertSame(rock, shapeRegistry.get(ROCK));
+        assertEquals(1, shapeRegistry.getReferenceCount(ROCK));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void releasedShapeIsEvicted() {
+        shapeRegistry.get(ROCK);
+        shapeRegistry.acquire(ROCK);
+        shapeRegistry.release(ROCK);
+
+        shapeRegistry.get(ROCK);
+
+        assertEquals(2, loads.get());
+    }
+
+}
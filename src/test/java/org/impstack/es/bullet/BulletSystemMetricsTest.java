@@ -0,0 +1,138 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.shapes.BoxCollisionShape;
+import com.jme3.math.Vector3f;
+import com.jme3.system.NativeLibraryLoader;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.base.DefaultEntityData;
+import com.simsilica.sim.GameSystemManager;
+import com.simsilica.sim.SimTime;
+import org.impstack.es.bullet.metrics.BulletSystemMetrics;
+import org.impstack.es.bullet.metrics.Histogram;
+import org.impstack.es.bullet.metrics.MetricsSnapshot;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that the metrics time every call to the listeners, not only the updates.
+ */
+public class BulletSystemMetricsTest {
+
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+    private static final PhysicalShape BOX = new PhysicalShape("box");
+
+    private GameSystemManager systems;
+    private BulletSystem bulletSystem;
+    private final BulletSystemMetrics metrics = new BulletSystemMetrics();
+    private final SimTime time = new SimTime();
+    private long nanos;
+
+    @BeforeClass
+    public static void loadNatives() {
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+    }
+
+    @Before
+    public void setup() {
+        BasePhysicalShapeRegistry shapeRegistry = new BasePhysicalShapeRegistry();
+        shapeRegistry.register(BOX, new BoxCollisionShape(new Vector3f(0.5f, 0.5f, 0.5f)));
+
+        bulletSystem = new BulletSystem(new DefaultEntityData(), shapeRegistry);
+        metrics.setInterval(1);
+        bulletSystem.setMetrics(metrics);
+        systems = new GameSystemManager();
+        systems.register(BulletSystem.class, bulletSystem);
+        systems.initialize();
+        systems.start();
+    }
+
+    @After
+    public void tearDown() {
+        systems.stop();
+        systems.terminate();
+    }
+
+    @Test
+    public void endFrameOfAListenerIsTimed() {
+        bulletSystem.addPhysicalEntityListener(new SlowEndFrameListener());
+
+        step();
+
+        Histogram histogram = metrics.getSnapshot().getListeners().get(SlowEndFrameListener.class.getName());
+        assertNotNull(histogram);
+        assertTrue(histogram.getMax() >= TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    @Test
+    public void contactListenerIsTimed() {
+        bulletSystem.addContactListener(new SlowContactListener());
+        bulletSystem.spawn(new SpawnBatch()
+                .add(new EntityId(1), BOX, new Mass(0), new SpawnPosition(new Vector3f(0, -0.5f, 0)))
+                .add(new EntityId(2), BOX, new Mass(1), new SpawnPosition(new Vector3f(0, 0.45f, 0))));
+
+        for (int i = 0; i < 5; i++) {
+            step();
+        }
+
+        MetricsSnapshot snapshot = metrics.getSnapshot();
+        assertTrue(snapshot.getContactEvents() > 0);
+        Histogram histogram = snapshot.getListeners().get(SlowContactListener.class.getName());
+        assertNotNull(histogram);
+        assertTrue(histogram.getMax() >= TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    private void step() {
+        nanos += FRAME_NANOS;
+        time.update(nanos);
+        bulletSystem.update(time);
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class SlowEndFrameListener implements PhysicalEntityListener {
+
+        @Override
+        public void startFrame() {
+        }
+
+        @Override
+        public void physicalEntityAdded(PhysicalEntity physicalEntity) {
+        }
+
+        @Override
+        public void physicalEntityUpdated(PhysicalEntity physicalEntity) {
+        }
+
+        @Override
+        public void physicalEntityRemoved(PhysicalEntity physicalEntity) {
+        }
+
+        @Override
+        public void endFrame() {
+            sleep();
+        }
+
+    }
+
+    private static class SlowContactListener implements ContactListener {
+
+        @Override
+        public void contacts(ContactFrame frame) {
+            sleep();
+        }
+
+    }
+
+}
@@ -0,0 +1,127 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.shapes.BoxCollisionShape;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
+import com.jme3.math.Vector3f;
+import com.jme3.system.NativeLibraryLoader;
+import com.simsilica.es.EntityId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies the phases reported by the {@link ContactTracker} for a body resting on a static floor: Bullet only reports
+ * the contact when it starts, the contact persists while the body moves over the floor and while it sleeps, and ends
+ * when the body leaves the floor.
+ */
+public class ContactTrackerTest {
+
+    private static final float TPF = 1f / 60f;
+
+    private PhysicsSpace space;
+    private RigidBodyEntity floor;
+    private RigidBodyEntity body;
+    private ContactTracker tracker;
+    private long frame;
+
+    @BeforeClass
+    public static void loadNatives() {
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+    }
+
+    @Before
+    public void setup() {
+        space = new PhysicsSpace(new Vector3f(-100, -100, -100), new Vector3f(100, 100, 100), PhysicsSpace.BroadphaseType.DBVT);
+        floor = new RigidBodyEntity(new EntityId(1), new BoxCollisionShape(new Vector3f(20, 0.5f, 20)), new Mass(0));
+        space.addCollisionObject(floor);
+        tracker = new ContactTracker();
+        space.addCollisionListener(event -> tracker.record((PhysicalEntity) event.getObjectA(), (PhysicalEntity) event.getObjectB(), event));
+    }
+
+    @After
+    public void tearDown() {
+        space.destroy();
+    }
+
+    @Test
+    public void sleepingContactPersists() {
+        addBody(new BoxCollisionShape(new Vector3f(0.5f, 0.5f, 0.5f)));
+
+        List<ContactPhase> phases = step(60);
+        assertEquals(ContactPhase.BEGIN, phases.get(0));
+        assertOnly(ContactPhase.PERSIST, phases.subList(1, phases.size()));
+
+        // the body goes to sleep after the deactivation time, bullet no longer reports the contact
+        assertOnly(ContactPhase.PERSIST, step(180));
+        assertFalse(body.isActive());
+        assertOnly(ContactPhase.PERSIST, step(60));
+
+        body.activate();
+        assertOnly(ContactPhase.PERSIST, step(10));
+    }
+
+    @Test
+    public void rollingContactPersists() {
+        addBody(new SphereCollisionShape(0.5f));
+        body.setLinearVelocity(new Vector3f(2, 0, 0));
+
+        List<ContactPhase> phases = step(120);
+        assertEquals(ContactPhase.BEGIN, phases.get(0));
+        assertOnly(ContactPhase.PERSIST, phases.subList(1, phases.size()));
+        assertTrue(body.getPhysicsLocation().x > 2);
+    }
+
+    @Test
+    public void contactEndsWhenTheBodyLeaves() {
+        addBody(new BoxCollisionShape(new Vector3f(0.5f, 0.5f, 0.5f)));
+        step(60);
+
+        body.setLinearVelocity(new Vector3f(0, 5, 0));
+        List<ContactPhase> phases = step(30);
+
+        assertEquals(ContactPhase.END, phases.get(phases.size() - 1));
+        assertOnly(ContactPhase.PERSIST, phases.subList(0, phases.size() - 1));
+        assertTrue(body.getPhysicsLocation().y > 1.5f);
+    }
+
+    private void addBody(CollisionShape shape) {
+        body = new RigidBodyEntity(new EntityId(2), shape, new Mass(1));
+        body.setPhysicsLocation(new Vector3f(0, 1.2f, 0));
+        space.addCollisionObject(body);
+    }
+
+    /**
+     * Steps the physics space and returns the phases of the contact between the body and the floor, in the frames that
+     * report it.
+     */
+    private List<ContactPhase> step(int frames) {
+        List<ContactPhase> phases = new ArrayList<>();
+        for (int i = 0; i < frames; i++) {
+            space.update(TPF, 0);
+            space.distributeEvents();
+            ContactFrame contacts = tracker.finish(frame++);
+            for (int c = 0; c < contacts.size(); c++) {
+                assertSame(floor, contacts.getEntityA(c));
+                assertSame(body, contacts.getEntityB(c));
+                phases.add(contacts.getPhase(c));
+            }
+            tracker.swap();
+        }
+        return phases;
+    }
+
+    private static void assertOnly(ContactPhase phase, List<ContactPhase> phases) {
+        for (ContactPhase p : phases) {
+            assertEquals(phases.toString(), phase, p);
+        }
+    }
+
+}
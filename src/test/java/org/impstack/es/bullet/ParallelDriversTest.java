@@ -0,0 +1,105 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
+import com.jme3.math.Vector3f;
+import com.jme3.system.NativeLibraryLoader;
+import com.simsilica.es.EntityId;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that the velocities set by thread-safe drivers that are updated in parallel are applied, and that velocity
+ * writes aren't buffered anymore after one of the drivers failed.
+ */
+public class ParallelDriversTest {
+
+    private static final Vector3f VELOCITY = new Vector3f(1, 0, 2);
+
+    private BulletSystem bulletSystem;
+    private final List<RigidBodyEntity> entities = new ArrayList<>();
+
+    @BeforeClass
+    public static void loadNatives() {
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+    }
+
+    @Before
+    public void setup() {
+        bulletSystem = new BulletSystem();
+        bulletSystem.setParallelDrivers(true);
+        bulletSystem.setParallelChunkSize(4);
+        for (int i = 0; i < 32; i++) {
+            RigidBodyEntity entity = new RigidBodyEntity(new EntityId(i), new SphereCollisionShape(0.5f), new Mass(1));
+            entity.bulletSystem = bulletSystem;
+            entity.setPhysicalEntityDriver(new VelocityDriver(false));
+            entities.add(entity);
+        }
+    }
+
+    @Test
+    public void bufferedVelocitiesAreApplied() {
+        bulletSystem.updateDrivers(1f / 60f);
+
+        for (RigidBodyEntity entity : entities) {
+            assertEquals(VELOCITY, entity.getLinearVelocity());
+        }
+    }
+
+    @Test
+    public void velocitiesAreAppliedWhenADriverFails() {
+        entities.get(20).setPhysicalEntityDriver(new VelocityDriver(true));
+
+        try {
+            bulletSystem.updateDrivers(1f / 60f);
+            fail("the failure of the driver should be rethrown");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        Vector3f velocity = new Vector3f(0, 3, 0);
+        for (RigidBodyEntity entity : entities) {
+            entity.setLinearVelocity(velocity);
+            assertEquals(velocity, entity.getLinearVelocity());
+        }
+    }
+
+    private static class VelocityDriver implements PhysicalEntityDriver {
+
+        private final boolean fail;
+        private PhysicalEntity entity;
+
+        private VelocityDriver(boolean fail) {
+            this.fail = fail;
+        }
+
+        @Override
+        public void initialize(PhysicalEntity entity) {
+            this.entity = entity;
+        }
+
+        @Override
+        public void update(float tpf) {
+            if (fail) {
+                throw new IllegalStateException("driver failure");
+            }
+            ((RigidBodyEntity) entity).setLinearVelocity(VELOCITY);
+        }
+
+        @Override
+        public void cleanup(PhysicalEntity entity) {
+            this.entity = null;
+        }
+
+        @Override
+        public boolean isThreadSafe() {
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,202 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.shapes.BoxCollisionShape;
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
+import com.jme3.math.Vector3f;
+import com.jme3.system.NativeLibraryLoader;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.base.DefaultEntityData;
+import com.simsilica.sim.GameSystemManager;
+import com.simsilica.sim.SimTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that a world divided in two partitions along x = 0 behaves as one world: static bodies exist in every
+ * partition they overlap, and bodies on both sides of the boundary collide.
+ */
+public class PartitionedWorldTest {
+
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+    private static final String FLOOR = "floor";
+    private static final String BOX = "box";
+    private static final String SPHERE = "sphere";
+
+    private GameSystemManager systems;
+    private BulletSystem bulletSystem;
+    private final SimTime time = new SimTime();
+    private long nanos;
+    private long nextId = 1;
+    // the physical entities added by the system
+    private final Map<EntityId, RigidBodyEntity> entities = new HashMap<>();
+
+    @BeforeClass
+    public static void loadNatives() {
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+    }
+
+    @Before
+    public void setup() {
+        BasePhysicalShapeRegistry shapeRegistry = new BasePhysicalShapeRegistry();
+        shapeRegistry.register(new PhysicalShape(FLOOR), new BoxCollisionShape(new Vector3f(20f, 0.5f, 20f)));
+        shapeRegistry.register(new PhysicalShape(BOX), new BoxCollisionShape(new Vector3f(0.5f, 0.5f, 0.5f)));
+        shapeRegistry.register(new PhysicalShape(SPHERE), new SphereCollisionShape(0.5f));
+
+        bulletSystem = new BulletSystem(new DefaultEntityData(), shapeRegistry);
+        bulletSystem.setPartitioner(new GridPartitioner(new Vector3f(-100, -100, -100), new Vector3f(100, 100, 100), 2, 1));
+        bulletSystem.addPhysicalEntityListener(new PhysicalEntityListener() {
+            @Override
+            public void startFrame() {
+            }
+
+            @Override
+            public void physicalEntityAdded(PhysicalEntity physicalEntity) {
+                entities.put(physicalEntity.getEntityId(), (RigidBodyEntity) physicalEntity);
+            }
+
+            @Override
+            public void physicalEntityUpdated(PhysicalEntity physicalEntity) {
+            }
+
+            @Override
+            public void physicalEntityRemoved(PhysicalEntity physicalEntity) {
+                entities.remove(physicalEntity.getEntityId());
+            }
+
+            @Override
+            public void endFrame() {
+            }
+        });
+        systems = new GameSystemManager();
+        systems.register(BulletSystem.class, bulletSystem);
+        systems.initialize();
+        systems.start();
+    }
+
+    @After
+    public void tearDown() {
+        systems.stop();
+        systems.terminate();
+    }
+
+    @Test
+    public void bodyRestsOnAFloorOfAnotherPartition() {
+        // the center of the floor is in the first partition
+        RigidBodyEntity floor = spawn(FLOOR, 0, new Vector3f(-5, -0.5f, 0));
+        RigidBodyEntity box = spawn(BOX, 10, new Vector3f(8, 2, 0));
+
+        // until after the box fell asleep
+        step(300);
+
+        assertFalse(box.isActive());
+        assertEquals(0, floor.partition);
+        assertEquals(1, box.partition);
+        assertEquals(0.5f, box.getLocation().y, 0.05f);
+    }
+
+    @Test
+    public void bodyCrossesTheBoundaryOnTheFloor() {
+        // the center of the floor is in the second partition, the sphere rolls from the first partition into the second
+        spawn(FLOOR, 0, new Vector3f(5, -0.5f, 0));
+        RigidBodyEntity sphere = spawn(SPHERE, 10, new Vector3f(-3, 0.5f, 0));
+        sphere.setLinearVelocity(new Vector3f(4, 0, 0));
+
+        for (int i = 0; i < 180; i++) {
+            step(1);
+            assertEquals("height in frame " + i, 0.5f, sphere.getLocation().y, 0.05f);
+        }
+
+        assertTrue(sphere.getLocation().x > 3);
+        assertEquals(1, sphere.partition);
+    }
+
+    @Test
+    public void bodiesCollideAcrossTheBoundary() {
+        spawn(FLOOR, 0, new Vector3f(0, -0.5f, 0));
+        RigidBodyEntity left = spawn(BOX, 10, new Vector3f(-1.5f, 0.5f, 0));
+        RigidBodyEntity right = spawn(BOX, 10, new Vector3f(1.5f, 0.5f, 0));
+        left.setLinearVelocity(new Vector3f(5, 0, 0));
+        right.setLinearVelocity(new Vector3f(-5, 0, 0));
+
+        step(60);
+
+        assertEquals(0, left.partition);
+        assertEquals(1, right.partition);
+        assertTrue("the boxes shouldn't pass through each other", right.getLocation().x - left.getLocation().x > 0.9f);
+    }
+
+    @Test
+    public void bodiesTouchingAcrossTheBoundaryFallAsleep() {
+        spawn(FLOOR, 0, new Vector3f(0, -0.5f, 0));
+        RigidBodyEntity left = spawn(BOX, 10, new Vector3f(-0.5f, 0.5f, 0));
+        RigidBodyEntity right = spawn(BOX, 10, new Vector3f(0.5f, 0.5f, 0));
+
+        step(300);
+
+        assertFalse(left.isActive());
+        assertFalse(right.isActive());
+        assertTrue(right.getLocation().x - left.getLocation().x > 0.9f);
+    }
+
+    @Test
+    public void sleepingBodyIsWokenAcrossTheBoundary() {
+        spawn(FLOOR, 0, new Vector3f(0, -0.5f, 0));
+        RigidBodyEntity sleeping = spawn(BOX, 10, new Vector3f(0.6f, 0.5f, 0));
+        step(300);
+        assertFalse(sleeping.isActive());
+
+        RigidBodyEntity moving = spawn(BOX, 10, new Vector3f(-3, 0.5f, 0));
+        moving.setLinearVelocity(new Vector3f(8, 0, 0));
+        step(25);
+
+        assertTrue(sleeping.isActive());
+        assertTrue("the boxes shouldn't pass through each other", sleeping.getLocation().x - moving.getLocation().x > 0.9f);
+    }
+
+    @Test
+    public void queriesReportAMirroredBodyOnce() {
+        RigidBodyEntity floor = spawn(FLOOR, 0, new Vector3f(-5, -0.5f, 0));
+        QueryResults results = new QueryResults(4);
+
+        bulletSystem.getQueryService().raycast(new Vector3f(5, 10, 0), new Vector3f(5, -10, 0), null, results);
+
+        assertEquals(1, results.size());
+        assertSame(floor, results.getPhysicalEntity(0));
+    }
+
+    @Test
+    public void removedBodyIsRemovedFromEveryPartition() {
+        RigidBodyEntity floor = spawn(FLOOR, 0, new Vector3f(-5, -0.5f, 0));
+        assertEquals(1, bulletSystem.getPhysicsSpace(1).getRigidBodyList().size());
+
+        bulletSystem.despawn(Collections.singletonList(floor.getEntityId()));
+        step(1);
+
+        assertTrue(bulletSystem.getPhysicsSpace(0).getRigidBodyList().isEmpty());
+        assertTrue(bulletSystem.getPhysicsSpace(1).getRigidBodyList().isEmpty());
+    }
+
+    private RigidBodyEntity spawn(String shape, float mass, Vector3f location) {
+        EntityId entityId = new EntityId(nextId++);
+        bulletSystem.spawn(new SpawnBatch().add(entityId, new PhysicalShape(shape), new Mass(mass), new SpawnPosition(location)));
+        step(1);
+        return entities.get(entityId);
+    }
+
+    private void step(int frames) {
+        for (int i = 0; i < frames; i++) {
+            nanos += FRAME_NANOS;
+            time.update(nanos);
+            bulletSystem.update(time);
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.shapes.BoxCollisionShape;
+import com.jme3.math.Vector3f;
+import com.jme3.system.NativeLibraryLoader;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.base.DefaultEntityData;
+import com.simsilica.sim.GameSystemManager;
+import com.simsilica.sim.SimTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that the drivers that are set when their physical entity is added don't use up the driver setup budget of
+ * the other pending drivers.
+ */
+public class PendingDriversTest {
+
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+    private static final PhysicalShape BOX = new PhysicalShape("box");
+
+    private GameSystemManager systems;
+    private BulletSystem bulletSystem;
+    private final SimTime time = new SimTime();
+    private long nanos;
+    // the physical entities added by the system
+    private final Map<EntityId, PhysicalEntity> entities = new HashMap<>();
+
+    @BeforeClass
+    public static void loadNatives() {
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+    }
+
+    @Before
+    public void setup() {
+        BasePhysicalShapeRegistry shapeRegistry = new BasePhysicalShapeRegistry();
+        shapeRegistry.register(BOX, new BoxCollisionShape(new Vector3f(0.5f, 0.5f, 0.5f)));
+
+        bulletSystem = new BulletSystem(new DefaultEntityData(), shapeRegistry);
+        bulletSystem.setDriverSetupBudget(1);
+        bulletSystem.addPhysicalEntityListener(new PhysicalEntityListener() {
+            @Override
+            public void startFrame() {
+            }
+
+            @Override
+            public void physicalEntityAdded(PhysicalEntity physicalEntity) {
+                entities.put(physicalEntity.getEntityId(), physicalEntity);
+            }
+
+            @Override
+            public void physicalEntityUpdated(PhysicalEntity physicalEntity) {
+            }
+
+            @Override
+            public void physicalEntityRemoved(PhysicalEntity physicalEntity) {
+            }
+
+            @Override
+            public void endFrame() {
+            }
+        });
+        systems = new GameSystemManager();
+        systems.register(BulletSystem.class, bulletSystem);
+        systems.initialize();
+        systems.start();
+    }
+
+    @After
+    public void tearDown() {
+        systems.stop();
+        systems.terminate();
+    }
+
+    @Test
+    public void resolvedDriversDontCountForTheBudget() {
+        EntityId existing = new EntityId(4);
+        bulletSystem.spawn(new SpawnBatch().add(existing, BOX, new Mass(1), new SpawnPosition(new Vector3f(6, 0, 0))));
+        step();
+
+        // the drivers of the spawned entities are set when they're added, before the pending drivers are checked
+        SpawnBatch batch = new SpawnBatch();
+        for (int i = 1; i <= 3; i++) {
+            bulletSystem.setPhysicalEntityDriver(new EntityId(i), new BasePhysicalEntityDriver());
+            batch.add(new EntityId(i), BOX, new Mass(1), new SpawnPosition(new Vector3f(i * 2, 0, 0)));
+        }
+        BasePhysicalEntityDriver driver = new BasePhysicalEntityDriver();
+        bulletSystem.setPhysicalEntityDriver(existing, driver);
+        bulletSystem.spawn(batch);
+        step();
+
+        for (int i = 1; i <= 3; i++) {
+            assertNotNull(entities.get(new EntityId(i)).getPhysicalEntityDriver());
+        }
+        assertSame(driver, entities.get(existing).getPhysicalEntityDriver());
+    }
+
+    private void step() {
+        nanos += FRAME_NANOS;
+        time.update(nanos);
+        bulletSystem.update(time);
+    }
+
+}
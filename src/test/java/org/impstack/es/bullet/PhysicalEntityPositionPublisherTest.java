@@ -0,0 +1,107 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.shapes.BoxCollisionShape;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.system.NativeLibraryLoader;
+import com.simsilica.es.EntityData;
+import com.simsilica.es.EntityId;
+import org.impstack.jme.es.Position;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that a {@link PhysicalEntityPositionPublisher} that only publishes changed positions, skips sleeping bodies
+ * but publishes a static body that is moved to its spawn position.
+ */
+public class PhysicalEntityPositionPublisherTest {
+
+    private PhysicsSpace space;
+    private BulletSystem bulletSystem;
+    private RigidBodyEntity entity;
+    private PhysicalEntityPositionPublisher publisher;
+    // the positions set on the entity data
+    private final Map<EntityId, Position> positions = new HashMap<>();
+
+    @BeforeClass
+    public static void loadNatives() {
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+    }
+
+    @Before
+    public void setup() {
+        space = new PhysicsSpace(new Vector3f(-100, -100, -100), new Vector3f(100, 100, 100), PhysicsSpace.BroadphaseType.DBVT);
+        bulletSystem = new BulletSystem();
+        entity = new RigidBodyEntity(new EntityId(1), new BoxCollisionShape(new Vector3f(5, 0.5f, 5)), new Mass(0));
+        entity.bulletSystem = bulletSystem;
+        space.addCollisionObject(entity);
+        EntityData entityData = (EntityData) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{EntityData.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("setComponent")) {
+                        positions.put((EntityId) args[0], (Position) args[1]);
+                    }
+                    return null;
+                });
+        publisher = new PhysicalEntityPositionPublisher(entityData, true);
+        publisher.physicalEntityAdded(entity);
+    }
+
+    @After
+    public void tearDown() {
+        space.destroy();
+    }
+
+    @Test
+    public void sleepingStaticBodyIsSkipped() {
+        update();
+
+        assertEquals(0, publisher.getPublishedCount());
+        assertEquals(1, publisher.getSkippedCount());
+    }
+
+    @Test
+    public void movedStaticBodyIsPublished() {
+        Vector3f location = new Vector3f(10, 0, 0);
+        entity.setPhysicsLocation(location);
+        entity.setPhysicsRotation(new Quaternion().fromAngles(0, 1, 0));
+        entity.activate();
+        // bullet keeps a static body asleep
+        assertFalse(entity.isActive());
+        entity.markMoved(bulletSystem.getFrame());
+
+        update();
+
+        assertEquals(1, publisher.getPublishedCount());
+        assertEquals(location, positions.get(entity.getEntityId()).getLocation());
+        assertEquals(entity.getPhysicsRotation(), positions.get(entity.getEntityId()).getRotation());
+    }
+
+    @Test
+    public void movedStaticBodyIsPublishedOnce() {
+        entity.setPhysicsLocation(new Vector3f(10, 0, 0));
+        entity.markMoved(bulletSystem.getFrame());
+        update();
+        // still marked as moved in the same frame, but the position didn't change
+        update();
+
+        assertEquals(0, publisher.getPublishedCount());
+        assertEquals(1, publisher.getSkippedCount());
+    }
+
+    private void update() {
+        publisher.startFrame();
+        entity.snapshotTransform(bulletSystem.getFrame());
+        publisher.physicalEntityUpdated(entity);
+        publisher.endFrame();
+    }
+
+}
@@ -0,0 +1,114 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.system.NativeLibraryLoader;
+import com.simsilica.es.EntityId;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that the physical entities and the state of their drivers are restored from a {@link PhysicsStateFile}.
+ */
+public class PhysicsStateFileTest {
+
+    private final CollisionShape sphere = new SphereCollisionShape(0.5f);
+    private final PhysicalShapeRegistry shapeRegistry = new PhysicalShapeRegistry() {
+        @Override
+        public CollisionShape register(PhysicalShape physicalShape, CollisionShape collisionShape) {
+            return collisionShape;
+        }
+
+        @Override
+        public CollisionShape get(PhysicalShape physicalShape) {
+            return sphere;
+        }
+    };
+    private Path file;
+
+    @BeforeClass
+    public static void loadNatives() {
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+    }
+
+    @Before
+    public void setup() throws IOException {
+        file = Files.createTempFile("physics-state", ".state");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void restoresTheDriverState() throws IOException {
+        RigidBodyEntity entity = createEntity(1);
+        BasePhysicalEntityDriver driver = new BasePhysicalEntityDriver();
+        driver.setMoveDirection(new Vector3f(0, 0, 1));
+        driver.setViewDirection(new Vector3f(-1, 0, 0));
+        driver.setMoveSpeed(2.5f);
+        driver.setTurningSpeed(0.75f);
+        driver.setIdleSpeed(0.2f);
+        driver.setIdleAngle(0.05f);
+        entity.setPhysicalEntityDriver(driver);
+        RigidBodyEntity spawned = createEntity(2);
+        spawned.setPhysicalEntityDriver(new BasePhysicalEntityDriver() {
+            // a subclass, its state isn't saved
+        });
+
+        int unsavedDrivers = PhysicsStateFile.write(file, Collections.singletonList(entity), Collections.singletonList(spawned));
+        List<RigidBodyEntity> containerEntities = new ArrayList<>();
+        List<RigidBodyEntity> spawnedEntities = new ArrayList<>();
+        PhysicsStateFile.read(file, shapeRegistry, containerEntities, spawnedEntities);
+
+        assertEquals(1, unsavedDrivers);
+        assertEquals(1, containerEntities.size());
+        assertEquals(1, spawnedEntities.size());
+        RigidBodyEntity restored = containerEntities.get(0);
+        assertEquals(entity.getEntityId(), restored.getEntityId());
+        assertEquals(entity.getPhysicsLocation(), restored.getPhysicsLocation());
+        assertEquals(entity.getPhysicsRotation(), restored.getPhysicsRotation());
+        BasePhysicalEntityDriver restoredDriver = (BasePhysicalEntityDriver) restored.getPhysicalEntityDriver();
+        assertEquals(driver.getMoveDirection(), restoredDriver.getMoveDirection());
+        assertEquals(driver.getViewDirection(), restoredDriver.getViewDirection());
+        assertEquals(driver.getMoveSpeed(), restoredDriver.getMoveSpeed(), 0f);
+        assertEquals(driver.getTurningSpeed(), restoredDriver.getTurningSpeed(), 0f);
+        assertEquals(driver.getIdleSpeed(), restoredDriver.getIdleSpeed(), 0f);
+        assertEquals(driver.getIdleAngle(), restoredDriver.getIdleAngle(), 0f);
+        assertNull(spawnedEntities.get(0).getPhysicalEntityDriver());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAnotherVersion() throws IOException {
+        PhysicsStateFile.write(file, Collections.singletonList(createEntity(1)), Collections.emptyList());
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putInt(4, PhysicsStateFile.VERSION - 1);
+        Files.write(file, bytes);
+
+        PhysicsStateFile.read(file, shapeRegistry, new ArrayList<>(), new ArrayList<>());
+    }
+
+    private RigidBodyEntity createEntity(long id) {
+        RigidBodyEntity entity = new RigidBodyEntity(new EntityId(id), sphere, new Mass(80));
+        entity.physicalShape = new PhysicalShape("sphere");
+        entity.setPhysicsLocation(new Vector3f(id, 2, 3));
+        entity.setPhysicsRotation(new Quaternion().fromAngles(0, id, 0));
+        return entity;
+    }
+
+}
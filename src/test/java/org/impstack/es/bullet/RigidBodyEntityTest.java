@@ -0,0 +1,87 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.shapes.SphereCollisionShape;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.system.NativeLibraryLoader;
+import com.simsilica.es.EntityId;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Verifies that the transform accessors with a store parameter of {@link RigidBodyEntity} don't allocate, with and
+ * without a current snapshot.
+ */
+public class RigidBodyEntityTest {
+
+    private static final int CALLS = 100_000;
+
+    private RigidBodyEntity entity;
+    private final Vector3f location = new Vector3f();
+    private final Quaternion rotation = new Quaternion();
+
+    @BeforeClass
+    public static void loadNatives() {
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+    }
+
+    @Before
+    public void setup() {
+        entity = new RigidBodyEntity(new EntityId(1), new SphereCollisionShape(0.5f), new Mass(1));
+        entity.setPhysicsLocation(new Vector3f(1, 2, 3));
+        entity.setPhysicsRotation(new Quaternion().fromAngles(0.1f, 0.2f, 0.3f));
+    }
+
+    @Test
+    public void snapshotReadsMatchThePhysicsTransform() {
+        entity.bulletSystem = new BulletSystem();
+        entity.snapshotTransform(entity.bulletSystem.getFrame());
+
+        assertEquals(entity.getPhysicsLocation(new Vector3f()), entity.getLocation(location));
+        assertEquals(entity.getPhysicsRotation(new Quaternion()), entity.getRotation(rotation));
+    }
+
+    @Test
+    public void physicsReadsDontAllocate() {
+        assertEquals(0, allocatedBytes(this::readTransform));
+    }
+
+    @Test
+    public void snapshotReadsDontAllocate() {
+        entity.bulletSystem = new BulletSystem();
+        entity.snapshotTransform(entity.bulletSystem.getFrame());
+
+        assertEquals(0, allocatedBytes(this::readTransform));
+    }
+
+    private void readTransform() {
+        entity.getLocation(location);
+        entity.getRotation(rotation);
+        entity.getInterpolatedLocation(location);
+        entity.getInterpolatedRotation(rotation);
+        entity.getPreviousLocation(location);
+        entity.getPreviousRotation(rotation);
+    }
+
+    /**
+     * The bytes allocated by the current thread while running the calls, after a warm up.
+     */
+    private static long allocatedBytes(Runnable call) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < CALLS; i++) {
+            call.run();
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < CALLS; i++) {
+            call.run();
+        }
+        return threads.getThreadAllocatedBytes(threadId) - before;
+    }
+
+}
@@ -0,0 +1,170 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.PhysicsSpace;
+import com.jme3.bullet.collision.PhysicsRayTestResult;
+import com.jme3.bullet.collision.shapes.CollisionShape;
+import com.jme3.bullet.collision.shapes.HullCollisionShape;
+import com.jme3.bullet.collision.shapes.MeshCollisionShape;
+import com.jme3.bullet.objects.PhysicsRigidBody;
+import com.jme3.math.Vector3f;
+import com.jme3.scene.shape.Box;
+import com.jme3.scene.shape.Sphere;
+import com.jme3.system.NativeLibraryLoader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that collision shapes stored in a {@link ShapeCache} are loaded with the same geometry, and that outdated
+ * or corrupt cache files are ignored.
+ */
+public class ShapeCacheTest {
+
+    private Path directory;
+    private ShapeCache shapeCache;
+
+    @BeforeClass
+    public static void loadNatives() {
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+    }
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("shape-cache");
+        shapeCache = new ShapeCache(directory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void hullShapeRoundTrip() {
+        HullCollisionShape shape = new HullCollisionShape(new Sphere(8, 8, 1f));
+        shape.setMargin(0.02f);
+        shapeCache.store("Models/rock.j3o", "hash", shape);
+
+        CollisionShape loaded = shapeCache.load("Models/rock.j3o", "hash");
+
+        assertTrue(loaded instanceof HullCollisionShape);
+        assertEquals(shape.getMargin(), loaded.getMargin(), 0f);
+        assertSameGeometry(shape, loaded);
+    }
+
+    @Test
+    public void meshShapeRoundTrip() {
+        MeshCollisionShape shape = new MeshCollisionShape(new Box(2f, 0.5f, 1f));
+        shape.setScale(new Vector3f(1f, 2f, 1f));
+        shapeCache.store("Scenes/floor.j3o", "hash", shape);
+
+        CollisionShape loaded = shapeCache.load("Scenes/floor.j3o", "hash");
+
+        assertTrue(loaded instanceof MeshCollisionShape);
+        assertEquals(shape.getScale(), loaded.getScale());
+        assertSameGeometry(shape, loaded);
+    }
+
+    @Test
+    public void outdatedShapeIsIgnored() {
+        shapeCache.store("Models/rock.j3o", "hash", new HullCollisionShape(new Sphere(8, 8, 1f)));
+
+        assertNull(shapeCache.load("Models/rock.j3o", "other"));
+        assertNull(shapeCache.load("Models/other.j3o", "hash"));
+        assertNotNull(shapeCache.load("Models/rock.j3o", null));
+    }
+
+    @Test
+    public void isCurrentChecksTheHeader() {
+        assertFalse(shapeCache.isCurrent("Models/rock.j3o", "hash"));
+
+        shapeCache.store("Models/rock.j3o", "hash", new HullCollisionShape(new Sphere(8, 8, 1f)));
+
+        assertTrue(shapeCache.isCurrent("Models/rock.j3o", "hash"));
+        assertTrue(shapeCache.isCurrent("Models/rock.j3o", null));
+        assertFalse(shapeCache.isCurrent("Models/rock.j3o", "other"));
+    }
+
+    @Test
+    public void distinctIdsUseDistinctFiles() {
+        assertNotEquals(shapeCache.getFile("a/b"), shapeCache.getFile("a:b"));
+        assertNotEquals(shapeCache.getFile("a_b"), shapeCache.getFile("a:b"));
+        assertNotEquals(shapeCache.getFile("a%2Fb"), shapeCache.getFile("a/b"));
+        assertEquals(directory, shapeCache.getFile("../a/b").getParent());
+
+        HullCollisionShape small = new HullCollisionShape(new Sphere(8, 8, 1f));
+        MeshCollisionShape large = new MeshCollisionShape(new Box(3f, 3f, 3f));
+        shapeCache.store("a/b", "hash", small);
+        shapeCache.store("a:b", "hash", large);
+
+        assertTrue(shapeCache.load("a/b", "hash") instanceof HullCollisionShape);
+        assertTrue(shapeCache.load("a:b", "hash") instanceof MeshCollisionShape);
+    }
+
+    @Test
+    public void corruptFileIsIgnored() throws IOException {
+        shapeCache.store("Models/rock.j3o", "hash", new HullCollisionShape(new Sphere(8, 8, 1f)));
+        Path file = shapeCache.getFile("Models/rock.j3o");
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertNull(shapeCache.load("Models/rock.j3o", "hash"));
+
+        Files.write(file, new byte[]{1, 2, 3});
+
+        assertNull(shapeCache.load("Models/rock.j3o", "hash"));
+        assertFalse(shapeCache.isCurrent("Models/rock.j3o", "hash"));
+    }
+
+    /**
+     * Casts a grid of rays down on both shapes and compares where they are hit.
+     */
+    private static void assertSameGeometry(CollisionShape expected, CollisionShape actual) {
+        PhysicsSpace space = new PhysicsSpace(new Vector3f(-100, -100, -100), new Vector3f(100, 100, 100), PhysicsSpace.BroadphaseType.DBVT);
+        try {
+            PhysicsRigidBody expectedBody = new PhysicsRigidBody(expected, 0);
+            PhysicsRigidBody actualBody = new PhysicsRigidBody(actual, 0);
+            // side by side, far enough apart that a ray only hits one of the bodies
+            expectedBody.setPhysicsLocation(new Vector3f(-20, 0, 0));
+            actualBody.setPhysicsLocation(new Vector3f(20, 0, 0));
+            space.addCollisionObject(expectedBody);
+            space.addCollisionObject(actualBody);
+
+            int hits = 0;
+            for (float x = -3; x <= 3; x += 0.25f) {
+                for (float z = -3; z <= 3; z += 0.25f) {
+                    float expectedFraction = rayFraction(space, -20 + x, z);
+                    float actualFraction = rayFraction(space, 20 + x, z);
+                    assertEquals("ray at " + x + ", " + z, expectedFraction, actualFraction, 1e-5f);
+                    hits += expectedFraction < 1 ? 1 : 0;
+                }
+            }
+            assertTrue("the rays should hit the shape", hits > 0);
+        } finally {
+            space.destroy();
+        }
+    }
+
+    private static float rayFraction(PhysicsSpace space, float x, float z) {
+        List<PhysicsRayTestResult> results = space.rayTest(new Vector3f(x, 10, z), new Vector3f(x, -10, z));
+        float fraction = 1;
+        for (PhysicsRayTestResult result : results) {
+            fraction = Math.min(fraction, result.getHitFraction());
+        }
+        return fraction;
+    }
+
+}
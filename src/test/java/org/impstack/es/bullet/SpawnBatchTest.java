@@ -0,0 +1,126 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.shapes.BoxCollisionShape;
+import com.jme3.math.Vector3f;
+import com.jme3.system.NativeLibraryLoader;
+import com.simsilica.es.EntityId;
+import com.simsilica.es.base.DefaultEntityData;
+import com.simsilica.sim.GameSystemManager;
+import com.simsilica.sim.SimTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that a physical entity of a spawn batch that can't be spawned doesn't stop the rest of the batch, and that
+ * the frame is ended when it fails.
+ */
+public class SpawnBatchTest {
+
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+    private static final PhysicalShape BOX = new PhysicalShape("box");
+
+    private GameSystemManager systems;
+    private BulletSystem bulletSystem;
+    private final SimTime time = new SimTime();
+    private long nanos;
+    // the physical entities added by the system
+    private final Map<EntityId, PhysicalEntity> entities = new HashMap<>();
+    private int startedFrames;
+    private int endedFrames;
+    private boolean failOnAdd;
+
+    @BeforeClass
+    public static void loadNatives() {
+        NativeLibraryLoader.loadNativeLibrary("bulletjme", true);
+    }
+
+    @Before
+    public void setup() {
+        BasePhysicalShapeRegistry shapeRegistry = new BasePhysicalShapeRegistry();
+        shapeRegistry.register(BOX, new BoxCollisionShape(new Vector3f(0.5f, 0.5f, 0.5f)));
+
+        bulletSystem = new BulletSystem(new DefaultEntityData(), shapeRegistry);
+        bulletSystem.addPhysicalEntityListener(new PhysicalEntityListener() {
+            @Override
+            public void startFrame() {
+                startedFrames++;
+            }
+
+            @Override
+            public void physicalEntityAdded(PhysicalEntity physicalEntity) {
+                if (failOnAdd) {
+                    throw new IllegalStateException("listener failure");
+                }
+                entities.put(physicalEntity.getEntityId(), physicalEntity);
+            }
+
+            @Override
+            public void physicalEntityUpdated(PhysicalEntity physicalEntity) {
+            }
+
+            @Override
+            public void physicalEntityRemoved(PhysicalEntity physicalEntity) {
+            }
+
+            @Override
+            public void endFrame() {
+                endedFrames++;
+            }
+        });
+        systems = new GameSystemManager();
+        systems.register(BulletSystem.class, bulletSystem);
+        systems.initialize();
+        systems.start();
+    }
+
+    @After
+    public void tearDown() {
+        systems.stop();
+        systems.terminate();
+    }
+
+    @Test
+    public void unknownShapeDoesNotStopTheBatch() {
+        bulletSystem.spawn(new SpawnBatch()
+                .add(new EntityId(1), BOX, new Mass(1), new SpawnPosition(new Vector3f(0, 0, 0)))
+                .add(new EntityId(2), new PhysicalShape("unknown"), new Mass(1), new SpawnPosition(new Vector3f(2, 0, 0)))
+                .add(new EntityId(3), BOX, new Mass(1), new SpawnPosition(new Vector3f(4, 0, 0))));
+
+        step();
+
+        assertTrue(entities.containsKey(new EntityId(1)));
+        assertFalse(entities.containsKey(new EntityId(2)));
+        assertTrue(entities.containsKey(new EntityId(3)));
+        assertEquals(1, endedFrames);
+    }
+
+    @Test
+    public void frameIsEndedWhenItFails() {
+        failOnAdd = true;
+        bulletSystem.spawn(new SpawnBatch().add(new EntityId(1), BOX, new Mass(1), new SpawnPosition(new Vector3f())));
+
+        try {
+            step();
+            fail("the failure of the listener should be rethrown");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals(1, startedFrames);
+        assertEquals(1, endedFrames);
+    }
+
+    private void step() {
+        nanos += FRAME_NANOS;
+        time.update(nanos);
+        bulletSystem.update(time);
+    }
+
+}
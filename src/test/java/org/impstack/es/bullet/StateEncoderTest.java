@@ -0,0 +1,253 @@
+package org.impstack.es.bullet;
+
+import com.jme3.bullet.collision.PhysicsCollisionObject;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.simsilica.es.EntityId;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Verifies that the state encoded by a {@link StateEncoder} is decoded by a {@link StateDecoder} within the precision of
+ * the quantizer, for full states and for deltas against an acknowledged baseline.
+ */
+public class StateEncoderTest {
+
+    private static final float PRECISION = 0.01f;
+
+    private final Random random = new Random(42);
+    private StateEncoder encoder;
+    private StateDecoder decoder;
+    private final List<TestEntity> entities = new ArrayList<>();
+    private long nextId = 1;
+
+    @Before
+    public void setup() {
+        StateQuantizer quantizer = new StateQuantizer(new Vector3f(-500, -100, -500), new Vector3f(500, 100, 500), PRECISION);
+        encoder = new StateEncoder(quantizer);
+        decoder = new StateDecoder(quantizer);
+    }
+
+    @Test
+    public void fullStateRoundTrip() {
+        frame(() -> add(500));
+
+        decode(encoder.encode(-1));
+
+        assertDecoded();
+    }
+
+    @Test
+    public void deltaRoundTrip() {
+        frame(() -> add(500));
+        int baseline = decode(encoder.encode(-1));
+        int fullSize = encoder.encode(-1).remaining();
+
+        // move a few entities, rotate a few others, remove some and add new ones
+        frame(() -> {
+            for (int i = 0; i < 20; i++) {
+                update(entities.get(i * 10), true, false);
+                update(entities.get(i * 10 + 1), false, true);
+            }
+            for (int i = 0; i < 10; i++) {
+                remove(entities.get(random.nextInt(entities.size())));
+            }
+            add(10);
+        });
+
+        ByteBuffer delta = encoder.encode(baseline);
+        assertTrue("the delta should be smaller than the full state", delta.remaining() < fullSize / 4);
+        decode(delta);
+
+        assertDecoded();
+    }
+
+    @Test
+    public void deltaChainRoundTrip() {
+        frame(() -> add(200));
+        int baseline = decode(encoder.encode(-1));
+
+        for (int frame = 0; frame < 20; frame++) {
+            frame(() -> {
+                for (int i = 0; i < 15; i++) {
+                    update(entities.get(random.nextInt(entities.size())), random.nextBoolean(), true);
+                }
+                remove(entities.get(random.nextInt(entities.size())));
+                add(1);
+            });
+            // every other state is lost, the next delta is against the last acknowledged state
+            ByteBuffer delta = encoder.encode(baseline);
+            if (frame % 2 == 0) {
+                baseline = decode(delta);
+                assertDecoded();
+            }
+        }
+    }
+
+    @Test
+    public void unchangedStateOnlyHasAHeader() {
+        frame(() -> add(100));
+        int baseline = decode(encoder.encode(-1));
+
+        // updates of entities that didn't move don't change the state
+        frame(() -> {
+            for (TestEntity entity : entities) {
+                encoder.physicalEntityUpdated(entity);
+            }
+        });
+
+        assertEquals(baseline, encoder.getSequence());
+        ByteBuffer delta = encoder.encode(baseline);
+        assertEquals(16, delta.remaining());
+        decode(delta);
+        assertEquals(100, decoder.size());
+    }
+
+    @Test
+    public void baselineOutOfHistoryEncodesTheFullState() {
+        encoder.setHistorySize(4);
+        frame(() -> add(50));
+        int baseline = decode(encoder.encode(-1));
+
+        for (int frame = 0; frame < 10; frame++) {
+            frame(() -> update(entities.get(random.nextInt(entities.size())), true, true));
+        }
+
+        ByteBuffer state = encoder.encode(baseline);
+        assertEquals("the baseline of a full state", -1, state.getInt(4));
+        StateDecoder newDecoder = new StateDecoder(encoder.getQuantizer());
+        newDecoder.decode(state);
+        decoder = newDecoder;
+
+        assertDecoded();
+    }
+
+    @Test
+    public void oldAndDuplicateStatesDontReplaceTheCurrentState() {
+        frame(() -> add(50));
+        int baseline = decode(encoder.encode(-1));
+        frame(() -> update(entities.get(0), true, true));
+        byte[] older = toArray(encoder.encode(baseline));
+        frame(() -> update(entities.get(1), true, true));
+        byte[] newer = toArray(encoder.encode(baseline));
+
+        decoder.decode(ByteBuffer.wrap(newer));
+        decoder.decode(ByteBuffer.wrap(older));
+        decoder.decode(ByteBuffer.wrap(newer));
+
+        assertEquals(encoder.getSequence(), decoder.getSequence());
+        assertDecoded();
+    }
+
+    private void frame(Runnable changes) {
+        encoder.startFrame();
+        changes.run();
+        encoder.endFrame();
+    }
+
+    private void add(int count) {
+        for (int i = 0; i < count; i++) {
+            TestEntity entity = new TestEntity(new EntityId(nextId++));
+            entity.location.set(random.nextFloat() * 900 - 450, random.nextFloat() * 180 - 90, random.nextFloat() * 900 - 450);
+            entity.rotation.set(randomRotation());
+            entities.add(entity);
+            encoder.physicalEntityAdded(entity);
+        }
+    }
+
+    private void update(TestEntity entity, boolean move, boolean rotate) {
+        if (move) {
+            entity.location.addLocal(random.nextFloat() - 0.5f, random.nextFloat() - 0.5f, random.nextFloat() - 0.5f);
+        }
+        if (rotate) {
+            entity.rotation.set(randomRotation());
+        }
+        encoder.physicalEntityUpdated(entity);
+    }
+
+    private void remove(TestEntity entity) {
+        entities.remove(entity);
+        encoder.physicalEntityRemoved(entity);
+    }
+
+    private Quaternion randomRotation() {
+        return new Quaternion().fromAngles(random.nextFloat() * FastMath.TWO_PI, random.nextFloat() * FastMath.TWO_PI,
+                random.nextFloat() * FastMath.TWO_PI);
+    }
+
+    private int decode(ByteBuffer buffer) {
+        int sequence = decoder.decode(buffer);
+        assertFalse("the whole state should be read", buffer.hasRemaining());
+        return sequence;
+    }
+
+    /**
+     * Checks that the current state of the decoder matches the entities.
+     */
+    private void assertDecoded() {
+        assertEquals(encoder.getSequence(), decoder.getSequence());
+        assertEquals(entities.size(), decoder.size());
+        Vector3f location = new Vector3f();
+        Quaternion rotation = new Quaternion();
+        for (TestEntity entity : entities) {
+            int index = decoder.indexOf(entity.getEntityId());
+            assertTrue(entity.getEntityId().getId() + " should be decoded", index >= 0);
+            assertEquals(entity.getEntityId(), decoder.getEntityId(index));
+            decoder.getLocation(index, location);
+            decoder.getRotation(index, rotation);
+            assertTrue("location of " + entity.getEntityId().getId(), entity.location.distance(location) <= PRECISION);
+            assertTrue("rotation of " + entity.getEntityId().getId(), Math.abs(entity.rotation.dot(rotation)) >= 0.9999f);
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static class TestEntity implements PhysicalEntity<PhysicsCollisionObject> {
+
+        private final EntityId entityId;
+        private final Vector3f location = new Vector3f();
+        private final Quaternion rotation = new Quaternion();
+
+        private TestEntity(EntityId entityId) {
+            this.entityId = entityId;
+        }
+
+        @Override
+        public EntityId getEntityId() {
+            return entityId;
+        }
+
+        @Override
+        public PhysicsCollisionObject getPhysicalObject() {
+            return null;
+        }
+
+        @Override
+        public Vector3f getLocation() {
+            return location.clone();
+        }
+
+        @Override
+        public Quaternion getRotation() {
+            return rotation.clone();
+        }
+
+        @Override
+        public PhysicalEntityDriver getPhysicalEntityDriver() {
+            return null;
+        }
+    }
+
+}